@@ -19,8 +19,12 @@ package org.apache.archiva.checksum;
  * under the License.
  */
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -38,6 +42,8 @@ public class Checksum
 {
     private static final int BUFFER_SIZE = 32768;
 
+    private static final int CHANNEL_BUFFER_SIZE = 1024 * 1024;
+
     public static void update( List<Checksum> checksums, InputStream stream )
         throws IOException
     {
@@ -53,6 +59,42 @@ public class Checksum
         }
     }
 
+    /**
+     * Updates the checksums with the content of a file, read once through its channel.
+     * <p/>
+     * The file is read in a heap buffer rather than mapped or read in a direct buffer: a message digest copies the
+     * content of a direct buffer before hashing it, once for each checksum, and a mapped file stays locked on some
+     * platforms until the mapping is garbage collected.
+     *
+     * @since 1.4-M3
+     */
+    public static void update( List<Checksum> checksums, File file )
+        throws IOException
+    {
+        long length = file.length();
+        // one more byte to reach the end of a small file with a single read
+        byte[] bytes = new byte[length < CHANNEL_BUFFER_SIZE ? (int) length + 1 : CHANNEL_BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap( bytes );
+
+        FileInputStream stream = new FileInputStream( file );
+        try
+        {
+            FileChannel channel = stream.getChannel();
+            while ( channel.read( buffer ) >= 0 )
+            {
+                for ( Checksum checksum : checksums )
+                {
+                    checksum.update( bytes, 0, buffer.position() );
+                }
+                buffer.clear();
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly( stream );
+        }
+    }
+
     protected final MessageDigest md;
 
     private ChecksumAlgorithm checksumAlgorithm;
@@ -89,7 +131,7 @@ public class Checksum
 
     public Checksum update( byte[] buffer, int offset, int size )
     {
-        md.update( buffer, 0, size );
+        md.update( buffer, offset, size );
         return this;
     }
 
@@ -30,18 +30,19 @@ import org.apache.commons.io.FilenameUtils;
  */
 public enum ChecksumAlgorithm {
     SHA1("SHA-1", "sha1", "SHA1"),
-    MD5("MD5", "md5", "MD5");
+    MD5("MD5", "md5", "MD5"),
+    SHA256("SHA-256", "sha256", "SHA256"),
+    SHA512("SHA-512", "sha512", "SHA512");
 
     public static ChecksumAlgorithm getByExtension( File file )
     {
         String ext = FilenameUtils.getExtension( file.getName() ).toLowerCase();
-        if ( ChecksumAlgorithm.SHA1.getExt().equals( ext ) )
+        for ( ChecksumAlgorithm algorithm : values() )
         {
-            return ChecksumAlgorithm.SHA1;
-        }
-        else if ( ChecksumAlgorithm.MD5.getExt().equals( ext ) )
-        {
-            return ChecksumAlgorithm.MD5;
+            if ( algorithm.getExt().equals( ext ) )
+            {
+                return algorithm;
+            }
         }
 
         throw new IllegalArgumentException( "Filename " + file.getName() + " has no associated extension." );
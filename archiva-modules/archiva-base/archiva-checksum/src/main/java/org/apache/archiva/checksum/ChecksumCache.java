@@ -0,0 +1,430 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persistent cache of the checksums of the files of a repository.
+ * <p/>
+ * The checksums of a file are recorded with its size and modification time, and are only returned while they are
+ * unchanged, so that a file is not read again until it is modified. To detect the files corrupted on disk, which keep
+ * their size and modification time, a share of the files is read again every day, given by the verification rate:
+ * with a rate of 10%, each file is read again once every 10 days. The checksums of a file found corrupted are kept,
+ * and the file is reported as {@link #isCorrupted(File) corrupted} until it is modified.
+ * <p/>
+ * The checksums of the files of a directory are stored in a single file, in the {@link #CACHE_DIRECTORY} directory of
+ * the repository. The most recently used directories are kept in memory, and written when they are dropped or when
+ * the cache is {@link #save() saved}.
+ *
+ * @since 1.4-M3
+ */
+public class ChecksumCache
+{
+    public static final String CACHE_DIRECTORY = ".archiva/checksums";
+
+    /**
+     * The algorithms calculated whenever a file is read, as they are usually all needed.
+     */
+    public static final ChecksumAlgorithm[] ALGORITHMS =
+        new ChecksumAlgorithm[]{ ChecksumAlgorithm.SHA1, ChecksumAlgorithm.MD5 };
+
+    private static final String CACHE_FILE = "checksums";
+
+    private static final String CORRUPTED = "corrupted";
+
+    private static final int MAX_DIRECTORIES = 64;
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+    private Logger log = LoggerFactory.getLogger( ChecksumCache.class );
+
+    private final File repositoryDirectory;
+
+    private final File cacheDirectory;
+
+    private final int verificationRate;
+
+    private final Map<String, CachedDirectory> directories =
+        new LinkedHashMap<String, CachedDirectory>( 16, 0.75f, true );
+
+    private long hits;
+
+    private long misses;
+
+    private long corruptions;
+
+    /**
+     * @param verificationRate the percentage of the files read again every day, even though they are unchanged
+     */
+    public ChecksumCache( File repositoryDirectory, int verificationRate )
+    {
+        this.repositoryDirectory = repositoryDirectory;
+        this.cacheDirectory = new File( repositoryDirectory, CACHE_DIRECTORY );
+        this.verificationRate = verificationRate;
+    }
+
+    /**
+     * @return the checksums of the file for all the given algorithms, or <code>null</code> if the file must be read
+     */
+    public synchronized Map<ChecksumAlgorithm, String> getChecksums( File file, ChecksumAlgorithm[] algorithms )
+    {
+        String path = getPath( file );
+        if ( path == null )
+        {
+            return null;
+        }
+
+        CachedFile cachedFile = getDirectory( path ).files.get( getName( path ) );
+        if ( cachedFile == null || cachedFile.corrupted || !cachedFile.isUnchanged( file ) || isVerified( path ) )
+        {
+            misses++;
+            return null;
+        }
+        for ( ChecksumAlgorithm algorithm : algorithms )
+        {
+            if ( !cachedFile.checksums.containsKey( algorithm ) )
+            {
+                misses++;
+                return null;
+            }
+        }
+
+        hits++;
+        return new EnumMap<ChecksumAlgorithm, String>( cachedFile.checksums );
+    }
+
+    /**
+     * Records the checksums of a file which was just read.
+     *
+     * @param length       the size of the file before it was read
+     * @param lastModified the modification time of the file before it was read
+     */
+    public synchronized void putChecksums( File file, long length, long lastModified,
+                                           Map<ChecksumAlgorithm, String> checksums )
+    {
+        String path = getPath( file );
+        // a file modified just before it was read may be modified again with the same modification time
+        if ( path == null || checksums.isEmpty()
+            || lastModified > System.currentTimeMillis() - MODIFICATION_TIME_RESOLUTION )
+        {
+            return;
+        }
+
+        CachedDirectory directory = getDirectory( path );
+        String name = getName( path );
+        CachedFile cachedFile = directory.files.get( name );
+        if ( cachedFile != null && cachedFile.length == length && cachedFile.lastModified == lastModified )
+        {
+            boolean consistent = true;
+            for ( Map.Entry<ChecksumAlgorithm, String> entry : checksums.entrySet() )
+            {
+                String cachedChecksum = cachedFile.checksums.get( entry.getKey() );
+                if ( cachedChecksum != null && !cachedChecksum.equalsIgnoreCase( entry.getValue() ) )
+                {
+                    consistent = false;
+                    if ( !cachedFile.corrupted )
+                    {
+                        log.warn( "The {} checksum of {} changed from {} to {} while its size and modification time "
+                                      + "did not: the file may be corrupted", entry.getKey().getType(), file,
+                                  cachedChecksum, entry.getValue() );
+                    }
+                }
+            }
+            if ( !consistent )
+            {
+                if ( !cachedFile.corrupted )
+                {
+                    corruptions++;
+                }
+                // the checksums of the file before it was corrupted are kept
+                directory.files.put( name, new CachedFile( length, lastModified, cachedFile.checksums, true ) );
+                directory.modified = true;
+                return;
+            }
+            else
+            {
+                // the checksums of the other algorithms are still valid
+                checksums = new HashMap<ChecksumAlgorithm, String>( checksums );
+                for ( Map.Entry<ChecksumAlgorithm, String> entry : cachedFile.checksums.entrySet() )
+                {
+                    if ( !checksums.containsKey( entry.getKey() ) )
+                    {
+                        checksums.put( entry.getKey(), entry.getValue() );
+                    }
+                }
+            }
+        }
+
+        directory.files.put( name, new CachedFile( length, lastModified,
+                                                   new EnumMap<ChecksumAlgorithm, String>( checksums ), false ) );
+        directory.modified = true;
+    }
+
+    /**
+     * Writes the directories modified since they were read.
+     */
+    public synchronized void save()
+    {
+        for ( Map.Entry<String, CachedDirectory> entry : directories.entrySet() )
+        {
+            save( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    /**
+     * @return whether the checksums of the file changed while its size and modification time did not, the file being
+     *         unchanged since
+     */
+    public synchronized boolean isCorrupted( File file )
+    {
+        String path = getPath( file );
+        if ( path == null )
+        {
+            return false;
+        }
+
+        CachedFile cachedFile = getDirectory( path ).files.get( getName( path ) );
+        return cachedFile != null && cachedFile.corrupted && cachedFile.isUnchanged( file );
+    }
+
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    /**
+     * @return the number of files whose checksums changed while their size and modification time did not
+     */
+    public synchronized long getCorruptionCount()
+    {
+        return corruptions;
+    }
+
+    public int getVerificationRate()
+    {
+        return verificationRate;
+    }
+
+    /**
+     * Spreads the verifications over the days: each day verifies another share of the files.
+     */
+    private boolean isVerified( String path )
+    {
+        if ( verificationRate <= 0 )
+        {
+            return false;
+        }
+        long day = System.currentTimeMillis() / DAY;
+        return ( ( path.hashCode() & Integer.MAX_VALUE ) + day * verificationRate ) % 100 < verificationRate;
+    }
+
+    private CachedDirectory getDirectory( String path )
+    {
+        String directoryPath = path.substring( 0, path.lastIndexOf( '/' ) + 1 );
+        CachedDirectory directory = directories.get( directoryPath );
+        if ( directory == null )
+        {
+            directory = load( directoryPath );
+            directories.put( directoryPath, directory );
+
+            Iterator<Map.Entry<String, CachedDirectory>> iterator = directories.entrySet().iterator();
+            while ( directories.size() > MAX_DIRECTORIES && iterator.hasNext() )
+            {
+                Map.Entry<String, CachedDirectory> eldest = iterator.next();
+                save( eldest.getKey(), eldest.getValue() );
+                iterator.remove();
+            }
+        }
+        return directory;
+    }
+
+    private CachedDirectory load( String directoryPath )
+    {
+        CachedDirectory directory = new CachedDirectory();
+        File file = new File( new File( cacheDirectory, directoryPath ), CACHE_FILE );
+        if ( !file.exists() )
+        {
+            return directory;
+        }
+
+        BufferedReader reader = null;
+        try
+        {
+            reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                // length, last modified, algorithm=checksum..., [corrupted,] name
+                String[] fields = line.split( "\t" );
+                Map<ChecksumAlgorithm, String> checksums =
+                    new EnumMap<ChecksumAlgorithm, String>( ChecksumAlgorithm.class );
+                boolean corrupted = false;
+                for ( int i = 2; i < fields.length - 1; i++ )
+                {
+                    if ( CORRUPTED.equals( fields[i] ) )
+                    {
+                        corrupted = true;
+                        continue;
+                    }
+                    int separator = fields[i].indexOf( '=' );
+                    checksums.put( ChecksumAlgorithm.valueOf( fields[i].substring( 0, separator ) ),
+                                   fields[i].substring( separator + 1 ) );
+                }
+                directory.files.put( fields[fields.length - 1],
+                                     new CachedFile( Long.parseLong( fields[0] ), Long.parseLong( fields[1] ),
+                                                     checksums, corrupted ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Unable to read the checksums of {}: {}", file, e.getMessage() );
+            directory.files.clear();
+        }
+        catch ( RuntimeException e )
+        {
+            log.warn( "Ignoring the invalid checksums of {}: {}", file, e.getMessage() );
+            directory.files.clear();
+        }
+        finally
+        {
+            IOUtils.closeQuietly( reader );
+        }
+        return directory;
+    }
+
+    private void save( String directoryPath, CachedDirectory directory )
+    {
+        if ( !directory.modified )
+        {
+            return;
+        }
+
+        File file = new File( new File( cacheDirectory, directoryPath ), CACHE_FILE );
+        Writer writer = null;
+        try
+        {
+            FileUtils.forceMkdir( file.getParentFile() );
+            writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" ) );
+            for ( Map.Entry<String, CachedFile> entry : directory.files.entrySet() )
+            {
+                CachedFile cachedFile = entry.getValue();
+                writer.write( cachedFile.length + "\t" + cachedFile.lastModified );
+                for ( Map.Entry<ChecksumAlgorithm, String> checksum : cachedFile.checksums.entrySet() )
+                {
+                    writer.write( "\t" + checksum.getKey().name() + "=" + checksum.getValue() );
+                }
+                if ( cachedFile.corrupted )
+                {
+                    writer.write( "\t" + CORRUPTED );
+                }
+                writer.write( "\t" + entry.getKey() + "\n" );
+            }
+            directory.modified = false;
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Unable to write the checksums of {}: {}", file, e.getMessage() );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( writer );
+        }
+    }
+
+    /**
+     * @return the path of the file in the repository, or <code>null</code> if it is not in the repository
+     */
+    private String getPath( File file )
+    {
+        String base = repositoryDirectory.getAbsolutePath() + File.separator;
+        String path = file.getAbsolutePath();
+        if ( !path.startsWith( base ) )
+        {
+            return null;
+        }
+        return path.substring( base.length() ).replace( File.separatorChar, '/' );
+    }
+
+    private static String getName( String path )
+    {
+        return path.substring( path.lastIndexOf( '/' ) + 1 );
+    }
+
+    private static class CachedDirectory
+    {
+        private final Map<String, CachedFile> files = new HashMap<String, CachedFile>();
+
+        private boolean modified;
+    }
+
+    private static class CachedFile
+    {
+        private final long length;
+
+        private final long lastModified;
+
+        private final Map<ChecksumAlgorithm, String> checksums;
+
+        /**
+         * Whether the checksums are those of the file before it was corrupted.
+         */
+        private final boolean corrupted;
+
+        private CachedFile( long length, long lastModified, Map<ChecksumAlgorithm, String> checksums,
+                            boolean corrupted )
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksums = checksums;
+            this.corrupted = corrupted;
+        }
+
+        private boolean isUnchanged( File file )
+        {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+}
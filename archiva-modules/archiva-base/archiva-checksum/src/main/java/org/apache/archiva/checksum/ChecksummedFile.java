@@ -20,16 +20,19 @@ package org.apache.archiva.checksum;
  */
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -55,14 +58,29 @@ public class ChecksummedFile
 
     private final File referenceFile;
 
+    private final ChecksumCache cache;
+
     /**
      * Construct a ChecksummedFile object.
      *
      * @param referenceFile
      */
     public ChecksummedFile( final File referenceFile )
+    {
+        this( referenceFile, null );
+    }
+
+    /**
+     * Construct a ChecksummedFile object reading its checksums from a cache while it is unchanged.
+     *
+     * @param referenceFile
+     * @param cache         the cache of the checksums of the repository of the file, <code>null</code> for none
+     * @since 1.4-M3
+     */
+    public ChecksummedFile( final File referenceFile, ChecksumCache cache )
     {
         this.referenceFile = referenceFile;
+        this.cache = cache;
     }
 
     /**
@@ -75,18 +93,57 @@ public class ChecksummedFile
     public String calculateChecksum( ChecksumAlgorithm checksumAlgorithm )
         throws IOException
     {
-        FileInputStream fis = null;
-        try
+        return calculateChecksums( new ChecksumAlgorithm[]{ checksumAlgorithm } ).get( checksumAlgorithm );
+    }
+
+    /**
+     * Calculate the checksums of the file for several algorithms, reading it once.
+     *
+     * @param algorithms the algorithms to use.
+     * @return the checksum strings for the file, by algorithm.
+     * @throws IOException if unable to calculate the checksums.
+     * @since 1.4-M3
+     */
+    public Map<ChecksumAlgorithm, String> calculateChecksums( ChecksumAlgorithm[] algorithms )
+        throws IOException
+    {
+        Set<ChecksumAlgorithm> calculatedAlgorithms = EnumSet.noneOf( ChecksumAlgorithm.class );
+        calculatedAlgorithms.addAll( Arrays.asList( algorithms ) );
+
+        long length = referenceFile.length();
+        long lastModified = referenceFile.lastModified();
+        if ( cache != null )
+        {
+            Map<ChecksumAlgorithm, String> values = cache.getChecksums( referenceFile, algorithms );
+            if ( values != null )
+            {
+                values.keySet().retainAll( calculatedAlgorithms );
+                return values;
+            }
+            // calculate the usual checksums now rather than reading the file again for them
+            calculatedAlgorithms.addAll( Arrays.asList( ChecksumCache.ALGORITHMS ) );
+        }
+
+        List<Checksum> checksums = new ArrayList<Checksum>( calculatedAlgorithms.size() );
+        for ( ChecksumAlgorithm checksumAlgorithm : calculatedAlgorithms )
+        {
+            checksums.add( new Checksum( checksumAlgorithm ) );
+        }
+
+        Checksum.update( checksums, referenceFile );
+
+        Map<ChecksumAlgorithm, String> values = new EnumMap<ChecksumAlgorithm, String>( ChecksumAlgorithm.class );
+        for ( Checksum checksum : checksums )
         {
-            Checksum checksum = new Checksum( checksumAlgorithm );
-            fis = new FileInputStream( referenceFile );
-            checksum.update( fis );
-            return checksum.getChecksum();
+            values.put( checksum.getAlgorithm(), checksum.getChecksum() );
         }
-        finally
+
+        if ( cache != null )
         {
-            IOUtils.closeQuietly( fis );
+            cache.putChecksums( referenceFile, length, lastModified, values );
+            values.keySet().retainAll( Arrays.asList( algorithms ) );
         }
+        return values;
     }
 
     /**
@@ -144,72 +201,64 @@ public class ChecksummedFile
      */
     public boolean isValidChecksums( ChecksumAlgorithm algorithms[] )
     {
-        FileInputStream fis = null;
-        try
+        List<ChecksumAlgorithm> checksumAlgorithms = new ArrayList<ChecksumAlgorithm>( algorithms.length );
+        for ( ChecksumAlgorithm checksumAlgorithm : algorithms )
         {
-            List<Checksum> checksums = new ArrayList<Checksum>( algorithms.length );
-            // Create checksum object for each algorithm.
-            for ( ChecksumAlgorithm checksumAlgorithm : algorithms )
-            {
-                File checksumFile = getChecksumFile( checksumAlgorithm );
+            File checksumFile = getChecksumFile( checksumAlgorithm );
 
-                // Only add algorithm if checksum file exists.
-                if ( checksumFile.exists() )
-                {
-                    checksums.add( new Checksum( checksumAlgorithm ) );
-                }
-            }
-
-            // Any checksums?
-            if ( checksums.isEmpty() )
+            // Only add algorithm if checksum file exists.
+            if ( checksumFile.exists() )
             {
-                // No checksum objects, no checksum files, default to is invalid.
-                return false;
+                checksumAlgorithms.add( checksumAlgorithm );
             }
+        }
 
-            // Parse file once, for all checksums.
-            try
-            {
-                fis = new FileInputStream( referenceFile );
-                Checksum.update( checksums, fis );
-            }
-            catch ( IOException e )
-            {
-                log.warn( "Unable to update checksum:" + e.getMessage() );
-                return false;
-            }
+        // Any checksums?
+        if ( checksumAlgorithms.isEmpty() )
+        {
+            // No checksum objects, no checksum files, default to is invalid.
+            return false;
+        }
 
-            boolean valid = true;
+        // Parse file once, for all checksums.
+        Map<ChecksumAlgorithm, String> checksums;
+        try
+        {
+            checksums = calculateChecksums(
+                checksumAlgorithms.toArray( new ChecksumAlgorithm[checksumAlgorithms.size()] ) );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Unable to update checksum:" + e.getMessage() );
+            return false;
+        }
 
-            // check the checksum files
-            try
+        boolean valid = true;
+
+        // check the checksum files
+        try
+        {
+            for ( Map.Entry<ChecksumAlgorithm, String> checksum : checksums.entrySet() )
             {
-                for ( Checksum checksum : checksums )
-                {
-                    ChecksumAlgorithm checksumAlgorithm = checksum.getAlgorithm();
-                    File checksumFile = getChecksumFile( checksumAlgorithm );
+                ChecksumAlgorithm checksumAlgorithm = checksum.getKey();
+                File checksumFile = getChecksumFile( checksumAlgorithm );
 
-                    String rawChecksum = FileUtils.readFileToString( checksumFile );
-                    String expectedChecksum = parseChecksum( rawChecksum, checksumAlgorithm, referenceFile.getName() );
+                String rawChecksum = FileUtils.readFileToString( checksumFile );
+                String expectedChecksum = parseChecksum( rawChecksum, checksumAlgorithm, referenceFile.getName() );
 
-                    if ( !StringUtils.equalsIgnoreCase( expectedChecksum, checksum.getChecksum() ) )
-                    {
-                        valid = false;
-                    }
+                if ( !StringUtils.equalsIgnoreCase( expectedChecksum, checksum.getValue() ) )
+                {
+                    valid = false;
                 }
             }
-            catch ( IOException e )
-            {
-                log.warn( "Unable to read / parse checksum: " + e.getMessage() );
-                return false;
-            }
-
-            return valid;
         }
-        finally
+        catch ( IOException e )
         {
-            IOUtils.closeQuietly( fis );
+            log.warn( "Unable to read / parse checksum: " + e.getMessage() );
+            return false;
         }
+
+        return valid;
     }
 
     /**
@@ -220,63 +269,33 @@ public class ChecksummedFile
      */
     public boolean fixChecksums( ChecksumAlgorithm[] algorithms )
     {
-        List<Checksum> checksums = new ArrayList<Checksum>( algorithms.length );
-        // Create checksum object for each algorithm.
-        for ( ChecksumAlgorithm checksumAlgorithm : algorithms )
-        {
-            checksums.add( new Checksum( checksumAlgorithm ) );
-        }
-
         // Any checksums?
-        if ( checksums.isEmpty() )
+        if ( algorithms.length == 0 )
         {
             // No checksum objects, no checksum files, default to is valid.
             return true;
         }
 
-        FileInputStream fis = null;
+        Map<ChecksumAlgorithm, String> checksums;
         try
         {
             // Parse file once, for all checksums.
-            fis = new FileInputStream( referenceFile );
-            Checksum.update( checksums, fis );
+            checksums = calculateChecksums( algorithms );
         }
         catch ( IOException e )
         {
             log.warn( e.getMessage(), e );
             return false;
         }
-        finally
-        {
-            IOUtils.closeQuietly( fis );
-        }
 
         boolean valid = true;
 
         // check the hash files
-        for ( Checksum checksum : checksums )
+        for ( Map.Entry<ChecksumAlgorithm, String> checksum : checksums.entrySet() )
         {
-            ChecksumAlgorithm checksumAlgorithm = checksum.getAlgorithm();
             try
             {
-                File checksumFile = getChecksumFile( checksumAlgorithm );
-                String actualChecksum = checksum.getChecksum();
-
-                if ( checksumFile.exists() )
-                {
-                    String rawChecksum = FileUtils.readFileToString( checksumFile );
-                    String expectedChecksum = parseChecksum( rawChecksum, checksumAlgorithm, referenceFile.getName() );
-
-                    if ( !StringUtils.equalsIgnoreCase( expectedChecksum, actualChecksum ) )
-                    {
-                        // create checksum (again)
-                        FileUtils.writeStringToFile( checksumFile, actualChecksum + "  " + referenceFile.getName() );
-                    }
-                }
-                else
-                {
-                    FileUtils.writeStringToFile( checksumFile, actualChecksum + "  " + referenceFile.getName() );
-                }
+                fixChecksum( checksum.getKey(), checksum.getValue() );
             }
             catch ( IOException e )
             {
@@ -289,6 +308,35 @@ public class ChecksummedFile
 
     }
 
+    /**
+     * Fix or create a checksum file for the reference file, with an already calculated checksum.
+     *
+     * @param checksumAlgorithm the hash of the checksum.
+     * @param actualChecksum    the checksum of the reference file.
+     * @return true if the checksum file was written, false if it already contained the checksum.
+     * @throws IOException if there was a problem either reading or writing the checksum file.
+     * @since 1.4-M3
+     */
+    public boolean fixChecksum( ChecksumAlgorithm checksumAlgorithm, String actualChecksum )
+        throws IOException
+    {
+        File checksumFile = getChecksumFile( checksumAlgorithm );
+        if ( checksumFile.exists() )
+        {
+            String rawChecksum = FileUtils.readFileToString( checksumFile );
+            String expectedChecksum = parseChecksum( rawChecksum, checksumAlgorithm, referenceFile.getName() );
+
+            if ( StringUtils.equalsIgnoreCase( expectedChecksum, actualChecksum ) )
+            {
+                return false;
+            }
+        }
+
+        // create checksum (again)
+        FileUtils.writeStringToFile( checksumFile, actualChecksum + "  " + referenceFile.getName() );
+        return true;
+    }
+
     private boolean isValidChecksumPattern( String filename, String path )
     {
         // check if it is a remote metadata file
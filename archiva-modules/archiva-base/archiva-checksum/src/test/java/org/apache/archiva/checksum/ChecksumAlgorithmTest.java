@@ -49,6 +49,14 @@ public class ChecksumAlgorithmTest
         assertEquals( ChecksumAlgorithm.MD5, ChecksumAlgorithm.getByExtension( new File( "OTHER.JAR.MD5" ) ) );
     }
 
+    @Test
+    public void testGetHashByExtensionSha256()
+    {
+        assertEquals( ChecksumAlgorithm.SHA256,
+                      ChecksumAlgorithm.getByExtension( new File( "something.jar.sha256" ) ) );
+        assertEquals( ChecksumAlgorithm.SHA512, ChecksumAlgorithm.getByExtension( new File( "OTHER.JAR.SHA512" ) ) );
+    }
+
     @Test
     public void testGetHashByExtensionInvalid()
     {
@@ -0,0 +1,157 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * ChecksumCacheTest
+ */
+public class ChecksumCacheTest
+    extends AbstractChecksumTestCase
+{
+    private static final ChecksumAlgorithm[] SHA1 = new ChecksumAlgorithm[]{ ChecksumAlgorithm.SHA1 };
+
+    private static final long LAST_MODIFIED = 1136073600000L;
+
+    private File repositoryDir;
+
+    private File artifactFile;
+
+    @Before
+    public void createRepository()
+        throws IOException
+    {
+        repositoryDir = new File( getTestOutputDir(), "repository" );
+        FileUtils.deleteDirectory( repositoryDir );
+        artifactFile = new File( repositoryDir, "org/apache/archiva/test/1.0/test-1.0.jar" );
+        writeArtifact( "artifact content", LAST_MODIFIED );
+    }
+
+    private void writeArtifact( String content, long lastModified )
+        throws IOException
+    {
+        FileUtils.writeStringToFile( artifactFile, content );
+        assertTrue( artifactFile.setLastModified( lastModified ) );
+    }
+
+    @Test
+    public void testUnchangedFile()
+        throws IOException
+    {
+        ChecksumCache cache = new ChecksumCache( repositoryDir, 0 );
+
+        Map<ChecksumAlgorithm, String> checksums =
+            new ChecksummedFile( artifactFile, cache ).calculateChecksums( SHA1 );
+        assertEquals( 0, cache.getHitCount() );
+        assertEquals( 1, cache.getMissCount() );
+        assertEquals( 1, checksums.size() );
+
+        assertEquals( checksums, new ChecksummedFile( artifactFile, cache ).calculateChecksums( SHA1 ) );
+        assertEquals( 1, cache.getHitCount() );
+
+        // the other usual checksums were calculated with the first one
+        Map<ChecksumAlgorithm, String> md5 = new ChecksummedFile( artifactFile, cache ).calculateChecksums(
+            new ChecksumAlgorithm[]{ ChecksumAlgorithm.MD5 } );
+        assertEquals( 2, cache.getHitCount() );
+        assertEquals( new ChecksummedFile( artifactFile ).calculateChecksum( ChecksumAlgorithm.MD5 ),
+                      md5.get( ChecksumAlgorithm.MD5 ) );
+    }
+
+    @Test
+    public void testModifiedFile()
+        throws IOException
+    {
+        ChecksumCache cache = new ChecksumCache( repositoryDir, 0 );
+        String checksum = new ChecksummedFile( artifactFile, cache ).calculateChecksum( ChecksumAlgorithm.SHA1 );
+
+        writeArtifact( "modified artifact content", LAST_MODIFIED + 60000 );
+        String modifiedChecksum =
+            new ChecksummedFile( artifactFile, cache ).calculateChecksum( ChecksumAlgorithm.SHA1 );
+        assertEquals( 0, cache.getHitCount() );
+        assertFalse( checksum.equals( modifiedChecksum ) );
+        assertEquals( new ChecksummedFile( artifactFile ).calculateChecksum( ChecksumAlgorithm.SHA1 ),
+                      modifiedChecksum );
+    }
+
+    @Test
+    public void testRecentlyModifiedFile()
+        throws IOException
+    {
+        writeArtifact( "artifact content", System.currentTimeMillis() );
+        ChecksumCache cache = new ChecksumCache( repositoryDir, 0 );
+        new ChecksummedFile( artifactFile, cache ).calculateChecksums( SHA1 );
+        new ChecksummedFile( artifactFile, cache ).calculateChecksums( SHA1 );
+        assertEquals( 0, cache.getHitCount() );
+        assertEquals( 2, cache.getMissCount() );
+    }
+
+    @Test
+    public void testCorruptedFile()
+        throws IOException
+    {
+        // every file is verified every day
+        ChecksumCache cache = new ChecksumCache( repositoryDir, 100 );
+        new ChecksummedFile( artifactFile, cache ).calculateChecksums( SHA1 );
+        new ChecksummedFile( artifactFile, cache ).calculateChecksums( SHA1 );
+        assertEquals( 0, cache.getHitCount() );
+        assertEquals( 0, cache.getCorruptionCount() );
+
+        writeArtifact( "artifact CONTENT", LAST_MODIFIED );
+        String checksum = new ChecksummedFile( artifactFile, cache ).calculateChecksum( ChecksumAlgorithm.SHA1 );
+        assertEquals( 1, cache.getCorruptionCount() );
+        assertEquals( new ChecksummedFile( artifactFile ).calculateChecksum( ChecksumAlgorithm.SHA1 ), checksum );
+        assertTrue( cache.isCorrupted( artifactFile ) );
+
+        // the corruption is only counted once, and kept with the checksums
+        new ChecksummedFile( artifactFile, cache ).calculateChecksums( SHA1 );
+        assertEquals( 1, cache.getCorruptionCount() );
+        cache.save();
+        cache = new ChecksumCache( repositoryDir, 0 );
+        assertTrue( cache.isCorrupted( artifactFile ) );
+        new ChecksummedFile( artifactFile, cache ).calculateChecksums( SHA1 );
+        assertEquals( 0, cache.getHitCount() );
+
+        writeArtifact( "modified artifact content", LAST_MODIFIED + 60000 );
+        assertFalse( cache.isCorrupted( artifactFile ) );
+    }
+
+    @Test
+    public void testSavedChecksums()
+        throws IOException
+    {
+        ChecksumCache cache = new ChecksumCache( repositoryDir, 0 );
+        Map<ChecksumAlgorithm, String> checksums =
+            new ChecksummedFile( artifactFile, cache ).calculateChecksums( SHA1 );
+        cache.save();
+        assertTrue( new File( repositoryDir, ChecksumCache.CACHE_DIRECTORY ).isDirectory() );
+
+        cache = new ChecksumCache( repositoryDir, 0 );
+        assertEquals( checksums, new ChecksummedFile( artifactFile, cache ).calculateChecksums( SHA1 ) );
+        assertEquals( 1, cache.getHitCount() );
+        assertEquals( 0, cache.getMissCount() );
+    }
+}
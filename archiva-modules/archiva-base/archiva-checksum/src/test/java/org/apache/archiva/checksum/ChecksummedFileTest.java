@@ -25,8 +25,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
 
 /**
  * ChecksummedFileTest
@@ -117,6 +120,43 @@ public class ChecksummedFileTest
         assertEquals( expectedChecksum, actualChecksum );
     }
 
+    @Test
+    public void testCalculateChecksums()
+        throws IOException
+    {
+        File testfile = getTestResource( "examples/redback-authz-open.jar" );
+        ChecksummedFile checksummedFile = new ChecksummedFile( testfile );
+        Map<ChecksumAlgorithm, String> checksums = checksummedFile.calculateChecksums( ChecksumAlgorithm.values() );
+        assertEquals( "f42047fe2e177ac04d0df7aa44d408be", checksums.get( ChecksumAlgorithm.MD5 ) );
+        assertEquals( "2bb14b388973351b0a4dfe11d171965f59cc61a1", checksums.get( ChecksumAlgorithm.SHA1 ) );
+        assertEquals( 64, checksums.get( ChecksumAlgorithm.SHA256 ).length() );
+        assertEquals( 128, checksums.get( ChecksumAlgorithm.SHA512 ).length() );
+    }
+
+    @Test
+    public void testCalculateChecksumsAroundBufferSize()
+        throws IOException
+    {
+        Random random = new Random( 42 );
+        for ( int size : new int[]{ 0, 1, 1024 * 1024 - 1, 1024 * 1024, 1024 * 1024 + 1, 3 * 1024 * 1024 + 7 } )
+        {
+            byte[] content = new byte[size];
+            random.nextBytes( content );
+            File file = new File( getTestOutputDir(), "file-" + size );
+            FileUtils.writeByteArrayToFile( file, content );
+
+            Map<ChecksumAlgorithm, String> checksums =
+                new ChecksummedFile( file ).calculateChecksums( ChecksumAlgorithm.values() );
+            for ( ChecksumAlgorithm algorithm : ChecksumAlgorithm.values() )
+            {
+                Checksum checksum = new Checksum( algorithm );
+                checksum.update( new ByteArrayInputStream( content ) );
+                assertEquals( algorithm + " of " + size + " bytes", checksum.getChecksum(),
+                              checksums.get( algorithm ) );
+            }
+        }
+    }
+
     @Test
     public void testCreateChecksum()
         throws IOException
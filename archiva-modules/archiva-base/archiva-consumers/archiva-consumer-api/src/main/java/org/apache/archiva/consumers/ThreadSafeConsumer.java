@@ -0,0 +1,34 @@
+package org.apache.archiva.consumers;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Marks a {@link RepositoryContentConsumer} that can process several files at the same time.
+ * <p/>
+ * When a repository is scanned with several threads, the files are given to these consumers concurrently, while
+ * the other consumers are still given the files one after the other. <code>beginScan</code> and
+ * <code>completeScan</code> are never called concurrently with <code>processFile</code>.
+ *
+ * @since 1.4-M3
+ */
+public interface ThreadSafeConsumer
+{
+    // no op
+}
@@ -43,6 +43,12 @@ public class ConsumerWantsFilePredicate
 
     private long changesSince = 0;
 
+    private long lastModified;
+
+    private boolean lastModifiedRead;
+
+    private String relativePath;
+
     public boolean evaluate( Object object )
     {
         boolean satisfies = false;
@@ -50,7 +56,7 @@ public class ConsumerWantsFilePredicate
         if ( object instanceof RepositoryContentConsumer )
         {
             RepositoryContentConsumer consumer = (RepositoryContentConsumer) object;
-            if ( wantsFile( consumer, FilenameUtils.separatorsToUnix( basefile.getRelativePath() ) ) )
+            if ( wantsFile( consumer, getRelativePath() ) )
             {
                 satisfies = true;
                 
@@ -60,7 +66,7 @@ public class ConsumerWantsFilePredicate
                 if ( !consumer.isProcessUnmodified() )
                 {
                     // Timestamp finished points to the last successful scan, not this current one.
-                    if ( basefile.lastModified() < changesSince )
+                    if ( getLastModified() < changesSince )
                     {
                         // Skip file as no change has occurred.
                         satisfies = false;
@@ -91,6 +97,39 @@ public class ConsumerWantsFilePredicate
     {
         this.basefile = basefile;
         this.wantedFileCount = 0;
+        this.lastModifiedRead = false;
+        this.relativePath = null;
+    }
+
+    /**
+     * Sets the file to evaluate with its modification time, so that it is not read again from the file system.
+     *
+     * @since 1.4-M3
+     */
+    public void setBasefile( BaseFile basefile, long lastModified )
+    {
+        setBasefile( basefile );
+        this.lastModified = lastModified;
+        this.lastModifiedRead = true;
+    }
+
+    private String getRelativePath()
+    {
+        if ( relativePath == null )
+        {
+            relativePath = FilenameUtils.separatorsToUnix( basefile.getRelativePath() );
+        }
+        return relativePath;
+    }
+
+    private long getLastModified()
+    {
+        if ( !lastModifiedRead )
+        {
+            lastModified = basefile.lastModified();
+            lastModifiedRead = true;
+        }
+        return lastModified;
     }
 
     public void setCaseSensitive( boolean isCaseSensitive )
@@ -98,7 +137,7 @@ public class ConsumerWantsFilePredicate
         this.isCaseSensitive = isCaseSensitive;
     }
 
-    private boolean wantsFile( RepositoryContentConsumer consumer, String relativePath )
+    protected boolean wantsFile( RepositoryContentConsumer consumer, String relativePath )
     {
         // Test excludes first.
         List<String> excludes = consumer.getExcludes();
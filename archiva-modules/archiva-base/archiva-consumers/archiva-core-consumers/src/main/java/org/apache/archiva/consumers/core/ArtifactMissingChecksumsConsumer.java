@@ -21,6 +21,7 @@ package org.apache.archiva.consumers.core;
 
 import org.apache.archiva.admin.model.beans.ManagedRepository;
 import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.checksum.ChecksummedFile;
 import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.ConfigurationNames;
@@ -40,6 +41,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * ArtifactMissingChecksumsConsumer - Create missing and/or fix invalid checksums for the artifact.
@@ -62,14 +64,24 @@ public class ArtifactMissingChecksumsConsumer
 
     private ChecksummedFile checksum;
 
+    private static final ChecksumAlgorithm[] ALGORITHMS =
+        new ChecksumAlgorithm[]{ ChecksumAlgorithm.SHA1, ChecksumAlgorithm.MD5 };
+
     private static final String TYPE_CHECKSUM_NOT_FILE = "checksum-bad-not-file";
 
     private static final String TYPE_CHECKSUM_CANNOT_CALC = "checksum-calc-failure";
 
     private static final String TYPE_CHECKSUM_CANNOT_CREATE = "checksum-create-failure";
 
+    private static final String TYPE_ARTIFACT_CORRUPTED = "artifact-corrupted";
+
     private File repositoryDir;
 
+    @Inject
+    private ChecksumCaches checksumCaches;
+
+    private ChecksumCache checksumCache;
+
     private List<String> includes = new ArrayList<String>( 0 );
 
     @Inject
@@ -102,6 +114,7 @@ public class ArtifactMissingChecksumsConsumer
         throws ConsumerException
     {
         this.repositoryDir = new File( repo.getLocation() );
+        this.checksumCache = checksumCaches.getChecksumCache( repo );
     }
 
     public void beginScan( ManagedRepository repo, Date whenGathered, boolean executeOnEntireRepo )
@@ -112,7 +125,10 @@ public class ArtifactMissingChecksumsConsumer
 
     public void completeScan()
     {
-        /* do nothing */
+        if ( checksumCache != null )
+        {
+            checksumCache.save();
+        }
     }
 
     public void completeScan( boolean executeOnEntireRepo )
@@ -133,8 +149,35 @@ public class ArtifactMissingChecksumsConsumer
     public void processFile( String path )
         throws ConsumerException
     {
-        createFixChecksum( path, new ChecksumAlgorithm[]{ ChecksumAlgorithm.SHA1 } );
-        createFixChecksum( path, new ChecksumAlgorithm[]{ ChecksumAlgorithm.MD5 } );
+        File artifactFile = new File( this.repositoryDir, path );
+        checksum = new ChecksummedFile( artifactFile, checksumCache );
+
+        // read the artifact once for all the checksums
+        Map<ChecksumAlgorithm, String> checksums;
+        try
+        {
+            checksums = checksum.calculateChecksums( ALGORITHMS );
+        }
+        catch ( IOException e )
+        {
+            triggerConsumerError( TYPE_CHECKSUM_CANNOT_CALC,
+                                  "Cannot calculate checksum for file " + artifactFile + ": " + e.getMessage() );
+            return;
+        }
+
+        // the checksum files of an artifact corrupted on disk, as found by the checksum validation, are not replaced
+        // by the checksums of its corrupted content
+        if ( checksumCache != null && checksumCache.isCorrupted( artifactFile ) )
+        {
+            triggerConsumerWarning( TYPE_ARTIFACT_CORRUPTED, "Not fixing the checksums of " + artifactFile
+                + ": its content changed while its size and modification time did not, it may be corrupted." );
+            return;
+        }
+
+        for ( ChecksumAlgorithm checksumAlgorithm : ALGORITHMS )
+        {
+            createFixChecksum( checksumAlgorithm, checksums.get( checksumAlgorithm ) );
+        }
     }
 
     public void processFile( String path, boolean executeOnEntireRepo )
@@ -143,19 +186,21 @@ public class ArtifactMissingChecksumsConsumer
         processFile( path );
     }
 
-    private void createFixChecksum( String path, ChecksumAlgorithm checksumAlgorithm[] )
+    private void createFixChecksum( ChecksumAlgorithm checksumAlgorithm, String actualChecksum )
     {
-        File artifactFile = new File( this.repositoryDir, path );
-        File checksumFile = new File( this.repositoryDir, path + checksumAlgorithm[0].getExt() );
+        File checksumFile = checksum.getChecksumFile( checksumAlgorithm );
 
-        if ( checksumFile.exists() )
+        if ( checksumFile.isDirectory() )
+        {
+            triggerConsumerWarning( TYPE_CHECKSUM_NOT_FILE,
+                                    "Checksum file " + checksumFile.getAbsolutePath() + " is not a file." );
+        }
+        else if ( checksumFile.exists() )
         {
-            checksum = new ChecksummedFile( artifactFile );
             try
             {
-                if ( !checksum.isValidChecksum( checksumAlgorithm[0] ) )
+                if ( checksum.fixChecksum( checksumAlgorithm, actualChecksum ) )
                 {
-                    checksum.fixChecksums( checksumAlgorithm );
                     triggerConsumerInfo( "Fixed checksum file " + checksumFile.getAbsolutePath() );
                 }
             }
@@ -165,12 +210,11 @@ public class ArtifactMissingChecksumsConsumer
                     ": " + e.getMessage() );
             }
         }
-        else if ( !checksumFile.exists() )
+        else
         {
-            checksum = new ChecksummedFile( artifactFile );
             try
             {
-                checksum.createChecksum( checksumAlgorithm[0] );
+                checksum.fixChecksum( checksumAlgorithm, actualChecksum );
                 triggerConsumerInfo( "Created missing checksum file " + checksumFile.getAbsolutePath() );
             }
             catch ( IOException e )
@@ -179,11 +223,6 @@ public class ArtifactMissingChecksumsConsumer
                     ": " + e.getMessage() );
             }
         }
-        else
-        {
-            triggerConsumerWarning( TYPE_CHECKSUM_NOT_FILE,
-                                    "Checksum file " + checksumFile.getAbsolutePath() + " is not a file." );
-        }
     }
 
     public void afterConfigurationChange( Registry registry, String propertyName, Object propertyValue )
@@ -0,0 +1,112 @@
+package org.apache.archiva.consumers.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.admin.model.beans.ManagedRepository;
+import org.apache.archiva.checksum.ChecksumCache;
+import org.apache.archiva.configuration.ArchivaConfiguration;
+import org.apache.archiva.configuration.RepositoryScanningConfiguration;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ChecksumCaches - the {@link ChecksumCache} of each managed repository, shared by the checksum consumers so that a
+ * scan reads an artifact once for both, and by the successive scans.
+ *
+ * @since 1.4-M3
+ */
+@Service( "checksumCaches#default" )
+@ManagedResource( objectName = "org.apache.archiva:type=ChecksumCaches",
+                  description = "Checksums of the artifacts of the managed repositories" )
+public class ChecksumCaches
+{
+    @Inject
+    @Named( value = "archivaConfiguration#default" )
+    private ArchivaConfiguration archivaConfiguration;
+
+    private final Map<String, ChecksumCache> caches = new HashMap<String, ChecksumCache>();
+
+    /**
+     * @return the checksum cache of the repository, or <code>null</code> if the checksum cache is disabled
+     */
+    public synchronized ChecksumCache getChecksumCache( ManagedRepository repository )
+    {
+        String location = new File( repository.getLocation() ).getAbsolutePath();
+        RepositoryScanningConfiguration scanning = archivaConfiguration.getConfiguration().getRepositoryScanning();
+        if ( !scanning.isChecksumCache() )
+        {
+            caches.remove( location );
+            return null;
+        }
+
+        ChecksumCache cache = caches.get( location );
+        if ( cache == null || cache.getVerificationRate() != scanning.getChecksumVerificationRate() )
+        {
+            if ( cache != null )
+            {
+                cache.save();
+            }
+            cache = new ChecksumCache( new File( location ), scanning.getChecksumVerificationRate() );
+            caches.put( location, cache );
+        }
+        return cache;
+    }
+
+    @ManagedAttribute( description = "Number of artifacts whose checksums were served from the caches" )
+    public synchronized long getHitCount()
+    {
+        long hits = 0;
+        for ( ChecksumCache cache : caches.values() )
+        {
+            hits += cache.getHitCount();
+        }
+        return hits;
+    }
+
+    @ManagedAttribute( description = "Number of artifacts read to calculate their checksums" )
+    public synchronized long getMissCount()
+    {
+        long misses = 0;
+        for ( ChecksumCache cache : caches.values() )
+        {
+            misses += cache.getMissCount();
+        }
+        return misses;
+    }
+
+    @ManagedAttribute( description = "Number of artifacts whose content changed while their size and modification "
+        + "time did not" )
+    public synchronized long getCorruptionCount()
+    {
+        long corruptions = 0;
+        for ( ChecksumCache cache : caches.values() )
+        {
+            corruptions += cache.getCorruptionCount();
+        }
+        return corruptions;
+    }
+}
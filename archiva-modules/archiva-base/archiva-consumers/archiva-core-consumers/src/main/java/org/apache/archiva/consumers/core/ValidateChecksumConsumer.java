@@ -20,22 +20,21 @@ package org.apache.archiva.consumers.core;
  */
 
 import org.apache.archiva.admin.model.beans.ManagedRepository;
+import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
+import org.apache.archiva.checksum.ChecksummedFile;
 import org.apache.archiva.common.plexusbridge.DigesterUtils;
-import org.apache.archiva.common.plexusbridge.PlexusSisuBridge;
-import org.apache.archiva.common.plexusbridge.PlexusSisuBridgeException;
 import org.apache.archiva.consumers.AbstractMonitoredConsumer;
 import org.apache.archiva.consumers.ConsumerException;
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
-import org.codehaus.plexus.digest.ChecksumFile;
+import org.apache.commons.io.FilenameUtils;
 import org.codehaus.plexus.digest.Digester;
-import org.codehaus.plexus.digest.DigesterException;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
@@ -70,24 +69,16 @@ public class ValidateChecksumConsumer
      */
     private String description = "Validate checksums against file.";
 
-    /**
-     *
-     */
-    private ChecksumFile checksum;
-
-    /**
-     *
-     */
-    private List<Digester> allDigesters;
-
     @Inject
-    private PlexusSisuBridge plexusSisuBridge;
+    private DigesterUtils digesterUtils;
 
     @Inject
-    private DigesterUtils digesterUtils;
+    private ChecksumCaches checksumCaches;
 
     private File repositoryDir;
 
+    private ChecksumCache checksumCache;
+
     private List<String> includes;
 
     public String getId()
@@ -109,6 +100,7 @@ public class ValidateChecksumConsumer
         throws ConsumerException
     {
         this.repositoryDir = new File( repository.getLocation() );
+        this.checksumCache = checksumCaches.getChecksumCache( repository );
     }
 
     public void beginScan( ManagedRepository repository, Date whenGathered, boolean executeOnEntireRepo )
@@ -119,7 +111,10 @@ public class ValidateChecksumConsumer
 
     public void completeScan()
     {
-        /* nothing to do */
+        if ( checksumCache != null )
+        {
+            checksumCache.save();
+        }
     }
 
     public void completeScan( boolean executeOnEntireRepo )
@@ -141,21 +136,42 @@ public class ValidateChecksumConsumer
         throws ConsumerException
     {
         File checksumFile = new File( this.repositoryDir, path );
-        try
+        File referenceFile = new File( FilenameUtils.removeExtension( checksumFile.getPath() ) );
+        if ( !referenceFile.exists() )
         {
-            if ( !checksum.isValidChecksum( checksumFile ) )
-            {
-                triggerConsumerWarning( NOT_VALID_CHECKSUM, "The checksum for " + checksumFile + " is invalid." );
-            }
+            triggerConsumerError( CHECKSUM_NOT_FOUND,
+                                  "File not found during checksum validation: " + referenceFile.getAbsolutePath() );
+            return;
         }
-        catch ( FileNotFoundException e )
+
+        ChecksumAlgorithm algorithm;
+        try
         {
-            triggerConsumerError( CHECKSUM_NOT_FOUND, "File not found during checksum validation: " + e.getMessage() );
+            algorithm = ChecksumAlgorithm.getByExtension( checksumFile );
         }
-        catch ( DigesterException e )
+        catch ( IllegalArgumentException e )
         {
             triggerConsumerError( CHECKSUM_DIGESTER_FAILURE,
                                   "Digester failure during checksum validation on " + checksumFile );
+            return;
+        }
+
+        try
+        {
+            // the cache avoids reading the artifact again when its checksums were calculated by a previous scan
+            if ( !new ChecksummedFile( referenceFile, checksumCache ).isValidChecksum( algorithm ) )
+            {
+                if ( checksumCache != null && checksumCache.isCorrupted( referenceFile ) )
+                {
+                    // the checksum files are kept by the consumer creating the missing checksums
+                    triggerConsumerWarning( NOT_VALID_CHECKSUM, "The checksum for " + checksumFile
+                        + " is invalid: " + referenceFile + " may be corrupted." );
+                }
+                else
+                {
+                    triggerConsumerWarning( NOT_VALID_CHECKSUM, "The checksum for " + checksumFile + " is invalid." );
+                }
+            }
         }
         catch ( IOException e )
         {
@@ -171,9 +187,7 @@ public class ValidateChecksumConsumer
 
     @PostConstruct
     public void initialize()
-        throws PlexusSisuBridgeException
     {
-        checksum = plexusSisuBridge.lookup( ChecksumFile.class );
         List<Digester> allDigesters = new ArrayList<Digester>( digesterUtils.getAllDigesters() );
         includes = new ArrayList<String>( allDigesters.size() );
         for ( Digester digester : allDigesters )
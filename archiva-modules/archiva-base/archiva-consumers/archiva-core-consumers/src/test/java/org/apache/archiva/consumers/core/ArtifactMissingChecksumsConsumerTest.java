@@ -4,7 +4,9 @@ import java.io.File;
 import java.util.Calendar;
 import org.apache.archiva.admin.model.beans.ManagedRepository;
 import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumCache;
 import org.apache.archiva.checksum.ChecksummedFile;
+import org.apache.archiva.configuration.RepositoryScanningConfiguration;
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
 import org.apache.commons.io.FileUtils;
 import static org.junit.Assert.*;
@@ -103,4 +105,51 @@ public class ArtifactMissingChecksumsConsumerTest
         assertTrue( md5File.exists() );
         assertTrue( checksum.isValidChecksums( new ChecksumAlgorithm[] { ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1 } ) );        
     }
+
+    @Test
+    public void testCorruptedArtifactChecksumsKept()
+        throws Exception
+    {
+        File newLocation = new File( "target/test-repo-corrupted" );
+        FileUtils.deleteDirectory( newLocation );
+        FileUtils.copyDirectory( new File( repoConfig.getLocation() ), newLocation );
+        repoConfig.setLocation( newLocation.getAbsolutePath() );
+
+        String path = "/incorrect-checksums/1.0/incorrect-checksums-1.0.jar";
+
+        File artifactFile = new File( repoConfig.getLocation(), path );
+        File sha1File = new File( repoConfig.getLocation(), path + ".sha1" );
+        String sha1 = FileUtils.readFileToString( sha1File );
+
+        // the checksums of the artifact recorded by a previous scan
+        long lastModified = 1136073600000L;
+        FileUtils.writeStringToFile( artifactFile, "artifact content" );
+        assertTrue( artifactFile.setLastModified( lastModified ) );
+        ChecksumCache cache = new ChecksumCache( newLocation.getAbsoluteFile(), 0 );
+        new ChecksummedFile( artifactFile, cache ).calculateChecksums( ChecksumCache.ALGORITHMS );
+        cache.save();
+
+        // the artifact is corrupted on disk, with the same size and modification time
+        FileUtils.writeStringToFile( artifactFile, "artifact CONTENT" );
+        assertTrue( artifactFile.setLastModified( lastModified ) );
+
+        RepositoryScanningConfiguration scanning = archivaConfiguration.getConfiguration().getRepositoryScanning();
+        scanning.setChecksumCache( true );
+        scanning.setChecksumVerificationRate( 100 );
+        try
+        {
+            consumer.beginScan( repoConfig, Calendar.getInstance().getTime() );
+
+            consumer.processFile( path );
+
+            consumer.completeScan();
+        }
+        finally
+        {
+            scanning.setChecksumCache( false );
+            scanning.setChecksumVerificationRate( 10 );
+        }
+
+        assertEquals( sha1, FileUtils.readFileToString( sha1File ) );
+    }
 }
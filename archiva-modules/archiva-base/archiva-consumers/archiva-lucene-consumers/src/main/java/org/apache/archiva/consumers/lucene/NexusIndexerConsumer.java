@@ -31,6 +31,7 @@ import org.apache.archiva.configuration.FileTypes;
 import org.apache.archiva.consumers.AbstractMonitoredConsumer;
 import org.apache.archiva.consumers.ConsumerException;
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
+import org.apache.archiva.consumers.ThreadSafeConsumer;
 import org.apache.archiva.redback.components.registry.Registry;
 import org.apache.archiva.scheduler.ArchivaTaskScheduler;
 import org.apache.archiva.scheduler.indexing.ArtifactIndexingTask;
@@ -60,7 +61,7 @@ import java.util.List;
 @Scope( "prototype" )
 public class NexusIndexerConsumer
     extends AbstractMonitoredConsumer
-    implements KnownRepositoryContentConsumer, RegistryListener
+    implements KnownRepositoryContentConsumer, RegistryListener, ThreadSafeConsumer
 {
     private Logger log = LoggerFactory.getLogger( getClass() );
 
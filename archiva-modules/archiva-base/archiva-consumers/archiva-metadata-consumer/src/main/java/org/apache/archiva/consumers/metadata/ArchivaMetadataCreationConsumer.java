@@ -32,6 +32,7 @@ import org.apache.archiva.metadata.model.ProjectMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
+import org.apache.archiva.metadata.repository.MetadataResolverCache;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.apache.archiva.metadata.repository.storage.ReadMetadataRequest;
@@ -50,8 +51,11 @@ import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Take an artifact off of disk and put it into the metadata repository.
@@ -100,10 +104,34 @@ public class ArchivaMetadataCreationConsumer
     @Named (value = "repositoryStorage#maven2")
     private RepositoryStorage repositoryStorage;
 
+    /**
+     * The scan does not notify the repository listeners, so the resolved metadata is invalidated here.
+     */
+    @Inject
+    private MetadataResolverCache metadataResolverCache;
+
     private static final Logger log = LoggerFactory.getLogger( ArchivaMetadataCreationConsumer.class );
 
     private String repoId;
 
+    /**
+     * The number of files whose artifacts are added to the session of a scan before it is saved, read from the
+     * repository scanning configuration when the scan begins.
+     */
+    private int saveInterval;
+
+    /**
+     * The session of the current scan, so that the writes of many files are batched by the metadata repository.
+     */
+    private RepositorySession repositorySession;
+
+    private final List<String> unsavedPaths = new ArrayList<String>();
+
+    /**
+     * The project versions of the artifacts not saved yet, invalidated in the resolver cache once saved.
+     */
+    private final Set<List<String>> unsavedVersions = new LinkedHashSet<List<String>>();
+
     public String getId()
     {
         return this.id;
@@ -134,6 +162,7 @@ public class ArchivaMetadataCreationConsumer
     {
         repoId = repo.getId();
         this.whenGathered = whenGathered;
+        saveInterval = configuration.getConfiguration().getRepositoryScanning().getMetadataSaveInterval();
     }
 
     public void beginScan( ManagedRepository repository, Date whenGathered, boolean executeOnEntireRepo )
@@ -145,8 +174,40 @@ public class ArchivaMetadataCreationConsumer
     public void processFile( String path )
         throws ConsumerException
     {
+        if ( !addArtifact( path ) )
+        {
+            // the files not saved yet were reverted with the failed one, they are stored again one by one
+            List<String> paths = new ArrayList<String>( unsavedPaths );
+            revert();
+            for ( String unsavedPath : paths )
+            {
+                if ( addArtifact( unsavedPath ) )
+                {
+                    save();
+                }
+                else
+                {
+                    revert();
+                }
+            }
+        }
+        else if ( unsavedPaths.size() >= saveInterval )
+        {
+            save();
+        }
+    }
 
-        RepositorySession repositorySession = repositorySessionFactory.createSession();
+    /**
+     * Adds the artifact of the file to the session of the scan, without saving it.
+     *
+     * @return <code>false</code> if the session must be reverted
+     */
+    private boolean addArtifact( String path )
+    {
+        if ( repositorySession == null )
+        {
+            repositorySession = repositorySessionFactory.createSession();
+        }
         try
         {
             // note that we do minimal processing including checksums and POM information for performance of
@@ -201,26 +262,53 @@ public class ArchivaMetadataCreationConsumer
                                                          versionMetadata );
             }
             metadataRepository.updateProject( repoId, project );
-            repositorySession.save();
+            unsavedPaths.add( path );
+            unsavedVersions.add( Arrays.asList( project.getNamespace(), project.getId(), projectVersion ) );
+            return true;
         }
         catch ( MetadataRepositoryException e )
         {
             log.warn(
                 "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}" + e.getMessage(),
                 new Object[]{ path, repoId, e.getMessage() }, e );
-            repositorySession.revert();
+            return false;
         }
         catch ( RepositoryStorageRuntimeException e )
         {
+            // nothing was written for the file yet
             log.warn(
                 "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}" + e.getMessage(),
                 new Object[]{ path, repoId, e.getMessage() }, e );
-            repositorySession.revert();
+            return true;
         }
-        finally
+    }
+
+    /**
+     * Saves the artifacts added to the session of the scan, and invalidates their resolved metadata.
+     */
+    private void save()
+    {
+        if ( repositorySession == null )
         {
-            repositorySession.close();
+            return;
+        }
+        repositorySession.save();
+        for ( List<String> version : unsavedVersions )
+        {
+            metadataResolverCache.invalidate( repoId, version.get( 0 ), version.get( 1 ), version.get( 2 ) );
+        }
+        unsavedPaths.clear();
+        unsavedVersions.clear();
+    }
+
+    private void revert()
+    {
+        if ( repositorySession != null )
+        {
+            repositorySession.revert();
         }
+        unsavedPaths.clear();
+        unsavedVersions.clear();
     }
 
     public void processFile( String path, boolean executeOnEntireRepo )
@@ -231,7 +319,19 @@ public class ArchivaMetadataCreationConsumer
 
     public void completeScan()
     {
-        /* do nothing */
+        if ( repositorySession == null )
+        {
+            return;
+        }
+        try
+        {
+            save();
+        }
+        finally
+        {
+            repositorySession.close();
+            repositorySession = null;
+        }
     }
 
     public void completeScan( boolean executeOnEntireRepo )
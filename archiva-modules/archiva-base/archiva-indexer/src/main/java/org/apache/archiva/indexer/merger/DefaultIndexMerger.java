@@ -36,12 +36,23 @@ import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Olivier Lamy
@@ -57,6 +68,16 @@ public class DefaultIndexMerger
      */
     static final int DEFAULT_GROUP_INDEX_TTL = 30;
 
+    /**
+     * default minimum time between two merges of a shared index, in milliseconds
+     */
+    static final long DEFAULT_REBUILD_INTERVAL = 60 * 1000L;
+
+    /**
+     * time in minutes a replaced shared index is kept for the requests still reading it
+     */
+    static final int REPLACED_INDEX_GRACE_PERIOD = 5;
+
     private Logger log = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -70,6 +91,25 @@ public class DefaultIndexMerger
 
     private List<TemporaryGroupIndex> temporaryGroupIndexes = new CopyOnWriteArrayList<TemporaryGroupIndex>();
 
+    /**
+     * The merged indexes shared by the requests, by {@link #getSharedIndexKey(IndexMergerRequest)}.
+     */
+    private final ConcurrentMap<String, SharedGroupIndex> sharedGroupIndexes =
+        new ConcurrentHashMap<String, SharedGroupIndex>();
+
+    /**
+     * Serializes the merges of a shared index, by {@link #getSharedIndexKey(IndexMergerRequest)}. The lock of a shared
+     * index is dropped with it, so the lock is checked to be still current once held.
+     */
+    private final ConcurrentMap<String, Object> sharedGroupIndexLocks = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * Merges the shared indexes again when the index of one of their repositories is updated.
+     */
+    private final ScheduledExecutorService rebuildExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    private long rebuildInterval = DEFAULT_REBUILD_INTERVAL;
+
     @Inject
     public DefaultIndexMerger( PlexusSisuBridge plexusSisuBridge, MavenIndexerUtils mavenIndexerUtils )
         throws PlexusSisuBridgeException
@@ -130,6 +170,189 @@ public class DefaultIndexMerger
         }
     }
 
+    /**
+     * Only the first request of a shared index waits for its merge. When the index of one of its repositories is
+     * updated, the requests are still given the current merged index while all its repositories are merged again in
+     * the background, at most once per {@link #getRebuildInterval()}. The replaced index is left to the
+     * {@link TemporaryGroupIndexCleaner}, which deletes it once it was not accessed for
+     * {@link #REPLACED_INDEX_GRACE_PERIOD} minutes, so that the requests still reading it are not cut short.
+     */
+    public IndexingContext getSharedMergedIndex( IndexMergerRequest indexMergerRequest )
+        throws IndexMergerException
+    {
+        String key = getSharedIndexKey( indexMergerRequest );
+        while ( true )
+        {
+            Object lock = sharedGroupIndexLocks.get( key );
+            if ( lock == null )
+            {
+                Object newLock = new Object();
+                lock = sharedGroupIndexLocks.putIfAbsent( key, newLock );
+                if ( lock == null )
+                {
+                    lock = newLock;
+                }
+            }
+
+            synchronized ( lock )
+            {
+                if ( sharedGroupIndexLocks.get( key ) == lock )
+                {
+                    return getSharedMergedIndex( key, lock, indexMergerRequest );
+                }
+            }
+        }
+    }
+
+    /**
+     * @param lock the current lock of the shared index, held by the caller
+     */
+    private IndexingContext getSharedMergedIndex( String key, Object lock, IndexMergerRequest indexMergerRequest )
+        throws IndexMergerException
+    {
+        Map<String, Long> timestamps = getIndexTimestamps( indexMergerRequest.getRepositoriesIds() );
+        SharedGroupIndex sharedGroupIndex = sharedGroupIndexes.get( key );
+        if ( sharedGroupIndex != null && sharedGroupIndex.exists() )
+        {
+            log.debug( "shared merged index for group {} found", indexMergerRequest.getGroupId() );
+            sharedGroupIndex.temporaryGroupIndex.setLastAccessTime( new Date().getTime() );
+            if ( !sharedGroupIndex.timestamps.equals( timestamps ) )
+            {
+                scheduleRebuild( key, lock, indexMergerRequest, sharedGroupIndex );
+            }
+            return sharedGroupIndex.indexingContext;
+        }
+
+        IndexingContext indexingContext = buildMergedIndex( indexMergerRequest );
+        TemporaryGroupIndex temporaryGroupIndex = getTemporaryGroupIndex( indexingContext.getId() );
+        sharedGroupIndexes.put( key, new SharedGroupIndex( temporaryGroupIndex, indexingContext, timestamps,
+                                                           new Date().getTime() + rebuildInterval ) );
+        return indexingContext;
+    }
+
+    /**
+     * Merges the shared index again in the background, unless it is already scheduled.
+     */
+    private void scheduleRebuild( final String key, final Object lock, final IndexMergerRequest indexMergerRequest,
+                                  final SharedGroupIndex sharedGroupIndex )
+    {
+        if ( sharedGroupIndex.rebuilding )
+        {
+            return;
+        }
+        sharedGroupIndex.rebuilding = true;
+        long delay = Math.max( 0, sharedGroupIndex.notRebuiltBefore - new Date().getTime() );
+        log.info( "index of a repository of group {} updated, merging its shared index again in {} ms",
+                  indexMergerRequest.getGroupId(), delay );
+
+        rebuildExecutor.schedule( new Runnable()
+        {
+            public void run()
+            {
+                // the timestamps before merging, so that the updates made meanwhile are merged by the next rebuild
+                Map<String, Long> timestamps = getIndexTimestamps( indexMergerRequest.getRepositoriesIds() );
+                boolean merged = false;
+                try
+                {
+                    IndexingContext indexingContext = buildMergedIndex( indexMergerRequest );
+                    TemporaryGroupIndex temporaryGroupIndex = getTemporaryGroupIndex( indexingContext.getId() );
+                    long now = new Date().getTime();
+                    synchronized ( lock )
+                    {
+                        TemporaryGroupIndex replacedIndex = temporaryGroupIndex;
+                        // the shared index may have been dropped meanwhile, the new one is then not given either
+                        if ( sharedGroupIndexLocks.get( key ) == lock )
+                        {
+                            SharedGroupIndex replaced = sharedGroupIndexes.put( key, new SharedGroupIndex(
+                                temporaryGroupIndex, indexingContext, timestamps, now + rebuildInterval ) );
+                            replacedIndex = replaced == null ? null : replaced.temporaryGroupIndex;
+                        }
+                        if ( replacedIndex != null )
+                        {
+                            // no longer given to the requests, it is deleted after the grace period
+                            replacedIndex.setLastAccessTime( now );
+                            replacedIndex.setMergedIndexTtl(
+                                Math.min( replacedIndex.getMergedIndexTtl(), REPLACED_INDEX_GRACE_PERIOD ) );
+                        }
+                    }
+                    merged = true;
+                }
+                catch ( IndexMergerException e )
+                {
+                    log.warn( "fail to merge the shared index of group {} again: {}", indexMergerRequest.getGroupId(),
+                              e.getMessage(), e );
+                }
+                finally
+                {
+                    if ( !merged )
+                    {
+                        // the current index is still given, and merged again by a later request
+                        synchronized ( lock )
+                        {
+                            sharedGroupIndex.rebuilding = false;
+                            sharedGroupIndex.notRebuiltBefore = new Date().getTime() + rebuildInterval;
+                        }
+                    }
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * @return the minimum time between two merges of a shared index, in milliseconds
+     */
+    public long getRebuildInterval()
+    {
+        return rebuildInterval;
+    }
+
+    public void setRebuildInterval( long rebuildInterval )
+    {
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * The requests of a group merging the same repositories share their merged index, so that the users are only
+     * given the repositories they are allowed to read.
+     */
+    private static String getSharedIndexKey( IndexMergerRequest indexMergerRequest )
+    {
+        List<String> repositoriesIds = new ArrayList<String>( indexMergerRequest.getRepositoriesIds() );
+        Collections.sort( repositoriesIds );
+        return indexMergerRequest.getGroupId() + ':' + indexMergerRequest.getMergedIndexPath() + ':'
+            + indexMergerRequest.isPackIndex() + ':' + repositoriesIds;
+    }
+
+    private Map<String, Long> getIndexTimestamps( Collection<String> repositoriesIds )
+    {
+        Map<String, Long> timestamps = new HashMap<String, Long>( repositoriesIds.size() );
+        for ( String repoId : repositoriesIds )
+        {
+            IndexingContext indexingContext = indexer.getIndexingContexts().get( repoId );
+            Date timestamp = indexingContext == null ? null : indexingContext.getTimestamp();
+            timestamps.put( repoId, timestamp == null ? Long.valueOf( 0 ) : Long.valueOf( timestamp.getTime() ) );
+        }
+        return timestamps;
+    }
+
+    private TemporaryGroupIndex getTemporaryGroupIndex( String indexId )
+    {
+        for ( TemporaryGroupIndex temporaryGroupIndex : temporaryGroupIndexes )
+        {
+            if ( temporaryGroupIndex.getIndexId().equals( indexId ) )
+            {
+                return temporaryGroupIndex;
+            }
+        }
+        return null;
+    }
+
     @Async
     public void cleanTemporaryGroupIndex( TemporaryGroupIndex temporaryGroupIndex )
     {
@@ -151,6 +374,13 @@ public class DefaultIndexMerger
                 FileUtils.deleteDirectory( directory );
             }
             temporaryGroupIndexes.remove( temporaryGroupIndex );
+            for ( Map.Entry<String, SharedGroupIndex> entry : sharedGroupIndexes.entrySet() )
+            {
+                if ( entry.getValue().temporaryGroupIndex == temporaryGroupIndex )
+                {
+                    dropSharedGroupIndex( entry.getKey(), entry.getValue() );
+                }
+            }
         }
         catch ( IOException e )
         {
@@ -158,8 +388,64 @@ public class DefaultIndexMerger
         }
     }
 
+    /**
+     * Drops the shared index with its lock, unless it was replaced meanwhile.
+     */
+    private void dropSharedGroupIndex( String key, SharedGroupIndex sharedGroupIndex )
+    {
+        Object lock = sharedGroupIndexLocks.get( key );
+        if ( lock == null )
+        {
+            sharedGroupIndexes.remove( key, sharedGroupIndex );
+            return;
+        }
+        synchronized ( lock )
+        {
+            if ( sharedGroupIndexes.remove( key, sharedGroupIndex ) )
+            {
+                sharedGroupIndexLocks.remove( key, lock );
+            }
+        }
+    }
+
     public Collection<TemporaryGroupIndex> getTemporaryGroupIndexes()
     {
         return this.temporaryGroupIndexes;
     }
+
+    private static class SharedGroupIndex
+    {
+        private final TemporaryGroupIndex temporaryGroupIndex;
+
+        private final IndexingContext indexingContext;
+
+        /**
+         * The timestamps of the merged indexes when they were merged.
+         */
+        private final Map<String, Long> timestamps;
+
+        /**
+         * Whether a new merge is scheduled, guarded by the lock of the shared index.
+         */
+        private boolean rebuilding;
+
+        /**
+         * The time before which it is not merged again, guarded by the lock of the shared index.
+         */
+        private long notRebuiltBefore;
+
+        private SharedGroupIndex( TemporaryGroupIndex temporaryGroupIndex, IndexingContext indexingContext,
+                                  Map<String, Long> timestamps, long notRebuiltBefore )
+        {
+            this.temporaryGroupIndex = temporaryGroupIndex;
+            this.indexingContext = indexingContext;
+            this.timestamps = timestamps;
+            this.notRebuiltBefore = notRebuiltBefore;
+        }
+
+        private boolean exists()
+        {
+            return temporaryGroupIndex != null && temporaryGroupIndex.getDirectory().exists();
+        }
+    }
 }
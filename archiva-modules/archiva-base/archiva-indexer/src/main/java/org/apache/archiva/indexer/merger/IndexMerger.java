@@ -36,6 +36,16 @@ public interface IndexMerger
     IndexingContext buildMergedIndex( IndexMergerRequest indexMergerRequest )
         throws IndexMergerException;
 
+    /**
+     * @param indexMergerRequest
+     * @return the merged index of the repositories of the request, shared with the requests of the same group for
+     *         the same repositories, and merged again in the background when the index of one of them was updated
+     * @throws IndexMergerException
+     * @since 1.4-M3
+     */
+    IndexingContext getSharedMergedIndex( IndexMergerRequest indexMergerRequest )
+        throws IndexMergerException;
+
     void cleanTemporaryGroupIndex( TemporaryGroupIndex temporaryGroupIndex );
 
     Collection<TemporaryGroupIndex> getTemporaryGroupIndexes();
@@ -30,6 +30,11 @@ public class TemporaryGroupIndex
 {
     private long creationTime = new Date().getTime();
 
+    /**
+     * @since 1.4-M3
+     */
+    private long lastAccessTime = creationTime;
+
     private File directory;
 
     private String indexId;
@@ -57,6 +62,23 @@ public class TemporaryGroupIndex
         return this;
     }
 
+    /**
+     * @since 1.4-M3
+     */
+    public long getLastAccessTime()
+    {
+        return lastAccessTime;
+    }
+
+    /**
+     * @since 1.4-M3
+     */
+    public TemporaryGroupIndex setLastAccessTime( long lastAccessTime )
+    {
+        this.lastAccessTime = lastAccessTime;
+        return this;
+    }
+
     public File getDirectory()
     {
         return directory;
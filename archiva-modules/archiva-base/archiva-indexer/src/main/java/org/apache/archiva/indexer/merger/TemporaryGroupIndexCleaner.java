@@ -57,8 +57,9 @@ public class TemporaryGroupIndexCleaner
 
         for ( TemporaryGroupIndex temporaryGroupIndex : indexMerger.getTemporaryGroupIndexes() )
         {
-            // cleanup files older than the ttl
-            if ( new Date().getTime() - temporaryGroupIndex.getCreationTime() > temporaryGroupIndex.getMergedIndexTtl() )
+            // cleanup files unused for longer than the ttl, in minutes
+            if ( new Date().getTime() - temporaryGroupIndex.getLastAccessTime()
+                > temporaryGroupIndex.getMergedIndexTtl() * 60L * 1000 )
             {
                 log.info( "cleanTemporaryIndex for groupId {}", temporaryGroupIndex.getGroupId() );
                 indexMerger.cleanTemporaryGroupIndex( temporaryGroupIndex );
@@ -0,0 +1,204 @@
+package org.apache.archiva.indexer.merger;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.plexusbridge.MavenIndexerUtils;
+import org.apache.archiva.common.plexusbridge.PlexusSisuBridge;
+import org.apache.archiva.common.utils.FileUtil;
+import org.apache.archiva.indexer.search.AbstractMavenRepositorySearch;
+import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
+import org.apache.maven.index.NexusIndexer;
+import org.apache.maven.index.context.IndexingContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests the merged indexes shared by the requests of a repository group.
+ */
+@RunWith ( ArchivaSpringJUnit4ClassRunner.class )
+@ContextConfiguration ( locations = { "classpath*:/META-INF/spring-context.xml", "classpath:/spring-context.xml" } )
+public class DefaultIndexMergerTest
+    extends AbstractMavenRepositorySearch
+{
+    private static final String GROUP_ID = "test-group";
+
+    @Inject
+    private PlexusSisuBridge sisuBridge;
+
+    @Inject
+    private MavenIndexerUtils indexerUtils;
+
+    private DefaultIndexMerger indexMerger;
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        createIndex( TEST_REPO_1, Collections.singletonList( new File( FileUtil.getBasedir(), "src/test/" + TEST_REPO_1
+            + "/org/apache/archiva/archiva-search/1.0/archiva-search-1.0.jar" ) ), false );
+        createIndex( TEST_REPO_2, Collections.singletonList( new File( FileUtil.getBasedir(), "src/test/" + TEST_REPO_2
+            + "/org/apache/archiva/archiva-search/1.1/archiva-search-1.1.jar" ) ), false );
+
+        indexMerger = new DefaultIndexMerger( sisuBridge, indexerUtils );
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        indexMerger.shutdown();
+        for ( TemporaryGroupIndex temporaryGroupIndex : new ArrayList<TemporaryGroupIndex>(
+            indexMerger.getTemporaryGroupIndexes() ) )
+        {
+            indexMerger.cleanTemporaryGroupIndex( temporaryGroupIndex );
+        }
+
+        super.tearDown();
+    }
+
+    @Test
+    public void testSharedBySameRepositories()
+        throws Exception
+    {
+        IndexingContext indexingContext =
+            indexMerger.getSharedMergedIndex( createRequest( TEST_REPO_1, TEST_REPO_2 ) );
+
+        // in another order
+        assertSame( indexingContext, indexMerger.getSharedMergedIndex( createRequest( TEST_REPO_2, TEST_REPO_1 ) ) );
+        assertEquals( 1, indexMerger.getTemporaryGroupIndexes().size() );
+
+        // not shared with the requests allowed to read other repositories
+        assertNotSame( indexingContext, indexMerger.getSharedMergedIndex( createRequest( TEST_REPO_1 ) ) );
+        assertEquals( 2, indexMerger.getTemporaryGroupIndexes().size() );
+    }
+
+    @Test
+    public void testMergedAgainInBackgroundOnTimestampChange()
+        throws Exception
+    {
+        indexMerger.setRebuildInterval( 0 );
+        IndexingContext indexingContext =
+            indexMerger.getSharedMergedIndex( createRequest( TEST_REPO_1, TEST_REPO_2 ) );
+        File directory = indexingContext.getIndexDirectoryFile();
+
+        IndexingContext updated = getNexusIndexer().getIndexingContexts().get( TEST_REPO_1 );
+        updated.updateTimestamp( true, new Date( updated.getTimestamp().getTime() + 1000 ) );
+
+        // the current index is given while the new one is merged
+        assertSame( indexingContext, indexMerger.getSharedMergedIndex( createRequest( TEST_REPO_1, TEST_REPO_2 ) ) );
+
+        IndexingContext replacement = waitForReplacement( indexingContext, createRequest( TEST_REPO_1, TEST_REPO_2 ) );
+        assertNotSame( indexingContext, replacement );
+        assertSame( replacement, indexMerger.getSharedMergedIndex( createRequest( TEST_REPO_1, TEST_REPO_2 ) ) );
+
+        // the replaced index is kept for the requests still reading it
+        assertTrue( directory.exists() );
+        assertEquals( 2, indexMerger.getTemporaryGroupIndexes().size() );
+        for ( TemporaryGroupIndex temporaryGroupIndex : indexMerger.getTemporaryGroupIndexes() )
+        {
+            if ( temporaryGroupIndex.getIndexId().equals( indexingContext.getId() ) )
+            {
+                assertEquals( DefaultIndexMerger.REPLACED_INDEX_GRACE_PERIOD,
+                              temporaryGroupIndex.getMergedIndexTtl() );
+            }
+        }
+    }
+
+    @Test
+    public void testMergedAgainOncePerInterval()
+        throws Exception
+    {
+        indexMerger.setRebuildInterval( 60 * 60 * 1000L );
+        IndexingContext indexingContext =
+            indexMerger.getSharedMergedIndex( createRequest( TEST_REPO_1, TEST_REPO_2 ) );
+
+        IndexingContext updated = getNexusIndexer().getIndexingContexts().get( TEST_REPO_1 );
+        updated.updateTimestamp( true, new Date( updated.getTimestamp().getTime() + 1000 ) );
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            assertSame( indexingContext,
+                        indexMerger.getSharedMergedIndex( createRequest( TEST_REPO_1, TEST_REPO_2 ) ) );
+        }
+        assertEquals( 1, indexMerger.getTemporaryGroupIndexes().size() );
+    }
+
+    @Test
+    public void testMergedAgainAfterTtlEviction()
+        throws Exception
+    {
+        IndexingContext indexingContext =
+            indexMerger.getSharedMergedIndex( createRequest( TEST_REPO_1, TEST_REPO_2 ) );
+        TemporaryGroupIndex temporaryGroupIndex = indexMerger.getTemporaryGroupIndexes().iterator().next();
+
+        // as the cleaner does once the ttl has elapsed
+        indexMerger.cleanTemporaryGroupIndex( temporaryGroupIndex );
+        assertFalse( temporaryGroupIndex.getDirectory().exists() );
+        assertTrue( indexMerger.getTemporaryGroupIndexes().isEmpty() );
+
+        IndexingContext merged = indexMerger.getSharedMergedIndex( createRequest( TEST_REPO_1, TEST_REPO_2 ) );
+        assertNotSame( indexingContext, merged );
+        assertTrue( merged.getIndexDirectoryFile().exists() );
+        assertEquals( 1, indexMerger.getTemporaryGroupIndexes().size() );
+    }
+
+    private IndexingContext waitForReplacement( IndexingContext indexingContext, IndexMergerRequest request )
+        throws Exception
+    {
+        for ( int i = 0; i < 100; i++ )
+        {
+            IndexingContext current = indexMerger.getSharedMergedIndex( request );
+            if ( current != indexingContext )
+            {
+                return current;
+            }
+            Thread.sleep( 100 );
+        }
+        fail( "the shared index was not merged again" );
+        return null;
+    }
+
+    private NexusIndexer getNexusIndexer()
+        throws Exception
+    {
+        return sisuBridge.lookup( NexusIndexer.class );
+    }
+
+    private static IndexMergerRequest createRequest( String... repositoriesIds )
+    {
+        List<String> ids = new ArrayList<String>( Arrays.asList( repositoriesIds ) );
+        return new IndexMergerRequest( ids, true, GROUP_ID, "/.indexer", DefaultIndexMerger.DEFAULT_GROUP_INDEX_TTL );
+    }
+}
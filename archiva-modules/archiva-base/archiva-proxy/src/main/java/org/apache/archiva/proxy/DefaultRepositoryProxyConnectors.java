@@ -20,6 +20,7 @@ package org.apache.archiva.proxy;
  */
 
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.Striped;
 import org.apache.archiva.admin.model.RepositoryAdminException;
 import org.apache.archiva.admin.model.beans.NetworkProxy;
 import org.apache.archiva.admin.model.beans.ProxyConnectorRuleType;
@@ -33,7 +34,6 @@ import org.apache.archiva.configuration.ProxyConnectorConfiguration;
 import org.apache.archiva.configuration.ProxyConnectorRuleConfiguration;
 import org.apache.archiva.model.ArtifactReference;
 import org.apache.archiva.model.Keys;
-import org.apache.archiva.model.RepositoryURL;
 import org.apache.archiva.policies.DownloadErrorPolicy;
 import org.apache.archiva.policies.DownloadPolicy;
 import org.apache.archiva.policies.PolicyConfigurationException;
@@ -79,6 +79,7 @@ import org.slf4j.MarkerFactory;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.File;
@@ -91,7 +92,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 
 /**
  * DefaultRepositoryProxyConnectors
@@ -154,12 +167,52 @@ public class DefaultRepositoryProxyConnectors
 
     private Map<String, ProxyInfo> networkProxyMap = new ConcurrentHashMap<String, ProxyInfo>();
 
+    /**
+     * The transfers in progress, shared by the concurrent requests of the same resource.
+     */
+    private final InFlightTransfers inFlightTransfers = new InFlightTransfers();
+
+    /**
+     * Locks moving the downloaded files into the managed repositories, by local path.
+     */
+    private final Striped<Lock> resourceLocks = Striped.lock( 64 );
+
+    /**
+     * Maximum number of lookups running at once, the next ones wait for a thread.
+     */
+    private static final int LOOKUP_THREADS = 20;
+
+    /**
+     * Runs the lookups of the artifacts on the proxy connectors of the managed repositories with a hedge delay. The
+     * threads are daemon threads, stopped once idle for a minute.
+     */
+    private final ThreadPoolExecutor lookupExecutor =
+        new ThreadPoolExecutor( LOOKUP_THREADS, LOOKUP_THREADS, 60, TimeUnit.SECONDS,
+                                new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "archiva-proxy-lookup-" + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+
     /**
      *
      */
     @Inject
     private WagonFactory wagonFactory;
 
+    /**
+     *
+     */
+    @Inject
+    @Named(value = "wagonConnectionPool#default")
+    private WagonConnectionPool wagonConnectionPool;
+
     /**
      *
      */
@@ -173,11 +226,18 @@ public class DefaultRepositoryProxyConnectors
     @PostConstruct
     public void initialize()
     {
+        lookupExecutor.allowCoreThreadTimeOut( true );
         initConnectorsAndNetworkProxies();
         archivaConfiguration.addChangeListener( this );
 
     }
 
+    @PreDestroy
+    public void shutdown()
+    {
+        lookupExecutor.shutdownNow();
+    }
+
     @SuppressWarnings("unchecked")
     private void initConnectorsAndNetworkProxies()
     {
@@ -331,6 +391,11 @@ public class DefaultRepositoryProxyConnectors
         requestProperties.setProperty( "managedRepositoryId", repository.getId() );
 
         List<ProxyConnector> connectors = getProxyConnectors( repository );
+        int hedgeDelay = repository.getRepository().getProxyHedgeDelay();
+        if ( hedgeDelay >= 0 )
+        {
+            connectors = raceProxyConnectors( connectors, artifact, localFile, requestProperties, hedgeDelay );
+        }
         Map<String, Exception> previousExceptions = new LinkedHashMap<String, Exception>();
         for ( ProxyConnector connector : connectors )
         {
@@ -342,13 +407,7 @@ public class DefaultRepositoryProxyConnectors
             RemoteRepositoryContent targetRepository = connector.getTargetRepository();
             requestProperties.setProperty( "remoteRepositoryId", targetRepository.getId() );
 
-            String targetPath = targetRepository.toPath( artifact );
-
-            if ( SystemUtils.IS_OS_WINDOWS )
-            {
-                // toPath use system PATH_SEPARATOR so on windows url are \ which doesn't work very well :-)
-                targetPath = FilenameUtils.separatorsToUnix( targetPath );
-            }
+            String targetPath = getTargetPath( targetRepository, artifact );
 
             try
             {
@@ -395,6 +454,224 @@ public class DefaultRepositoryProxyConnectors
         return null;
     }
 
+    private String getTargetPath( RemoteRepositoryContent targetRepository, ArtifactReference artifact )
+    {
+        String targetPath = targetRepository.toPath( artifact );
+
+        if ( SystemUtils.IS_OS_WINDOWS )
+        {
+            // toPath use system PATH_SEPARATOR so on windows url are \ which doesn't work very well :-)
+            targetPath = FilenameUtils.separatorsToUnix( targetPath );
+        }
+        return targetPath;
+    }
+
+    private String getUrl( RemoteRepositoryContent remoteRepository, String remotePath )
+    {
+        String url = remoteRepository.getURL().getUrl();
+        if ( !url.endsWith( "/" ) )
+        {
+            url = url + "/";
+        }
+        return url + remotePath;
+    }
+
+    /**
+     * Looks the artifact up on the proxy connectors concurrently. Only the connectors which would really download the
+     * artifact are asked, those whose white and black lists and pre-download policies accept the transfer. When the
+     * local file is present and one of the connectors would not download it, no connector is asked, as the
+     * sequential loop serves the local file without looking it up.
+     * <p/>
+     * The first connector is asked first, and if it did not answer that it has the artifact after the hedge delay,
+     * the next ones are asked as well. The first connector answering that it has the artifact wins, unless a connector
+     * before it in order answers so as well within the hedge delay. The lookups not started yet are then cancelled,
+     * those running are left to finish. There is no race when only one connector would download the artifact.
+     *
+     * @return the connectors in the order to download from: the winner if any, then the other connectors in order,
+     *         including those which answered that they don't have the artifact or could not be asked, as a remote
+     *         repository may reject the lookup but still serve the download
+     */
+    private List<ProxyConnector> raceProxyConnectors( List<ProxyConnector> connectors, ArtifactReference artifact,
+                                                      File localFile, Properties requestProperties, long hedgeDelay )
+    {
+        if ( connectors.size() < 2 )
+        {
+            // nothing to race, the only connector is asked by the download itself
+            return connectors;
+        }
+
+        List<ProxyConnector> candidates = new ArrayList<ProxyConnector>( connectors.size() );
+        for ( ProxyConnector connector : connectors )
+        {
+            if ( connector.isDisabled() )
+            {
+                continue;
+            }
+            if ( isTransferAttempted( connector, artifact, requestProperties, localFile ) )
+            {
+                candidates.add( connector );
+            }
+            else if ( fileExists( localFile ) )
+            {
+                return connectors;
+            }
+        }
+        if ( candidates.size() < 2 )
+        {
+            return connectors;
+        }
+
+        int count = candidates.size();
+        Boolean[] found = new Boolean[count];
+        boolean[] done = new boolean[count];
+        CompletionService<Boolean> completionService = new ExecutorCompletionService<Boolean>( lookupExecutor );
+        Map<Future<Boolean>, Integer> lookups = new HashMap<Future<Boolean>, Integer>();
+        lookups.put( completionService.submit( new ResourceLookup( candidates.get( 0 ), artifact ) ), 0 );
+
+        long hedgeTime = System.currentTimeMillis() + hedgeDelay;
+        long decisionTime = Long.MAX_VALUE;
+        int completed = 0;
+        int winner = -1;
+        try
+        {
+            while ( true )
+            {
+                long now = System.currentTimeMillis();
+                winner = getLookupWinner( found, done, now >= decisionTime );
+                if ( winner >= 0 )
+                {
+                    break;
+                }
+                if ( lookups.size() == 1 && ( now >= hedgeTime || done[0] ) )
+                {
+                    log.debug( "Looking {} up on the next {} proxy connectors", Keys.toKey( artifact ), count - 1 );
+                    for ( int i = 1; i < count; i++ )
+                    {
+                        lookups.put( completionService.submit( new ResourceLookup( candidates.get( i ), artifact ) ),
+                                     i );
+                    }
+                    continue;
+                }
+                if ( completed == count )
+                {
+                    // all the lookups are done, none found the artifact
+                    break;
+                }
+
+                long until = Math.min( lookups.size() == 1 ? hedgeTime : Long.MAX_VALUE, decisionTime );
+                Future<Boolean> lookup = until == Long.MAX_VALUE
+                    ? completionService.take()
+                    : completionService.poll( Math.max( 0, until - now ), TimeUnit.MILLISECONDS );
+                if ( lookup != null )
+                {
+                    int index = lookups.get( lookup );
+                    done[index] = true;
+                    completed++;
+                    found[index] = getLookupResult( lookup );
+                    if ( Boolean.TRUE.equals( found[index] ) && decisionTime == Long.MAX_VALUE )
+                    {
+                        decisionTime = System.currentTimeMillis() + hedgeDelay;
+                    }
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return connectors;
+        }
+        finally
+        {
+            // the lookups still running are not interrupted, so that they return their connection to the pool
+            for ( Future<Boolean> lookup : lookups.keySet() )
+            {
+                lookup.cancel( false );
+            }
+        }
+
+        if ( winner < 0 )
+        {
+            return connectors;
+        }
+        ProxyConnector first = candidates.get( winner );
+        log.debug( "Artifact {} found first on repository \"{}\".", Keys.toKey( artifact ),
+                   first.getTargetRepository().getId() );
+        List<ProxyConnector> ordered = new ArrayList<ProxyConnector>( connectors.size() );
+        ordered.add( first );
+        for ( ProxyConnector connector : connectors )
+        {
+            if ( connector != first )
+            {
+                ordered.add( connector );
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * @return whether {@link #doTransferFile(ProxyConnector, RemoteRepositoryContent, String, ManagedRepositoryContent,
+     *         File, Properties, boolean)} would request the artifact from the remote repository of the connector
+     */
+    private boolean isTransferAttempted( ProxyConnector connector, ArtifactReference artifact,
+                                         Properties requestProperties, File localFile )
+    {
+        RemoteRepositoryContent targetRepository = connector.getTargetRepository();
+        String targetPath = getTargetPath( targetRepository, artifact );
+        if ( ( CollectionUtils.isNotEmpty( connector.getWhitelist() ) && !matchesPattern( targetPath,
+                                                                                       connector.getWhitelist() ) )
+            || matchesPattern( targetPath, connector.getBlacklist() ) )
+        {
+            return false;
+        }
+
+        // the properties of the request are set for the connector tried by the sequential loop
+        Properties properties = new Properties();
+        properties.putAll( requestProperties );
+        properties.setProperty( "remoteRepositoryId", targetRepository.getId() );
+        properties.setProperty( "url", getUrl( targetRepository, targetPath ) );
+        try
+        {
+            validatePolicies( this.preDownloadPolicies, connector.getPolicies(), properties, localFile );
+            return true;
+        }
+        catch ( PolicyViolationException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @param windowElapsed whether the connectors before the first one which found the artifact are no longer
+     *                      waited for
+     * @return the index of the winning connector, or -1 if there is none yet
+     */
+    private static int getLookupWinner( Boolean[] found, boolean[] done, boolean windowElapsed )
+    {
+        boolean previousDone = true;
+        for ( int i = 0; i < found.length; i++ )
+        {
+            if ( Boolean.TRUE.equals( found[i] ) )
+            {
+                return previousDone || windowElapsed ? i : -1;
+            }
+            previousDone &= done[i];
+        }
+        return -1;
+    }
+
+    private Boolean getLookupResult( Future<Boolean> lookup )
+        throws InterruptedException
+    {
+        try
+        {
+            return lookup.get();
+        }
+        catch ( ExecutionException e )
+        {
+            return null;
+        }
+    }
+
     public File fetchFromProxies( ManagedRepositoryContent repository, String path )
     {
         File localFile = new File( repository.getRepoRoot(), path );
@@ -575,43 +852,75 @@ public class DefaultRepositoryProxyConnectors
                                       File workingDirectory, ManagedRepositoryContent repository )
         throws ProxyException, NotModifiedException, RepositoryAdminException
     {
-        Wagon wagon = null;
         try
         {
-            RepositoryURL repoUrl = remoteRepository.getURL();
-            String protocol = repoUrl.getProtocol();
-            NetworkProxy networkProxy = null;
-            if ( StringUtils.isNotBlank( connector.getProxyId() ) )
-            {
-                networkProxy = networkProxyAdmin.getNetworkProxy( connector.getProxyId() );
-            }
-            WagonFactoryRequest wagonFactoryRequest = new WagonFactoryRequest( "wagon#" + protocol,
-                                                                               remoteRepository.getRepository().getExtraHeaders() ).networkProxy(
-                networkProxy );
-            wagon = wagonFactory.getWagon( wagonFactoryRequest );
-            if ( wagon == null )
-            {
-                throw new ProxyException( "Unsupported target repository protocol: " + protocol );
-            }
+            NetworkProxy networkProxy = getNetworkProxy( connector );
+            String connectionKey = getConnectionKey( remoteRepository, networkProxy );
+            int timeoutInMilliseconds = remoteRepository.getRepository().getTimeout() * 1000;
 
-            if ( wagon == null )
+            boolean retried = false;
+            while ( true )
             {
-                throw new ProxyException( "Unsupported target repository protocol: " + protocol );
-            }
+                Wagon wagon = wagonConnectionPool.borrowWagon( connectionKey, timeoutInMilliseconds );
+                // a pooled wagon may have been closed by the remote server: an I/O failure is retried once on a new
+                // connection
+                boolean retry = wagon != null && !retried;
+                boolean reusable = false;
+                try
+                {
+                    if ( wagon == null )
+                    {
+                        wagon = createWagon( remoteRepository, networkProxy );
+                        if ( !connectToRepository( connector, wagon, remoteRepository ) )
+                        {
+                            return;
+                        }
+                    }
 
-            boolean connected = connectToRepository( connector, wagon, remoteRepository );
-            if ( connected )
-            {
-                transferArtifact( wagon, remoteRepository, remotePath, repository, resource, workingDirectory,
-                                  tmpResource );
-
-                // TODO: these should be used to validate the download based on the policies, not always downloaded
-                // to
-                // save on connections since md5 is rarely used
-                transferChecksum( wagon, remoteRepository, remotePath, repository, resource, workingDirectory, ".sha1",
-                                  tmpSha1 );
-                transferChecksum( wagon, remoteRepository, remotePath, repository, resource, workingDirectory, ".md5",
-                                  tmpMd5 );
+                    transferArtifact( wagon, remoteRepository, remotePath, repository, resource, workingDirectory,
+                                      tmpResource );
+
+                    // TODO: these should be used to validate the download based on the policies, not always downloaded
+                    // to
+                    // save on connections since md5 is rarely used
+                    transferChecksum( wagon, remoteRepository, remotePath, repository, resource, workingDirectory,
+                                      ".sha1", tmpSha1 );
+                    transferChecksum( wagon, remoteRepository, remotePath, repository, resource, workingDirectory,
+                                      ".md5", tmpMd5 );
+                    reusable = true;
+                    return;
+                }
+                catch ( NotFoundException e )
+                {
+                    reusable = true;
+                    throw e;
+                }
+                catch ( NotModifiedException e )
+                {
+                    reusable = true;
+                    throw e;
+                }
+                catch ( ProxyException e )
+                {
+                    if ( !retry || !isConnectionFailure( e ) )
+                    {
+                        throw e;
+                    }
+                    log.debug( "Transfer of {} failed on a pooled connection, retrying on a new one: {}", url,
+                               e.getMessage() );
+                    retried = true;
+                }
+                finally
+                {
+                    if ( reusable )
+                    {
+                        wagonConnectionPool.returnWagon( connectionKey, wagon );
+                    }
+                    else
+                    {
+                        wagonConnectionPool.invalidateWagon( connectionKey, wagon );
+                    }
+                }
             }
         }
         catch ( NotFoundException e )
@@ -633,20 +942,105 @@ public class DefaultRepositoryProxyConnectors
         {
             throw new ProxyException( e.getMessage(), e );
         }
-        finally
+    }
+
+    /**
+     * Asks the remote repository whether it has the resource, with a HEAD request for the HTTP wagons.
+     *
+     * @return whether the resource exists, or <code>null</code> if the repository could not be connected to
+     */
+    private Boolean resourceExists( ProxyConnector connector, RemoteRepositoryContent remoteRepository,
+                                    String remotePath )
+        throws ProxyException, RepositoryAdminException, WagonFactoryException, WagonException
+    {
+        NetworkProxy networkProxy = getNetworkProxy( connector );
+        String connectionKey = getConnectionKey( remoteRepository, networkProxy );
+        Wagon wagon =
+            wagonConnectionPool.borrowWagon( connectionKey, remoteRepository.getRepository().getTimeout() * 1000 );
+        boolean reusable = false;
+        try
         {
-            if ( wagon != null )
+            if ( wagon == null )
             {
-                try
-                {
-                    wagon.disconnect();
-                }
-                catch ( ConnectionException e )
+                wagon = createWagon( remoteRepository, networkProxy );
+                if ( !connectToRepository( connector, wagon, remoteRepository ) )
                 {
-                    log.warn( "Unable to disconnect wagon.", e );
+                    return null;
                 }
             }
+            boolean exists = wagon.resourceExists( addParameters( remotePath, remoteRepository.getRepository() ) );
+            reusable = true;
+            return Boolean.valueOf( exists );
+        }
+        finally
+        {
+            if ( reusable )
+            {
+                wagonConnectionPool.returnWagon( connectionKey, wagon );
+            }
+            else
+            {
+                wagonConnectionPool.invalidateWagon( connectionKey, wagon );
+            }
+        }
+    }
+
+    private NetworkProxy getNetworkProxy( ProxyConnector connector )
+        throws RepositoryAdminException
+    {
+        if ( StringUtils.isNotBlank( connector.getProxyId() ) )
+        {
+            return networkProxyAdmin.getNetworkProxy( connector.getProxyId() );
+        }
+        return null;
+    }
+
+    private Wagon createWagon( RemoteRepositoryContent remoteRepository, NetworkProxy networkProxy )
+        throws WagonFactoryException, ProxyException
+    {
+        String protocol = remoteRepository.getURL().getProtocol();
+        WagonFactoryRequest wagonFactoryRequest =
+            new WagonFactoryRequest( "wagon#" + protocol, remoteRepository.getRepository().getExtraHeaders() ).networkProxy(
+                networkProxy );
+        Wagon wagon = wagonFactory.getWagon( wagonFactoryRequest );
+        if ( wagon == null )
+        {
+            throw new ProxyException( "Unsupported target repository protocol: " + protocol );
+        }
+        return wagon;
+    }
+
+    private boolean isConnectionFailure( ProxyException e )
+    {
+        for ( Throwable cause = e.getCause(); cause != null; cause = cause.getCause() )
+        {
+            if ( cause instanceof IOException )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the key of the pool of the connections to the remote repository, changing with every setting used to
+     *         create or connect the wagons
+     */
+    private String getConnectionKey( RemoteRepositoryContent remoteRepository, NetworkProxy networkProxy )
+    {
+        RemoteRepository repository = remoteRepository.getRepository();
+        StringBuilder key = new StringBuilder( remoteRepository.getId() );
+        key.append( '|' ).append( remoteRepository.getURL() );
+        key.append( '|' ).append( repository.getUserName() );
+        key.append( '|' ).append( repository.getPassword() == null ? 0 : repository.getPassword().hashCode() );
+        key.append( '|' ).append( repository.getTimeout() );
+        key.append( '|' ).append( new TreeMap<String, String>( repository.getExtraHeaders() ) );
+        if ( networkProxy != null )
+        {
+            key.append( '|' ).append( networkProxy.getId() ).append( '@' ).append( networkProxy.getHost() );
+            key.append( ':' ).append( networkProxy.getPort() ).append( '|' ).append( networkProxy.getUsername() );
         }
+        return key.toString();
     }
 
     private void transferArtifact( Wagon wagon, RemoteRepositoryContent remoteRepository, String remotePath,
@@ -727,6 +1121,31 @@ public class DefaultRepositoryProxyConnectors
         return true;
     }
 
+    /**
+     * Perform the transfer of the file, or wait for the transfer of the same file from the same remote repository
+     * already in progress and share its result.
+     *
+     * @see #doTransferFile(ProxyConnector, RemoteRepositoryContent, String, ManagedRepositoryContent, File, Properties,
+     *      boolean)
+     */
+    private File transferFile( final ProxyConnector connector, final RemoteRepositoryContent remoteRepository,
+                               final String remotePath, final ManagedRepositoryContent repository,
+                               final File resource, final Properties requestProperties,
+                               final boolean executeConsumers )
+        throws ProxyException, NotModifiedException, RepositoryAdminException
+    {
+        String key = repository.getId() + ":" + remoteRepository.getId() + ":" + resource.getAbsolutePath();
+        return inFlightTransfers.transfer( key, new Callable<File>()
+        {
+            public File call()
+                throws Exception
+            {
+                return doTransferFile( connector, remoteRepository, remotePath, repository, resource,
+                                       requestProperties, executeConsumers );
+            }
+        } );
+    }
+
     /**
      * Perform the transfer of the file.
      *
@@ -743,17 +1162,12 @@ public class DefaultRepositoryProxyConnectors
      *                              the remote resource is not newer than the local File.
      * @throws ProxyException       if transfer was unsuccessful.
      */
-    private File transferFile( ProxyConnector connector, RemoteRepositoryContent remoteRepository, String remotePath,
-                               ManagedRepositoryContent repository, File resource, Properties requestProperties,
-                               boolean executeConsumers )
+    private File doTransferFile( ProxyConnector connector, RemoteRepositoryContent remoteRepository,
+                                 String remotePath, ManagedRepositoryContent repository, File resource,
+                                 Properties requestProperties, boolean executeConsumers )
         throws ProxyException, NotModifiedException, RepositoryAdminException
     {
-        String url = remoteRepository.getURL().getUrl();
-        if ( !url.endsWith( "/" ) )
-        {
-            url = url + "/";
-        }
-        url = url + remotePath;
+        String url = getUrl( remoteRepository, remotePath );
         requestProperties.setProperty( "url", url );
 
         // Is a whitelist defined?
@@ -823,13 +1237,19 @@ public class DefaultRepositoryProxyConnectors
 
             if ( resource != null )
             {
-                synchronized ( resource.getAbsolutePath().intern() )
+                Lock lock = resourceLocks.get( resource.getAbsolutePath() );
+                lock.lock();
+                try
                 {
                     File directory = resource.getParentFile();
                     moveFileIfExists( tmpMd5, directory );
                     moveFileIfExists( tmpSha1, directory );
                     moveFileIfExists( tmpResource, directory );
                 }
+                finally
+                {
+                    lock.unlock();
+                }
             }
         }
         finally
@@ -1286,6 +1706,7 @@ public class DefaultRepositoryProxyConnectors
             || ConfigurationNames.isProxyConnector( propertyName ) )
         {
             initConnectorsAndNetworkProxies();
+            wagonConnectionPool.clear();
         }
     }
 
@@ -1367,6 +1788,16 @@ public class DefaultRepositoryProxyConnectors
         this.wagonFactory = wagonFactory;
     }
 
+    public WagonConnectionPool getWagonConnectionPool()
+    {
+        return wagonConnectionPool;
+    }
+
+    public void setWagonConnectionPool( WagonConnectionPool wagonConnectionPool )
+    {
+        this.wagonConnectionPool = wagonConnectionPool;
+    }
+
     public Map<String, PreDownloadPolicy> getPreDownloadPolicies()
     {
         return preDownloadPolicies;
@@ -1396,4 +1827,40 @@ public class DefaultRepositoryProxyConnectors
     {
         this.downloadErrorPolicies = downloadErrorPolicies;
     }
+
+    /**
+     * Asks the remote repository of a connector whether it has an artifact.
+     */
+    private class ResourceLookup
+        implements Callable<Boolean>
+    {
+        private final ProxyConnector connector;
+
+        private final ArtifactReference artifact;
+
+        private ResourceLookup( ProxyConnector connector, ArtifactReference artifact )
+        {
+            this.connector = connector;
+            this.artifact = artifact;
+        }
+
+        /**
+         * @return whether the artifact exists, or <code>null</code> if that is unknown
+         */
+        public Boolean call()
+        {
+            RemoteRepositoryContent targetRepository = connector.getTargetRepository();
+            String targetPath = getTargetPath( targetRepository, artifact );
+            try
+            {
+                return resourceExists( connector, targetRepository, targetPath );
+            }
+            catch ( Exception e )
+            {
+                log.debug( "Unable to look {} up on repository \"{}\": {}",
+                           new Object[]{ targetPath, targetRepository.getId(), e.getMessage() } );
+                return null;
+            }
+        }
+    }
 }
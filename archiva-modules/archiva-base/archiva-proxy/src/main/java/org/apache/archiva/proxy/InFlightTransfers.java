@@ -0,0 +1,126 @@
+package org.apache.archiva.proxy;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.admin.model.RepositoryAdminException;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the transfers in progress, so that concurrent requests of the same resource share a single download.
+ * <p/>
+ * The first request of a key performs the transfer in its own thread, the requests made while it is in progress wait
+ * for it and get the same result: the same file, or the same exception if it failed. Once done, the transfer is
+ * removed from the registry and the next request of the key starts a new one.
+ *
+ * @since 1.4-M3
+ */
+public class InFlightTransfers
+{
+    private final ConcurrentMap<String, FutureTask<File>> transfers = new ConcurrentHashMap<String, FutureTask<File>>();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param key      the key of the resource
+     * @param transfer the transfer of the resource, only called if no transfer of the key is in progress
+     * @return the result of the transfer
+     */
+    public File transfer( String key, Callable<File> transfer )
+        throws ProxyException, RepositoryAdminException
+    {
+        FutureTask<File> task = new FutureTask<File>( transfer );
+        FutureTask<File> inFlight = transfers.putIfAbsent( key, task );
+        if ( inFlight == null )
+        {
+            inFlight = task;
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                transfers.remove( key, task );
+            }
+        }
+        else
+        {
+            coalesced.incrementAndGet();
+        }
+        return getResult( key, inFlight );
+    }
+
+    /**
+     * @return the number of transfers in progress
+     */
+    public int getInFlightCount()
+    {
+        return transfers.size();
+    }
+
+    /**
+     * @return the number of requests that waited for a transfer in progress instead of starting their own
+     */
+    public long getCoalescedCount()
+    {
+        return coalesced.get();
+    }
+
+    private static File getResult( String key, FutureTask<File> task )
+        throws ProxyException, RepositoryAdminException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ProxyException( "Interrupted while waiting for the transfer of " + key, e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof ProxyException )
+            {
+                throw (ProxyException) cause;
+            }
+            if ( cause instanceof RepositoryAdminException )
+            {
+                throw (RepositoryAdminException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new ProxyException( cause.getMessage(), cause );
+        }
+    }
+}
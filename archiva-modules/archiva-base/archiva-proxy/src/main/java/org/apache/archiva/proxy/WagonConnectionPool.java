@@ -0,0 +1,509 @@
+package org.apache.archiva.proxy;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.configuration.ArchivaConfiguration;
+import org.apache.archiva.configuration.NetworkConfiguration;
+import org.apache.maven.wagon.ConnectionException;
+import org.apache.maven.wagon.TransferFailedException;
+import org.apache.maven.wagon.Wagon;
+import org.apache.maven.wagon.authorization.AuthorizationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pool of connected wagons, one pool per remote repository connection settings.
+ * <p/>
+ * A transfer borrows a connection slot with {@link #borrowWagon(String, long)}, which gives back an idle connected
+ * wagon when there is one, and must release it with {@link #returnWagon(String, Wagon)} when the wagon can be used
+ * again or with {@link #invalidateWagon(String, Wagon)} when it failed. The number of connections of a pool is
+ * bounded by the <code>maxTotalPerHost</code> value of the network configuration, and the wagons are only kept
+ * when its <code>usePooling</code> value is set. Idle wagons are disconnected after {@link #getIdleTimeout()}, so
+ * that they are never used once the remote server closed its side, and those idle for more than
+ * {@link #getValidateAfterInactivity()} are checked when borrowed.
+ *
+ * @since 1.4-M3
+ */
+@Service( "wagonConnectionPool#default" )
+@ManagedResource( objectName = "org.apache.archiva:type=WagonConnectionPool",
+                  description = "Pool of the connections to the remote repositories" )
+public class WagonConnectionPool
+{
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+    public static final long DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
+
+    private Logger log = LoggerFactory.getLogger( WagonConnectionPool.class );
+
+    @Inject
+    @Named( value = "archivaConfiguration#default" )
+    private ArchivaConfiguration archivaConfiguration;
+
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private long validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+
+    private final Map<String, Connections> pools = new HashMap<String, Connections>();
+
+    private long borrowed;
+
+    private long created;
+
+    private long reused;
+
+    private long waits;
+
+    private long timeouts;
+
+    private long idleEvictions;
+
+    private long invalidations;
+
+    private long validationFailures;
+
+    /**
+     * Reserves a connection to the remote repository, waiting for one to be returned if the maximum number of
+     * connections is reached.
+     *
+     * @param key     the connection settings
+     * @param timeout the maximum time to wait for a connection in milliseconds, or 0 to wait without limit
+     * @return an idle connected wagon, or <code>null</code> if the caller has to connect a new one
+     * @throws ProxyException if no connection was available in time
+     */
+    public Wagon borrowWagon( String key, long timeout )
+        throws ProxyException
+    {
+        List<Wagon> evicted = new ArrayList<Wagon>();
+        try
+        {
+            Connections connections;
+            IdleWagon idleWagon;
+            synchronized ( this )
+            {
+                evictIdle( evicted );
+                borrowed++;
+
+                connections = pools.get( key );
+                if ( connections == null )
+                {
+                    connections = new Connections();
+                    pools.put( key, connections );
+                }
+
+                int maxActive = getMaxActive();
+                if ( connections.active >= maxActive )
+                {
+                    waits++;
+                    long deadline = System.currentTimeMillis() + timeout;
+                    while ( connections.active >= maxActive )
+                    {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if ( timeout > 0 && remaining <= 0 )
+                        {
+                            timeouts++;
+                            throw new ProxyException(
+                                "Timed out waiting for one of the " + maxActive + " connections to " + key );
+                        }
+                        wait( timeout > 0 ? remaining : 0 );
+                        maxActive = getMaxActive();
+                    }
+                }
+                connections.active++;
+
+                idleWagon = takeIdleWagon( connections );
+            }
+
+            // the connections idle for a while are checked outside of the lock, as the check goes to the server
+            while ( idleWagon != null && !isValid( idleWagon ) )
+            {
+                evicted.add( idleWagon.wagon );
+                synchronized ( this )
+                {
+                    // not reused after all
+                    reused--;
+                    validationFailures++;
+                    idleWagon = takeIdleWagon( connections );
+                }
+            }
+            return idleWagon == null ? null : idleWagon.wagon;
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ProxyException( "Interrupted while waiting for a connection to " + key, e );
+        }
+        finally
+        {
+            disconnect( evicted );
+        }
+    }
+
+    /**
+     * Releases a connection that can be used again.
+     */
+    public void returnWagon( String key, Wagon wagon )
+    {
+        List<Wagon> evicted = new ArrayList<Wagon>();
+        synchronized ( this )
+        {
+            Connections connections = release( key );
+            if ( connections == null || !isUsePooling() )
+            {
+                evicted.add( wagon );
+            }
+            else if ( !connections.contains( wagon ) )
+            {
+                connections.idle.addFirst( new IdleWagon( wagon ) );
+            }
+            evictIdle( evicted );
+        }
+        disconnect( evicted );
+    }
+
+    /**
+     * Releases a connection that failed, disconnecting it together with the idle connections of the same
+     * repository: they were opened to the same remote server and are likely broken as well.
+     *
+     * @param wagon the wagon, may be <code>null</code> if it could not be created
+     */
+    public void invalidateWagon( String key, Wagon wagon )
+    {
+        List<Wagon> evicted = new ArrayList<Wagon>();
+        if ( wagon != null )
+        {
+            evicted.add( wagon );
+        }
+        synchronized ( this )
+        {
+            Connections connections = release( key );
+            if ( connections != null )
+            {
+                for ( IdleWagon idleWagon : connections.idle )
+                {
+                    evicted.add( idleWagon.wagon );
+                }
+                invalidations += connections.idle.size();
+                connections.idle.clear();
+            }
+            invalidations++;
+        }
+        disconnect( evicted );
+    }
+
+    /**
+     * Disconnects all the idle wagons, used when the remote repositories or the network proxies change.
+     */
+    @ManagedOperation( description = "Disconnects all the idle connections" )
+    public void clear()
+    {
+        List<Wagon> evicted = new ArrayList<Wagon>();
+        synchronized ( this )
+        {
+            for ( Iterator<Connections> it = pools.values().iterator(); it.hasNext(); )
+            {
+                Connections connections = it.next();
+                for ( IdleWagon idleWagon : connections.idle )
+                {
+                    evicted.add( idleWagon.wagon );
+                }
+                connections.idle.clear();
+                if ( connections.active == 0 )
+                {
+                    it.remove();
+                }
+            }
+        }
+        disconnect( evicted );
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        clear();
+    }
+
+    @ManagedAttribute( description = "Time in milliseconds after which an idle connection is disconnected" )
+    public synchronized long getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    @ManagedAttribute
+    public synchronized void setIdleTimeout( long idleTimeout )
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    @ManagedAttribute( description = "Time in milliseconds after which an idle connection is checked before being "
+        + "used again, negative to never check" )
+    public synchronized long getValidateAfterInactivity()
+    {
+        return validateAfterInactivity;
+    }
+
+    @ManagedAttribute
+    public synchronized void setValidateAfterInactivity( long validateAfterInactivity )
+    {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+
+    @ManagedAttribute( description = "Number of idle connections disconnected as they failed their check" )
+    public synchronized long getValidationFailureCount()
+    {
+        return validationFailures;
+    }
+
+    @ManagedAttribute( description = "Maximum number of connections to a remote repository" )
+    public int getMaxActive()
+    {
+        NetworkConfiguration networkConfiguration = archivaConfiguration.getConfiguration().getNetworkConfiguration();
+        return networkConfiguration == null ? 30 : Math.max( 1, networkConfiguration.getMaxTotalPerHost() );
+    }
+
+    @ManagedAttribute( description = "Whether the connections are kept to be used again" )
+    public boolean isUsePooling()
+    {
+        NetworkConfiguration networkConfiguration = archivaConfiguration.getConfiguration().getNetworkConfiguration();
+        return networkConfiguration == null || networkConfiguration.isUsePooling();
+    }
+
+    @ManagedAttribute( description = "Number of connections in use" )
+    public synchronized int getActiveCount()
+    {
+        int count = 0;
+        for ( Connections connections : pools.values() )
+        {
+            count += connections.active;
+        }
+        return count;
+    }
+
+    @ManagedAttribute( description = "Number of idle connections" )
+    public synchronized int getIdleCount()
+    {
+        int count = 0;
+        for ( Connections connections : pools.values() )
+        {
+            count += connections.idle.size();
+        }
+        return count;
+    }
+
+    @ManagedAttribute( description = "Number of connection requests" )
+    public synchronized long getBorrowedCount()
+    {
+        return borrowed;
+    }
+
+    @ManagedAttribute( description = "Number of connections opened" )
+    public synchronized long getCreatedCount()
+    {
+        return created;
+    }
+
+    @ManagedAttribute( description = "Number of connection requests served by an idle connection" )
+    public synchronized long getReusedCount()
+    {
+        return reused;
+    }
+
+    @ManagedAttribute( description = "Number of connection requests that waited for a connection to be released" )
+    public synchronized long getWaitCount()
+    {
+        return waits;
+    }
+
+    @ManagedAttribute( description = "Number of connection requests that timed out" )
+    public synchronized long getTimeoutCount()
+    {
+        return timeouts;
+    }
+
+    @ManagedAttribute( description = "Number of connections disconnected after being idle too long" )
+    public synchronized long getIdleEvictionCount()
+    {
+        return idleEvictions;
+    }
+
+    @ManagedAttribute( description = "Number of connections disconnected after a failure" )
+    public synchronized long getInvalidationCount()
+    {
+        return invalidations;
+    }
+
+    public ArchivaConfiguration getArchivaConfiguration()
+    {
+        return archivaConfiguration;
+    }
+
+    public void setArchivaConfiguration( ArchivaConfiguration archivaConfiguration )
+    {
+        this.archivaConfiguration = archivaConfiguration;
+    }
+
+    /**
+     * @return the most recently used idle wagon, the least likely to have been closed by the remote server, or
+     *         <code>null</code> if the caller has to connect a new one
+     */
+    private IdleWagon takeIdleWagon( Connections connections )
+    {
+        if ( connections.idle.isEmpty() )
+        {
+            created++;
+            return null;
+        }
+        reused++;
+        return connections.idle.removeFirst();
+    }
+
+    /**
+     * Checks that a wagon idle for more than {@link #getValidateAfterInactivity()} still reaches the remote
+     * repository, by asking it for its root.
+     */
+    private boolean isValid( IdleWagon idleWagon )
+    {
+        long validateAfterInactivity;
+        synchronized ( this )
+        {
+            validateAfterInactivity = this.validateAfterInactivity;
+        }
+        if ( validateAfterInactivity < 0
+            || System.currentTimeMillis() - idleWagon.lastUsed < validateAfterInactivity )
+        {
+            return true;
+        }
+        try
+        {
+            // whether the root exists does not matter, only that the server answered
+            idleWagon.wagon.resourceExists( "" );
+            return true;
+        }
+        catch ( AuthorizationException e )
+        {
+            return true;
+        }
+        catch ( TransferFailedException e )
+        {
+            log.debug( "Dropping an idle connection which failed its check: {}", e.getMessage() );
+            return false;
+        }
+        catch ( RuntimeException e )
+        {
+            log.debug( "Dropping an idle connection which failed its check: {}", e.getMessage() );
+            return false;
+        }
+    }
+
+    private Connections release( String key )
+    {
+        Connections connections = pools.get( key );
+        if ( connections != null )
+        {
+            connections.active--;
+            notifyAll();
+        }
+        return connections;
+    }
+
+    /**
+     * Removes the wagons idle for too long, and the pools no longer used.
+     */
+    private void evictIdle( List<Wagon> evicted )
+    {
+        long limit = System.currentTimeMillis() - idleTimeout;
+        for ( Iterator<Connections> it = pools.values().iterator(); it.hasNext(); )
+        {
+            Connections connections = it.next();
+            // the idle wagons are sorted from the most recently used
+            while ( !connections.idle.isEmpty() && connections.idle.getLast().lastUsed < limit )
+            {
+                evicted.add( connections.idle.removeLast().wagon );
+                idleEvictions++;
+            }
+            if ( connections.active == 0 && connections.idle.isEmpty() )
+            {
+                it.remove();
+            }
+        }
+    }
+
+    private void disconnect( List<Wagon> wagons )
+    {
+        for ( Wagon wagon : wagons )
+        {
+            try
+            {
+                wagon.disconnect();
+            }
+            catch ( ConnectionException e )
+            {
+                log.warn( "Unable to disconnect wagon.", e );
+            }
+        }
+    }
+
+    private static class Connections
+    {
+        private final LinkedList<IdleWagon> idle = new LinkedList<IdleWagon>();
+
+        private int active;
+
+        /**
+         * A wagon bean may be a singleton: it must not be given to two transfers at once.
+         */
+        private boolean contains( Wagon wagon )
+        {
+            for ( IdleWagon idleWagon : idle )
+            {
+                if ( idleWagon.wagon == wagon )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class IdleWagon
+    {
+        private final Wagon wagon;
+
+        private final long lastUsed = System.currentTimeMillis();
+
+        private IdleWagon( Wagon wagon )
+        {
+            this.wagon = wagon;
+        }
+    }
+}
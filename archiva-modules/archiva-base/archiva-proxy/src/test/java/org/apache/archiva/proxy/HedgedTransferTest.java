@@ -0,0 +1,266 @@
+package org.apache.archiva.proxy;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.model.ArtifactReference;
+import org.apache.archiva.policies.CachedFailuresPolicy;
+import org.apache.archiva.policies.ChecksumPolicy;
+import org.apache.archiva.policies.ReleasesPolicy;
+import org.apache.archiva.policies.SnapshotsPolicy;
+import org.apache.maven.wagon.ResourceDoesNotExistException;
+import org.apache.maven.wagon.Wagon;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Transfers with the proxy connectors of the managed repository looked up concurrently.
+ */
+public class HedgedTransferTest
+    extends AbstractProxyTestCase
+{
+    @Test
+    public void testGetInSecondProxiedRepo()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-in-second-proxy/1.0/get-in-second-proxy-1.0.jar";
+        setupTestableManagedRepository( path );
+        managedDefaultRepository.getRepository().setProxyHedgeDelay( 0 );
+
+        File expectedFile = new File( managedDefaultDir, path );
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        assertNotExistsInManagedDefaultRepo( expectedFile );
+
+        saveConnector( ID_DEFAULT_MANAGED, ID_PROXIED1, false );
+        saveConnector( ID_DEFAULT_MANAGED, ID_PROXIED2, false );
+
+        File downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+
+        File proxied2File = new File( REPOPATH_PROXIED2, path );
+        assertFileEquals( expectedFile, downloadedFile, proxied2File );
+        assertNoTempFiles( expectedFile );
+    }
+
+    @Test
+    public void testGetWhenInBothProxiedReposKeepsOrder()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-in-both-proxies/1.0/get-in-both-proxies-1.0.jar";
+        setupTestableManagedRepository( path );
+        // long enough for the first connector to answer even if the second one answered first
+        managedDefaultRepository.getRepository().setProxyHedgeDelay( 5000 );
+
+        File expectedFile = new File( managedDefaultDir, path );
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        assertNotExistsInManagedDefaultRepo( expectedFile );
+
+        saveConnector( ID_DEFAULT_MANAGED, ID_PROXIED1, false );
+        saveConnector( ID_DEFAULT_MANAGED, ID_PROXIED2, false );
+
+        File downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+
+        File proxied1File = new File( REPOPATH_PROXIED1, path );
+        assertFileEquals( expectedFile, downloadedFile, proxied1File );
+        assertNoTempFiles( expectedFile );
+    }
+
+    @Test
+    public void testNotFoundInAnyProxies()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/does-not-exist/1.0/does-not-exist-1.0.jar";
+        setupTestableManagedRepository( path );
+        managedDefaultRepository.getRepository().setProxyHedgeDelay( 0 );
+
+        File expectedFile = new File( managedDefaultDir, path );
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        assertNotExistsInManagedDefaultRepo( expectedFile );
+
+        saveConnector( ID_DEFAULT_MANAGED, ID_PROXIED1, false );
+        saveConnector( ID_DEFAULT_MANAGED, ID_PROXIED2, false );
+        saveConnector( ID_DEFAULT_MANAGED, ID_LEGACY_PROXIED, false );
+
+        File downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+
+        assertNull( "File returned was: " + downloadedFile + "; should have got a not found exception",
+                    downloadedFile );
+        assertNoTempFiles( expectedFile );
+    }
+
+    @Test
+    public void testAlreadyPresentPolicyOnceNotLookedUp()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-default-layout-present/1.0/get-default-layout-present-1.0.jar";
+        setupTestableManagedRepository( path );
+        managedDefaultRepository.getRepository().setProxyHedgeDelay( 0 );
+
+        File expectedFile = new File( managedDefaultDir, path );
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        assertTrue( expectedFile.exists() );
+
+        saveRemoteRepositoryConfig( "badproxied1", "Bad Proxied 1", "test://bad.machine.com/repo/", "default" );
+        saveRemoteRepositoryConfig( "badproxied2", "Bad Proxied 2", "test://bad.machine.com/anotherrepo/", "default" );
+        saveConnector( ID_DEFAULT_MANAGED, "badproxied1", ChecksumPolicy.FIX, ReleasesPolicy.ONCE,
+                       SnapshotsPolicy.ONCE, CachedFailuresPolicy.NO, false );
+        saveConnector( ID_DEFAULT_MANAGED, "badproxied2", ChecksumPolicy.FIX, ReleasesPolicy.ONCE,
+                       SnapshotsPolicy.ONCE, CachedFailuresPolicy.NO, false );
+
+        AtomicInteger lookups = countLookups( false );
+        wagonMockControl.replay();
+
+        File downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+
+        wagonMockControl.verify();
+        assertFileEquals( expectedFile, downloadedFile, expectedFile );
+        assertEquals( 0, lookups.get() );
+    }
+
+    @Test
+    public void testCachedFailuresNotLookedUp()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-in-second-proxy/1.0/get-in-second-proxy-1.0.jar";
+        File expectedFile = new File( managedDefaultDir.getAbsoluteFile(), path );
+        setupTestableManagedRepository( path );
+        managedDefaultRepository.getRepository().setProxyHedgeDelay( 0 );
+
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        saveRemoteRepositoryConfig( "badproxied1", "Bad Proxied 1", "test://bad.machine.com/repo/", "default" );
+        saveRemoteRepositoryConfig( "badproxied2", "Bad Proxied 2", "test://bad.machine.com/anotherrepo/", "default" );
+        saveConnector( ID_DEFAULT_MANAGED, "badproxied1", ChecksumPolicy.FIX, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.YES, false );
+        saveConnector( ID_DEFAULT_MANAGED, "badproxied2", ChecksumPolicy.FIX, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.YES, false );
+
+        wagonMock.get( path, new File( expectedFile.getParentFile(), expectedFile.getName() + ".tmp" ) );
+        wagonMockControl.setMatcher( customWagonGetMatcher );
+        wagonMockControl.setThrowable( new ResourceDoesNotExistException( "resource does not exist." ), 2 );
+        wagonMockControl.replay();
+
+        proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+
+        wagonMockControl.verify();
+
+        // the failures are cached, neither the lookups nor the downloads are attempted again
+        wagonMockControl.reset();
+        AtomicInteger lookups = countLookups( true );
+        wagonMockControl.replay();
+
+        File downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+
+        wagonMockControl.verify();
+        assertNotDownloaded( downloadedFile );
+        assertEquals( 0, lookups.get() );
+    }
+
+    @Test
+    public void testLookupAnsweredMissingStillDownloaded()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-in-second-proxy/1.0/get-in-second-proxy-1.0.jar";
+        File expectedFile = new File( managedDefaultDir.getAbsoluteFile(), path );
+        setupTestableManagedRepository( path );
+        managedDefaultRepository.getRepository().setProxyHedgeDelay( 0 );
+
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        saveRemoteRepositoryConfig( "badproxied1", "Bad Proxied 1", "test://bad.machine.com/repo/", "default" );
+        saveRemoteRepositoryConfig( "badproxied2", "Bad Proxied 2", "test://bad.machine.com/anotherrepo/", "default" );
+        saveConnector( ID_DEFAULT_MANAGED, "badproxied1", ChecksumPolicy.FIX, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.NO, false );
+        saveConnector( ID_DEFAULT_MANAGED, "badproxied2", ChecksumPolicy.FIX, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.NO, false );
+
+        // the remote repositories reject the lookups, but the downloads are still attempted on both
+        AtomicInteger lookups = countLookups( false );
+        wagonMock.get( path, new File( expectedFile.getParentFile(), expectedFile.getName() + ".tmp" ) );
+        wagonMockControl.setMatcher( customWagonGetMatcher );
+        wagonMockControl.setThrowable( new ResourceDoesNotExistException( "resource does not exist." ), 2 );
+        wagonMockControl.replay();
+
+        File downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository, artifact );
+
+        wagonMockControl.verify();
+        assertNotDownloaded( downloadedFile );
+        assertEquals( 2, lookups.get() );
+    }
+
+    /**
+     * Answers the lookups of the wagon, which the mock does not record as they run concurrently.
+     *
+     * @return the number of lookups
+     */
+    private AtomicInteger countLookups( boolean exists )
+    {
+        LookupCounter counter = new LookupCounter( wagonMock, exists );
+        delegate.setDelegate(
+            (Wagon) Proxy.newProxyInstance( getClass().getClassLoader(), new Class[]{ Wagon.class }, counter ) );
+        return counter.lookups;
+    }
+
+    private static class LookupCounter
+        implements InvocationHandler
+    {
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        private final Wagon wagon;
+
+        private final boolean exists;
+
+        private LookupCounter( Wagon wagon, boolean exists )
+        {
+            this.wagon = wagon;
+            this.exists = exists;
+        }
+
+        public Object invoke( Object proxy, Method method, Object[] args )
+            throws Throwable
+        {
+            if ( "resourceExists".equals( method.getName() ) )
+            {
+                lookups.incrementAndGet();
+                return Boolean.valueOf( exists );
+            }
+            try
+            {
+                return method.invoke( wagon, args );
+            }
+            catch ( InvocationTargetException e )
+            {
+                throw e.getCause();
+            }
+        }
+    }
+}
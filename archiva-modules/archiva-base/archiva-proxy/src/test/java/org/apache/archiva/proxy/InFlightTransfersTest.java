@@ -0,0 +1,188 @@
+package org.apache.archiva.proxy;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * InFlightTransfersTest
+ */
+public class InFlightTransfersTest
+{
+    private static final String KEY = "internal:central:/repo/org/apache/maven/test/1.0/test-1.0.jar";
+
+    private static final int WAITERS = 10;
+
+    private final InFlightTransfers inFlightTransfers = new InFlightTransfers();
+
+    @Test
+    public void testConcurrentRequestsShareTransfer()
+        throws Exception
+    {
+        final File file = new File( "test-1.0.jar" );
+        final AtomicInteger transfers = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final Callable<File> transfer = new Callable<File>()
+        {
+            public File call()
+                throws Exception
+            {
+                transfers.incrementAndGet();
+                started.countDown();
+                release.await();
+                return file;
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool( WAITERS + 1 );
+        try
+        {
+            List<Future<File>> results = new ArrayList<Future<File>>();
+            results.add( executor.submit( new Request( transfer ) ) );
+            started.await();
+            for ( int i = 0; i < WAITERS; i++ )
+            {
+                results.add( executor.submit( new Request( transfer ) ) );
+            }
+            while ( inFlightTransfers.getCoalescedCount() < WAITERS )
+            {
+                Thread.sleep( 10 );
+            }
+            release.countDown();
+
+            for ( Future<File> result : results )
+            {
+                assertSame( file, result.get( 10, TimeUnit.SECONDS ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        assertEquals( 1, transfers.get() );
+        assertEquals( 0, inFlightTransfers.getInFlightCount() );
+    }
+
+    @Test
+    public void testFailureShared()
+        throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final Callable<File> transfer = new Callable<File>()
+        {
+            public File call()
+                throws Exception
+            {
+                started.countDown();
+                release.await();
+                throw new NotFoundException( "test download not found" );
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            Future<File> first = executor.submit( new Request( transfer ) );
+            started.await();
+            Future<File> second = executor.submit( new Request( transfer ) );
+            while ( inFlightTransfers.getCoalescedCount() < 1 )
+            {
+                Thread.sleep( 10 );
+            }
+            release.countDown();
+
+            assertNotFound( first );
+            assertNotFound( second );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSequentialRequestsTransferAgain()
+        throws Exception
+    {
+        final AtomicInteger transfers = new AtomicInteger();
+        Callable<File> transfer = new Callable<File>()
+        {
+            public File call()
+            {
+                transfers.incrementAndGet();
+                return null;
+            }
+        };
+        inFlightTransfers.transfer( KEY, transfer );
+        inFlightTransfers.transfer( KEY, transfer );
+        assertEquals( 2, transfers.get() );
+        assertEquals( 0, inFlightTransfers.getCoalescedCount() );
+    }
+
+    private static void assertNotFound( Future<File> result )
+        throws Exception
+    {
+        try
+        {
+            result.get( 10, TimeUnit.SECONDS );
+            fail( "The transfer should have failed" );
+        }
+        catch ( ExecutionException e )
+        {
+            assertTrue( e.getCause() instanceof NotFoundException );
+        }
+    }
+
+    private class Request
+        implements Callable<File>
+    {
+        private final Callable<File> transfer;
+
+        private Request( Callable<File> transfer )
+        {
+            this.transfer = transfer;
+        }
+
+        public File call()
+            throws Exception
+        {
+            return inFlightTransfers.transfer( KEY, transfer );
+        }
+    }
+}
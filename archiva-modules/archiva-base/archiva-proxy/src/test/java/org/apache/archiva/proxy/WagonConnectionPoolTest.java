@@ -0,0 +1,181 @@
+package org.apache.archiva.proxy;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.configuration.NetworkConfiguration;
+import org.apache.maven.wagon.TransferFailedException;
+import org.apache.maven.wagon.Wagon;
+import org.easymock.MockControl;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * WagonConnectionPoolTest
+ */
+public class WagonConnectionPoolTest
+{
+    private static final String KEY = "proxied1|http://repo.example.org/";
+
+    private MockConfiguration configuration;
+
+    private WagonConnectionPool pool;
+
+    @Before
+    public void setUp()
+    {
+        configuration = new MockConfiguration();
+        pool = new WagonConnectionPool();
+        pool.setArchivaConfiguration( configuration );
+    }
+
+    @Test
+    public void testReuseReturnedWagon()
+        throws Exception
+    {
+        assertNull( pool.borrowWagon( KEY, 0 ) );
+        Wagon wagon = createWagon();
+        pool.returnWagon( KEY, wagon );
+        assertEquals( 1, pool.getIdleCount() );
+
+        assertSame( wagon, pool.borrowWagon( KEY, 0 ) );
+        assertEquals( 1, pool.getActiveCount() );
+        assertEquals( 0, pool.getIdleCount() );
+        assertEquals( 2, pool.getBorrowedCount() );
+        assertEquals( 1, pool.getCreatedCount() );
+        assertEquals( 1, pool.getReusedCount() );
+
+        // another repository never gets the wagon
+        assertNull( pool.borrowWagon( "proxied2|http://repo.example.org/", 0 ) );
+    }
+
+    @Test
+    public void testMaxActive()
+        throws Exception
+    {
+        NetworkConfiguration networkConfiguration = new NetworkConfiguration();
+        networkConfiguration.setMaxTotalPerHost( 1 );
+        configuration.getConfiguration().setNetworkConfiguration( networkConfiguration );
+
+        assertNull( pool.borrowWagon( KEY, 0 ) );
+        try
+        {
+            pool.borrowWagon( KEY, 50 );
+            fail( "The second connection should have timed out" );
+        }
+        catch ( ProxyException e )
+        {
+            assertEquals( 1, pool.getTimeoutCount() );
+        }
+
+        Wagon wagon = createWagon();
+        pool.returnWagon( KEY, wagon );
+        assertSame( wagon, pool.borrowWagon( KEY, 50 ) );
+    }
+
+    @Test
+    public void testIdleEviction()
+        throws Exception
+    {
+        pool.setIdleTimeout( 0 );
+        pool.borrowWagon( KEY, 0 );
+        MockControl control = MockControl.createControl( Wagon.class );
+        Wagon wagon = (Wagon) control.getMock();
+        wagon.disconnect();
+        control.replay();
+
+        pool.returnWagon( KEY, wagon );
+        Thread.sleep( 10 );
+
+        assertNull( pool.borrowWagon( KEY, 0 ) );
+        assertEquals( 1, pool.getIdleEvictionCount() );
+        control.verify();
+    }
+
+    @Test
+    public void testIdleWagonCheckedWhenBorrowed()
+        throws Exception
+    {
+        pool.setValidateAfterInactivity( 0 );
+        pool.borrowWagon( KEY, 0 );
+        pool.borrowWagon( KEY, 0 );
+        Wagon wagon = createWagon();
+        pool.returnWagon( KEY, wagon );
+
+        MockControl control = MockControl.createControl( Wagon.class );
+        Wagon closedWagon = (Wagon) control.getMock();
+        closedWagon.resourceExists( "" );
+        control.setThrowable( new TransferFailedException( "Connection reset" ) );
+        closedWagon.disconnect();
+        control.replay();
+        pool.returnWagon( KEY, closedWagon );
+
+        // the most recently returned wagon failed its check, the next one is given instead
+        assertSame( wagon, pool.borrowWagon( KEY, 0 ) );
+        assertEquals( 1, pool.getValidationFailureCount() );
+        assertEquals( 0, pool.getIdleCount() );
+        assertEquals( 1, pool.getActiveCount() );
+        control.verify();
+
+        // a negative interval never checks
+        pool.returnWagon( KEY, wagon );
+        pool.setValidateAfterInactivity( -1 );
+        assertSame( wagon, pool.borrowWagon( KEY, 0 ) );
+        assertNull( pool.borrowWagon( KEY, 0 ) );
+    }
+
+    @Test
+    public void testInvalidateDisconnectsIdleWagons()
+        throws Exception
+    {
+        pool.borrowWagon( KEY, 0 );
+        pool.borrowWagon( KEY, 0 );
+        pool.returnWagon( KEY, createWagon() );
+
+        pool.invalidateWagon( KEY, createWagon() );
+        assertEquals( 0, pool.getActiveCount() );
+        assertEquals( 0, pool.getIdleCount() );
+        assertEquals( 2, pool.getInvalidationCount() );
+        assertNull( pool.borrowWagon( KEY, 0 ) );
+    }
+
+    @Test
+    public void testWithoutPooling()
+        throws Exception
+    {
+        NetworkConfiguration networkConfiguration = new NetworkConfiguration();
+        networkConfiguration.setUsePooling( false );
+        configuration.getConfiguration().setNetworkConfiguration( networkConfiguration );
+
+        pool.borrowWagon( KEY, 0 );
+        pool.returnWagon( KEY, createWagon() );
+        assertEquals( 0, pool.getIdleCount() );
+        assertNull( pool.borrowWagon( KEY, 0 ) );
+    }
+
+    private static Wagon createWagon()
+    {
+        return (Wagon) MockControl.createNiceControl( Wagon.class ).getMock();
+    }
+}
@@ -20,10 +20,12 @@ package org.apache.archiva.admin.model.admin;
 
 import org.apache.archiva.admin.model.AuditInformation;
 import org.apache.archiva.admin.model.RepositoryAdminException;
+import org.apache.archiva.admin.model.beans.CassandraConfiguration;
 import org.apache.archiva.admin.model.beans.FileType;
 import org.apache.archiva.admin.model.beans.LegacyArtifactPath;
 import org.apache.archiva.admin.model.beans.NetworkConfiguration;
 import org.apache.archiva.admin.model.beans.OrganisationInformation;
+import org.apache.archiva.admin.model.beans.RepositoryScanningConfiguration;
 import org.apache.archiva.admin.model.beans.UiConfiguration;
 
 import java.util.List;
@@ -104,4 +106,28 @@ public interface ArchivaAdministration
     void setNetworkConfiguration( NetworkConfiguration networkConfiguration )
         throws RepositoryAdminException;
 
+    /**
+     * @since 1.4-M4
+     */
+    RepositoryScanningConfiguration getRepositoryScanningConfiguration()
+        throws RepositoryAdminException;
+
+    /**
+     * @since 1.4-M4
+     */
+    void setRepositoryScanningConfiguration( RepositoryScanningConfiguration repositoryScanningConfiguration )
+        throws RepositoryAdminException;
+
+    /**
+     * @since 1.4-M4
+     */
+    CassandraConfiguration getCassandraConfiguration()
+        throws RepositoryAdminException;
+
+    /**
+     * @since 1.4-M4
+     */
+    void setCassandraConfiguration( CassandraConfiguration cassandraConfiguration )
+        throws RepositoryAdminException;
+
 }
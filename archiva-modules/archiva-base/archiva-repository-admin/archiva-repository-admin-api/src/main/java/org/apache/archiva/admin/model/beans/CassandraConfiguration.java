@@ -0,0 +1,78 @@
+package org.apache.archiva.admin.model.beans;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * The settings of the Cassandra metadata storage, applied when the storage starts.
+ *
+ * @since 1.4-M4
+ */
+@XmlRootElement( name = "cassandraConfiguration" )
+public class CassandraConfiguration
+    implements Serializable
+{
+    /**
+     * maximum number of mutations written to Cassandra in one batch.
+     */
+    private int batchSize = 500;
+
+    /**
+     * write the batches of a saved session in a background thread.
+     */
+    private boolean asyncFlush = false;
+
+    public CassandraConfiguration()
+    {
+        // no op
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public void setBatchSize( int batchSize )
+    {
+        this.batchSize = batchSize;
+    }
+
+    public boolean isAsyncFlush()
+    {
+        return asyncFlush;
+    }
+
+    public void setAsyncFlush( boolean asyncFlush )
+    {
+        this.asyncFlush = asyncFlush;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append( "CassandraConfiguration" );
+        sb.append( "{batchSize=" ).append( batchSize );
+        sb.append( ", asyncFlush=" ).append( asyncFlush );
+        sb.append( '}' );
+        return sb.toString();
+    }
+}
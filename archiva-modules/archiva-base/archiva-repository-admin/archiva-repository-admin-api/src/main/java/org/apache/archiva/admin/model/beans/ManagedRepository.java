@@ -75,6 +75,12 @@ public class ManagedRepository
      */
     private boolean skipPackedIndexCreation;
 
+    /**
+     * delay before querying the next proxy connectors concurrently, -1 to query them one after the other
+     * @since 1.4-M3
+     */
+    private int proxyHedgeDelay = -1;
+
     public ManagedRepository()
     {
         // no op
@@ -252,6 +258,16 @@ public class ManagedRepository
         this.skipPackedIndexCreation = skipPackedIndexCreation;
     }
 
+    public int getProxyHedgeDelay()
+    {
+        return proxyHedgeDelay;
+    }
+
+    public void setProxyHedgeDelay( int proxyHedgeDelay )
+    {
+        this.proxyHedgeDelay = proxyHedgeDelay;
+    }
+
     @Override
     public String toString()
     {
@@ -271,6 +287,7 @@ public class ManagedRepository
         sb.append( ", stageRepoNeeded=" ).append( stageRepoNeeded );
         sb.append( ", resetStats=" ).append( resetStats );
         sb.append( ", skipPackedIndexCreation=" ).append( skipPackedIndexCreation );
+        sb.append( ", proxyHedgeDelay=" ).append( proxyHedgeDelay );
         sb.append( '}' );
         return sb.toString();
     }
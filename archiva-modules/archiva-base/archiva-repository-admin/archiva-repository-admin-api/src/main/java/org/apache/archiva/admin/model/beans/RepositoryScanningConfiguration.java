@@ -0,0 +1,126 @@
+package org.apache.archiva.admin.model.beans;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * The settings of the repository scans. The file types and the consumers are administered on their own.
+ *
+ * @since 1.4-M4
+ */
+@XmlRootElement( name = "repositoryScanningConfiguration" )
+public class RepositoryScanningConfiguration
+    implements Serializable
+{
+    /**
+     * number of threads giving the files of a repository to the consumers during a scan.
+     */
+    private int scanningThreads = 1;
+
+    /**
+     * whether the scans of a repository record the state of its directories.
+     */
+    private boolean scanJournal = false;
+
+    /**
+     * whether the consumers validating and creating the checksums of the artifacts keep their checksums.
+     */
+    private boolean checksumCache = false;
+
+    /**
+     * percentage of the unmodified artifacts whose checksums are calculated again every day.
+     */
+    private int checksumVerificationRate = 10;
+
+    /**
+     * number of files whose artifacts are added to the metadata repository before they are saved together.
+     */
+    private int metadataSaveInterval = 100;
+
+    public RepositoryScanningConfiguration()
+    {
+        // no op
+    }
+
+    public int getScanningThreads()
+    {
+        return scanningThreads;
+    }
+
+    public void setScanningThreads( int scanningThreads )
+    {
+        this.scanningThreads = scanningThreads;
+    }
+
+    public boolean isScanJournal()
+    {
+        return scanJournal;
+    }
+
+    public void setScanJournal( boolean scanJournal )
+    {
+        this.scanJournal = scanJournal;
+    }
+
+    public boolean isChecksumCache()
+    {
+        return checksumCache;
+    }
+
+    public void setChecksumCache( boolean checksumCache )
+    {
+        this.checksumCache = checksumCache;
+    }
+
+    public int getChecksumVerificationRate()
+    {
+        return checksumVerificationRate;
+    }
+
+    public void setChecksumVerificationRate( int checksumVerificationRate )
+    {
+        this.checksumVerificationRate = checksumVerificationRate;
+    }
+
+    public int getMetadataSaveInterval()
+    {
+        return metadataSaveInterval;
+    }
+
+    public void setMetadataSaveInterval( int metadataSaveInterval )
+    {
+        this.metadataSaveInterval = metadataSaveInterval;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append( "RepositoryScanningConfiguration" );
+        sb.append( "{scanningThreads=" ).append( scanningThreads );
+        sb.append( ", scanJournal=" ).append( scanJournal );
+        sb.append( ", checksumCache=" ).append( checksumCache );
+        sb.append( ", checksumVerificationRate=" ).append( checksumVerificationRate );
+        sb.append( ", metadataSaveInterval=" ).append( metadataSaveInterval );
+        sb.append( '}' );
+        return sb.toString();
+    }
+}
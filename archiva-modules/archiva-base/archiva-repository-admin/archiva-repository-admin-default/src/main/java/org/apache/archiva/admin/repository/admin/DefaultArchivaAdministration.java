@@ -22,10 +22,12 @@ import net.sf.beanlib.provider.replicator.BeanReplicator;
 import org.apache.archiva.admin.model.AuditInformation;
 import org.apache.archiva.admin.model.RepositoryAdminException;
 import org.apache.archiva.admin.model.admin.ArchivaAdministration;
+import org.apache.archiva.admin.model.beans.CassandraConfiguration;
 import org.apache.archiva.admin.model.beans.FileType;
 import org.apache.archiva.admin.model.beans.LegacyArtifactPath;
 import org.apache.archiva.admin.model.beans.NetworkConfiguration;
 import org.apache.archiva.admin.model.beans.OrganisationInformation;
+import org.apache.archiva.admin.model.beans.RepositoryScanningConfiguration;
 import org.apache.archiva.admin.model.beans.UiConfiguration;
 import org.apache.archiva.admin.repository.AbstractRepositoryAdmin;
 import org.apache.archiva.audit.AuditEvent;
@@ -386,6 +388,64 @@ public class DefaultArchivaAdministration
         saveConfiguration( configuration );
     }
 
+    public RepositoryScanningConfiguration getRepositoryScanningConfiguration()
+        throws RepositoryAdminException
+    {
+        org.apache.archiva.configuration.RepositoryScanningConfiguration repositoryScanning =
+            getArchivaConfiguration().getConfiguration().getRepositoryScanning();
+
+        if ( repositoryScanning == null )
+        {
+            return null;
+        }
+        return new BeanReplicator().replicateBean( repositoryScanning, RepositoryScanningConfiguration.class );
+    }
+
+    public void setRepositoryScanningConfiguration( RepositoryScanningConfiguration repositoryScanningConfiguration )
+        throws RepositoryAdminException
+    {
+        Configuration configuration = getArchivaConfiguration().getConfiguration();
+        // only the settings are replaced, the file types and the consumers are kept
+        org.apache.archiva.configuration.RepositoryScanningConfiguration repositoryScanning =
+            configuration.getRepositoryScanning();
+        repositoryScanning.setScanningThreads( repositoryScanningConfiguration.getScanningThreads() );
+        repositoryScanning.setScanJournal( repositoryScanningConfiguration.isScanJournal() );
+        repositoryScanning.setChecksumCache( repositoryScanningConfiguration.isChecksumCache() );
+        repositoryScanning.setChecksumVerificationRate( repositoryScanningConfiguration.getChecksumVerificationRate() );
+        repositoryScanning.setMetadataSaveInterval( repositoryScanningConfiguration.getMetadataSaveInterval() );
+        saveConfiguration( configuration );
+    }
+
+    public CassandraConfiguration getCassandraConfiguration()
+        throws RepositoryAdminException
+    {
+        org.apache.archiva.configuration.CassandraConfiguration cassandraConfiguration =
+            getArchivaConfiguration().getConfiguration().getCassandraConfiguration();
+
+        if ( cassandraConfiguration == null )
+        {
+            return null;
+        }
+        return new BeanReplicator().replicateBean( cassandraConfiguration, CassandraConfiguration.class );
+    }
+
+    public void setCassandraConfiguration( CassandraConfiguration cassandraConfiguration )
+        throws RepositoryAdminException
+    {
+        Configuration configuration = getArchivaConfiguration().getConfiguration();
+        if ( cassandraConfiguration == null )
+        {
+            configuration.setCassandraConfiguration( null );
+        }
+        else
+        {
+            configuration.setCassandraConfiguration(
+                new BeanReplicator().replicateBean( cassandraConfiguration,
+                                                    org.apache.archiva.configuration.CassandraConfiguration.class ) );
+        }
+        saveConfiguration( configuration );
+    }
+
     protected void setupWagon( NetworkConfiguration networkConfiguration )
     {
         if ( networkConfiguration == null )
@@ -33,6 +33,7 @@ import org.apache.archiva.configuration.ProxyConnectorConfiguration;
 import org.apache.archiva.configuration.RepositoryGroupConfiguration;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
+import org.apache.archiva.metadata.repository.MetadataResolverCache;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.apache.archiva.metadata.repository.stats.RepositoryStatisticsManager;
@@ -93,6 +94,9 @@ public class DefaultManagedRepositoryAdmin
     @Inject
     private RepositoryStatisticsManager repositoryStatisticsManager;
 
+    @Inject
+    private MetadataResolverCache metadataResolverCache;
+
     @Inject
     private PlexusSisuBridge plexusSisuBridge;
 
@@ -175,6 +179,7 @@ public class DefaultManagedRepositoryAdmin
                                        repoConfig.isStageRepoNeeded() );
             repo.setDescription( repoConfig.getDescription() );
             repo.setSkipPackedIndexCreation( repoConfig.isSkipPackedIndexCreation() );
+            repo.setProxyHedgeDelay( repoConfig.getProxyHedgeDelay() );
             managedRepos.add( repo );
         }
 
@@ -224,7 +229,8 @@ public class DefaultManagedRepositoryAdmin
                                   managedRepository.getDaysOlder(), managedRepository.getRetentionCount(),
                                   managedRepository.isDeleteReleasedSnapshots(), managedRepository.getDescription(),
                                   managedRepository.isSkipPackedIndexCreation(), managedRepository.isScanned(),
-                                  auditInformation, getArchivaConfiguration().getConfiguration() ) != null;
+                                  managedRepository.getProxyHedgeDelay(), auditInformation,
+                                  getArchivaConfiguration().getConfiguration() ) != null;
 
         createIndexContext( managedRepository );
         return res;
@@ -238,6 +244,7 @@ public class DefaultManagedRepositoryAdmin
                                                                  String indexDir, int daysOlder, int retentionCount,
                                                                  boolean deteleReleasedSnapshots, String description,
                                                                  boolean skipPackedIndexCreation, boolean scanned,
+                                                                 int proxyHedgeDelay,
                                                                  AuditInformation auditInformation,
                                                                  Configuration config )
         throws RepositoryAdminException
@@ -261,6 +268,7 @@ public class DefaultManagedRepositoryAdmin
         repository.setIndexDir( indexDir );
         repository.setDescription( description );
         repository.setSkipPackedIndexCreation( skipPackedIndexCreation );
+        repository.setProxyHedgeDelay( proxyHedgeDelay );
         repository.setStageRepoNeeded( stageRepoNeeded );
 
         try
@@ -385,6 +393,7 @@ public class DefaultManagedRepositoryAdmin
                 log.debug( "call repositoryStatisticsManager.deleteStatistics" );
                 getRepositoryStatisticsManager().deleteStatistics( metadataRepository, repository.getId() );
                 repositorySession.save();
+                metadataResolverCache.invalidate( repository.getId() );
             }
             catch ( MetadataRepositoryException e )
             {
@@ -499,7 +508,8 @@ public class DefaultManagedRepositoryAdmin
                                   managedRepository.getDaysOlder(), managedRepository.getRetentionCount(),
                                   managedRepository.isDeleteReleasedSnapshots(), managedRepository.getDescription(),
                                   managedRepository.isSkipPackedIndexCreation(), managedRepository.isScanned(),
-                                  auditInformation, getArchivaConfiguration().getConfiguration() );
+                                  managedRepository.getProxyHedgeDelay(), auditInformation,
+                                  getArchivaConfiguration().getConfiguration() );
 
         // Save the repository configuration.
         RepositorySession repositorySession = getRepositorySessionFactory().createSession();
@@ -703,6 +713,7 @@ public class DefaultManagedRepositoryAdmin
         stagingRepository.setScanned( repository.isScanned() );
         stagingRepository.setSnapshots( repository.isSnapshots() );
         stagingRepository.setSkipPackedIndexCreation( repository.isSkipPackedIndexCreation() );
+        stagingRepository.setProxyHedgeDelay( repository.getProxyHedgeDelay() );
         // do not duplicate description
         //stagingRepository.getDescription("")
         return stagingRepository;
@@ -24,6 +24,7 @@ import org.apache.archiva.admin.model.beans.FileType;
 import org.apache.archiva.admin.model.beans.LegacyArtifactPath;
 import org.apache.archiva.admin.model.beans.NetworkConfiguration;
 import org.apache.archiva.admin.model.beans.OrganisationInformation;
+import org.apache.archiva.admin.model.beans.RepositoryScanningConfiguration;
 import org.apache.archiva.admin.model.beans.UiConfiguration;
 import org.apache.archiva.admin.repository.AbstractRepositoryAdminTest;
 import org.apache.archiva.audit.AuditEvent;
@@ -258,4 +259,31 @@ public class ArchivaAdministrationTest
         assertEquals( 30, networkConfiguration.getMaxTotalPerHost() );
 
     }
+
+    @Test
+    public void repositoryScanningConfiguration()
+        throws Exception
+    {
+        RepositoryScanningConfiguration oldScanning = archivaAdministration.getRepositoryScanningConfiguration();
+        assertNotNull( oldScanning );
+        // assert default values
+        assertEquals( 1, oldScanning.getScanningThreads() );
+        assertEquals( 100, oldScanning.getMetadataSaveInterval() );
+
+        int fileTypes = archivaAdministration.getFileTypes().size();
+
+        RepositoryScanningConfiguration scanning = archivaAdministration.getRepositoryScanningConfiguration();
+        scanning.setScanningThreads( 4 );
+        scanning.setMetadataSaveInterval( 20 );
+
+        archivaAdministration.setRepositoryScanningConfiguration( scanning );
+
+        scanning = archivaAdministration.getRepositoryScanningConfiguration();
+
+        assertEquals( 4, scanning.getScanningThreads() );
+        assertEquals( 20, scanning.getMetadataSaveInterval() );
+        assertEquals( fileTypes, archivaAdministration.getFileTypes().size() );
+
+        archivaAdministration.setRepositoryScanningConfiguration( oldScanning );
+    }
 }
@@ -21,16 +21,21 @@ package org.apache.archiva.repository.scanner;
 
 import org.apache.archiva.admin.model.RepositoryAdminException;
 import org.apache.archiva.admin.model.beans.ManagedRepository;
+import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.FileTypes;
+import org.apache.archiva.configuration.RepositoryScanningConfiguration;
 import org.apache.archiva.consumers.InvalidRepositoryContentConsumer;
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
 import org.apache.archiva.consumers.RepositoryContentConsumer;
 import org.apache.commons.collections.CollectionUtils;
-import org.codehaus.plexus.util.DirectoryWalker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -45,6 +50,8 @@ import java.util.Set;
 public class DefaultRepositoryScanner
     implements RepositoryScanner
 {
+    private Logger log = LoggerFactory.getLogger( DefaultRepositoryScanner.class );
+
     /**
      *
      */
@@ -57,6 +64,10 @@ public class DefaultRepositoryScanner
     @Inject
     private RepositoryContentConsumers consumerUtil;
 
+    @Inject
+    @Named( value = "archivaConfiguration#default" )
+    private ArchivaConfiguration archivaConfiguration;
+
     private Set<RepositoryScannerInstance> inProgressScans = new LinkedHashSet<RepositoryScannerInstance>();
 
     public RepositoryScanStatistics scan( ManagedRepository repository, long changesSince )
@@ -81,6 +92,46 @@ public class DefaultRepositoryScanner
                                           List<InvalidRepositoryContentConsumer> invalidContentConsumers,
                                           List<String> ignoredContentPatterns, long changesSince )
         throws RepositoryScannerException
+    {
+        RepositoryScanningConfiguration scanning = archivaConfiguration.getConfiguration().getRepositoryScanning();
+        return scan( repository, knownContentConsumers, invalidContentConsumers, ignoredContentPatterns, changesSince,
+                     scanning.getScanningThreads(), scanning.isScanJournal() );
+    }
+
+    /**
+     * Scan the repository for content changes, with a given number of threads.
+     *
+     * @param threads the number of threads giving the files to the consumers, 1 to give them one after the other
+     * @see #scan(ManagedRepository, List, List, List, long)
+     * @since 1.4-M3
+     */
+    public RepositoryScanStatistics scan( ManagedRepository repository,
+                                          List<KnownRepositoryContentConsumer> knownContentConsumers,
+                                          List<InvalidRepositoryContentConsumer> invalidContentConsumers,
+                                          List<String> ignoredContentPatterns, long changesSince, int threads )
+        throws RepositoryScannerException
+    {
+        return scan( repository, knownContentConsumers, invalidContentConsumers, ignoredContentPatterns, changesSince,
+                     threads, false );
+    }
+
+    /**
+     * Scan the repository for content changes, with a given number of threads and optionally a journal of its
+     * directories.
+     * <p/>
+     * With the journal, a scan of the changes does not list the directories unchanged since the previous scan, unless
+     * a consumer processes the unmodified files.
+     *
+     * @param journal whether to read and write the {@link RepositoryScanJournal} of the repository
+     * @see #scan(ManagedRepository, List, List, List, long, int)
+     * @since 1.4-M3
+     */
+    public RepositoryScanStatistics scan( ManagedRepository repository,
+                                          List<KnownRepositoryContentConsumer> knownContentConsumers,
+                                          List<InvalidRepositoryContentConsumer> invalidContentConsumers,
+                                          List<String> ignoredContentPatterns, long changesSince, int threads,
+                                          boolean journal )
+        throws RepositoryScannerException
     {
         if ( repository == null )
         {
@@ -113,44 +164,75 @@ public class DefaultRepositoryScanner
             allExcludes.addAll( ignoredContentPatterns );
         }
 
+        allExcludes.add( RepositoryScanJournal.JOURNAL_DIRECTORY + "/**" );
+
         // Scan All Content. (intentional)
         allIncludes.add( "**/*" );
 
         // Setup Directory Walker
-        DirectoryWalker dirWalker = new DirectoryWalker();
+        RepositoryWalker dirWalker = new RepositoryWalker( repositoryBase, allIncludes, allExcludes, true );
 
-        dirWalker.setBaseDir( repositoryBase );
-
-        dirWalker.setIncludes( allIncludes );
-        dirWalker.setExcludes( allExcludes );
+        RepositoryScanJournal scanJournal = null;
+        if ( journal )
+        {
+            scanJournal = RepositoryScanJournal.load( repositoryBase, String.valueOf( allExcludes.hashCode() ) );
+            dirWalker.setJournal( scanJournal, changesSince != RepositoryScanner.FRESH_SCAN
+                && !processUnmodified( knownContentConsumers ) && !processUnmodified( invalidContentConsumers ) );
+        }
 
         // Setup the Scan Instance
         RepositoryScannerInstance scannerInstance =
-            new RepositoryScannerInstance( repository, knownContentConsumers, invalidContentConsumers, changesSince );
+            new RepositoryScannerInstance( repository, knownContentConsumers, invalidContentConsumers, changesSince,
+                                           threads );
 
         inProgressScans.add( scannerInstance );
 
         RepositoryScanStatistics stats;
         try
         {
-            dirWalker.addDirectoryWalkListener( scannerInstance );
-
             // Execute scan.
-            dirWalker.scan();
+            dirWalker.walk( scannerInstance );
 
             stats = scannerInstance.getStatistics();
+            stats.increaseFileCount( dirWalker.getSkippedFileCount() );
+
+            if ( scanJournal != null )
+            {
+                try
+                {
+                    scanJournal.save();
+                }
+                catch ( IOException e )
+                {
+                    log.warn( "Unable to write the scan journal of {}: {}", repository.getId(), e.getMessage() );
+                }
+            }
 
             stats.setKnownConsumers( gatherIds( knownContentConsumers ) );
             stats.setInvalidConsumers( gatherIds( invalidContentConsumers ) );
         }
         finally
         {
+            // in case the walk failed before the end
+            scannerInstance.stopThreads();
             inProgressScans.remove( scannerInstance );
         }
 
         return stats;
     }
 
+    private boolean processUnmodified( List<? extends RepositoryContentConsumer> consumers )
+    {
+        for ( RepositoryContentConsumer consumer : consumers )
+        {
+            if ( consumer.isProcessUnmodified() )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private List<String> gatherIds( List<? extends RepositoryContentConsumer> consumers )
     {
         List<String> ids = new ArrayList<String>();
@@ -0,0 +1,383 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Journal of the directories of a repository as they were at its last scan.
+ * <p/>
+ * It records the modification time of each directory and the number of files in it, so that a scan of the changes
+ * does not list the directories whose modification time is unchanged: the file system updates it whenever an entry
+ * of the directory is created, deleted or renamed. The files overwritten by a deployment, as the metadata, do not
+ * change it, so the deployments record the directories they modify with {@link #markModified(File, File)}.
+ * <p/>
+ * The journal is stored in the {@link #JOURNAL_DIRECTORY} directory of the repository. The directories modified by
+ * the deployments are appended to it, until the next scan writes it again.
+ *
+ * @since 1.4-M3
+ */
+public class RepositoryScanJournal
+{
+    public static final String JOURNAL_DIRECTORY = ".archiva";
+
+    private static final String JOURNAL_FILE = "scan-journal";
+
+    /**
+     * A directory modified less than this delay before it is listed may be modified again without its modification
+     * time changing, so it is listed again by the next scan.
+     */
+    public static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+    private static final String VERSION = "1";
+
+    private static final String HEADER = "V";
+
+    private static final String DIRECTORY = "D";
+
+    private static final String MODIFIED = "M";
+
+    /**
+     * Serializes the deployments appending to the journals with the scans reading and writing them.
+     */
+    private static final Object LOCK = new Object();
+
+    private static final Logger log = LoggerFactory.getLogger( RepositoryScanJournal.class );
+
+    private final File file;
+
+    private final String key;
+
+    private final Map<String, Directory> directories = new HashMap<String, Directory>();
+
+    private final Map<String, List<String>> subdirectories = new HashMap<String, List<String>>();
+
+    private final Set<String> modifiedDirectories = new HashSet<String>();
+
+    private final Map<String, Directory> scannedDirectories = new HashMap<String, Directory>();
+
+    private long length;
+
+    private RepositoryScanJournal( File file, String key )
+    {
+        this.file = file;
+        this.key = key;
+    }
+
+    /**
+     * @param key identifies how the repository is scanned, the journal of a scan with another key being ignored
+     * @return the journal of the last scan of the repository, empty if there is none
+     */
+    public static RepositoryScanJournal load( File repositoryDirectory, String key )
+    {
+        RepositoryScanJournal journal =
+            new RepositoryScanJournal( new File( new File( repositoryDirectory, JOURNAL_DIRECTORY ), JOURNAL_FILE ),
+                                       key );
+        synchronized ( LOCK )
+        {
+            try
+            {
+                journal.read();
+            }
+            catch ( IOException e )
+            {
+                log.warn( "Unable to read the scan journal {}: {}", journal.file, e.getMessage() );
+                journal.directories.clear();
+                journal.subdirectories.clear();
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Records that a file of a repository was written, so that the next scan lists its directory.
+     */
+    public static void markModified( File repositoryDirectory, File file )
+    {
+        String path = getPath( repositoryDirectory, file.getParentFile() );
+        if ( path == null )
+        {
+            return;
+        }
+
+        File journalFile = new File( new File( repositoryDirectory, JOURNAL_DIRECTORY ), JOURNAL_FILE );
+        synchronized ( LOCK )
+        {
+            // without a journal, the next scan lists all the directories
+            if ( !journalFile.exists() )
+            {
+                return;
+            }
+
+            Writer writer = null;
+            try
+            {
+                writer = new OutputStreamWriter( new FileOutputStream( journalFile, true ), "UTF-8" );
+                writer.write( MODIFIED + '\t' + path + '\n' );
+            }
+            catch ( IOException e )
+            {
+                log.warn( "Unable to append to the scan journal {}: {}", journalFile, e.getMessage() );
+            }
+            finally
+            {
+                IOUtils.closeQuietly( writer );
+            }
+        }
+    }
+
+    /**
+     * @param path         the path of the directory in the repository, ending with a <code>/</code> unless it is the
+     *                     repository itself
+     * @param lastModified the current modification time of the directory
+     * @return the number of files of the directory at the last scan, or <code>-1</code> if it must be listed again
+     */
+    public int getUnchangedFileCount( String path, long lastModified )
+    {
+        Directory directory = directories.get( path );
+        if ( directory == null || directory.lastModified <= 0 || directory.lastModified != lastModified
+            || modifiedDirectories.contains( path ) )
+        {
+            return -1;
+        }
+        return directory.fileCount;
+    }
+
+    /**
+     * @return the names of the subdirectories of a directory at the last scan
+     */
+    public List<String> getSubdirectories( String path )
+    {
+        List<String> names = subdirectories.get( path );
+        return names == null ? Collections.<String>emptyList() : names;
+    }
+
+    /**
+     * Records the state of a directory at this scan.
+     *
+     * @param lastModified the modification time of the directory, or <code>0</code> if it must be listed by the next
+     *                     scan
+     */
+    public void record( String path, long lastModified, int fileCount )
+    {
+        scannedDirectories.put( path, new Directory( lastModified, fileCount ) );
+    }
+
+    /**
+     * Writes the directories recorded by this scan, with the directories modified by the deployments since the
+     * journal was read.
+     */
+    public void save()
+        throws IOException
+    {
+        synchronized ( LOCK )
+        {
+            Set<String> modifications = readModifications();
+
+            File directory = file.getParentFile();
+            if ( !directory.exists() && !directory.mkdirs() )
+            {
+                throw new IOException( "Unable to create " + directory );
+            }
+
+            File tmpFile = new File( directory, JOURNAL_FILE + ".tmp" );
+            Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( tmpFile ), "UTF-8" ) );
+            try
+            {
+                writer.write( HEADER + '\t' + VERSION + '\t' + key + '\n' );
+                for ( Map.Entry<String, Directory> entry : scannedDirectories.entrySet() )
+                {
+                    writer.write( DIRECTORY + '\t' + entry.getValue().lastModified + '\t' + entry.getValue().fileCount
+                                      + '\t' + entry.getKey() + '\n' );
+                }
+                for ( String path : modifications )
+                {
+                    writer.write( MODIFIED + '\t' + path + '\n' );
+                }
+            }
+            finally
+            {
+                writer.close();
+            }
+
+            if ( !tmpFile.renameTo( file ) && !( file.delete() && tmpFile.renameTo( file ) ) )
+            {
+                throw new IOException( "Unable to replace " + file );
+            }
+        }
+    }
+
+    private void read()
+        throws IOException
+    {
+        if ( !file.exists() )
+        {
+            return;
+        }
+
+        length = file.length();
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+        try
+        {
+            String line = reader.readLine();
+            if ( line == null || !line.equals( HEADER + '\t' + VERSION + '\t' + key ) )
+            {
+                log.debug( "Ignoring the scan journal {} written by another kind of scan", file );
+                return;
+            }
+
+            while ( ( line = reader.readLine() ) != null )
+            {
+                if ( line.startsWith( MODIFIED + '\t' ) )
+                {
+                    modifiedDirectories.add( line.substring( 2 ) );
+                }
+                else if ( line.startsWith( DIRECTORY + '\t' ) )
+                {
+                    String[] fields = line.split( "\t", 4 );
+                    if ( fields.length < 4 )
+                    {
+                        throw new IOException( "Invalid line: " + line );
+                    }
+                    try
+                    {
+                        addDirectory( fields[3],
+                                      new Directory( Long.parseLong( fields[1] ), Integer.parseInt( fields[2] ) ) );
+                    }
+                    catch ( NumberFormatException e )
+                    {
+                        throw new IOException( "Invalid line: " + line );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly( reader );
+        }
+    }
+
+    private void addDirectory( String path, Directory directory )
+    {
+        directories.put( path, directory );
+        if ( path.length() > 0 )
+        {
+            String parent = path.substring( 0, path.lastIndexOf( '/', path.length() - 2 ) + 1 );
+            List<String> names = subdirectories.get( parent );
+            if ( names == null )
+            {
+                names = new ArrayList<String>();
+                subdirectories.put( parent, names );
+            }
+            names.add( path.substring( parent.length(), path.length() - 1 ) );
+        }
+    }
+
+    /**
+     * @return the directories appended by the deployments since the journal was read
+     */
+    private Set<String> readModifications()
+        throws IOException
+    {
+        Set<String> modifications = new LinkedHashSet<String>();
+        if ( !file.exists() || file.length() <= length )
+        {
+            return modifications;
+        }
+
+        RandomAccessFile input = new RandomAccessFile( file, "r" );
+        try
+        {
+            byte[] bytes = new byte[(int) ( input.length() - length )];
+            input.seek( length );
+            input.readFully( bytes );
+            for ( String line : new String( bytes, "UTF-8" ).split( "\n" ) )
+            {
+                if ( line.startsWith( MODIFIED + '\t' ) )
+                {
+                    modifications.add( line.substring( 2 ) );
+                }
+            }
+        }
+        finally
+        {
+            input.close();
+        }
+        return modifications;
+    }
+
+    /**
+     * @return the path of a directory in the repository, as given to {@link #record(String, long, int)}, or
+     *         <code>null</code> if it is not in the repository
+     */
+    private static String getPath( File repositoryDirectory, File directory )
+    {
+        if ( directory == null )
+        {
+            return null;
+        }
+
+        String base = repositoryDirectory.getAbsolutePath();
+        String path = directory.getAbsolutePath();
+        if ( path.equals( base ) )
+        {
+            return "";
+        }
+        if ( !path.startsWith( base + File.separator ) )
+        {
+            return null;
+        }
+        return path.substring( base.length() + 1 ).replace( File.separatorChar, '/' ) + "/";
+    }
+
+    private static class Directory
+    {
+        private final long lastModified;
+
+        private final int fileCount;
+
+        private Directory( long lastModified, int fileCount )
+        {
+            this.lastModified = lastModified;
+            this.fileCount = fileCount;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * RepositoryScanStatistics - extension to the RepositoryContentStatistics model.
@@ -60,14 +61,14 @@ public class RepositoryScanStatistics
     private long duration = 0;
 
     /**
-     * Field totalFileCount
+     * Field totalFileCount, increased concurrently by the threads of the scan
      */
-    private long totalFileCount = 0;
+    private final AtomicLong totalFileCount = new AtomicLong();
 
     /**
-     * Field newFileCount
+     * Field newFileCount, increased concurrently by the threads of the scan
      */
-    private long newFileCount = 0;
+    private final AtomicLong newFileCount = new AtomicLong();
 
     /**
      * Field totalSize
@@ -97,14 +98,20 @@ public class RepositoryScanStatistics
 
     public void increaseFileCount()
     {
-        long count = getTotalFileCount();
-        this.totalFileCount = ++count;
+        totalFileCount.incrementAndGet();
+    }
+
+    /**
+     * @since 1.4-M3
+     */
+    public void increaseFileCount( long count )
+    {
+        totalFileCount.addAndGet( count );
     }
 
     public void increaseNewFileCount()
     {
-        long count = getNewFileCount();
-        this.newFileCount = ++count;
+        newFileCount.incrementAndGet();
     }
 
     public void setKnownConsumers( List<String> consumers )
@@ -223,12 +230,12 @@ public class RepositoryScanStatistics
 
     public long getTotalFileCount()
     {
-        return totalFileCount;
+        return totalFileCount.get();
     }
 
     public long getNewFileCount()
     {
-        return newFileCount;
+        return newFileCount.get();
     }
 
     public long getTotalSize()
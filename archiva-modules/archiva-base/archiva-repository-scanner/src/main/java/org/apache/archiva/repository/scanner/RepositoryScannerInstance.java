@@ -23,7 +23,9 @@ import org.apache.archiva.admin.model.beans.ManagedRepository;
 import org.apache.archiva.common.utils.BaseFile;
 import org.apache.archiva.consumers.InvalidRepositoryContentConsumer;
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
-import org.apache.archiva.consumers.functors.ConsumerWantsFilePredicate;
+import org.apache.archiva.consumers.RepositoryContentConsumer;
+import org.apache.archiva.consumers.ThreadSafeConsumer;
+import org.apache.archiva.repository.scanner.functors.CompiledConsumerWantsFilePredicate;
 import org.apache.archiva.repository.scanner.functors.ConsumerProcessFileClosure;
 import org.apache.archiva.repository.scanner.functors.TriggerBeginScanClosure;
 import org.apache.archiva.repository.scanner.functors.TriggerScanCompletedClosure;
@@ -36,15 +38,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * RepositoryScannerInstance
- *
- *
+ * <p/>
+ * With several threads, the walk only enumerates the files: they are put in a bounded queue, from which the
+ * threads take them to give them to the consumers. The consumers that are not {@link ThreadSafeConsumer}s are given
+ * the files by a single thread, in the order the files were taken from the queue rather than the walk order. Each
+ * file is still given to the consumers in their configured order: the consumers following one that is not thread
+ * safe are given the file by the single thread as well.
  */
 public class RepositoryScannerInstance
     implements DirectoryWalkListener
@@ -69,12 +82,46 @@ public class RepositoryScannerInstance
 
     private ConsumerProcessFileClosure consumerProcessFile;
 
-    private ConsumerWantsFilePredicate consumerWantsFile;
+    private CompiledConsumerWantsFilePredicate consumerWantsFile;
 
     private Map<String, Long> consumerTimings;
 
     private Map<String, Long> consumerCounts;
 
+    /**
+     * Number of files waiting in the queue per thread, bounding how far the walk goes ahead of the consumers.
+     */
+    private static final int QUEUED_FILES_PER_THREAD = 100;
+
+    /**
+     * Marks the end of a queue.
+     */
+    private static final Runnable END = new Runnable()
+    {
+        public void run()
+        {
+            // no op
+        }
+    };
+
+    private int threads = 1;
+
+    private ExecutorService executor;
+
+    /**
+     * The files to give to the consumers.
+     */
+    private BlockingQueue<Runnable> fileQueue;
+
+    /**
+     * The files to give to the consumers that are not thread safe, one after the other.
+     */
+    private BlockingQueue<Runnable> serialQueue;
+
+    private List<Future<?>> fileRunners;
+
+    private Future<?> serialRunner;
+
     public RepositoryScannerInstance( ManagedRepository repository,
                                       List<KnownRepositoryContentConsumer> knownConsumerList,
                                       List<InvalidRepositoryContentConsumer> invalidConsumerList )
@@ -83,16 +130,14 @@ public class RepositoryScannerInstance
         this.knownConsumers = knownConsumerList;
         this.invalidConsumers = invalidConsumerList;
 
-        consumerTimings = new HashMap<String, Long>();
-        consumerCounts = new HashMap<String, Long>();
+        consumerTimings = new ConcurrentHashMap<String, Long>();
+        consumerCounts = new ConcurrentHashMap<String, Long>();
 
         this.consumerProcessFile = new ConsumerProcessFileClosure();
         consumerProcessFile.setExecuteOnEntireRepo( true );
         consumerProcessFile.setConsumerTimings( consumerTimings );
         consumerProcessFile.setConsumerCounts( consumerCounts );
 
-        this.consumerWantsFile = new ConsumerWantsFilePredicate();
-
         stats = new RepositoryScanStatistics();
         stats.setRepositoryId( repository.getId() );
 
@@ -102,10 +147,9 @@ public class RepositoryScannerInstance
         CollectionUtils.forAllDo( knownConsumerList, triggerBeginScan );
         CollectionUtils.forAllDo( invalidConsumerList, triggerBeginScan );
 
-        if ( SystemUtils.IS_OS_WINDOWS )
-        {
-            consumerWantsFile.setCaseSensitive( false );
-        }
+        // the consumers may only know their patterns once the scan began
+        this.consumerWantsFile =
+            new CompiledConsumerWantsFilePredicate( knownConsumerList, !SystemUtils.IS_OS_WINDOWS );
     }
 
     public RepositoryScannerInstance( ManagedRepository repository,
@@ -120,6 +164,20 @@ public class RepositoryScannerInstance
         this.changesSince = changesSince;
     }
 
+    /**
+     * @param threads the number of threads giving the files to the consumers, 1 to give them from the walk
+     * @since 1.4-M3
+     */
+    public RepositoryScannerInstance( ManagedRepository repository,
+                                      List<KnownRepositoryContentConsumer> knownContentConsumers,
+                                      List<InvalidRepositoryContentConsumer> invalidContentConsumers,
+                                      long changesSince, int threads )
+    {
+        this( repository, knownContentConsumers, invalidContentConsumers, changesSince );
+
+        this.threads = Math.max( 1, threads );
+    }
+
     public RepositoryScanStatistics getStatistics()
     {
         return stats;
@@ -139,6 +197,19 @@ public class RepositoryScannerInstance
     {
         log.info( "Walk Started: [{}] {}", this.repository.getId(), this.repository.getLocation() );
         stats.triggerStart();
+
+        if ( threads > 1 )
+        {
+            executor = Executors.newFixedThreadPool( threads + 1 );
+            fileQueue = new ArrayBlockingQueue<Runnable>( threads * QUEUED_FILES_PER_THREAD );
+            serialQueue = new ArrayBlockingQueue<Runnable>( threads * QUEUED_FILES_PER_THREAD );
+            fileRunners = new ArrayList<Future<?>>( threads );
+            for ( int i = 0; i < threads; i++ )
+            {
+                fileRunners.add( executor.submit( new QueueRunner( fileQueue ) ) );
+            }
+            serialRunner = executor.submit( new QueueRunner( serialQueue ) );
+        }
     }
 
     public void directoryWalkStep( int percentage, File file )
@@ -147,17 +218,31 @@ public class RepositoryScannerInstance
 
         stats.increaseFileCount();
 
+        if ( executor != null )
+        {
+            final BaseFile basefile = new BaseFile( repository.getLocation(), file );
+            enqueue( fileQueue, new Runnable()
+            {
+                public void run()
+                {
+                    processFile( basefile );
+                }
+            } );
+            return;
+        }
+
         // consume files regardless - the predicate will check the timestamp
         BaseFile basefile = new BaseFile( repository.getLocation(), file );
 
         // Timestamp finished points to the last successful scan, not this current one.
-        if ( file.lastModified() >= changesSince )
+        long lastModified = file.lastModified();
+        if ( lastModified >= changesSince )
         {
             stats.increaseNewFileCount();
         }
 
         consumerProcessFile.setBasefile( basefile );
-        consumerWantsFile.setBasefile( basefile );
+        consumerWantsFile.setBasefile( basefile, lastModified );
 
         Closure processIfWanted = IfClosure.getInstance( consumerWantsFile, consumerProcessFile );
         CollectionUtils.forAllDo( this.knownConsumers, processIfWanted );
@@ -169,8 +254,139 @@ public class RepositoryScannerInstance
         }
     }
 
+    /**
+     * Gives a file to the consumers from one of the threads of the scan.
+     */
+    private void processFile( BaseFile basefile )
+    {
+        long lastModified = basefile.lastModified();
+        if ( lastModified >= changesSince )
+        {
+            stats.increaseNewFileCount();
+        }
+
+        // the predicate and the closure hold the file, so they can't be shared by the threads
+        CompiledConsumerWantsFilePredicate wantsFile = new CompiledConsumerWantsFilePredicate( consumerWantsFile );
+        wantsFile.setChangesSince( changesSince );
+        wantsFile.setBasefile( basefile, lastModified );
+
+        final ConsumerProcessFileClosure processFile = new ConsumerProcessFileClosure();
+        processFile.setExecuteOnEntireRepo( true );
+        processFile.setConsumerTimings( consumerTimings );
+        processFile.setConsumerCounts( consumerCounts );
+        processFile.setBasefile( basefile );
+
+        final List<RepositoryContentConsumer> serialConsumers = new ArrayList<RepositoryContentConsumer>();
+        for ( KnownRepositoryContentConsumer consumer : knownConsumers )
+        {
+            if ( wantsFile.evaluate( consumer ) )
+            {
+                dispatch( consumer, processFile, serialConsumers );
+            }
+        }
+
+        if ( wantsFile.getWantedFileCount() <= 0 )
+        {
+            // Nothing known processed this file.  It is invalid!
+            for ( InvalidRepositoryContentConsumer consumer : invalidConsumers )
+            {
+                dispatch( consumer, processFile, serialConsumers );
+            }
+        }
+
+        if ( !serialConsumers.isEmpty() )
+        {
+            enqueue( serialQueue, new Runnable()
+            {
+                public void run()
+                {
+                    CollectionUtils.forAllDo( serialConsumers, processFile );
+                }
+            } );
+        }
+    }
+
+    private static void dispatch( RepositoryContentConsumer consumer, ConsumerProcessFileClosure processFile,
+                                  List<RepositoryContentConsumer> serialConsumers )
+    {
+        if ( consumer instanceof ThreadSafeConsumer && serialConsumers.isEmpty() )
+        {
+            processFile.execute( consumer );
+        }
+        else
+        {
+            serialConsumers.add( consumer );
+        }
+    }
+
+    private void enqueue( BlockingQueue<Runnable> queue, Runnable task )
+    {
+        try
+        {
+            queue.put( task );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            log.warn( "Scan of {} interrupted, skipping file", repository.getId() );
+        }
+    }
+
+    /**
+     * Waits for the threads to have given all the queued files to the consumers.
+     */
+    private void awaitConsumers()
+    {
+        try
+        {
+            for ( int i = 0; i < threads; i++ )
+            {
+                fileQueue.put( END );
+            }
+            for ( Future<?> fileRunner : fileRunners )
+            {
+                fileRunner.get();
+            }
+            // the file threads queue no more file for the consumers that are not thread safe
+            serialQueue.put( END );
+            serialRunner.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            log.warn( "Scan of {} interrupted before the consumers processed all the files", repository.getId() );
+        }
+        catch ( ExecutionException e )
+        {
+            log.error( "Scan of " + repository.getId() + " failed: " + e.getCause().getMessage(), e.getCause() );
+        }
+        finally
+        {
+            stopThreads();
+        }
+    }
+
+    /**
+     * Stops the threads of the scan, if any, without waiting for the queued files to be processed.
+     *
+     * @since 1.4-M3
+     */
+    public void stopThreads()
+    {
+        if ( executor != null )
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
     public void directoryWalkFinished()
     {
+        if ( executor != null )
+        {
+            awaitConsumers();
+        }
+
         TriggerScanCompletedClosure scanCompletedClosure = new TriggerScanCompletedClosure( repository, true );
         CollectionUtils.forAllDo( knownConsumers, scanCompletedClosure );
         CollectionUtils.forAllDo( invalidConsumers, scanCompletedClosure );
@@ -204,4 +420,47 @@ public class RepositoryScannerInstance
     {
         return changesSince;
     }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Runs the tasks of a queue until its end.
+     */
+    private class QueueRunner
+        implements Runnable
+    {
+        private final BlockingQueue<Runnable> queue;
+
+        QueueRunner( BlockingQueue<Runnable> queue )
+        {
+            this.queue = queue;
+        }
+
+        public void run()
+        {
+            try
+            {
+                for ( Runnable task = queue.take(); task != END; task = queue.take() )
+                {
+                    try
+                    {
+                        task.run();
+                    }
+                    catch ( RuntimeException e )
+                    {
+                        // the consumer errors are already caught, keep on with the next files
+                        log.error( "Scan of " + repository.getId() + " failed on a file: " + e.getMessage(), e );
+                    }
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                // the scan is stopped
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
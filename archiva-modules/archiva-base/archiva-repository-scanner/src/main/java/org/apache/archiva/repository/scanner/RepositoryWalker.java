@@ -0,0 +1,192 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.repository.scanner.functors.PathPatterns;
+import org.codehaus.plexus.util.DirectoryWalkListener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Walks the files of a repository, as the plexus <code>DirectoryWalker</code> does, with the include and exclude
+ * patterns compiled once with {@link PathPatterns}. The excluded directories are not entered, and the paths are
+ * matched as they are built, with no file system access beyond listing the directories.
+ * <p/>
+ * With a {@link RepositoryScanJournal}, the directories unchanged since the last scan are not listed: only their
+ * subdirectories are walked.
+ *
+ * @since 1.4-M3
+ */
+public class RepositoryWalker
+{
+    private final File baseDir;
+
+    private final PathPatterns includes;
+
+    private final PathPatterns excludes;
+
+    private RepositoryScanJournal journal;
+
+    private boolean skipUnchanged;
+
+    private long skippedFileCount;
+
+    /**
+     * @param includes the patterns of the files to walk, all the files when <code>**<span />/*</code> is one of them
+     * @param excludes the patterns of the files and directories not to walk
+     */
+    public RepositoryWalker( File baseDir, List<String> includes, List<String> excludes, boolean caseSensitive )
+    {
+        this.baseDir = baseDir;
+        this.includes = includes.contains( "**/*" ) ? null : PathPatterns.compile( fixPatterns( includes ),
+                                                                                   caseSensitive );
+        this.excludes = PathPatterns.compile( fixPatterns( excludes ), caseSensitive );
+    }
+
+    /**
+     * @param journal the journal of the last scan, to skip the files of the directories unchanged since, and record
+     *                the directories walked
+     * @since 1.4-M3
+     */
+    public void setJournal( RepositoryScanJournal journal, boolean skipUnchanged )
+    {
+        this.journal = journal;
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    /**
+     * @return the number of files in the directories skipped as they were unchanged
+     */
+    public long getSkippedFileCount()
+    {
+        return skippedFileCount;
+    }
+
+    public void walk( DirectoryWalkListener listener )
+    {
+        listener.directoryWalkStarting( baseDir );
+        walk( listener, baseDir, "", 0, 100 );
+        listener.directoryWalkFinished();
+    }
+
+    /**
+     * @param path the normalized path of the directory, as matched by {@link PathPatterns}
+     * @return whether the directory and its subdirectories were recorded in the journal
+     */
+    private boolean walk( DirectoryWalkListener listener, File directory, String path, double percentageOffset,
+                          double percentageSize )
+    {
+        long lastModified = journal == null ? 0 : directory.lastModified();
+        if ( skipUnchanged )
+        {
+            int fileCount = journal.getUnchangedFileCount( path, lastModified );
+            if ( fileCount >= 0 )
+            {
+                return walkUnchanged( listener, directory, path, lastModified, fileCount, percentageOffset,
+                                      percentageSize );
+            }
+        }
+
+        long listed = System.currentTimeMillis();
+        File[] files = directory.listFiles();
+        if ( files == null )
+        {
+            listener.debug( "Unable to list " + directory );
+            return false;
+        }
+
+        boolean recorded = true;
+        int fileCount = 0;
+        double fileSize = percentageSize / files.length;
+        for ( int i = 0; i < files.length; i++ )
+        {
+            File file = files[i];
+            String filePath = path + file.getName() + "/";
+            if ( excludes.matches( filePath ) )
+            {
+                listener.debug( "Excluding " + filePath.substring( 0, filePath.length() - 1 ) );
+                continue;
+            }
+
+            double percentage = percentageOffset + i * fileSize;
+            if ( file.isDirectory() )
+            {
+                recorded &= walk( listener, file, filePath, percentage, fileSize );
+            }
+            else if ( includes == null || includes.matches( filePath ) )
+            {
+                listener.directoryWalkStep( (int) percentage, file );
+                fileCount++;
+            }
+        }
+
+        if ( journal != null )
+        {
+            boolean settled = lastModified < listed - RepositoryScanJournal.MODIFICATION_TIME_RESOLUTION;
+            journal.record( path, recorded && settled ? lastModified : 0, fileCount );
+        }
+        return true;
+    }
+
+    /**
+     * Walks the subdirectories of a directory unchanged since the last scan, without listing it.
+     */
+    private boolean walkUnchanged( DirectoryWalkListener listener, File directory, String path, long lastModified,
+                                   int fileCount, double percentageOffset, double percentageSize )
+    {
+        skippedFileCount += fileCount;
+
+        boolean recorded = true;
+        List<String> subdirectories = journal.getSubdirectories( path );
+        double fileSize = percentageSize / Math.max( 1, subdirectories.size() );
+        for ( int i = 0; i < subdirectories.size(); i++ )
+        {
+            String name = subdirectories.get( i );
+            File file = new File( directory, name );
+            if ( file.isDirectory() )
+            {
+                recorded &= walk( listener, file, path + name + "/", percentageOffset + i * fileSize, fileSize );
+            }
+            else
+            {
+                // its removal changed the directory, unless it was within the resolution of the modification time
+                recorded = false;
+            }
+        }
+
+        journal.record( path, recorded ? lastModified : 0, fileCount );
+        return true;
+    }
+
+    /**
+     * As with <code>DirectoryWalker</code>, a pattern ending with a separator matches everything below.
+     */
+    private static List<String> fixPatterns( List<String> patterns )
+    {
+        List<String> fixedPatterns = new ArrayList<String>( patterns.size() );
+        for ( String pattern : patterns )
+        {
+            fixedPatterns.add( pattern.endsWith( "/" ) || pattern.endsWith( "\\" ) ? pattern + "**" : pattern );
+        }
+        return fixedPatterns;
+    }
+}
@@ -0,0 +1,90 @@
+package org.apache.archiva.repository.scanner.functors;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.utils.BaseFile;
+import org.apache.archiva.consumers.RepositoryContentConsumer;
+import org.apache.archiva.consumers.functors.ConsumerWantsFilePredicate;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ConsumerWantsFilePredicate matching the files against the include and exclude patterns of the consumers compiled
+ * once, with {@link PathPatterns}. The patterns of the consumers are read when the predicate is created.
+ *
+ * @since 1.4-M3
+ */
+public class CompiledConsumerWantsFilePredicate
+    extends ConsumerWantsFilePredicate
+{
+    /**
+     * The compiled includes and excludes of the consumers.
+     */
+    private final Map<RepositoryContentConsumer, PathPatterns[]> patterns;
+
+    private String normalizedPath;
+
+    public CompiledConsumerWantsFilePredicate( Collection<? extends RepositoryContentConsumer> consumers,
+                                               boolean caseSensitive )
+    {
+        setCaseSensitive( caseSensitive );
+        patterns = new HashMap<RepositoryContentConsumer, PathPatterns[]>( consumers.size() * 2 );
+        for ( RepositoryContentConsumer consumer : consumers )
+        {
+            PathPatterns[] consumerPatterns = { PathPatterns.compile( consumer.getIncludes(), caseSensitive ),
+                PathPatterns.compile( consumer.getExcludes(), caseSensitive ) };
+            patterns.put( consumer, consumerPatterns );
+        }
+    }
+
+    /**
+     * Creates a predicate sharing the compiled patterns of another one, to evaluate another file at the same time.
+     */
+    public CompiledConsumerWantsFilePredicate( CompiledConsumerWantsFilePredicate predicate )
+    {
+        setCaseSensitive( predicate.isCaseSensitive() );
+        patterns = predicate.patterns;
+    }
+
+    @Override
+    public void setBasefile( BaseFile basefile )
+    {
+        super.setBasefile( basefile );
+        normalizedPath = null;
+    }
+
+    @Override
+    protected boolean wantsFile( RepositoryContentConsumer consumer, String relativePath )
+    {
+        PathPatterns[] consumerPatterns = patterns.get( consumer );
+        if ( consumerPatterns == null )
+        {
+            // not known when the predicate was created
+            return super.wantsFile( consumer, relativePath );
+        }
+        if ( normalizedPath == null )
+        {
+            normalizedPath = PathPatterns.normalize( relativePath );
+        }
+        return !consumerPatterns[1].matches( normalizedPath ) && consumerPatterns[0].matches( normalizedPath );
+    }
+}
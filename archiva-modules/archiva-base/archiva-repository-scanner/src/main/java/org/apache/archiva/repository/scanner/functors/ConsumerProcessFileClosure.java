@@ -26,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * ConsumerProcessFileClosure 
@@ -62,14 +63,12 @@ public class ConsumerProcessFileClosure
 
                 if ( consumerTimings != null )
                 {
-                    Long value = consumerTimings.get( id );
-                    consumerTimings.put( id, ( value != null ? value : 0 ) + endTime - startTime );
+                    add( consumerTimings, id, endTime - startTime );
                 }
 
                 if ( consumerCounts != null )
                 {
-                    Long value = consumerCounts.get( id );
-                    consumerCounts.put( id, ( value != null ? value : 0 ) + 1 );
+                    add( consumerCounts, id, 1 );
                 }
             }
             catch ( Exception e )
@@ -83,6 +82,27 @@ public class ConsumerProcessFileClosure
         }
     }
 
+    /**
+     * Adds to the value of the consumer, without locking when the map is shared by the threads of a scan.
+     */
+    private static void add( Map<String, Long> values, String id, long delta )
+    {
+        if ( values instanceof ConcurrentMap )
+        {
+            ConcurrentMap<String, Long> concurrentValues = (ConcurrentMap<String, Long>) values;
+            Long value = concurrentValues.putIfAbsent( id, delta );
+            while ( value != null && !concurrentValues.replace( id, value, value + delta ) )
+            {
+                value = concurrentValues.get( id );
+            }
+        }
+        else
+        {
+            Long value = values.get( id );
+            values.put( id, ( value != null ? value : 0 ) + delta );
+        }
+    }
+
     public BaseFile getBasefile()
     {
         return basefile;
@@ -0,0 +1,362 @@
+package org.apache.archiva.repository.scanner.functors;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.io.FilenameUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Ant style path patterns (<code>**<span />/*.jar</code>) compiled once, so that a path is matched against all of
+ * them at once instead of tokenizing every pattern for every path as <code>SelectorUtils.matchPath</code> does.
+ * <p/>
+ * The usual patterns only looking at one name of the path are matched without regular expression:
+ * <code>**<span />/*.pom</code>, <code>**<span />/maven-metadata.xml</code>, <code>**<span />/README*</code> and
+ * <code>**<span />/.svn/**</code>. The others are compiled into regular expressions, one for the patterns starting
+ * with the same directory, so that a path is only matched against those of its first directory, and one for the
+ * patterns starting with a wildcard. The paths must be normalized with {@link #normalize(String)} before being
+ * matched.
+ *
+ * @since 1.4-M3
+ */
+public final class PathPatterns
+{
+    private static final String ANY_DIRECTORIES = "(?:[^/]++/)*";
+
+    private final boolean caseSensitive;
+
+    /**
+     * The ends of the file names matched by <code>**<span />/*end</code>.
+     */
+    private final List<String> fileNameEnds = new ArrayList<String>();
+
+    /**
+     * The file names matched by <code>**<span />/name</code>.
+     */
+    private final List<String> fileNames = new ArrayList<String>();
+
+    /**
+     * The starts of the file names matched by <code>**<span />/start*</code>.
+     */
+    private final List<String> fileNameStarts = new ArrayList<String>();
+
+    /**
+     * The regular expression of the other file names matched by <code>**<span />/name</code>, as
+     * <code>**<span />/maven-metadata-*.xml</code>, <code>null</code> if none.
+     */
+    private final Pattern fileNamePattern;
+
+    /**
+     * The names matched anywhere in the path by <code>**<span />/name/**</code>, followed by a <code>/</code>.
+     */
+    private final List<String> names = new ArrayList<String>();
+
+    /**
+     * The regular expressions of the other patterns, by their first directory followed by a <code>/</code>.
+     */
+    private final Map<String, Pattern> patternsByDirectory = new HashMap<String, Pattern>();
+
+    /**
+     * The regular expression of the other patterns starting with a wildcard or absolute, <code>null</code> if none.
+     */
+    private final Pattern pattern;
+
+    private PathPatterns( Collection<String> patterns, boolean caseSensitive )
+    {
+        this.caseSensitive = caseSensitive;
+
+        Map<String, StringBuilder> regexByDirectory = new HashMap<String, StringBuilder>();
+        StringBuilder regex = new StringBuilder();
+        StringBuilder fileNameRegex = new StringBuilder();
+        for ( String pattern : patterns )
+        {
+            String unixPattern = FilenameUtils.separatorsToUnix( pattern );
+            if ( unixPattern.startsWith( "**/" ) && addNamePattern( unixPattern.substring( 3 ), fileNameRegex ) )
+            {
+                continue;
+            }
+
+            String directory = getFirstDirectory( unixPattern );
+            StringBuilder directoryRegex = regex;
+            if ( directory != null )
+            {
+                directory = caseSensitive ? directory : directory.toLowerCase( Locale.ENGLISH );
+                directoryRegex = regexByDirectory.get( directory );
+                if ( directoryRegex == null )
+                {
+                    directoryRegex = new StringBuilder();
+                    regexByDirectory.put( directory, directoryRegex );
+                }
+            }
+            if ( directoryRegex.length() > 0 )
+            {
+                directoryRegex.append( '|' );
+            }
+            directoryRegex.append( "(?:" ).append( toRegex( unixPattern ) ).append( ')' );
+        }
+
+        for ( Map.Entry<String, StringBuilder> entry : regexByDirectory.entrySet() )
+        {
+            patternsByDirectory.put( entry.getKey(), compile( entry.getValue(), caseSensitive ) );
+        }
+        this.pattern = regex.length() == 0 ? null : compile( regex, caseSensitive );
+        this.fileNamePattern = fileNameRegex.length() == 0 ? null : compile( fileNameRegex, caseSensitive );
+    }
+
+    /**
+     * @param patterns the patterns, none matching no path
+     */
+    public static PathPatterns compile( Collection<String> patterns, boolean caseSensitive )
+    {
+        return new PathPatterns( patterns == null ? new ArrayList<String>() : patterns, caseSensitive );
+    }
+
+    /**
+     * @return <code>true</code> if the normalized path is matched by any of the patterns
+     */
+    public boolean matches( String normalizedPath )
+    {
+        // the name of the file is followed by a /
+        int end = normalizedPath.length() - 1;
+        int fileNameStart = normalizedPath.lastIndexOf( '/', end - 1 ) + 1;
+        for ( String fileNameEnd : fileNameEnds )
+        {
+            int start = end - fileNameEnd.length();
+            if ( start >= fileNameStart && normalizedPath.regionMatches( !caseSensitive, start, fileNameEnd, 0,
+                                                                         fileNameEnd.length() ) )
+            {
+                return true;
+            }
+        }
+        for ( String fileName : fileNames )
+        {
+            if ( end - fileNameStart == fileName.length() && normalizedPath.regionMatches( !caseSensitive,
+                                                                                           fileNameStart, fileName,
+                                                                                           0, fileName.length() ) )
+            {
+                return true;
+            }
+        }
+        for ( String start : fileNameStarts )
+        {
+            if ( end - fileNameStart >= start.length() && normalizedPath.regionMatches( !caseSensitive,
+                                                                                         fileNameStart, start, 0,
+                                                                                         start.length() ) )
+            {
+                return true;
+            }
+        }
+        if ( fileNamePattern != null && fileNameStart < end && fileNamePattern.matcher( normalizedPath ).region(
+            fileNameStart, end ).matches() )
+        {
+            return true;
+        }
+        for ( String name : names )
+        {
+            if ( containsName( normalizedPath, name ) )
+            {
+                return true;
+            }
+        }
+
+        if ( !patternsByDirectory.isEmpty() )
+        {
+            String directory = normalizedPath.substring( 0, normalizedPath.indexOf( '/' ) + 1 );
+            Pattern directoryPattern =
+                patternsByDirectory.get( caseSensitive ? directory : directory.toLowerCase( Locale.ENGLISH ) );
+            if ( directoryPattern != null && directoryPattern.matcher( normalizedPath ).matches() )
+            {
+                return true;
+            }
+        }
+        return pattern != null && pattern.matcher( normalizedPath ).matches();
+    }
+
+    /**
+     * Normalizes a path to be matched: every name of the path is followed by a <code>/</code>, as a pattern
+     * <code>**</code> is matched by any number of them.
+     */
+    public static String normalize( String path )
+    {
+        String unixPath = FilenameUtils.separatorsToUnix( path );
+        StringBuilder normalized = new StringBuilder( unixPath.length() + 2 );
+        if ( unixPath.startsWith( "/" ) )
+        {
+            // as with matchPath, an absolute path is only matched by an absolute pattern
+            normalized.append( '/' );
+        }
+        for ( String name : unixPath.split( "/" ) )
+        {
+            if ( name.length() > 0 )
+            {
+                normalized.append( name ).append( '/' );
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @param namePattern   the pattern following <code>**<span />/</code>
+     * @param fileNameRegex the regular expression of the file names to complete
+     * @return <code>true</code> if the pattern only looks at one name of the paths and is added to those matched
+     *         on that name
+     */
+    private boolean addNamePattern( String namePattern, StringBuilder fileNameRegex )
+    {
+        if ( namePattern.endsWith( "/**" ) )
+        {
+            String name = namePattern.substring( 0, namePattern.length() - 3 );
+            if ( name.length() > 0 && name.indexOf( '/' ) < 0 && !hasWildcard( name ) )
+            {
+                names.add( name + "/" );
+                return true;
+            }
+            return false;
+        }
+        if ( namePattern.length() == 0 || namePattern.indexOf( '/' ) >= 0 )
+        {
+            return false;
+        }
+
+        if ( !hasWildcard( namePattern ) )
+        {
+            fileNames.add( namePattern );
+            return true;
+        }
+        String end = namePattern.substring( 1 );
+        if ( namePattern.charAt( 0 ) == '*' && !hasWildcard( end ) )
+        {
+            fileNameEnds.add( end );
+            return true;
+        }
+        String start = namePattern.substring( 0, namePattern.length() - 1 );
+        if ( namePattern.endsWith( "*" ) && !hasWildcard( start ) )
+        {
+            fileNameStarts.add( start );
+            return true;
+        }
+
+        if ( fileNameRegex.length() > 0 )
+        {
+            fileNameRegex.append( '|' );
+        }
+        fileNameRegex.append( "(?:" );
+        appendName( fileNameRegex, namePattern );
+        fileNameRegex.append( ')' );
+        return true;
+    }
+
+    /**
+     * @param name a name followed by a <code>/</code>
+     */
+    private boolean containsName( String normalizedPath, String name )
+    {
+        int length = name.length();
+        for ( int start = 0; start + length <= normalizedPath.length();
+              start = normalizedPath.indexOf( '/', start ) + 1 )
+        {
+            if ( normalizedPath.regionMatches( !caseSensitive, start, name, 0, length ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasWildcard( String pattern )
+    {
+        return pattern.indexOf( '*' ) >= 0 || pattern.indexOf( '?' ) >= 0;
+    }
+
+    /**
+     * @return the first name of the pattern followed by a <code>/</code>, or <code>null</code> if it is absolute or
+     *         starts with a wildcard
+     */
+    private static String getFirstDirectory( String unixPattern )
+    {
+        int end = unixPattern.indexOf( '/' );
+        String directory = end < 0 ? unixPattern : unixPattern.substring( 0, end );
+        if ( directory.length() == 0 || hasWildcard( directory ) )
+        {
+            return null;
+        }
+        return directory + "/";
+    }
+
+    private static Pattern compile( CharSequence regex, boolean caseSensitive )
+    {
+        return Pattern.compile( regex.toString(),
+                                caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE );
+    }
+
+    private static String toRegex( String unixPattern )
+    {
+        StringBuilder regex = new StringBuilder();
+        if ( unixPattern.startsWith( "/" ) )
+        {
+            regex.append( '/' );
+        }
+        for ( String name : unixPattern.split( "/" ) )
+        {
+            if ( name.length() == 0 )
+            {
+                continue;
+            }
+            if ( "**".equals( name ) )
+            {
+                // as with matchPath, a leading ** also matches the root of an absolute path
+                regex.append( regex.length() == 0 ? "/?" + ANY_DIRECTORIES : ANY_DIRECTORIES );
+                continue;
+            }
+
+            appendName( regex, name );
+            regex.append( '/' );
+        }
+        return regex.toString();
+    }
+
+    private static void appendName( StringBuilder regex, String name )
+    {
+        int literalStart = 0;
+        for ( int i = 0; i < name.length(); i++ )
+        {
+            char c = name.charAt( i );
+            if ( c == '*' || c == '?' )
+            {
+                if ( i > literalStart )
+                {
+                    regex.append( Pattern.quote( name.substring( literalStart, i ) ) );
+                }
+                regex.append( c == '*' ? "[^/]*" : "[^/]" );
+                literalStart = i + 1;
+            }
+        }
+        if ( name.length() > literalStart )
+        {
+            regex.append( Pattern.quote( name.substring( literalStart ) ) );
+        }
+    }
+}
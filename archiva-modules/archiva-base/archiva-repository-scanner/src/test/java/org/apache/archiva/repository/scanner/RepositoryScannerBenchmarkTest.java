@@ -0,0 +1,154 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.admin.model.beans.ManagedRepository;
+import org.apache.archiva.consumers.ConsumerException;
+import org.apache.archiva.consumers.InvalidRepositoryContentConsumer;
+import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compares the time of a scan of a synthetic repository with 1, 4 and 16 threads, the consumer computing the SHA-1 of
+ * every file. The number of files can be set with the <code>scanner.benchmark.files</code> system property. The
+ * benchmark only runs when the <code>archiva.benchmarks</code> system property is <code>true</code>.
+ *
+ * @since 1.4-M3
+ */
+public class RepositoryScannerBenchmarkTest
+{
+    private Logger log = LoggerFactory.getLogger( RepositoryScannerBenchmarkTest.class );
+
+    private static final int FILES = Integer.getInteger( "scanner.benchmark.files", 2000 );
+
+    private static final int FILE_SIZE = 16 * 1024;
+
+    private File repoDir = new File( "target/test-repos/benchmark-repository" );
+
+    @BeforeClass
+    public static void checkEnabled()
+    {
+        Assume.assumeTrue( Boolean.getBoolean( "archiva.benchmarks" ) );
+    }
+
+    @Before
+    public void createRepository()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( repoDir );
+
+        byte[] content = new byte[FILE_SIZE];
+        for ( int i = 0; i < FILES; i++ )
+        {
+            content[i % FILE_SIZE]++;
+            String version = "1." + ( i % 10 );
+            File file = new File( repoDir,
+                                  "org/benchmark/artifact-" + i / 10 + "/" + version + "/artifact-" + i / 10 + "-"
+                                      + version + ".jar" );
+            FileUtils.writeByteArrayToFile( file, content );
+        }
+    }
+
+    @Test
+    public void testScanWithThreads()
+        throws Exception
+    {
+        ManagedRepository repository = new ManagedRepository();
+        repository.setId( "benchmark" );
+        repository.setName( "Benchmark Repository" );
+        repository.setLocation( repoDir.getAbsolutePath() );
+
+        DefaultRepositoryScanner scanner = new DefaultRepositoryScanner();
+
+        // once to warm up the file system cache
+        scan( scanner, repository, 1 );
+
+        StringBuilder report = new StringBuilder( "Scan of " + FILES + " files:" );
+        for ( int threads : new int[]{ 1, 4, 16 } )
+        {
+            long start = System.currentTimeMillis();
+            scan( scanner, repository, threads );
+            report.append( "\n  " ).append( threads ).append( " thread(s): " );
+            report.append( System.currentTimeMillis() - start ).append( "ms" );
+        }
+        log.info( report.toString() );
+    }
+
+    private void scan( DefaultRepositoryScanner scanner, ManagedRepository repository, int threads )
+        throws RepositoryScannerException
+    {
+        DigestConsumer consumer = new DigestConsumer();
+        consumer.setIncludes( new String[]{ "**/*.jar" } );
+        List<KnownRepositoryContentConsumer> knownConsumers = new ArrayList<KnownRepositoryContentConsumer>();
+        knownConsumers.add( consumer );
+
+        RepositoryScanStatistics stats =
+            scanner.scan( repository, knownConsumers, Collections.<InvalidRepositoryContentConsumer>emptyList(),
+                          Collections.<String>emptyList(), RepositoryScanner.FRESH_SCAN, threads );
+
+        Assert.assertEquals( FILES, stats.getTotalFileCount() );
+        Assert.assertEquals( FILES, consumer.getProcessCount() );
+    }
+
+    private static class DigestConsumer
+        extends ThreadSafeScanConsumer
+    {
+        private File repositoryDir;
+
+        @Override
+        public void beginScan( ManagedRepository repository, Date whenGathered )
+            throws ConsumerException
+        {
+            repositoryDir = new File( repository.getLocation() );
+        }
+
+        @Override
+        public void processFile( String path )
+            throws ConsumerException
+        {
+            try
+            {
+                MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+                digest.update( FileUtils.readFileToByteArray( new File( repositoryDir, path ) ) );
+                digest.digest();
+            }
+            catch ( Exception e )
+            {
+                throw new ConsumerException( e.getMessage(), e );
+            }
+            super.processFile( path );
+        }
+    }
+}
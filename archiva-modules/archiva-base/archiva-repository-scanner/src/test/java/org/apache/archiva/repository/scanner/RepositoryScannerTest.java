@@ -23,6 +23,7 @@ import junit.framework.TestCase;
 import org.apache.archiva.admin.model.beans.ManagedRepository;
 import org.apache.archiva.admin.model.beans.RemoteRepository;
 import org.apache.commons.io.FileUtils;
+import org.apache.archiva.consumers.ConsumerException;
 import org.apache.archiva.consumers.InvalidRepositoryContentConsumer;
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
 import org.junit.Test;
@@ -37,8 +38,11 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.TimeZone;
 import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
 
@@ -228,6 +232,64 @@ public class RepositoryScannerTest
         assertEquals( "Processed Count (of invalid items)", 1, badconsumer.getProcessCount() );
     }
 
+    @Test
+    public void testTimestampRepositoryScannerWithJournal()
+        throws Exception
+    {
+        ManagedRepository repository = createSimpleRepository();
+        File repoDir = new File( repository.getLocation() );
+        long lastModified = getTimestampAsMillis( "20061101.000000" );
+        setLastModified( repoDir, lastModified );
+
+        DefaultRepositoryScanner scanner = (DefaultRepositoryScanner) lookupRepositoryScanner();
+
+        KnownScanConsumer consumer = new KnownScanConsumer();
+        consumer.setIncludes( ARTIFACT_PATTERNS );
+        RepositoryScanStatistics stats =
+            scanner.scan( repository, Arrays.<KnownRepositoryContentConsumer>asList( consumer ),
+                          new ArrayList<InvalidRepositoryContentConsumer>(), getIgnoreList(),
+                          RepositoryScanner.FRESH_SCAN, 1, true );
+        assertEquals( "Stats.totalFileCount", 4, stats.getTotalFileCount() );
+        assertEquals( "Processed Count", 3, consumer.getProcessCount() );
+
+        // a file added without changing its directory is not listed
+        File jar = new File( repoDir, "groupId/artifactId/1.0-alpha-1/artifactId-1.0-alpha-1-sources.jar" );
+        FileUtils.writeStringToFile( jar, "sources" );
+        jar.getParentFile().setLastModified( lastModified );
+
+        consumer = new KnownScanConsumer();
+        consumer.setIncludes( ARTIFACT_PATTERNS );
+        stats = scanner.scan( repository, Arrays.<KnownRepositoryContentConsumer>asList( consumer ),
+                              new ArrayList<InvalidRepositoryContentConsumer>(), getIgnoreList(),
+                              lastModified + 1000, 1, true );
+        assertEquals( "Stats.totalFileCount", 4, stats.getTotalFileCount() );
+        assertEquals( "Processed Count", 0, consumer.getProcessCount() );
+
+        // unless it was deployed
+        RepositoryScanJournal.markModified( repoDir, jar );
+
+        consumer = new KnownScanConsumer();
+        consumer.setIncludes( ARTIFACT_PATTERNS );
+        stats = scanner.scan( repository, Arrays.<KnownRepositoryContentConsumer>asList( consumer ),
+                              new ArrayList<InvalidRepositoryContentConsumer>(), getIgnoreList(),
+                              lastModified + 1000, 1, true );
+        assertEquals( "Stats.totalFileCount", 5, stats.getTotalFileCount() );
+        assertEquals( "Processed Count", 1, consumer.getProcessCount() );
+    }
+
+    private static void setLastModified( File directory, long lastModified )
+    {
+        for ( File file : directory.listFiles() )
+        {
+            if ( file.isDirectory() )
+            {
+                setLastModified( file, lastModified );
+            }
+            file.setLastModified( lastModified );
+        }
+        directory.setLastModified( lastModified );
+    }
+
     @Test
     public void testDefaultRepositoryScanner()
         throws Exception
@@ -255,6 +317,100 @@ public class RepositoryScannerTest
         assertEquals( "Processed Count (of invalid items)", 6, badconsumer.getProcessCount() );
     }
 
+    @Test
+    public void testDefaultRepositoryScannerWithThreads()
+        throws Exception
+    {
+        ManagedRepository repository = createDefaultRepository();
+        String[] includes =
+            new String[]{ "**/*.jar", "**/*.war", "**/*.pom", "**/maven-metadata.xml", "**/*-site.xml", "**/*.zip",
+                "**/*.tar.gz", "**/*.sha1", "**/*.md5" };
+
+        DefaultRepositoryScanner scanner = (DefaultRepositoryScanner) lookupRepositoryScanner();
+
+        int[] expected = null;
+        for ( int threads : new int[]{ 1, 4 } )
+        {
+            List<KnownRepositoryContentConsumer> knownConsumers = new ArrayList<KnownRepositoryContentConsumer>();
+            KnownScanConsumer consumer = new KnownScanConsumer();
+            consumer.setIncludes( includes );
+            knownConsumers.add( consumer );
+            ThreadSafeScanConsumer threadSafeConsumer = new ThreadSafeScanConsumer();
+            threadSafeConsumer.setIncludes( includes );
+            knownConsumers.add( threadSafeConsumer );
+
+            List<InvalidRepositoryContentConsumer> invalidConsumers =
+                new ArrayList<InvalidRepositoryContentConsumer>();
+            InvalidScanConsumer badconsumer = new InvalidScanConsumer();
+            invalidConsumers.add( badconsumer );
+
+            RepositoryScanStatistics stats =
+                scanner.scan( repository, knownConsumers, invalidConsumers, getIgnoreList(),
+                              RepositoryScanner.FRESH_SCAN, threads );
+
+            int[] actual = { (int) stats.getTotalFileCount(), (int) stats.getNewFileCount(),
+                consumer.getProcessCount(), threadSafeConsumer.getProcessCount(), badconsumer.getProcessCount() };
+            if ( expected == null )
+            {
+                expected = actual;
+            }
+            else
+            {
+                assertEquals( "Counts with " + threads + " threads", Arrays.toString( expected ),
+                              Arrays.toString( actual ) );
+            }
+        }
+        assertMinimumHits( "Processed Count", 17, expected[3] );
+        assertEquals( "Processed Count (of invalid items)", 6, expected[4] );
+    }
+
+    @Test
+    public void testConsumerOrderKeptWithThreads()
+        throws Exception
+    {
+        ManagedRepository repository = createDefaultRepository();
+        String[] includes = new String[]{ "**/*.jar", "**/*.pom" };
+
+        DefaultRepositoryScanner scanner = (DefaultRepositoryScanner) lookupRepositoryScanner();
+
+        final Set<String> processed = Collections.synchronizedSet( new HashSet<String>() );
+        final List<String> outOfOrder = Collections.synchronizedList( new ArrayList<String>() );
+        KnownScanConsumer consumer = new KnownScanConsumer()
+        {
+            @Override
+            public void processFile( String path )
+                throws ConsumerException
+            {
+                processed.add( path );
+            }
+        };
+        consumer.setIncludes( includes );
+        // configured after a consumer which is not thread safe, it must be given each file after it
+        ThreadSafeScanConsumer threadSafeConsumer = new ThreadSafeScanConsumer()
+        {
+            @Override
+            public void processFile( String path )
+                throws ConsumerException
+            {
+                if ( !processed.contains( path ) )
+                {
+                    outOfOrder.add( path );
+                }
+                super.processFile( path );
+            }
+        };
+        threadSafeConsumer.setIncludes( includes );
+        List<KnownRepositoryContentConsumer> knownConsumers = new ArrayList<KnownRepositoryContentConsumer>();
+        knownConsumers.add( consumer );
+        knownConsumers.add( threadSafeConsumer );
+
+        scanner.scan( repository, knownConsumers, new ArrayList<InvalidRepositoryContentConsumer>(), getIgnoreList(),
+                      RepositoryScanner.FRESH_SCAN, 4 );
+
+        assertTrue( threadSafeConsumer.getProcessCount() > 0 );
+        assertEquals( Collections.<String>emptyList(), outOfOrder );
+    }
+
     @Test
     public void testDefaultRepositoryArtifactScanner()
         throws Exception
@@ -0,0 +1,62 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.consumers.ConsumerException;
+import org.apache.archiva.consumers.ThreadSafeConsumer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ThreadSafeScanConsumer
+ *
+ * @since 1.4-M3
+ */
+public class ThreadSafeScanConsumer
+    extends KnownScanConsumer
+    implements ThreadSafeConsumer
+{
+    private final AtomicInteger processCount = new AtomicInteger();
+
+    @Override
+    public String getId()
+    {
+        return "test-thread-safe-scan-consumer";
+    }
+
+    @Override
+    public void processFile( String path )
+        throws ConsumerException
+    {
+        processCount.incrementAndGet();
+    }
+
+    @Override
+    public int getProcessCount()
+    {
+        return processCount.get();
+    }
+
+    @Override
+    public void setProcessCount( int processCount )
+    {
+        this.processCount.set( processCount );
+    }
+}
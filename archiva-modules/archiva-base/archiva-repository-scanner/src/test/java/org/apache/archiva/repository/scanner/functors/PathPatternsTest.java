@@ -0,0 +1,165 @@
+package org.apache.archiva.repository.scanner.functors;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.common.utils.BaseFile;
+import org.apache.archiva.consumers.functors.ConsumerWantsFilePredicate;
+import org.apache.archiva.repository.scanner.KnownScanConsumer;
+import org.apache.archiva.repository.scanner.RepositoryScanner;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PathPatternsTest
+ *
+ * @since 1.4-M3
+ */
+public class PathPatternsTest
+    extends TestCase
+{
+    private Logger log = LoggerFactory.getLogger( PathPatternsTest.class );
+
+    private static final List<String> PATTERNS =
+        Arrays.asList( "**/*.jar", "**/*.pom", "**/maven-metadata.xml", "**/*-site.xml", "**/*.tar.gz", "*.jar",
+                       "**/.svn/**", "bin/**", ".index", "*/website/**", "**/README*", "**/*snapshot-version",
+                       "org/**/1.?/*", "**", "org/apache/**/*.pom", "/absolute/**", "**/*.SHA1", "a//b",
+                       "**/[x]+.(y)", "**/*", "**/b", "**/*b", "**/",
+                       "**/a*b", "**/org/**", "**/*?.jar", "BIN/**", "**/foo/1.0/**", "**/maven-metadata-*.xml" );
+
+    private static final List<String> PATHS =
+        Arrays.asList( "org/apache/archiva/archiva-common/1.4/archiva-common-1.4.jar",
+                       "org/apache/archiva/archiva-common/1.4/archiva-common-1.4.pom",
+                       "org/apache/archiva/archiva-common/1.4/archiva-common-1.4.pom.sha1",
+                       "org/apache/archiva/archiva-common/maven-metadata.xml", "artifact.jar", "bin", "bin/run.sh",
+                       ".index", "org/.svn/entries", "org/foo/website/index.html", "org/README.txt", "",
+                       "org/foo/1.0/foo.jar", "org/foo/10/foo.jar", "/absolute/path.jar", "a/b", "a//b",
+                       "org/foo/1.0/foo-1.0-site.xml", "org/foo/1.0/foo-1.0.tar.gz", "org/foo/[x]+.(y)",
+                       "ab", "b", "BIN/x", "org/foo/maven-metadata-central.xml" );
+
+    @Test
+    public void testMatchesAsSelectorUtils()
+    {
+        for ( boolean caseSensitive : new boolean[]{ true, false } )
+        {
+            for ( String pattern : PATTERNS )
+            {
+                PathPatterns compiled = PathPatterns.compile( Collections.singletonList( pattern ), caseSensitive );
+                for ( String path : PATHS )
+                {
+                    assertEquals( pattern + " on " + path + ( caseSensitive ? "" : " ignoring case" ),
+                                  SelectorUtils.matchPath( pattern, path, caseSensitive ),
+                                  compiled.matches( PathPatterns.normalize( path ) ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesAnyPattern()
+    {
+        PathPatterns compiled =
+            PathPatterns.compile( Arrays.asList( "**/*.jar", "**/*.pom", "org/*/1.?/*.war" ), true );
+
+        assertTrue( compiled.matches( PathPatterns.normalize( "org/foo/1.0/foo-1.0.jar" ) ) );
+        assertTrue( compiled.matches( PathPatterns.normalize( "org/foo/1.0/foo-1.0.pom" ) ) );
+        assertTrue( compiled.matches( PathPatterns.normalize( "org/foo/1.0/foo-1.0.war" ) ) );
+        assertFalse( compiled.matches( PathPatterns.normalize( "org/foo/2.0/foo-2.0.war" ) ) );
+        assertFalse( PathPatterns.compile( Collections.<String>emptyList(), true ).matches(
+            PathPatterns.normalize( "org/foo/1.0/foo-1.0.jar" ) ) );
+    }
+
+    /**
+     * Compares the time taken by the compiled patterns and by ConsumerWantsFilePredicate to select the consumers of
+     * Maven repository paths.
+     */
+    @Test
+    public void testMatchingTime()
+        throws Exception
+    {
+        List<KnownScanConsumer> consumers = new ArrayList<KnownScanConsumer>();
+        for ( String[] includes : new String[][]{ { "**/*.jar", "**/*.war", "**/*.ear", "**/*.zip", "**/*.tar.gz" },
+            { "**/*.pom" }, { "**/maven-metadata.xml", "**/maven-metadata-*.xml" }, { "**/*.sha1", "**/*.md5" },
+            RepositoryScanner.IGNORABLE_CONTENT } )
+        {
+            KnownScanConsumer consumer = new KnownScanConsumer();
+            consumer.setIncludes( includes );
+            consumer.setProcessUnmodified( true );
+            consumers.add( consumer );
+        }
+
+        List<BaseFile> files = new ArrayList<BaseFile>();
+        File repositoryDir = new File( "target/test-repos/matching" );
+        for ( int i = 0; i < 2000; i++ )
+        {
+            String version = "1." + i % 7;
+            String path = "org/apache/group" + i % 13 + "/artifact-" + i + "/" + version + "/artifact-" + i + "-"
+                + version;
+            for ( String extension : new String[]{ ".jar", ".jar.sha1", ".pom", ".pom.md5", "-sources.jar" } )
+            {
+                files.add( new BaseFile( repositoryDir, new File( repositoryDir, path + extension ) ) );
+            }
+            files.add( new BaseFile( repositoryDir, new File( repositoryDir, path.substring( 0, path.lastIndexOf(
+                '/' ) ) + "/maven-metadata.xml" ) ) );
+        }
+
+        ConsumerWantsFilePredicate predicate = new ConsumerWantsFilePredicate();
+        CompiledConsumerWantsFilePredicate compiledPredicate =
+            new CompiledConsumerWantsFilePredicate( consumers, true );
+
+        // once to warm up, then timed
+        long[] wanted = new long[2];
+        long[] times = new long[2];
+        for ( int run = 0; run < 2; run++ )
+        {
+            int i = 0;
+            for ( ConsumerWantsFilePredicate p : Arrays.asList( predicate, compiledPredicate ) )
+            {
+                long start = System.nanoTime();
+                wanted[i] = 0;
+                for ( BaseFile file : files )
+                {
+                    p.setBasefile( file, 0 );
+                    for ( KnownScanConsumer consumer : consumers )
+                    {
+                        if ( p.evaluate( consumer ) )
+                        {
+                            wanted[i]++;
+                        }
+                    }
+                }
+                times[i] = System.nanoTime() - start;
+                i++;
+            }
+        }
+
+        assertEquals( wanted[0], wanted[1] );
+        log.info( "Selection of the consumers of {} files: {}ms with ConsumerWantsFilePredicate, {}ms compiled",
+                  new Object[]{ files.size(), times[0] / 1000000, times[1] / 1000000 } );
+    }
+}
@@ -35,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -57,6 +58,11 @@ public class ArchivaCUDFTaskExecutor
 {
     private Logger log = LoggerFactory.getLogger( ArchivaCUDFTaskExecutor.class );
 
+    /**
+     * Sub-directory of the job destination keeping the packages between two runs.
+     */
+    static final String STORE_DIRECTORY = "cudf-store";
+
     @Inject
     private CUDFEngine cudfEngine;
 
@@ -98,14 +104,18 @@ public class ArchivaCUDFTaskExecutor
             {
                 repositoriesId = cudfTask.getRepositoriesId();
             }
-            FileWriter debugWriter = null;
+            Writer debugWriter = null;
             if ( cudfTask.isDebug() )
             {
-                debugWriter = new FileWriter( new File( cudfTask.getResourceDestination(), fileName + ".debug" ) );
+                debugWriter = new BufferedWriter(
+                    new FileWriter( new File( cudfTask.getResourceDestination(), fileName + ".debug" ) ) );
             }
-            cudfEngine.computeCUDFUniverse( repositoriesId,
-                                            new FileWriter( new File( cudfTask.getResourceDestination(), fileName ) ),
-                                            debugWriter );
+            Writer writer =
+                new BufferedWriter( new FileWriter( new File( cudfTask.getResourceDestination(), fileName ) ) );
+            // packages are streamed to the file, the universe is never held in memory; the packages of the
+            // projects unchanged since the previous run are read back from the job store
+            cudfEngine.streamCUDFUniverse( repositoriesId, writer, debugWriter, cudfTask.getParallelism(),
+                                           new File( cudfTask.getResourceDestination(), STORE_DIRECTORY ) );
 
             deleteOldFile( cudfTask.getResourceDestination(), cudfTask.getRetentionCount(), "cudf" );
             deleteOldFile( cudfTask.getResourceDestination(), cudfTask.getRetentionCount(), "pdf" );
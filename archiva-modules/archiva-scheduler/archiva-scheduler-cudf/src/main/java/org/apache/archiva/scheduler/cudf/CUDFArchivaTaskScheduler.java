@@ -211,6 +211,7 @@ public class CUDFArchivaTaskScheduler
             cudfTask.setRepositoriesId( repositories );
         }
         cudfTask.setRetentionCount( cudfJobConfiguration.getRetentionCount() );
+        cudfTask.setParallelism( cudfJobConfiguration.getParallelism() );
         JobDataMap dataMap = new JobDataMap();
         dataMap.put( TASK_QUEUE, taskQueue );
         dataMap.put( CUDF_TASK, cudfTask );
@@ -44,6 +44,8 @@ public class CUDFTask
 
     private boolean debug;
 
+    private int parallelism = 1;
+
     public CUDFTask()
     {
         this.allRepositories = false;
@@ -114,6 +116,16 @@ public class CUDFTask
         this.retentionCount = retentionCount;
     }
 
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    public void setParallelism( int parallelism )
+    {
+        this.parallelism = parallelism;
+    }
+
     @Override
     public boolean equals( Object o )
     {
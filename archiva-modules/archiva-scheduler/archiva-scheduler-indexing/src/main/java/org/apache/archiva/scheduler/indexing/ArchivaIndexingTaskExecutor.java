@@ -26,6 +26,8 @@ import org.apache.archiva.admin.model.managed.ManagedRepositoryAdmin;
 import org.apache.archiva.common.plexusbridge.PlexusSisuBridge;
 import org.apache.archiva.common.plexusbridge.PlexusSisuBridgeException;
 import org.apache.archiva.redback.components.taskqueue.Task;
+import org.apache.archiva.redback.components.taskqueue.TaskQueue;
+import org.apache.archiva.redback.components.taskqueue.TaskQueueException;
 import org.apache.archiva.redback.components.taskqueue.execution.TaskExecutionException;
 import org.apache.archiva.redback.components.taskqueue.execution.TaskExecutor;
 import org.apache.lucene.search.BooleanClause;
@@ -42,12 +44,19 @@ import org.apache.maven.index.packer.IndexPacker;
 import org.apache.maven.index.packer.IndexPackingRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ArchivaIndexingTaskExecutor Executes all indexing tasks. Adding, updating and removing artifacts from the index are
@@ -55,6 +64,8 @@ import java.io.IOException;
  * NexusIndexerConsumer while remove artifact from index tasks are added by the LuceneCleanupRemoveIndexedConsumer.
  */
 @Service ( "taskExecutor#indexing" )
+@ManagedResource ( objectName = "org.apache.archiva:type=ArchivaIndexingTaskExecutor",
+                   description = "Executor of the indexing tasks" )
 public class ArchivaIndexingTaskExecutor
     implements TaskExecutor
 {
@@ -75,6 +86,27 @@ public class ArchivaIndexingTaskExecutor
 
     private NexusIndexer nexusIndexer;
 
+    /**
+     * The queue of this executor, from which the artifact tasks following a task are taken to be indexed together.
+     */
+    @Inject
+    @Named( value = "taskQueue#indexing" )
+    private TaskQueue indexingQueue;
+
+    private volatile int maxBatchSize = 500;
+
+    private volatile long commitInterval = 10000;
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final AtomicLong batchedTaskCount = new AtomicLong();
+
+    private volatile int lastBatchSize;
+
+    private final AtomicLong commitCount = new AtomicLong();
+
+    private final AtomicLong commitTime = new AtomicLong();
+
     @PostConstruct
     public void initialize()
         throws PlexusSisuBridgeException
@@ -149,67 +181,56 @@ public class ArchivaIndexingTaskExecutor
 
             try
             {
-                File artifactFile = indexingTask.getResourceFile();
-                if ( artifactFile == null )
-                {
-                    log.debug( "no artifact pass in indexing task so skip it" );
-                }
-                else
+                // index the artifacts queued after this one in the same session, committing them together
+                long start = System.currentTimeMillis();
+                long lastCommit = start;
+                int batchSize = 0;
+                int uncommitted = 0;
+                List<ArtifactIndexingTask> batch = Collections.singletonList( indexingTask );
+                while ( !batch.isEmpty() )
                 {
-                    ArtifactContext ac = artifactContextProducer.getArtifactContext( context, artifactFile );
-
-                    if ( ac != null )
+                    for ( ArtifactIndexingTask batchedTask : batch )
                     {
-                        if ( indexingTask.getAction().equals( ArtifactIndexingTask.Action.ADD ) )
+                        try
                         {
-                            //IndexSearcher s = context.getIndexSearcher();
-                            //String uinfo = ac.getArtifactInfo().getUinfo();
-                            //TopDocs d = s.search( new TermQuery( new Term( ArtifactInfo.UINFO, uinfo ) ), 1 );
-
-                            BooleanQuery q = new BooleanQuery();
-                            q.add( nexusIndexer.constructQuery( MAVEN.GROUP_ID, new SourcedSearchExpression(
-                                ac.getArtifactInfo().groupId ) ), BooleanClause.Occur.MUST );
-                            q.add( nexusIndexer.constructQuery( MAVEN.ARTIFACT_ID, new SourcedSearchExpression(
-                                ac.getArtifactInfo().artifactId ) ), BooleanClause.Occur.MUST );
-                            q.add( nexusIndexer.constructQuery( MAVEN.VERSION, new SourcedSearchExpression(
-                                ac.getArtifactInfo().version ) ), BooleanClause.Occur.MUST );
-                            if ( ac.getArtifactInfo().classifier != null )
-                            {
-                                q.add( nexusIndexer.constructQuery( MAVEN.CLASSIFIER, new SourcedSearchExpression(
-                                    ac.getArtifactInfo().classifier ) ), BooleanClause.Occur.MUST );
-                            }
-                            if ( ac.getArtifactInfo().packaging != null )
+                            if ( indexArtifact( batchedTask, context ) )
                             {
-                                q.add( nexusIndexer.constructQuery( MAVEN.PACKAGING, new SourcedSearchExpression(
-                                    ac.getArtifactInfo().packaging ) ), BooleanClause.Occur.MUST );
+                                uncommitted++;
                             }
-                            FlatSearchRequest flatSearchRequest = new FlatSearchRequest( q, context );
-                            FlatSearchResponse flatSearchResponse = nexusIndexer.searchFlat( flatSearchRequest );
-                            if ( flatSearchResponse.getResults().isEmpty() )
-                            {
-                                log.debug( "Adding artifact '{}' to index..", ac.getArtifactInfo() );
-                                nexusIndexer.addArtifactToIndex( ac, context );
-                            }
-                            else
+                        }
+                        catch ( IOException e )
+                        {
+                            if ( batchedTask == indexingTask )
                             {
-                                log.debug( "Updating artifact '{}' in index..", ac.getArtifactInfo() );
-                                // TODO check if update exists !!
-                                nexusIndexer.deleteArtifactFromIndex( ac, context );
-                                nexusIndexer.addArtifactToIndex( ac, context );
+                                throw e;
                             }
-
-                            context.updateTimestamp();
-                            context.commit();
-
-
+                            // the other tasks of the batch are not lost with this one
+                            log.error( "Error occurred while executing indexing task '" + batchedTask + "': "
+                                           + e.getMessage(), e );
                         }
-                        else
+                        batchSize++;
+
+                        if ( uncommitted >= maxBatchSize
+                            || ( uncommitted > 0 && System.currentTimeMillis() - lastCommit >= commitInterval ) )
                         {
-                            log.debug( "Removing artifact '{}' from index..", ac.getArtifactInfo() );
-                            nexusIndexer.deleteArtifactFromIndex( ac, context );
+                            commit( context );
+                            lastCommit = System.currentTimeMillis();
+                            uncommitted = 0;
                         }
                     }
+                    batch = takeQueuedTasks( indexingTask, context );
+                }
+                if ( uncommitted > 0 )
+                {
+                    commit( context );
                 }
+
+                batchCount.incrementAndGet();
+                batchedTaskCount.addAndGet( batchSize );
+                lastBatchSize = batchSize;
+                log.debug( "Indexed {} artifacts of repository {} in {} ms", batchSize, repository.getId(),
+                           System.currentTimeMillis() - start );
+
                 // close the context if not a repo scan request
                 if ( !indexingTask.isExecuteOnEntireRepo() )
                 {
@@ -230,6 +251,130 @@ public class ArchivaIndexingTaskExecutor
 
     }
 
+    /**
+     * Adds, updates or removes the artifact of a task in the index, without committing it.
+     *
+     * @return whether the index was modified
+     */
+    private boolean indexArtifact( ArtifactIndexingTask indexingTask, IndexingContext context )
+        throws IOException
+    {
+        File artifactFile = indexingTask.getResourceFile();
+        if ( artifactFile == null )
+        {
+            log.debug( "no artifact pass in indexing task so skip it" );
+            return false;
+        }
+
+        ArtifactContext ac = artifactContextProducer.getArtifactContext( context, artifactFile );
+        if ( ac == null )
+        {
+            return false;
+        }
+
+        if ( indexingTask.getAction().equals( ArtifactIndexingTask.Action.ADD ) )
+        {
+            //IndexSearcher s = context.getIndexSearcher();
+            //String uinfo = ac.getArtifactInfo().getUinfo();
+            //TopDocs d = s.search( new TermQuery( new Term( ArtifactInfo.UINFO, uinfo ) ), 1 );
+
+            BooleanQuery q = new BooleanQuery();
+            q.add( nexusIndexer.constructQuery( MAVEN.GROUP_ID, new SourcedSearchExpression(
+                ac.getArtifactInfo().groupId ) ), BooleanClause.Occur.MUST );
+            q.add( nexusIndexer.constructQuery( MAVEN.ARTIFACT_ID, new SourcedSearchExpression(
+                ac.getArtifactInfo().artifactId ) ), BooleanClause.Occur.MUST );
+            q.add( nexusIndexer.constructQuery( MAVEN.VERSION, new SourcedSearchExpression(
+                ac.getArtifactInfo().version ) ), BooleanClause.Occur.MUST );
+            if ( ac.getArtifactInfo().classifier != null )
+            {
+                q.add( nexusIndexer.constructQuery( MAVEN.CLASSIFIER, new SourcedSearchExpression(
+                    ac.getArtifactInfo().classifier ) ), BooleanClause.Occur.MUST );
+            }
+            if ( ac.getArtifactInfo().packaging != null )
+            {
+                q.add( nexusIndexer.constructQuery( MAVEN.PACKAGING, new SourcedSearchExpression(
+                    ac.getArtifactInfo().packaging ) ), BooleanClause.Occur.MUST );
+            }
+            FlatSearchRequest flatSearchRequest = new FlatSearchRequest( q, context );
+            FlatSearchResponse flatSearchResponse = nexusIndexer.searchFlat( flatSearchRequest );
+            if ( flatSearchResponse.getResults().isEmpty() )
+            {
+                log.debug( "Adding artifact '{}' to index..", ac.getArtifactInfo() );
+                nexusIndexer.addArtifactToIndex( ac, context );
+            }
+            else
+            {
+                log.debug( "Updating artifact '{}' in index..", ac.getArtifactInfo() );
+                // TODO check if update exists !!
+                nexusIndexer.deleteArtifactFromIndex( ac, context );
+                nexusIndexer.addArtifactToIndex( ac, context );
+            }
+        }
+        else
+        {
+            log.debug( "Removing artifact '{}' from index..", ac.getArtifactInfo() );
+            nexusIndexer.deleteArtifactFromIndex( ac, context );
+        }
+        return true;
+    }
+
+    private void commit( IndexingContext context )
+        throws IOException
+    {
+        long start = System.currentTimeMillis();
+        context.updateTimestamp();
+        context.commit();
+        commitCount.incrementAndGet();
+        commitTime.addAndGet( System.currentTimeMillis() - start );
+    }
+
+    /**
+     * Removes from the head of the queue the artifact tasks which can be indexed in the session of a task: the tasks
+     * adding or removing an artifact of the same repository, in the same kind of scan.
+     *
+     * @return the tasks removed from the queue, at most {@link #maxBatchSize}
+     */
+    private List<ArtifactIndexingTask> takeQueuedTasks( ArtifactIndexingTask indexingTask, IndexingContext context )
+    {
+        if ( indexingQueue == null || maxBatchSize <= 1 )
+        {
+            return Collections.emptyList();
+        }
+
+        List<ArtifactIndexingTask> tasks = new ArrayList<ArtifactIndexingTask>();
+        try
+        {
+            List<Task> queue = indexingQueue.getQueueSnapshot();
+            for ( Task task : queue )
+            {
+                if ( tasks.size() >= maxBatchSize || !( task instanceof ArtifactIndexingTask ) )
+                {
+                    break;
+                }
+                ArtifactIndexingTask queuedTask = (ArtifactIndexingTask) task;
+                if ( ArtifactIndexingTask.Action.FINISH.equals( queuedTask.getAction() )
+                    || queuedTask.isExecuteOnEntireRepo() != indexingTask.isExecuteOnEntireRepo()
+                    || !queuedTask.getRepository().getId().equals( indexingTask.getRepository().getId() )
+                    || ( queuedTask.isExecuteOnEntireRepo() && queuedTask.getContext() != context ) )
+                {
+                    break;
+                }
+                // the task may have been taken in the meantime by the queue executor
+                if ( !indexingQueue.remove( queuedTask ) )
+                {
+                    break;
+                }
+                tasks.add( queuedTask );
+            }
+        }
+        catch ( TaskQueueException e )
+        {
+            // not possible with plexus-taskqueue implementation, the tasks left are executed one by one
+            log.warn( "Unable to take the queued indexing tasks: {}", e.getMessage() );
+        }
+        return tasks;
+    }
+
     private void finishIndexingTask( ArtifactIndexingTask indexingTask, ManagedRepository repository,
                                      IndexingContext context )
         throws TaskExecutionException
@@ -261,6 +406,120 @@ public class ArchivaIndexingTaskExecutor
         }
     }
 
+    /**
+     * @return the number of tasks waiting in the indexing queue
+     * @since 1.4-M3
+     */
+    @ManagedAttribute ( description = "Number of tasks waiting in the indexing queue" )
+    public int getQueueDepth()
+    {
+        try
+        {
+            return indexingQueue == null ? 0 : indexingQueue.getQueueSnapshot().size();
+        }
+        catch ( TaskQueueException e )
+        {
+            // not possible with plexus-taskqueue implementation
+            return 0;
+        }
+    }
+
+    /**
+     * @return the number of artifact indexing sessions, each indexing a batch of artifact tasks
+     * @since 1.4-M3
+     */
+    @ManagedAttribute ( description = "Number of artifact indexing sessions" )
+    public long getBatchCount()
+    {
+        return batchCount.get();
+    }
+
+    /**
+     * @return the number of artifact tasks executed by all the indexing sessions
+     * @since 1.4-M3
+     */
+    @ManagedAttribute ( description = "Number of artifact tasks executed by the indexing sessions" )
+    public long getBatchedTaskCount()
+    {
+        return batchedTaskCount.get();
+    }
+
+    /**
+     * @since 1.4-M3
+     */
+    @ManagedAttribute ( description = "Number of artifact tasks executed by the last indexing session" )
+    public int getLastBatchSize()
+    {
+        return lastBatchSize;
+    }
+
+    /**
+     * @since 1.4-M3
+     */
+    @ManagedAttribute ( description = "Number of commits of the index" )
+    public long getCommitCount()
+    {
+        return commitCount.get();
+    }
+
+    /**
+     * @return the total time spent committing the index, in milliseconds
+     * @since 1.4-M3
+     */
+    @ManagedAttribute ( description = "Total time spent committing the index, in milliseconds" )
+    public long getCommitTime()
+    {
+        return commitTime.get();
+    }
+
+    /**
+     * @since 1.4-M3
+     */
+    @ManagedAttribute ( description = "Maximum number of artifacts indexed between two commits" )
+    public int getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize the maximum number of artifacts indexed between two commits, <code>1</code> to commit
+     *                     each of them
+     * @since 1.4-M3
+     */
+    @ManagedAttribute
+    public void setMaxBatchSize( int maxBatchSize )
+    {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @since 1.4-M3
+     */
+    @ManagedAttribute ( description = "Maximum time in milliseconds an indexed artifact waits for the commit" )
+    public long getCommitInterval()
+    {
+        return commitInterval;
+    }
+
+    /**
+     * @param commitInterval the maximum time in milliseconds an indexed artifact waits for the commit of its batch
+     * @since 1.4-M3
+     */
+    @ManagedAttribute
+    public void setCommitInterval( long commitInterval )
+    {
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * @param indexingQueue the queue from which the artifact tasks following a task are taken
+     * @since 1.4-M3
+     */
+    public void setIndexingQueue( TaskQueue indexingQueue )
+    {
+        this.indexingQueue = indexingQueue;
+    }
+
     public void setIndexPacker( IndexPacker indexPacker )
     {
         this.indexPacker = indexPacker;
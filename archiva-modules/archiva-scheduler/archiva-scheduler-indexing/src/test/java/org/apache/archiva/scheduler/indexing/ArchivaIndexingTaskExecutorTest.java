@@ -24,6 +24,8 @@ import org.apache.archiva.admin.model.beans.ManagedRepository;
 import org.apache.archiva.admin.model.managed.ManagedRepositoryAdmin;
 import org.apache.archiva.common.plexusbridge.MavenIndexerUtils;
 import org.apache.archiva.common.plexusbridge.PlexusSisuBridge;
+import org.apache.archiva.redback.components.taskqueue.DefaultTaskQueue;
+import org.apache.archiva.redback.components.taskqueue.TaskQueue;
 import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
@@ -44,6 +46,7 @@ import org.junit.runner.RunWith;
 import org.springframework.test.context.ContextConfiguration;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
@@ -79,6 +82,10 @@ public class ArchivaIndexingTaskExecutorTest
     @Inject
     ManagedRepositoryAdmin managedRepositoryAdmin;
 
+    @Inject
+    @Named ( value = "taskQueue#indexing" )
+    TaskQueue indexingQueue;
+
     @Before
     public void setUp()
         throws Exception
@@ -105,6 +112,10 @@ public class ArchivaIndexingTaskExecutorTest
         throws Exception
     {
 
+        indexingExecutor.setIndexingQueue( indexingQueue );
+        indexingExecutor.setMaxBatchSize( 500 );
+        indexingExecutor.setCommitInterval( 10000 );
+
         for ( IndexingContext indexingContext : indexer.getIndexingContexts().values() )
         {
             indexer.removeIndexingContext( indexingContext, true );
@@ -174,6 +185,109 @@ public class ArchivaIndexingTaskExecutorTest
 
     }
 
+    @Test
+    public void testAddArtifactCommitsBatch()
+        throws Exception
+    {
+        File artifactFile = new File( repositoryConfig.getLocation(),
+                                      "org/apache/archiva/archiva-index-methods-jar-test/1.0/archiva-index-methods-jar-test-1.0.jar" );
+
+        long batchCount = indexingExecutor.getBatchCount();
+        long batchedTaskCount = indexingExecutor.getBatchedTaskCount();
+        long commitCount = indexingExecutor.getCommitCount();
+
+        indexingExecutor.executeTask(
+            new ArtifactIndexingTask( repositoryConfig, artifactFile, ArtifactIndexingTask.Action.ADD,
+                                      getIndexingContext() ) );
+
+        assertEquals( batchCount + 1, indexingExecutor.getBatchCount() );
+        assertEquals( batchedTaskCount + 1, indexingExecutor.getBatchedTaskCount() );
+        assertEquals( 1, indexingExecutor.getLastBatchSize() );
+        assertEquals( commitCount + 1, indexingExecutor.getCommitCount() );
+        assertEquals( 0, indexingExecutor.getQueueDepth() );
+    }
+
+    @Test
+    public void testQueuedTasksIndexedInOneBatch()
+        throws Exception
+    {
+        // a queue of its own, which the queue executor does not take the tasks from
+        TaskQueue queue = new DefaultTaskQueue();
+        indexingExecutor.setIndexingQueue( queue );
+        for ( int i = 0; i < 3; i++ )
+        {
+            queue.put( createAddTask( repositoryConfig ) );
+        }
+        ManagedRepository otherRepository = new ManagedRepository();
+        otherRepository.setId( "other-repo" );
+        otherRepository.setLocation( repositoryConfig.getLocation() );
+        ArtifactIndexingTask otherTask = createAddTask( otherRepository );
+        queue.put( otherTask );
+
+        long batchCount = indexingExecutor.getBatchCount();
+        long commitCount = indexingExecutor.getCommitCount();
+
+        indexingExecutor.executeTask( createAddTask( repositoryConfig ) );
+
+        assertEquals( batchCount + 1, indexingExecutor.getBatchCount() );
+        assertEquals( 4, indexingExecutor.getLastBatchSize() );
+        assertEquals( commitCount + 1, indexingExecutor.getCommitCount() );
+        // the task of another repository is left for its own session
+        assertEquals( 1, indexingExecutor.getQueueDepth() );
+        assertSame( otherTask, queue.getQueueSnapshot().get( 0 ) );
+    }
+
+    @Test
+    public void testCommitAtMaxBatchSize()
+        throws Exception
+    {
+        TaskQueue queue = new DefaultTaskQueue();
+        indexingExecutor.setIndexingQueue( queue );
+        indexingExecutor.setMaxBatchSize( 2 );
+        for ( int i = 0; i < 4; i++ )
+        {
+            queue.put( createAddTask( repositoryConfig ) );
+        }
+
+        long commitCount = indexingExecutor.getCommitCount();
+
+        indexingExecutor.executeTask( createAddTask( repositoryConfig ) );
+
+        // committed after the second and the fourth artifacts, then the last one at the end of the session
+        assertEquals( 5, indexingExecutor.getLastBatchSize() );
+        assertEquals( commitCount + 3, indexingExecutor.getCommitCount() );
+        assertEquals( 0, indexingExecutor.getQueueDepth() );
+    }
+
+    @Test
+    public void testCommitAtCommitInterval()
+        throws Exception
+    {
+        TaskQueue queue = new DefaultTaskQueue();
+        indexingExecutor.setIndexingQueue( queue );
+        // each indexed artifact has waited long enough
+        indexingExecutor.setCommitInterval( 0 );
+        for ( int i = 0; i < 2; i++ )
+        {
+            queue.put( createAddTask( repositoryConfig ) );
+        }
+
+        long commitCount = indexingExecutor.getCommitCount();
+
+        indexingExecutor.executeTask( createAddTask( repositoryConfig ) );
+
+        assertEquals( 3, indexingExecutor.getLastBatchSize() );
+        assertEquals( commitCount + 3, indexingExecutor.getCommitCount() );
+    }
+
+    private ArtifactIndexingTask createAddTask( ManagedRepository repository )
+    {
+        File artifactFile = new File( repository.getLocation(),
+                                      "org/apache/archiva/archiva-index-methods-jar-test/1.0/archiva-index-methods-jar-test-1.0.jar" );
+        return new ArtifactIndexingTask( repository, artifactFile, ArtifactIndexingTask.Action.ADD,
+                                         getIndexingContext() );
+    }
+
     @Test
     public void testUpdateArtifactInIndex()
         throws Exception
@@ -21,10 +21,12 @@ package org.apache.archiva.mock;
 import org.apache.archiva.admin.model.AuditInformation;
 import org.apache.archiva.admin.model.RepositoryAdminException;
 import org.apache.archiva.admin.model.admin.ArchivaAdministration;
+import org.apache.archiva.admin.model.beans.CassandraConfiguration;
 import org.apache.archiva.admin.model.beans.FileType;
 import org.apache.archiva.admin.model.beans.LegacyArtifactPath;
 import org.apache.archiva.admin.model.beans.NetworkConfiguration;
 import org.apache.archiva.admin.model.beans.OrganisationInformation;
+import org.apache.archiva.admin.model.beans.RepositoryScanningConfiguration;
 import org.apache.archiva.admin.model.beans.UiConfiguration;
 import org.apache.archiva.configuration.ArchivaConfiguration;
 
@@ -188,4 +190,28 @@ public class MockArchivaAdministration
     {
 
     }
+
+    public RepositoryScanningConfiguration getRepositoryScanningConfiguration()
+        throws RepositoryAdminException
+    {
+        return null;
+    }
+
+    public void setRepositoryScanningConfiguration( RepositoryScanningConfiguration repositoryScanningConfiguration )
+        throws RepositoryAdminException
+    {
+
+    }
+
+    public CassandraConfiguration getCassandraConfiguration()
+        throws RepositoryAdminException
+    {
+        return null;
+    }
+
+    public void setCassandraConfiguration( CassandraConfiguration cassandraConfiguration )
+        throws RepositoryAdminException
+    {
+
+    }
 }
@@ -20,6 +20,7 @@ package org.apache.archiva.rest.api.services;
  */
 
 import org.apache.archiva.cudf.admin.bean.CUDFJob;
+import org.apache.archiva.cudf.cache.CUDFCacheStatistics;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
 import org.apache.archiva.redback.authorization.RedbackAuthorization;
 import org.apache.archiva.security.common.ArchivaRoleConstants;
@@ -68,12 +69,14 @@ public interface CUDFService
         throws ArchivaRestServiceException, MetadataResolutionException;
 
     /**
-     * Gets the cone extract for the artifact in file.
+     * Gets the cone extract for the artifact in file. The extract is streamed, gzip compressed if the client accepts
+     * it, and tagged so that it is only computed again once the repositories changed.
      *
      * @param groupId    the groupId of the desired artifact
      * @param artifactId the artifactId of the desired artifact
      * @param version    the version of the desired artifact
      * @param type       the type of the desired artifact
+     * @param keep       no longer used, the extract is not written to a file
      * @return The CUDF extract for the artifact in a file
      * @throws ArchivaRestServiceException
      */
@@ -108,7 +111,7 @@ public interface CUDFService
         throws ArchivaRestServiceException;
 
     /**
-     * Gets the entire repository into a cudf file
+     * Gets the entire repository into a cudf file, streamed the same way as the cone extracts.
      *
      * @return the universe included into the repositories
      * @throws ArchivaRestServiceException
@@ -175,6 +178,20 @@ public interface CUDFService
     void deleteCUDFJob( @PathParam( "id" ) String id )
         throws ArchivaRestServiceException;
 
+    @Path( "cache/statistics" )
+    @GET
+    @RedbackAuthorization( permissions = ArchivaRoleConstants.OPERATION_MANAGE_CONFIGURATION )
+    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML } )
+    CUDFCacheStatistics getCacheStatistics()
+        throws ArchivaRestServiceException;
+
+    @Path( "cache/clear" )
+    @GET
+    @RedbackAuthorization( permissions = ArchivaRoleConstants.OPERATION_MANAGE_CONFIGURATION )
+    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML } )
+    Boolean clearCache()
+        throws ArchivaRestServiceException;
+
     @Path( "jobs/files/{id}" )
     @GET
     @RedbackAuthorization( permissions = ArchivaRoleConstants.OPERATION_MANAGE_CONFIGURATION)
@@ -25,6 +25,8 @@ import org.apache.archiva.admin.model.beans.RepositoryGroup;
 import org.apache.archiva.admin.model.group.RepositoryGroupAdmin;
 import org.apache.archiva.cudf.admin.api.CUDFJobsAdmin;
 import org.apache.archiva.cudf.admin.bean.CUDFJob;
+import org.apache.archiva.cudf.cache.CUDFCache;
+import org.apache.archiva.cudf.cache.CUDFCacheStatistics;
 import org.apache.archiva.cudf.extractor.CUDFEngine;
 import org.apache.archiva.cudf.extractor.CUDFFiles;
 import org.apache.archiva.cudf.extractor.CUDFPdfGenerator;
@@ -39,6 +41,7 @@ import org.apache.archiva.scheduler.cudf.ArchivaCUDFTaskExecutor;
 import org.apache.archiva.scheduler.cudf.CUDFTask;
 import org.apache.archiva.security.ArchivaSecurityException;
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.stereotype.Service;
@@ -46,17 +49,25 @@ import org.springframework.stereotype.Service;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * @author Adrien Lecharpentier <adrien.lecharpentier@zenika.com>
@@ -94,6 +105,12 @@ public class DefaultCUDFService
     @Inject
     private CUDFReportGenerator cudfReportGenerator;
 
+    @Inject
+    private CUDFCache cudfCache;
+
+    @Context
+    private Request request;
+
     public void getConeCUDF( String groupId, String artifactId, String version, String type, String repositoryId,
                              HttpServletResponse servletResponse )
         throws ArchivaRestServiceException, MetadataResolutionException
@@ -125,46 +142,21 @@ public class DefaultCUDFService
         }
     }
 
-    public Response getConeCUDFFile( String groupId, String artifactId, String version, String type,
-                                     String repositoryId, boolean keep )
+    public Response getConeCUDFFile( final String groupId, final String artifactId, final String version,
+                                     final String type, final String repositoryId, boolean keep )
         throws ArchivaRestServiceException, MetadataResolutionException
     {
-        try
+        final List<String> repositories = getConeRepositories( version, repositoryId );
+        String fileName = "extractCUDF_" + groupId + "-" + artifactId + "-" + version + ".txt";
+        EntityTag entityTag = getEntityTag( repositories, groupId, artifactId, version, type, repositoryId );
+        return streamCUDF( fileName, entityTag, new CUDFOutput()
         {
-            String fileName = "extractCUDF_" + groupId + "-" + artifactId + "-" + version;
-            File output = File.createTempFile( fileName, ".txt" );
-            if ( !keep )
-            {
-                output.deleteOnExit();
-            }
-            FileWriter fos = null;
-            try
+            public void write( Writer writer )
+                throws IOException, ArchivaRestServiceException
             {
-                fos = new FileWriter( output );
-                computeCUDFCone( groupId, artifactId, version, type, repositoryId, fos );
+                computeCUDFCone( groupId, artifactId, version, type, repositoryId, repositories, writer );
             }
-            finally
-            {
-                if ( fos != null )
-                {
-                    try
-                    {
-                        fos.close();
-                    }
-                    catch ( IOException e )
-                    {
-                        //NOTHING
-                    }
-                }
-            }
-            return Response.ok( output, MediaType.APPLICATION_OCTET_STREAM ).header( "Content-Disposition",
-                                                                                     "attachment; filename=" + fileName
-                                                                                         + ".txt" ).build();
-        }
-        catch ( IOException e )
-        {
-            throw new ArchivaRestServiceException( "Unable to extract CUDF", e );
-        }
+        } );
     }
 
     @Override
@@ -172,41 +164,68 @@ public class DefaultCUDFService
                                     boolean keep )
         throws IOException, ArchivaRestServiceException
     {
+        List<String> repositories = getConeRepositories( version, repositoryId );
+        EntityTag entityTag = getEntityTag( repositories, "pdf", groupId, artifactId, version, type, repositoryId );
+        Response.ResponseBuilder notModified = request.evaluatePreconditions( entityTag );
+        if ( notModified != null )
+        {
+            return notModified.tag( entityTag ).build();
+        }
+
+        // the PDF serializer needs the whole document and writes to a file
         StringWriter writer = new StringWriter(  );
-        computeCUDFCone( groupId, artifactId, version, type, repositoryId, writer );
+        computeCUDFCone( groupId, artifactId, version, type, repositoryId, repositories, writer );
         String fileName = "extractCUDF_" + groupId + "-" + artifactId + "-" + version;
-        File output = File.createTempFile( fileName, ".pdf" );
-        if ( !keep )
+        final File output = File.createTempFile( fileName, ".pdf" );
+        cudfPdfGenerator.generateCUDFPdf( new StringReader( writer.toString() ), output );
+        if ( keep )
         {
-            output.deleteOnExit();
+            return Response.ok( output, "application/pdf" ).tag( entityTag ).header( "Content-Disposition",
+                                                                                     "attachment; filename="
+                                                                                         + fileName
+                                                                                         + ".pdf" ).build();
         }
-        cudfPdfGenerator.generateCUDFPdf( new StringReader( writer.toString() ), output );
-        return Response.ok( output, "application/pdf" ).header( "Content-Disposition",
-                                                                                 "attachment; filename=" + fileName
-                                                                                     + ".pdf" ).build();
+        StreamingOutput pdf = new StreamingOutput()
+        {
+            public void write( OutputStream outputStream )
+                throws IOException
+            {
+                try
+                {
+                    FileUtils.copyFile( output, outputStream );
+                }
+                finally
+                {
+                    FileUtils.deleteQuietly( output );
+                }
+            }
+        };
+        return Response.ok( pdf, "application/pdf" ).tag( entityTag ).header( "Content-Disposition",
+                                                                              "attachment; filename=" + fileName
+                                                                                  + ".pdf" ).build();
     }
 
     private void computeCUDFCone( String groupId, String artifactId, String version, String type, String repositoryId,
                                   Writer writer )
         throws IOException, ArchivaRestServiceException
+    {
+        computeCUDFCone( groupId, artifactId, version, type, repositoryId,
+                         getConeRepositories( version, repositoryId ), writer );
+    }
+
+    private void computeCUDFCone( String groupId, String artifactId, String version, String type, String repositoryId,
+                                  List<String> repositories, Writer writer )
+        throws IOException, ArchivaRestServiceException
     {
         try
         {
             if ( repositoryId == null || repositoryId.isEmpty() )
             {
-                if ( version.contains( "SNAPSHOT" ) )
-                {
-                    cudfEngine.computeCUDFCone( groupId, artifactId, version, type, getSnapshotRepository(), writer );
-                }
-                else
-                {
-                    cudfEngine.computeCUDFCone( groupId, artifactId, version, type, getReleaseRepository(), writer );
-                }
+                cudfEngine.computeCUDFCone( groupId, artifactId, version, type, repositories, writer );
             }
             else
             {
-                cudfEngine.computeCUDFCone( groupId, artifactId, version, type, repositoryId, getObservableRepos(),
-                                            writer );
+                cudfEngine.computeCUDFCone( groupId, artifactId, version, type, repositoryId, repositories, writer );
             }
         }
         catch ( MetadataResolutionException e )
@@ -215,6 +234,20 @@ public class DefaultCUDFService
         }
     }
 
+    /**
+     * @return the repositories the cone is computed in: the snapshot or release repositories of the user if no
+     *         repository is given, all the observable ones otherwise
+     */
+    private List<String> getConeRepositories( String version, String repositoryId )
+        throws ArchivaRestServiceException
+    {
+        if ( repositoryId == null || repositoryId.isEmpty() )
+        {
+            return version.contains( "SNAPSHOT" ) ? getSnapshotRepository() : getReleaseRepository();
+        }
+        return getObservableRepos();
+    }
+
     private List<String> getSnapshotRepository()
         throws ArchivaRestServiceException
     {
@@ -291,42 +324,82 @@ public class DefaultCUDFService
     public Response getUniverseCUDFFile( String repositoryId, boolean keep )
         throws ArchivaRestServiceException
     {
-        try
+        final List<String> repositories = getSelectedRepos( repositoryId );
+        return streamCUDF( "extractCUDF_universe.txt", getEntityTag( repositories, "universe" ), new CUDFOutput()
         {
-            String fileName = "extractCUDF_universe";
-            File output = File.createTempFile( fileName, ".txt" );
-            if ( !keep )
+            public void write( Writer writer )
+                throws IOException
             {
-                output.deleteOnExit();
+                cudfEngine.computeCUDFUniverse( repositories, writer, null );
             }
-            Writer fos = null;
-            try
-            {
-                fos = new FileWriter( output );
-                cudfEngine.computeCUDFUniverse( getSelectedRepos( repositoryId ), fos, null );
-            }
-            finally
+        } );
+    }
+
+    /**
+     * Streams the CUDF document to the response, gzip compressed if the client accepts it. Clients sending back the
+     * entity tag get a 304 without the document being computed again, until the content of one of the repositories
+     * changes.
+     */
+    private Response streamCUDF( String fileName, EntityTag entityTag, final CUDFOutput cudfOutput )
+    {
+        Response.ResponseBuilder notModified = request.evaluatePreconditions( entityTag );
+        if ( notModified != null )
+        {
+            return notModified.tag( entityTag ).build();
+        }
+
+        String acceptEncoding = httpServletRequest == null ? null : httpServletRequest.getHeader( "Accept-Encoding" );
+        final boolean gzip = acceptEncoding != null && acceptEncoding.contains( "gzip" );
+        StreamingOutput output = new StreamingOutput()
+        {
+            public void write( OutputStream outputStream )
+                throws IOException
             {
-                if ( fos != null )
+                OutputStream out = gzip ? new GZIPOutputStream( outputStream ) : outputStream;
+                Writer writer = new BufferedWriter( new OutputStreamWriter( out, "UTF-8" ) );
+                try
+                {
+                    cudfOutput.write( writer );
+                }
+                catch ( ArchivaRestServiceException e )
                 {
-                    try
-                    {
-                        fos.close();
-                    }
-                    catch ( IOException e )
-                    {
-                        //NOTHING
-                    }
+                    throw new WebApplicationException( e, e.getHttpErrorCode() );
+                }
+                finally
+                {
+                    // also finishes the gzip stream
+                    writer.close();
                 }
             }
-            return Response.ok( output, MediaType.APPLICATION_OCTET_STREAM ).header( "Content-Disposition",
-                                                                                     "attachment; filename=" + fileName
-                                                                                         + ".txt" ).build();
+        };
+        Response.ResponseBuilder builder =
+            Response.ok( output, MediaType.APPLICATION_OCTET_STREAM ).tag( entityTag ).header( "Content-Disposition",
+                                                                                               "attachment; filename="
+                                                                                                   + fileName ).header(
+                "Vary", "Accept-Encoding" );
+        if ( gzip )
+        {
+            builder.header( "Content-Encoding", "gzip" );
         }
-        catch ( IOException e )
+        return builder.build();
+    }
+
+    private EntityTag getEntityTag( List<String> repositories, String... parts )
+    {
+        StringBuilder key = new StringBuilder();
+        for ( String part : parts )
         {
-            throw new ArchivaRestServiceException( "Unable to extract CUDF", e );
+            key.append( part ).append( ':' );
         }
+        key.append( repositories );
+        return new EntityTag( Long.toHexString( cudfCache.getLastModified( repositories ) ) + "-" + Integer.toHexString(
+            key.toString().hashCode() ) );
+    }
+
+    private interface CUDFOutput
+    {
+        void write( Writer writer )
+            throws IOException, ArchivaRestServiceException;
     }
 
     public Response startCudfTaskGeneration( String filePath )
@@ -358,6 +431,7 @@ public class DefaultCUDFService
         cudfTask.setResourceDestination( new File( cudfJob.getLocation() ) );
         cudfTask.setDebug( cudfJob.isDebug() );
         cudfTask.setRetentionCount( cudfJob.getRetentionCount() );
+        cudfTask.setParallelism( cudfJob.getParallelism() );
         if ( cudfJob.isAllRepositories() )
         {
             cudfTask.setAllRepositories( true );
@@ -454,6 +528,19 @@ public class DefaultCUDFService
         }
     }
 
+    public CUDFCacheStatistics getCacheStatistics()
+        throws ArchivaRestServiceException
+    {
+        return cudfCache.getStatistics();
+    }
+
+    public Boolean clearCache()
+        throws ArchivaRestServiceException
+    {
+        cudfCache.clear();
+        return Boolean.TRUE;
+    }
+
     @Override
     public List<String> getCudfFiles( String jobId )
         throws ArchivaRestServiceException
@@ -37,6 +37,7 @@ import org.apache.archiva.metadata.model.maven2.MavenArtifactFacet;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
+import org.apache.archiva.metadata.repository.MetadataResolverCache;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.apache.archiva.model.ArchivaRepositoryMetadata;
@@ -145,6 +146,9 @@ public class DefaultRepositoriesService
     @Inject
     protected List<RepositoryListener> listeners = new ArrayList<RepositoryListener>();
 
+    @Inject
+    private MetadataResolverCache metadataResolverCache;
+
     @Inject
     private RepositoryScanner repoScanner;
 
@@ -680,6 +684,7 @@ public class DefaultRepositoriesService
             }
 
             metadataRepository.removeProjectVersion( repositoryId, namespace, projectId, version );
+            metadataResolverCache.invalidate( repositoryId, namespace, projectId, version );
         }
         catch ( MetadataRepositoryException e )
         {
@@ -972,6 +977,7 @@ public class DefaultRepositoriesService
             metadataRepository.removeNamespace( repositoryId, groupId );
 
             metadataRepository.save();
+            metadataResolverCache.invalidate( repositoryId );
         }
         catch ( MetadataRepositoryException e )
         {
@@ -1040,6 +1046,7 @@ public class DefaultRepositoriesService
             metadataRepository.removeProject( repositoryId, groupId, projectId );
 
             metadataRepository.save();
+            metadataResolverCache.invalidate( repositoryId );
         }
         catch ( MetadataRepositoryException e )
         {
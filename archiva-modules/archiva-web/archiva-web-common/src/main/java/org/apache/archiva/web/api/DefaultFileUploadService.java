@@ -41,6 +41,7 @@ import org.apache.archiva.repository.RepositoryNotFoundException;
 import org.apache.archiva.repository.metadata.MetadataTools;
 import org.apache.archiva.repository.metadata.RepositoryMetadataException;
 import org.apache.archiva.repository.metadata.RepositoryMetadataWriter;
+import org.apache.archiva.repository.scanner.RepositoryScanJournal;
 import org.apache.archiva.rest.api.services.ArchivaRestServiceException;
 import org.apache.archiva.rest.services.AbstractRestService;
 import org.apache.archiva.scheduler.ArchivaTaskScheduler;
@@ -296,6 +297,8 @@ public class DefaultFileUploadService
             pomFilename = FilenameUtils.removeExtension( pomFilename ) + ".pom";
 
             copyFile( new File( fileMetadata.getServerFileName() ), targetPath, pomFilename, fixChecksums );
+            RepositoryScanJournal.markModified( new File( repoConfig.getLocation() ),
+                                                new File( targetPath, pomFilename ) );
             triggerAuditEvent( repoConfig.getId(), path + "/" + pomFilename, AuditEvent.UPLOAD_FILE );
             queueRepositoryTask( repoConfig.getId(), new File( targetPath, pomFilename ) );
         }
@@ -392,6 +395,7 @@ public class DefaultFileUploadService
                 else
                 {
                     copyFile( new File( fileMetadata.getServerFileName() ), targetPath, filename, fixChecksums );
+                    RepositoryScanJournal.markModified( new File( repoConfig.getLocation() ), targetFile );
                     triggerAuditEvent( repository.getId(), path + "/" + filename, AuditEvent.UPLOAD_FILE );
                     queueRepositoryTask( repository.getId(), targetFile );
                 }
@@ -436,6 +440,7 @@ public class DefaultFileUploadService
             {
                 updateProjectMetadata( targetPath.getAbsolutePath(), lastUpdatedTimestamp, timestamp, newBuildNumber,
                                        fixChecksums, fileMetadata, groupId, artifactId, version, packaging );
+                RepositoryScanJournal.markModified( new File( repoConfig.getLocation() ), targetPath );
 
                 if ( VersionUtil.isSnapshot( version ) )
                 {
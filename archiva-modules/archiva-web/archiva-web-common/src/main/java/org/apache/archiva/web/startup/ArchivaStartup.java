@@ -22,8 +22,6 @@ package org.apache.archiva.web.startup;
 import org.apache.archiva.common.ArchivaException;
 import org.apache.archiva.common.plexusbridge.PlexusSisuBridge;
 import org.apache.archiva.common.plexusbridge.PlexusSisuBridgeException;
-import org.apache.archiva.redback.components.cache.Cache;
-import org.apache.archiva.redback.components.cache.ehcache.EhcacheCache;
 import org.apache.archiva.redback.components.scheduler.DefaultScheduler;
 import org.apache.archiva.scheduler.cudf.CUDFArchivaTaskScheduler;
 import org.apache.archiva.scheduler.repository.DefaultRepositoryArchivaTaskScheduler;
@@ -158,7 +156,6 @@ public class ArchivaStartup
                     e.printStackTrace();
                 }
             }
-            disposeCUDFCache( applicationContext.getBean( "cache#cudf", Cache.class ) );
             shutdownCudfScheduler();
             // close the application context
             //applicationContext.close();
@@ -181,14 +178,6 @@ public class ArchivaStartup
 
     }
 
-    private void disposeCUDFCache( Cache cudfCache )
-    {
-        if ( cudfCache instanceof EhcacheCache )
-        {
-            ( (EhcacheCache) cudfCache ).dispose();
-        }
-    }
-
     private void shutdownCudfScheduler()
     {
         if ( cudfArchivaTaskScheduler != null )
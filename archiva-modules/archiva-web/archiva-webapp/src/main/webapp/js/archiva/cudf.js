@@ -165,7 +165,8 @@ function ( jquery, i18n, jqueryTmpl, ko, koSimpleGrid ) {
     });
   }
 
-  CUDFJob = function ( id, location, cronExpression, allRepositories, repositoryGroup, debug, retentionCount ) {
+  CUDFJob = function ( id, location, cronExpression, allRepositories, repositoryGroup, debug, retentionCount,
+                       parallelism ) {
     var self = this;
     this.id = ko.observable( id );
     this.location = ko.observable( location );
@@ -174,6 +175,7 @@ function ( jquery, i18n, jqueryTmpl, ko, koSimpleGrid ) {
     this.repositoryGroup = ko.observable( repositoryGroup );
     this.debug = ko.observable( debug );
     this.retentionCount = ko.observable( retentionCount );
+    this.parallelism = ko.observable( parallelism ? parallelism : 1 );
   }
 
   CUDFJobViewModel = function ( cudfJob, cudfJobsViewModel, update ) {
@@ -359,7 +361,8 @@ function ( jquery, i18n, jqueryTmpl, ko, koSimpleGrid ) {
 
   mapCUDFJob = function ( data ) {
     return data == null ? null : new CUDFJob( data.id, data.location, data.cronExpression, data.allRepositories,
-                                              data.repositoryGroup === null ? "" : data.repositoryGroup, data.debug, data.retentionCount );
+                                              data.repositoryGroup === null ? "" : data.repositoryGroup, data.debug, data.retentionCount,
+                                              data.parallelism );
   }
 
   mapAvailableRepositoryGroups = function ( data ) {
@@ -23,9 +23,11 @@ import org.apache.archiva.admin.model.beans.ManagedRepository;
 import org.apache.archiva.audit.AuditEvent;
 import org.apache.archiva.audit.AuditListener;
 import org.apache.archiva.redback.components.taskqueue.TaskQueueException;
+import org.apache.archiva.repository.scanner.RepositoryScanJournal;
 import org.apache.archiva.scheduler.ArchivaTaskScheduler;
 import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
 import org.apache.archiva.scheduler.repository.model.RepositoryTask;
+import org.apache.archiva.webdav.util.FileDownloadWriter;
 import org.apache.archiva.webdav.util.IndexWriter;
 import org.apache.archiva.webdav.util.MimeTypes;
 import org.apache.commons.io.FileUtils;
@@ -59,6 +61,7 @@ import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.FileInputStream;
@@ -217,6 +220,29 @@ public class ArchivaDavResource
         }
     }
 
+    /**
+     * @return whether the content of this resource is its local file, sent by
+     *         {@link #spool(HttpServletRequest, HttpServletResponse, boolean)}
+     * @since 1.4-M3
+     */
+    public boolean isLocalFileContent()
+    {
+        return exists() && !isCollection();
+    }
+
+    /**
+     * Answers a GET or HEAD request of the local file of this resource, with the conditional and range requests.
+     *
+     * @since 1.4-M3
+     */
+    public void spool( HttpServletRequest request, HttpServletResponse response, boolean sendContent )
+        throws IOException
+    {
+        FileDownloadWriter writer =
+            new FileDownloadWriter( localResource, mimeTypes.getMimeType( localResource.getName() ) );
+        writer.write( request, response, sendContent );
+    }
+
     public DavPropertyName[] getPropertyNames()
     {
         return getProperties().getPropertyNames();
@@ -315,6 +341,7 @@ public class ArchivaDavResource
                 throw new DavException( HttpServletResponse.SC_BAD_REQUEST, msg );
             }
 
+            RepositoryScanJournal.markModified( new File( repository.getLocation() ), localFile );
             queueRepositoryTask( localFile );
 
             log.debug( "File '{}{}(current user '{}')", resource.getDisplayName(),
@@ -25,8 +25,8 @@ import org.apache.archiva.admin.model.remote.RemoteRepositoryAdmin;
 import org.apache.archiva.audit.AuditEvent;
 import org.apache.archiva.audit.AuditListener;
 import org.apache.archiva.audit.Auditable;
-import org.apache.archiva.common.plexusbridge.PlexusSisuBridge;
-import org.apache.archiva.common.plexusbridge.PlexusSisuBridgeException;
+import org.apache.archiva.checksum.Checksum;
+import org.apache.archiva.checksum.ChecksumAlgorithm;
 import org.apache.archiva.common.utils.PathUtil;
 import org.apache.archiva.common.utils.VersionUtil;
 import org.apache.archiva.configuration.ArchivaConfiguration;
@@ -34,7 +34,6 @@ import org.apache.archiva.configuration.RepositoryGroupConfiguration;
 import org.apache.archiva.indexer.merger.IndexMerger;
 import org.apache.archiva.indexer.merger.IndexMergerException;
 import org.apache.archiva.indexer.merger.IndexMergerRequest;
-import org.apache.archiva.indexer.merger.TemporaryGroupIndex;
 import org.apache.archiva.indexer.search.RepositorySearch;
 import org.apache.archiva.maven2.metadata.MavenMetadataReader;
 import org.apache.archiva.metadata.repository.storage.RepositoryStorage;
@@ -65,12 +64,12 @@ import org.apache.archiva.repository.metadata.RepositoryMetadataMerge;
 import org.apache.archiva.repository.metadata.RepositoryMetadataWriter;
 import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
 import org.apache.archiva.security.ServletAuthenticator;
+import org.apache.archiva.webdav.util.MergedMetadataCache;
+import org.apache.archiva.webdav.util.MergedMetadataCache.MergedMetadata;
 import org.apache.archiva.webdav.util.MimeTypes;
 import org.apache.archiva.webdav.util.RepositoryPathUtil;
-import org.apache.archiva.webdav.util.TemporaryGroupIndexSessionCleaner;
 import org.apache.archiva.webdav.util.WebdavMethodUtil;
 import org.apache.archiva.xml.XMLException;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.SystemUtils;
@@ -84,12 +83,8 @@ import org.apache.jackrabbit.webdav.DavSession;
 import org.apache.jackrabbit.webdav.lock.LockManager;
 import org.apache.jackrabbit.webdav.lock.SimpleLockManager;
 import org.apache.maven.index.context.IndexingContext;
-import org.codehaus.plexus.digest.ChecksumFile;
-import org.codehaus.plexus.digest.Digester;
-import org.codehaus.plexus.digest.DigesterException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MarkerFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 
@@ -97,15 +92,13 @@ import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 import java.io.File;
-import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -189,20 +182,8 @@ public class ArchivaDavResourceFactory
      */
     private final LockManager lockManager = new SimpleLockManager();
 
-    /**
-     *
-     */
-    private ChecksumFile checksum;
-
-    /**
-     *
-     */
-    private Digester digestSha1;
-
-    /**
-     *
-     */
-    private Digester digestMd5;
+    @Inject
+    private MergedMetadataCache mergedMetadataCache;
 
     /**
      *
@@ -214,16 +195,11 @@ public class ArchivaDavResourceFactory
     private ApplicationContext applicationContext;
 
     @Inject
-    public ArchivaDavResourceFactory( ApplicationContext applicationContext, PlexusSisuBridge plexusSisuBridge,
+    public ArchivaDavResourceFactory( ApplicationContext applicationContext,
                                       ArchivaConfiguration archivaConfiguration )
-        throws PlexusSisuBridgeException
     {
         this.archivaConfiguration = archivaConfiguration;
         this.applicationContext = applicationContext;
-        this.checksum = plexusSisuBridge.lookup( ChecksumFile.class );
-
-        this.digestMd5 = plexusSisuBridge.lookup( Digester.class, "md5" );
-        this.digestSha1 = plexusSisuBridge.lookup( Digester.class, "sha1" );
 
         // TODO remove this hard dependency on maven !!
         repositoryRequest = new RepositoryRequest( new LegacyPathParser( archivaConfiguration ) );
@@ -348,75 +324,62 @@ public class ArchivaDavResourceFactory
                 filePath = filePath + "/maven-metadata-" + repoGroupConfig.getId() + ".xml";
 
                 // for MRM-872 handle checksums of the merged metadata files
+                String extension = null;
                 if ( repositoryRequest.isSupportFile( requestedResource ) )
                 {
-                    File metadataChecksum =
-                        new File( filePath + "." + StringUtils.substringAfterLast( requestedResource, "." ) );
-                    if ( metadataChecksum.exists() )
-                    {
-                        LogicalResource logicalResource =
-                            new LogicalResource( RepositoryPathUtil.getLogicalResource( locator.getResourcePath() ) );
-
-                        resource =
-                            new ArchivaDavResource( metadataChecksum.getAbsolutePath(), logicalResource.getPath(), null,
-                                                    request.getRemoteAddr(), activePrincipal, request.getDavSession(),
-                                                    archivaLocator, this, mimeTypes, auditListeners, scheduler );
-                    }
+                    extension = StringUtils.substringAfterLast( requestedResource, "." );
                 }
-                else
+
+                if ( extension == null || "sha1".equals( extension ) || "md5".equals( extension ) )
                 {
+                    String logicalPath = RepositoryPathUtil.getLogicalResource( locator.getResourcePath() );
+                    String metadataPath =
+                        extension == null ? logicalPath : StringUtils.removeEnd( logicalPath, "." + extension );
+
+                    // merge the metadata of all repos under group
+                    List<File> members = null;
                     if ( resourcesInAbsolutePath != null && resourcesInAbsolutePath.size() > 1 )
                     {
-                        // merge the metadata of all repos under group
-                        ArchivaRepositoryMetadata mergedMetadata = new ArchivaRepositoryMetadata();
+                        members = new ArrayList<File>();
                         for ( String resourceAbsPath : resourcesInAbsolutePath )
                         {
-                            try
-                            {
-                                File metadataFile = new File( resourceAbsPath );
-                                ArchivaRepositoryMetadata repoMetadata = MavenMetadataReader.read( metadataFile );
-                                mergedMetadata = RepositoryMetadataMerge.merge( mergedMetadata, repoMetadata );
-                            }
-                            catch ( XMLException e )
-                            {
-                                throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                        "Error occurred while reading metadata file." );
-                            }
-                            catch ( RepositoryMetadataException r )
-                            {
-                                throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                        "Error occurred while merging metadata file." );
-                            }
+                            members.add( new File( extension == null
+                                                       ? resourceAbsPath
+                                                       : StringUtils.removeEnd( resourceAbsPath, "." + extension ) ) );
                         }
+                    }
 
-                        try
-                        {
-                            File resourceFile = writeMergedMetadataToFile( mergedMetadata, filePath );
-
-                            LogicalResource logicalResource = new LogicalResource(
-                                RepositoryPathUtil.getLogicalResource( locator.getResourcePath() ) );
-
-                            resource =
-                                new ArchivaDavResource( resourceFile.getAbsolutePath(), logicalResource.getPath(), null,
-                                                        request.getRemoteAddr(), activePrincipal,
-                                                        request.getDavSession(), archivaLocator, this, mimeTypes,
-                                                        auditListeners, scheduler );
-                        }
-                        catch ( RepositoryMetadataException r )
-                        {
-                            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                    "Error occurred while writing metadata file." );
-                        }
-                        catch ( IOException ie )
+                    if ( extension != null )
+                    {
+                        // the checksums are those of the metadata merged for the requester, which is not limited to
+                        // the members having checksum files
+                        members = getReadableMetadataFiles( request, repoGroupConfig, metadataPath );
+                        if ( members.size() < 2 )
                         {
-                            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                    "Error occurred while generating checksum files." );
+                            members = null;
                         }
-                        catch ( DigesterException de )
+                    }
+
+                    if ( members != null )
+                    {
+                        MergedMetadata mergedMetadata =
+                            getMergedMetadata( repoGroupConfig.getId(), metadataPath, members );
+                        byte[] content = mergedMetadata.getContent();
+                        if ( extension != null )
                         {
-                            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                    "Error occurred while generating checksum files." );
+                            String checksum =
+                                "sha1".equals( extension ) ? mergedMetadata.getSha1() : mergedMetadata.getMd5();
+                            content = getBytes( checksum + "  " + new File( filePath ).getName() );
+                            filePath = filePath + "." + extension;
                         }
+
+                        LogicalResource logicalResource = new LogicalResource( logicalPath );
+
+                        resource = new MergedMetadataDavResource( content, mergedMetadata.getLastModified(), filePath,
+                                                                  logicalResource.getPath(), request.getRemoteAddr(),
+                                                                  activePrincipal, request.getDavSession(),
+                                                                  archivaLocator, this, mimeTypes, auditListeners,
+                                                                  scheduler );
                     }
                 }
             }
@@ -1134,36 +1097,112 @@ public class ArchivaDavResourceFactory
         return allow;
     }
 
-    private File writeMergedMetadataToFile( ArchivaRepositoryMetadata mergedMetadata, String outputFilename )
-        throws RepositoryMetadataException, DigesterException, IOException
+    /**
+     * @return the metadata files of the members of the group which the requester can read, in the order of the group
+     */
+    private List<File> getReadableMetadataFiles( DavServletRequest request,
+                                                 RepositoryGroupConfiguration repoGroupConfig, String metadataPath )
+        throws DavException
     {
-        File outputFile = new File( outputFilename );
-        if ( outputFile.exists() )
+        List<File> files = new ArrayList<File>();
+        for ( String repositoryId : new ArrayList<String>( repoGroupConfig.getRepositories() ) )
         {
-            FileUtils.deleteQuietly( outputFile );
+            try
+            {
+                if ( !isAuthorized( request, repositoryId ) )
+                {
+                    continue;
+                }
+            }
+            catch ( DavException e )
+            {
+                continue;
+            }
+
+            try
+            {
+                ManagedRepositoryContent managedRepository =
+                    repositoryFactory.getManagedRepositoryContent( repositoryId );
+                File file = new File( managedRepository.getRepoRoot(), metadataPath ).getAbsoluteFile();
+                if ( file.exists() )
+                {
+                    files.add( file );
+                }
+            }
+            catch ( RepositoryNotFoundException e )
+            {
+                throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e );
+            }
+            catch ( RepositoryException e )
+            {
+                throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e );
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Merges the metadata files of the members of a group, with the checksums of the result, unless it is in the cache.
+     */
+    private MergedMetadata getMergedMetadata( String groupId, String path, List<File> members )
+        throws DavException
+    {
+        MergedMetadata mergedMetadata = mergedMetadataCache.get( groupId, path, members );
+        if ( mergedMetadata != null )
+        {
+            return mergedMetadata;
         }
+        mergedMetadata = new MergedMetadata( members );
 
-        outputFile.getParentFile().mkdirs();
-        RepositoryMetadataWriter.write( mergedMetadata, outputFile );
+        ArchivaRepositoryMetadata metadata = new ArchivaRepositoryMetadata();
+        for ( File metadataFile : members )
+        {
+            try
+            {
+                ArchivaRepositoryMetadata repoMetadata = MavenMetadataReader.read( metadataFile );
+                metadata = RepositoryMetadataMerge.merge( metadata, repoMetadata );
+            }
+            catch ( XMLException e )
+            {
+                throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                                        "Error occurred while reading metadata file." );
+            }
+            catch ( RepositoryMetadataException r )
+            {
+                throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                                        "Error occurred while merging metadata file." );
+            }
+        }
 
-        createChecksumFile( outputFilename, digestSha1 );
-        createChecksumFile( outputFilename, digestMd5 );
+        try
+        {
+            StringWriter writer = new StringWriter();
+            RepositoryMetadataWriter.write( metadata, writer );
+            byte[] content = getBytes( writer.toString() );
 
-        return outputFile;
+            String sha1 = new Checksum( ChecksumAlgorithm.SHA1 ).update( content, 0, content.length ).getChecksum();
+            String md5 = new Checksum( ChecksumAlgorithm.MD5 ).update( content, 0, content.length ).getChecksum();
+            mergedMetadata.setContent( content, sha1, md5 );
+        }
+        catch ( RepositoryMetadataException r )
+        {
+            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                                    "Error occurred while writing metadata file." );
+        }
+        mergedMetadataCache.put( groupId, path, mergedMetadata );
+        return mergedMetadata;
     }
 
-    private void createChecksumFile( String path, Digester digester )
-        throws DigesterException, IOException
+    private static byte[] getBytes( String content )
     {
-        File checksumFile = new File( path + digester.getFilenameExtension() );
-        if ( !checksumFile.exists() )
+        try
         {
-            FileUtils.deleteQuietly( checksumFile );
-            checksum.createChecksum( new File( path ), digester );
+            return content.getBytes( "UTF-8" );
         }
-        else if ( !checksumFile.isFile() )
+        catch ( UnsupportedEncodingException e )
         {
-            log.error( "Checksum file is not a file." );
+            // UTF-8 is always supported
+            throw new IllegalStateException( e );
         }
     }
 
@@ -1188,34 +1227,6 @@ public class ArchivaDavResourceFactory
 
         try
         {
-            HttpSession session = request.getSession();
-
-            Map<String, TemporaryGroupIndex> temporaryGroupIndexMap =
-                (Map<String, TemporaryGroupIndex>) session.getAttribute(
-                    TemporaryGroupIndexSessionCleaner.TEMPORARY_INDEX_SESSION_KEY );
-            if ( temporaryGroupIndexMap == null )
-            {
-                temporaryGroupIndexMap = new HashMap<String, TemporaryGroupIndex>();
-            }
-
-            TemporaryGroupIndex tmp = temporaryGroupIndexMap.get( repositoryGroupConfiguration.getId() );
-
-            if ( tmp != null && tmp.getDirectory() != null && tmp.getDirectory().exists() )
-            {
-                if ( System.currentTimeMillis() - tmp.getCreationTime() > ( repositoryGroupConfiguration.getMergedIndexTtl() * 60 * 1000 ) )
-                {
-                    log.debug( MarkerFactory.getMarker( "group.merged.index" ),
-                               "tmp group index '{}' is too old so delete it", repositoryGroupConfiguration.getId() );
-                    indexMerger.cleanTemporaryGroupIndex( tmp );
-                }
-                else
-                {
-                    log.debug( MarkerFactory.getMarker( "group.merged.index" ),
-                               "merged index for group '{}' found in cache", repositoryGroupConfiguration.getId() );
-                    return tmp.getDirectory();
-                }
-            }
-
             Set<String> authzRepos = new HashSet<String>();
             for ( String repository : repositories )
             {
@@ -1236,19 +1247,14 @@ public class ArchivaDavResourceFactory
                                e.getMessage() );
                 }
             }
-            log.info( "generate temporary merged index for repository group '{}' for repositories '{}'",
-                      repositoryGroupConfiguration.getId(), authzRepos );
-            IndexingContext indexingContext = indexMerger.buildMergedIndex(
+            // the users allowed to read the same repositories share the merged index of the group
+            log.debug( "get merged index for repository group '{}' for repositories '{}'",
+                       repositoryGroupConfiguration.getId(), authzRepos );
+            IndexingContext indexingContext = indexMerger.getSharedMergedIndex(
                 new IndexMergerRequest( authzRepos, true, repositoryGroupConfiguration.getId(),
-                                        repositoryGroupConfiguration.getMergedIndexPath(), repositoryGroupConfiguration.getMergedIndexTtl() ) );
-            File mergedRepoDir = indexingContext.getIndexDirectoryFile();
-            TemporaryGroupIndex temporaryGroupIndex = new TemporaryGroupIndex( mergedRepoDir, indexingContext.getId(),
-                    repositoryGroupConfiguration.getId(),repositoryGroupConfiguration.getMergedIndexTtl() )
-                    .setCreationTime(new Date().getTime() );
-            temporaryGroupIndexMap.put( repositoryGroupConfiguration.getId(), temporaryGroupIndex );
-            session.setAttribute( TemporaryGroupIndexSessionCleaner.TEMPORARY_INDEX_SESSION_KEY,
-                                  temporaryGroupIndexMap );
-            return mergedRepoDir;
+                                        repositoryGroupConfiguration.getMergedIndexPath(),
+                                        repositoryGroupConfiguration.getMergedIndexTtl() ) );
+            return indexingContext.getIndexDirectoryFile();
         }
         catch ( RepositoryAdminException e )
         {
@@ -1305,4 +1311,9 @@ public class ArchivaDavResourceFactory
     {
         this.remoteRepositoryAdmin = remoteRepositoryAdmin;
     }
+
+    public void setMergedMetadataCache( MergedMetadataCache mergedMetadataCache )
+    {
+        this.mergedMetadataCache = mergedMetadataCache;
+    }
 }
@@ -0,0 +1,124 @@
+package org.apache.archiva.webdav;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.audit.AuditListener;
+import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
+import org.apache.archiva.webdav.util.MimeTypes;
+import org.apache.jackrabbit.webdav.DavResourceFactory;
+import org.apache.jackrabbit.webdav.DavSession;
+import org.apache.jackrabbit.webdav.io.OutputContext;
+import org.apache.jackrabbit.webdav.property.DavPropertyName;
+import org.apache.jackrabbit.webdav.property.DavPropertySet;
+import org.apache.jackrabbit.webdav.property.DefaultDavProperty;
+import org.apache.jackrabbit.webdav.property.ResourceType;
+import org.joda.time.DateTime;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Metadata merged for a repository group, or one of its checksums, served from memory.
+ *
+ * @since 1.4-M3
+ */
+public class MergedMetadataDavResource
+    extends ArchivaDavResource
+{
+    private final byte[] content;
+
+    private final long lastModified;
+
+    private final MimeTypes mimeTypes;
+
+    private DavPropertySet properties;
+
+    /**
+     * @param localResource the file the merged metadata would have, which is never written
+     */
+    public MergedMetadataDavResource( byte[] content, long lastModified, String localResource,
+                                      String logicalResource, String remoteAddr, String principal, DavSession session,
+                                      ArchivaDavResourceLocator locator, DavResourceFactory factory,
+                                      MimeTypes mimeTypes, List<AuditListener> auditListeners,
+                                      RepositoryArchivaTaskScheduler scheduler )
+    {
+        super( localResource, logicalResource, null, remoteAddr, principal, session, locator, factory, mimeTypes,
+               auditListeners, scheduler );
+        this.content = content;
+        this.lastModified = lastModified;
+        this.mimeTypes = mimeTypes;
+    }
+
+    @Override
+    public boolean exists()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isCollection()
+    {
+        return false;
+    }
+
+    @Override
+    public long getModificationTime()
+    {
+        return lastModified;
+    }
+
+    @Override
+    public boolean isLocalFileContent()
+    {
+        return false;
+    }
+
+    @Override
+    public void spool( OutputContext outputContext )
+        throws IOException
+    {
+        outputContext.setContentLength( content.length );
+        outputContext.setContentType( mimeTypes.getMimeType( getLocalResource().getName() ) );
+        if ( outputContext.hasStream() )
+        {
+            outputContext.getOutputStream().write( content );
+        }
+    }
+
+    @Override
+    protected DavPropertySet initProperties()
+    {
+        if ( properties == null )
+        {
+            DavPropertySet properties = new DavPropertySet();
+            properties.add( new DefaultDavProperty( DavPropertyName.DISPLAYNAME, getDisplayName() ) );
+            properties.add( new ResourceType( ResourceType.DEFAULT_RESOURCE ) );
+            properties.add( new DefaultDavProperty( DavPropertyName.ISCOLLECTION, "0" ) );
+
+            String modifiedDate = ISODateTimeFormat.dateTime().print( new DateTime( lastModified ) );
+            properties.add( new DefaultDavProperty( DavPropertyName.GETLASTMODIFIED, modifiedDate ) );
+            properties.add( new DefaultDavProperty( DavPropertyName.CREATIONDATE, modifiedDate ) );
+            properties.add( new DefaultDavProperty( DavPropertyName.GETCONTENTLENGTH, content.length ) );
+            this.properties = properties;
+        }
+        return properties;
+    }
+}
@@ -167,6 +167,34 @@ public class RepositoryServlet
         }
     }
 
+    @Override
+    protected void doGet( WebdavRequest request, WebdavResponse response, DavResource resource )
+        throws IOException, DavException
+    {
+        if ( resource instanceof ArchivaDavResource && ( (ArchivaDavResource) resource ).isLocalFileContent() )
+        {
+            ( (ArchivaDavResource) resource ).spool( request, response, true );
+        }
+        else
+        {
+            super.doGet( request, response, resource );
+        }
+    }
+
+    @Override
+    protected void doHead( WebdavRequest request, WebdavResponse response, DavResource resource )
+        throws IOException, DavException
+    {
+        if ( resource instanceof ArchivaDavResource && ( (ArchivaDavResource) resource ).isLocalFileContent() )
+        {
+            ( (ArchivaDavResource) resource ).spool( request, response, false );
+        }
+        else
+        {
+            super.doHead( request, response, resource );
+        }
+    }
+
     public synchronized void initServers( ServletConfig servletConfig )
         throws RepositoryAdminException
     {
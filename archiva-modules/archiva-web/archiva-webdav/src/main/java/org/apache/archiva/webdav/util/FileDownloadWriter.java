@@ -0,0 +1,288 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * FileDownloadWriter - answers a GET or HEAD request of a file of a repository.
+ * <p/>
+ * It honours the conditional requests, answered from the modification time and the SHA-1 checksum of the file
+ * without opening it, and the requests of a single byte range, so that an interrupted download can be resumed. The
+ * content is sent by the container when it supports it, as Tomcat's sendfile, and otherwise transferred from the
+ * channel of the file.
+ *
+ * @since 1.4-M3
+ */
+public class FileDownloadWriter
+{
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final Pattern RANGE = Pattern.compile( "bytes=(\\d*)-(\\d*)" );
+
+    private static final Pattern SHA1 = Pattern.compile( "[0-9a-fA-F]{40}" );
+
+    /**
+     * The checksum files are small, any larger one is not read.
+     */
+    private static final long MAX_CHECKSUM_FILE_LENGTH = 1024;
+
+    private final File file;
+
+    private final String contentType;
+
+    public FileDownloadWriter( File file, String contentType )
+    {
+        this.file = file;
+        this.contentType = contentType;
+    }
+
+    public void write( HttpServletRequest request, HttpServletResponse response, boolean sendContent )
+        throws IOException
+    {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String etag = getETag( length, lastModified );
+
+        response.setHeader( "Accept-Ranges", "bytes" );
+        response.setHeader( "ETag", etag );
+        response.setDateHeader( "Last-Modified", lastModified );
+
+        if ( isNotModified( request, etag, lastModified ) )
+        {
+            response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+            return;
+        }
+
+        if ( contentType != null )
+        {
+            response.setContentType( contentType );
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader( "Range" );
+        if ( range != null && isRangeApplicable( request, etag, lastModified ) )
+        {
+            long[] bounds = parseRange( range, length );
+            if ( bounds != null && bounds.length == 0 )
+            {
+                response.setHeader( "Content-Range", "bytes */" + length );
+                response.sendError( HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE );
+                return;
+            }
+            if ( bounds != null )
+            {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus( HttpServletResponse.SC_PARTIAL_CONTENT );
+                response.setHeader( "Content-Range", "bytes " + start + "-" + end + "/" + length );
+            }
+        }
+
+        long count = end - start + 1;
+        if ( count <= Integer.MAX_VALUE )
+        {
+            response.setContentLength( (int) count );
+        }
+        else
+        {
+            response.setHeader( "Content-Length", Long.toString( count ) );
+        }
+
+        if ( !sendContent || count <= 0 )
+        {
+            return;
+        }
+
+        if ( Boolean.TRUE.equals( request.getAttribute( SENDFILE_SUPPORT ) ) )
+        {
+            // the container sends the file once the request is processed
+            request.setAttribute( SENDFILE_FILENAME, file.getCanonicalPath() );
+            request.setAttribute( SENDFILE_START, Long.valueOf( start ) );
+            request.setAttribute( SENDFILE_END, Long.valueOf( end + 1 ) );
+            return;
+        }
+
+        FileInputStream is = null;
+        try
+        {
+            is = new FileInputStream( file );
+            FileChannel channel = is.getChannel();
+            WritableByteChannel out = Channels.newChannel( response.getOutputStream() );
+            long position = start;
+            while ( position <= end )
+            {
+                long transferred = channel.transferTo( position, end + 1 - position, out );
+                if ( transferred <= 0 )
+                {
+                    throw new IOException( "File " + file + " was truncated while it was sent" );
+                }
+                position += transferred;
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly( is );
+        }
+    }
+
+    /**
+     * @return a strong entity tag made of the SHA-1 checksum of the file when it is stored next to it and up to date,
+     *         otherwise a weak one made of its size and modification time
+     */
+    private String getETag( long length, long lastModified )
+    {
+        File checksumFile = new File( file.getPath() + ".sha1" );
+        if ( checksumFile.isFile() && checksumFile.lastModified() >= lastModified
+            && checksumFile.length() <= MAX_CHECKSUM_FILE_LENGTH )
+        {
+            try
+            {
+                String checksum = StringUtils.substringBefore( FileUtils.readFileToString( checksumFile ).trim(), " " );
+                if ( SHA1.matcher( checksum ).matches() )
+                {
+                    return '"' + checksum.toLowerCase() + '"';
+                }
+            }
+            catch ( IOException e )
+            {
+                // use the weak entity tag
+            }
+        }
+        return "W/\"" + Long.toHexString( length ) + '-' + Long.toHexString( lastModified ) + '"';
+    }
+
+    private static boolean isNotModified( HttpServletRequest request, String etag, long lastModified )
+    {
+        String ifNoneMatch = request.getHeader( "If-None-Match" );
+        if ( ifNoneMatch != null )
+        {
+            // the modification time is only compared without entity tag
+            for ( String tag : StringUtils.split( ifNoneMatch, ',' ) )
+            {
+                tag = tag.trim();
+                if ( tag.equals( "*" ) || StringUtils.removeStart( tag, "W/" ).equals(
+                    StringUtils.removeStart( etag, "W/" ) ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince = getDateHeader( request, "If-Modified-Since" );
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * @return whether the range is requested for the current content of the file
+     */
+    private static boolean isRangeApplicable( HttpServletRequest request, String etag, long lastModified )
+    {
+        String ifRange = request.getHeader( "If-Range" );
+        if ( ifRange == null )
+        {
+            return true;
+        }
+        if ( ifRange.trim().startsWith( "\"" ) || ifRange.trim().startsWith( "W/" ) )
+        {
+            // a range is only resumed with a strong entity tag
+            return !etag.startsWith( "W/" ) && ifRange.trim().equals( etag );
+        }
+        long date = getDateHeader( request, "If-Range" );
+        return date >= 0 && lastModified / 1000 == date / 1000;
+    }
+
+    /**
+     * @return the first and last bytes of the range, an empty array if it is not satisfiable, or <code>null</code> if
+     *         it is not a single valid byte range, in which case the whole file is sent
+     */
+    private static long[] parseRange( String range, long length )
+    {
+        Matcher matcher = RANGE.matcher( range.trim() );
+        if ( !matcher.matches() || ( matcher.group( 1 ).length() == 0 && matcher.group( 2 ).length() == 0 ) )
+        {
+            return null;
+        }
+
+        try
+        {
+            if ( matcher.group( 1 ).length() == 0 )
+            {
+                // the last bytes
+                long suffix = Long.parseLong( matcher.group( 2 ) );
+                if ( suffix == 0 || length == 0 )
+                {
+                    return new long[0];
+                }
+                return new long[]{ Math.max( 0, length - suffix ), length - 1 };
+            }
+
+            long start = Long.parseLong( matcher.group( 1 ) );
+            long end = matcher.group( 2 ).length() == 0 ? length - 1 : Long.parseLong( matcher.group( 2 ) );
+            if ( start >= length )
+            {
+                return new long[0];
+            }
+            if ( end < start )
+            {
+                return null;
+            }
+            return new long[]{ start, Math.min( end, length - 1 ) };
+        }
+        catch ( NumberFormatException e )
+        {
+            // too large to be a position in the file
+            return null;
+        }
+    }
+
+    private static long getDateHeader( HttpServletRequest request, String name )
+    {
+        try
+        {
+            return request.getDateHeader( name );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return -1;
+        }
+    }
+}
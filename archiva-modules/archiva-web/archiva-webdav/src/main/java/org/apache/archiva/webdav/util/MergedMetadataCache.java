@@ -0,0 +1,231 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the <code>maven-metadata.xml</code> files merged from the members of the repository groups, with their
+ * checksums.
+ * <p/>
+ * An entry is keyed by the group, the path of the metadata and the member files it was merged from, as the users of
+ * a group don't all read the same members. It records the size and modification time of those files, and is only
+ * served while they are unchanged, so that a deployment to a member causes a new merge. The least recently used
+ * entries are dropped once {@link #getMaxEntries()} is reached.
+ *
+ * @since 1.4-M3
+ */
+@Service( "mergedMetadataCache#default" )
+@ManagedResource( objectName = "org.apache.archiva:type=MergedMetadataCache",
+                  description = "Cache of the metadata merged for the repository groups" )
+public class MergedMetadataCache
+{
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private final Map<String, MergedMetadata> entries = new LinkedHashMap<String, MergedMetadata>( 16, 0.75f, true );
+
+    private long hits;
+
+    private long misses;
+
+    private long invalidations;
+
+    /**
+     * @param groupId the repository group
+     * @param path    the path of the metadata in the group
+     * @param members the metadata files of the members of the group
+     * @return the merged metadata, or <code>null</code> if it must be merged again
+     */
+    public synchronized MergedMetadata get( String groupId, String path, List<File> members )
+    {
+        String key = getKey( groupId, path, members );
+        MergedMetadata metadata = entries.get( key );
+        if ( metadata == null )
+        {
+            misses++;
+            return null;
+        }
+        if ( !metadata.isMergedFrom( members ) )
+        {
+            entries.remove( key );
+            invalidations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return metadata;
+    }
+
+    public synchronized void put( String groupId, String path, MergedMetadata metadata )
+    {
+        entries.put( getKey( groupId, path, metadata.members ), metadata );
+        Iterator<MergedMetadata> iterator = entries.values().iterator();
+        while ( entries.size() > maxEntries && iterator.hasNext() )
+        {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    @ManagedOperation( description = "Drops all the merged metadata" )
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    @ManagedAttribute( description = "Number of merged metadata" )
+    public synchronized int getSize()
+    {
+        return entries.size();
+    }
+
+    @ManagedAttribute( description = "Maximum number of merged metadata" )
+    public synchronized int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    @ManagedAttribute
+    public synchronized void setMaxEntries( int maxEntries )
+    {
+        this.maxEntries = maxEntries;
+    }
+
+    @ManagedAttribute( description = "Number of requests served from the cache" )
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    @ManagedAttribute( description = "Number of requests that merged the metadata" )
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    @ManagedAttribute( description = "Number of merged metadata dropped as their members changed" )
+    public synchronized long getInvalidationCount()
+    {
+        return invalidations;
+    }
+
+    private static String getKey( String groupId, String path, List<File> members )
+    {
+        StringBuilder key = new StringBuilder( groupId ).append( ':' ).append( path );
+        for ( File member : members )
+        {
+            key.append( File.pathSeparatorChar ).append( member.getPath() );
+        }
+        return key.toString();
+    }
+
+    /**
+     * Metadata merged from the members of a repository group, with its checksums.
+     */
+    public static class MergedMetadata
+    {
+        private final List<File> members;
+
+        private final long[] memberLastModified;
+
+        private final long[] memberLength;
+
+        private byte[] content;
+
+        private String sha1;
+
+        private String md5;
+
+        private long lastModified;
+
+        /**
+         * Records the size and modification time of the metadata files to merge, so it must be created before they
+         * are read.
+         */
+        public MergedMetadata( List<File> members )
+        {
+            this.members = new ArrayList<File>( members );
+            this.memberLastModified = new long[members.size()];
+            this.memberLength = new long[members.size()];
+            for ( int i = 0; i < members.size(); i++ )
+            {
+                memberLastModified[i] = members.get( i ).lastModified();
+                memberLength[i] = members.get( i ).length();
+            }
+        }
+
+        public void setContent( byte[] content, String sha1, String md5 )
+        {
+            this.content = content;
+            this.sha1 = sha1;
+            this.md5 = md5;
+            this.lastModified = System.currentTimeMillis();
+        }
+
+        public byte[] getContent()
+        {
+            return content;
+        }
+
+        public String getSha1()
+        {
+            return sha1;
+        }
+
+        public String getMd5()
+        {
+            return md5;
+        }
+
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+
+        boolean isMergedFrom( List<File> files )
+        {
+            if ( !members.equals( files ) )
+            {
+                return false;
+            }
+            for ( int i = 0; i < members.size(); i++ )
+            {
+                File member = members.get( i );
+                if ( member.lastModified() != memberLastModified[i] || member.length() != memberLength[i] )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
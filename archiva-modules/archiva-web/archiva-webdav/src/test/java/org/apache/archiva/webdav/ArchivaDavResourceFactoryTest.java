@@ -27,8 +27,6 @@ import org.apache.archiva.admin.model.remote.RemoteRepositoryAdmin;
 import org.apache.archiva.admin.repository.DefaultRepositoryCommonValidator;
 import org.apache.archiva.admin.repository.group.DefaultRepositoryGroupAdmin;
 import org.apache.archiva.admin.repository.managed.DefaultManagedRepositoryAdmin;
-import org.apache.archiva.common.plexusbridge.PlexusSisuBridge;
-import org.apache.archiva.common.plexusbridge.PlexusSisuBridgeException;
 import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.Configuration;
 import org.apache.archiva.configuration.RepositoryGroupConfiguration;
@@ -39,6 +37,7 @@ import org.apache.archiva.repository.content.legacy.LegacyPathParser;
 import org.apache.archiva.repository.content.maven2.ManagedDefaultRepositoryContent;
 import org.apache.archiva.repository.content.maven2.RepositoryRequest;
 import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
+import org.apache.archiva.webdav.util.MergedMetadataCache;
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.webdav.DavException;
 import org.apache.jackrabbit.webdav.DavResourceLocator;
@@ -104,9 +103,6 @@ public class ArchivaDavResourceFactoryTest
     @Inject
     ApplicationContext applicationContext;
 
-    @Inject
-    PlexusSisuBridge plexusSisuBridge;
-
     @Inject
     DefaultManagedRepositoryAdmin defaultManagedRepositoryAdmin;
 
@@ -174,12 +170,13 @@ public class ArchivaDavResourceFactoryTest
         repoRequest = (RepositoryRequest) repoRequestControl.getMock();
 
         resourceFactory =
-            new OverridingArchivaDavResourceFactory( applicationContext, plexusSisuBridge, archivaConfiguration );
+            new OverridingArchivaDavResourceFactory( applicationContext, archivaConfiguration );
         resourceFactory.setArchivaConfiguration( archivaConfiguration );
         resourceFactory.setRepositoryFactory( repoFactory );
         resourceFactory.setRepositoryRequest( repoRequest );
         resourceFactory.setConnectors( new OverridingRepositoryProxyConnectors() );
         resourceFactory.setRemoteRepositoryAdmin( remoteRepositoryAdmin );
+        resourceFactory.setMergedMetadataCache( new MergedMetadataCache() );
     }
 
     private ManagedRepository createManagedRepository( String id, String location, String layout )
@@ -571,11 +568,10 @@ public class ArchivaDavResourceFactoryTest
         extends ArchivaDavResourceFactory
     {
 
-        OverridingArchivaDavResourceFactory( ApplicationContext applicationContext, PlexusSisuBridge plexusSisuBridge,
+        OverridingArchivaDavResourceFactory( ApplicationContext applicationContext,
                                              ArchivaConfiguration archivaConfiguration )
-            throws PlexusSisuBridgeException
         {
-            super( applicationContext, plexusSisuBridge, archivaConfiguration );
+            super( applicationContext, archivaConfiguration );
         }
 
         protected boolean isAuthorized( DavServletRequest request, String repositoryId )
@@ -27,6 +27,7 @@ import org.apache.archiva.configuration.ProxyConnectorConfiguration;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -178,6 +179,50 @@ public class RepositoryServletNoProxyTest
         assertEquals( "Expected file contents", expectedArtifactContents, response.getText() );
     }
 
+    @Test
+    public void testGetNoProxyArtifactRange()
+        throws Exception
+    {
+        String commonsLangJar = "commons-lang/commons-lang/2.1/commons-lang-2.1.jar";
+
+        File artifactFile = new File( repoRootInternal, commonsLangJar );
+        artifactFile.getParentFile().mkdirs();
+
+        FileUtils.writeStringToFile( artifactFile, "dummy-commons-lang-artifact", Charset.defaultCharset() );
+
+        WebRequest request = new GetMethodWebRequest( "http://machine.com/repository/internal/" + commonsLangJar );
+        request.setHeaderField( "Range", "bytes=6-16" );
+        WebResponse response = getServletUnitClient().getResponse( request );
+
+        assertEquals( HttpServletResponse.SC_PARTIAL_CONTENT, response.getResponseCode() );
+        assertEquals( "bytes 6-16/27", response.getHeaderField( "Content-Range" ) );
+        assertEquals( "Expected file contents", "commons-lan", response.getText() );
+    }
+
+    @Test
+    public void testGetNoProxyArtifactNotModified()
+        throws Exception
+    {
+        String commonsLangJar = "commons-lang/commons-lang/2.1/commons-lang-2.1.jar";
+        String commonsLangSha1 = "bcc82975c0f9c681fcb01cc38504c992553e93ba";
+
+        File artifactFile = new File( repoRootInternal, commonsLangJar );
+        artifactFile.getParentFile().mkdirs();
+
+        FileUtils.writeStringToFile( artifactFile, "dummy-commons-lang-artifact", Charset.defaultCharset() );
+        FileUtils.writeStringToFile( new File( repoRootInternal, commonsLangJar + ".sha1" ), commonsLangSha1,
+                                     Charset.defaultCharset() );
+
+        WebRequest request = new GetMethodWebRequest( "http://machine.com/repository/internal/" + commonsLangJar );
+        WebResponse response = getServletUnitClient().getResponse( request );
+        assertResponseOK( response );
+        assertEquals( "\"" + commonsLangSha1 + "\"", response.getHeaderField( "ETag" ) );
+
+        request.setHeaderField( "If-None-Match", response.getHeaderField( "ETag" ) );
+        response = getServletUnitClient().getResponse( request );
+        assertEquals( HttpServletResponse.SC_NOT_MODIFIED, response.getResponseCode() );
+    }
+
     @Test
     public void testGetNoProxyArtifactLegacyLayout()
         throws Exception
@@ -299,6 +299,55 @@ public class RepositoryServletRepositoryGroupTest
                       response.getText().trim() );
     }
 
+    @Test
+    public void testGetMergedMetadataAfterMemberUpdate()
+        throws Exception
+    {
+        String resourceName = "dummy/dummy-updated-metadata-resource/maven-metadata.xml";
+
+        File firstMetadataFile = new File( repoRootFirst, resourceName );
+        firstMetadataFile.getParentFile().mkdirs();
+        FileUtils.writeStringToFile( firstMetadataFile, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<metadata><groupId>dummy</groupId><artifactId>dummy-updated-metadata-resource</artifactId>"
+            + "<versioning><versions><version>1.0</version></versions></versioning></metadata>",
+                                     Charset.defaultCharset() );
+
+        File lastMetadataFile = new File( repoRootLast, resourceName );
+        lastMetadataFile.getParentFile().mkdirs();
+        FileUtils.writeStringToFile( lastMetadataFile, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<metadata><groupId>dummy</groupId><artifactId>dummy-updated-metadata-resource</artifactId>"
+            + "<versioning><versions><version>2.0</version></versions></versioning></metadata>",
+                                     Charset.defaultCharset() );
+
+        String url = "http://machine.com/repository/" + REPO_GROUP_WITH_VALID_REPOS + "/" + resourceName;
+        WebResponse response = getServletUnitClient().getResource( new GetMethodWebRequest( url ) );
+        assertResponseOK( response );
+        assertTrue( response.getText().contains( "<version>2.0</version>" ) );
+        assertFalse( response.getText().contains( "<version>3.0</version>" ) );
+
+        // the checksum of a member is needed for the checksum of the group to be found
+        FileUtils.writeStringToFile( new File( repoRootFirst, resourceName + ".sha1" ), "3290853214d3687134",
+                                     Charset.defaultCharset() );
+        String sha1 = getServletUnitClient().getResource( new GetMethodWebRequest( url + ".sha1" ) ).getText();
+
+        // served from memory
+        assertFalse( new File( repoRootFirst, "dummy/dummy-updated-metadata-resource/maven-metadata-"
+            + REPO_GROUP_WITH_VALID_REPOS + ".xml" ).exists() );
+
+        // deploy a new version to the last repository
+        FileUtils.writeStringToFile( lastMetadataFile, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<metadata><groupId>dummy</groupId><artifactId>dummy-updated-metadata-resource</artifactId>"
+            + "<versioning><versions><version>2.0</version><version>3.0</version></versions></versioning>"
+            + "</metadata>", Charset.defaultCharset() );
+        lastMetadataFile.setLastModified( lastMetadataFile.lastModified() + 10000 );
+
+        response = getServletUnitClient().getResource( new GetMethodWebRequest( url ) );
+        assertResponseOK( response );
+        assertTrue( response.getText().contains( "<version>3.0</version>" ) );
+        assertFalse( sha1.equals(
+            getServletUnitClient().getResource( new GetMethodWebRequest( url + ".sha1" ) ).getText() ) );
+    }
+
     // MRM-901
     @Test
     public void testBrowseWithTwoArtifactsWithSameGroupIdInRepos()
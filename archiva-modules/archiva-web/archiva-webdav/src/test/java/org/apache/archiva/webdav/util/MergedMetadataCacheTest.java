@@ -0,0 +1,105 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.apache.archiva.webdav.util.MergedMetadataCache.MergedMetadata;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class MergedMetadataCacheTest
+    extends TestCase
+{
+    private static final String GROUP_ID = "group";
+
+    private static final String PATH = "/org/apache/archiva/archiva/maven-metadata.xml";
+
+    private MergedMetadataCache cache;
+
+    private File first;
+
+    private File last;
+
+    @Override
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        cache = new MergedMetadataCache();
+
+        File directory = new File( "target/merged-metadata-cache" );
+        FileUtils.deleteDirectory( directory );
+        first = new File( directory, "first/maven-metadata.xml" ).getAbsoluteFile();
+        last = new File( directory, "last/maven-metadata.xml" ).getAbsoluteFile();
+        FileUtils.writeStringToFile( first, "<metadata/>" );
+        FileUtils.writeStringToFile( last, "<metadata/>" );
+    }
+
+    @Test
+    public void testMergedPerMembers()
+    {
+        // users reading different members of the group get the metadata and checksums merged from their members
+        List<File> allMembers = Arrays.asList( first, last );
+        List<File> firstOnly = Collections.singletonList( first );
+        MergedMetadata mergedFromAll = createMergedMetadata( allMembers, "all" );
+        MergedMetadata mergedFromFirst = createMergedMetadata( firstOnly, "first" );
+        cache.put( GROUP_ID, PATH, mergedFromAll );
+        cache.put( GROUP_ID, PATH, mergedFromFirst );
+
+        assertSame( mergedFromAll, cache.get( GROUP_ID, PATH, allMembers ) );
+        assertSame( mergedFromFirst, cache.get( GROUP_ID, PATH, firstOnly ) );
+        assertNull( cache.get( GROUP_ID, PATH, Collections.singletonList( last ) ) );
+        assertEquals( 2, cache.getSize() );
+        assertEquals( 2, cache.getHitCount() );
+        assertEquals( 1, cache.getMissCount() );
+    }
+
+    @Test
+    public void testMergedAgainAfterMemberChange()
+        throws Exception
+    {
+        List<File> members = Arrays.asList( first, last );
+        cache.put( GROUP_ID, PATH, createMergedMetadata( members, "all" ) );
+
+        FileUtils.writeStringToFile( last, "<metadata><groupId>org.apache.archiva</groupId></metadata>" );
+
+        assertNull( cache.get( GROUP_ID, PATH, members ) );
+        assertEquals( 1, cache.getInvalidationCount() );
+        assertEquals( 0, cache.getSize() );
+    }
+
+    private static MergedMetadata createMergedMetadata( List<File> members, String checksum )
+    {
+        MergedMetadata metadata = new MergedMetadata( members );
+        metadata.setContent( new byte[0], checksum, checksum );
+        return metadata;
+    }
+}
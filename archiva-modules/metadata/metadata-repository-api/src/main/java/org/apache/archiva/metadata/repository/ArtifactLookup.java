@@ -0,0 +1,40 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+
+/**
+ * Lookup of a single artifact, obtained with {@link MetadataRepository#obtainAccess(Class)} from the metadata
+ * repositories which answer it without storing the pending writes of the session first, unlike
+ * {@link MetadataRepository#getArtifacts(String, String, String, String)}.
+ *
+ * @since 1.4-M3
+ */
+public interface ArtifactLookup
+{
+    /**
+     * @return the artifact, including the changes of the session not saved yet, with its facets, or
+     *         <code>null</code> if there is none
+     */
+    ArtifactMetadata getArtifact( String repositoryId, String namespace, String projectId, String projectVersion,
+                                  String id )
+        throws MetadataResolutionException;
+}
@@ -56,6 +56,9 @@ import java.util.List;
  * having a bi-directional link with the session factory, and saving the existing session might save other changes
  * unknowingly by the caller.
  * <p/>
+ * The resolved project versions and listings are kept in the {@link MetadataResolverCache}, shared by the sessions, so
+ * that the same coordinates are not resolved again from the metadata repository or the storage until they change.
+ * <p/>
  */
 @Service ("metadataResolver#default")
 public class DefaultMetadataResolver
@@ -82,20 +85,30 @@ public class DefaultMetadataResolver
     @Inject
     private List<RepositoryListener> listeners;
 
+    @Inject
+    private MetadataResolverCache cache;
+
     public ProjectVersionMetadata resolveProjectVersion( RepositorySession session, String repoId, String namespace,
                                                          String projectId, String projectVersion )
         throws MetadataResolutionException
     {
+        ProjectVersionMetadata metadata = cache.getProjectVersion( repoId, namespace, projectId, projectVersion );
+        if ( metadata != null )
+        {
+            return metadata;
+        }
+        long generation = cache.getGeneration( repoId );
+
         MetadataRepository metadataRepository = session.getRepository();
 
-        ProjectVersionMetadata metadata =
-            metadataRepository.getProjectVersion( repoId, namespace, projectId, projectVersion );
+        metadata = metadataRepository.getProjectVersion( repoId, namespace, projectId, projectVersion );
         // TODO: do we want to detect changes as well by comparing timestamps? isProjectVersionNewerThan(updated)
         //       in such cases we might also remove/update stale metadata, including adjusting plugin-based facets
         //       This would also be better than checking for completeness - we can then refresh only when fixed (though
         //       sometimes this has an additional dependency - such as a parent - requesting the user to force an update
         //       may then work here and be more efficient than always trying again)
-        if ( metadata == null || metadata.isIncomplete() )
+        boolean fromStorage = metadata == null || metadata.isIncomplete();
+        if ( fromStorage )
         {
             try
             {
@@ -157,6 +170,7 @@ public class DefaultMetadataResolver
             }
 
         }
+        cache.putProjectVersion( generation, repoId, namespace, projectId, projectVersion, metadata, fromStorage );
         return metadata;
     }
 
@@ -174,6 +188,13 @@ public class DefaultMetadataResolver
     public Collection<String> resolveRootNamespaces( RepositorySession session, String repoId )
         throws MetadataResolutionException
     {
+        String listing = MetadataResolverCache.getRootNamespacesListing();
+        Collection<String> cached = cache.getListing( repoId, listing );
+        if ( cached != null )
+        {
+            return cached;
+        }
+        long generation = cache.getGeneration( repoId );
         try
         {
             MetadataRepository metadataRepository = session.getRepository();
@@ -201,6 +222,7 @@ public class DefaultMetadataResolver
                 namespaces = new ArrayList<String>( namespaces );
                 namespaces.addAll( storageNamespaces );
             }
+            cache.putListing( generation, repoId, listing, namespaces );
             return namespaces;
         }
         catch ( RepositoryStorageRuntimeException e )
@@ -212,6 +234,13 @@ public class DefaultMetadataResolver
     public Collection<String> resolveNamespaces( RepositorySession session, String repoId, String namespace )
         throws MetadataResolutionException
     {
+        String listing = MetadataResolverCache.getNamespacesListing( namespace );
+        Collection<String> cached = cache.getListing( repoId, listing );
+        if ( cached != null )
+        {
+            return cached;
+        }
+        long generation = cache.getGeneration( repoId );
         try
         {
             MetadataRepository metadataRepository = session.getRepository();
@@ -241,6 +270,7 @@ public class DefaultMetadataResolver
                 namespaces = new ArrayList<String>( namespaces );
                 namespaces.addAll( storageNamespaces );
             }
+            cache.putListing( generation, repoId, listing, namespaces );
             return namespaces;
         }
         catch ( RepositoryStorageRuntimeException e )
@@ -252,6 +282,13 @@ public class DefaultMetadataResolver
     public Collection<String> resolveProjects( RepositorySession session, String repoId, String namespace )
         throws MetadataResolutionException
     {
+        String listing = MetadataResolverCache.getProjectsListing( namespace );
+        Collection<String> cached = cache.getListing( repoId, listing );
+        if ( cached != null )
+        {
+            return cached;
+        }
+        long generation = cache.getGeneration( repoId );
         try
         {
             MetadataRepository metadataRepository = session.getRepository();
@@ -285,6 +322,7 @@ public class DefaultMetadataResolver
                 projects = new ArrayList<String>( projects );
                 projects.addAll( storageProjects );
             }
+            cache.putListing( generation, repoId, listing, projects );
             return projects;
         }
         catch ( RepositoryStorageRuntimeException e )
@@ -297,6 +335,13 @@ public class DefaultMetadataResolver
                                                       String projectId )
         throws MetadataResolutionException
     {
+        String listing = MetadataResolverCache.getProjectVersionsListing( namespace, projectId );
+        Collection<String> cached = cache.getListing( repoId, listing );
+        if ( cached != null )
+        {
+            return cached;
+        }
+        long generation = cache.getGeneration( repoId );
         try
         {
             MetadataRepository metadataRepository = session.getRepository();
@@ -353,6 +398,7 @@ public class DefaultMetadataResolver
                 projectVersions = new ArrayList<String>( projectVersions );
                 projectVersions.addAll( storageProjectVersions );
             }
+            cache.putListing( generation, repoId, listing, projectVersions );
             return projectVersions;
         }
         catch ( RepositoryStorageRuntimeException e )
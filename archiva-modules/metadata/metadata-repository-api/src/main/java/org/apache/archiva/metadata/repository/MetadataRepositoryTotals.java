@@ -0,0 +1,182 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the running totals of the content of each repository, as maintained by the sessions updating and removing
+ * artifacts, so that they don't need to be computed by walking the whole repository.
+ * <p/>
+ * The totals of a repository are only kept once they have been reconciled with its content, and are dropped when
+ * changes that can't be accounted for cheaply are made, such as the removal of a project, a namespace or the
+ * repository itself. They are kept in memory, and need to be reconciled again after a restart.
+ * <p/>
+ * The sessions writing to a repository are followed from their first change until it is saved, as the stores don't
+ * all make a change visible when it is made. Totals computed while a session was writing to the repository are not
+ * kept: the walk may or may not have seen its changes, so they could neither be applied nor dropped safely.
+ *
+ * @since 1.4-M3
+ */
+@Service( "metadataRepositoryTotals#default" )
+public class MetadataRepositoryTotals
+{
+    private Logger log = LoggerFactory.getLogger( MetadataRepositoryTotals.class );
+
+    private final ConcurrentMap<String, RepositoryTotals> totals = new ConcurrentHashMap<String, RepositoryTotals>();
+
+    private final ConcurrentMap<String, Writes> writes = new ConcurrentHashMap<String, Writes>();
+
+    /**
+     * Wrap a metadata repository so that its changes are applied to the totals.
+     *
+     * @param metadataRepository the metadata repository of a session
+     * @param transactional      whether the changes are only stored when the session is saved, and discarded when it is
+     *                           reverted or closed, rather than immediately
+     * @return the wrapped metadata repository
+     */
+    public MetadataRepository track( MetadataRepository metadataRepository, boolean transactional )
+    {
+        return new TotalsTrackingMetadataRepository( metadataRepository, this, transactional );
+    }
+
+    /**
+     * @param repositoryId the repository
+     * @return the running totals of the repository, or <code>null</code> if they are not known
+     */
+    public RepositoryTotals getTotals( String repositoryId )
+    {
+        return totals.get( repositoryId );
+    }
+
+    /**
+     * Start computing the totals of a repository from its whole content.
+     *
+     * @param repositoryId the repository
+     * @return the mark to pass to {@link #reconcile(RepositoryTotals, long)} once the totals are computed
+     */
+    public long beginReconciliation( String repositoryId )
+    {
+        Writes repositoryWrites = getWrites( repositoryId );
+        long mark = repositoryWrites.count.get();
+        // the changes of the sessions already writing may be stored at any time during the walk
+        return repositoryWrites.active.get() > 0 ? -1 : mark;
+    }
+
+    /**
+     * Replace the totals of a repository with the ones computed from its whole content, unless the repository was
+     * written to while they were computed.
+     *
+     * @param repositoryTotals the totals of the content of the repository
+     * @param mark             the mark returned by {@link #beginReconciliation(String)} before computing them
+     * @return whether the totals were kept
+     */
+    public boolean reconcile( RepositoryTotals repositoryTotals, long mark )
+    {
+        String repositoryId = repositoryTotals.getRepositoryId();
+        repositoryTotals.setReconciledTime( System.currentTimeMillis() );
+        totals.put( repositoryId, repositoryTotals );
+
+        // checked once the totals are in place, so that the sessions starting to write from now on update them
+        Writes repositoryWrites = getWrites( repositoryId );
+        if ( repositoryWrites.count.get() != mark || repositoryWrites.active.get() > 0 )
+        {
+            totals.remove( repositoryId, repositoryTotals );
+            log.debug( "Repository {} was written to while its totals were computed, they are not kept", repositoryId );
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drop the totals of a repository, until it is reconciled again.
+     *
+     * @param repositoryId the repository
+     */
+    public void invalidate( String repositoryId )
+    {
+        if ( totals.remove( repositoryId ) != null )
+        {
+            log.debug( "Invalidated the totals of repository {}", repositoryId );
+        }
+    }
+
+    /**
+     * Record that a session starts writing to a repository. Must be called before the totals are looked up for the
+     * changes.
+     */
+    void beginWrites( String repositoryId )
+    {
+        Writes repositoryWrites = getWrites( repositoryId );
+        repositoryWrites.active.incrementAndGet();
+        repositoryWrites.count.incrementAndGet();
+    }
+
+    /**
+     * Record that the changes of a session to a repository are stored, or discarded.
+     */
+    void endWrites( String repositoryId )
+    {
+        Writes repositoryWrites = getWrites( repositoryId );
+        repositoryWrites.count.incrementAndGet();
+        repositoryWrites.active.decrementAndGet();
+    }
+
+    void apply( RepositoryTotals changes )
+    {
+        RepositoryTotals repositoryTotals = totals.get( changes.getRepositoryId() );
+        if ( repositoryTotals != null )
+        {
+            repositoryTotals.add( changes );
+        }
+    }
+
+    private Writes getWrites( String repositoryId )
+    {
+        Writes repositoryWrites = writes.get( repositoryId );
+        if ( repositoryWrites == null )
+        {
+            repositoryWrites = new Writes();
+            Writes existing = writes.putIfAbsent( repositoryId, repositoryWrites );
+            if ( existing != null )
+            {
+                repositoryWrites = existing;
+            }
+        }
+        return repositoryWrites;
+    }
+
+    /**
+     * The sessions writing to a repository: how many are, and how many times one started or ended.
+     */
+    private static class Writes
+    {
+        private final AtomicInteger active = new AtomicInteger();
+
+        private final AtomicLong count = new AtomicLong();
+    }
+}
@@ -0,0 +1,499 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.Dependency;
+import org.apache.archiva.metadata.model.License;
+import org.apache.archiva.metadata.model.MailingList;
+import org.apache.archiva.metadata.model.MetadataFacet;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded in-memory cache of the metadata resolved by the {@link DefaultMetadataResolver}: the project versions, and
+ * the listings of namespaces, projects and project versions, keyed by repository and coordinates.
+ * <p/>
+ * The entries are kept until they are changed: the listener of the repository events, the consumer writing them
+ * or the services deleting them invalidate the coordinates of a project version, which removes it with the listings
+ * of its project, namespace and parent namespaces. The incomplete project versions are not kept, as they may depend
+ * on any content of the repository (the missing parent of a POM for instance). When a map exceeds its maximum size,
+ * the least recently used entries are evicted.
+ * <p/>
+ * Each repository has a generation, incremented by the invalidations. A resolution started before the invalidation
+ * of its coordinates is not kept, as it may have read the content before the change.
+ * <p/>
+ * The cached project versions are copies, and copies of them are returned, as the callers may modify the metadata
+ * they get.
+ *
+ * @since 1.4-M3
+ */
+@Service( "metadataResolverCache#default" )
+@ManagedResource( objectName = "org.apache.archiva:type=MetadataResolverCache",
+                  description = "Cache of the metadata resolved from the repositories" )
+public class MetadataResolverCache
+{
+    public static final int DEFAULT_MAX_PROJECT_VERSIONS = 10000;
+
+    public static final int DEFAULT_MAX_LISTINGS = 10000;
+
+    private static final char SEPARATOR = ':';
+
+    private static final String ROOT_NAMESPACES = "rootNamespaces";
+
+    private Logger log = LoggerFactory.getLogger( MetadataResolverCache.class );
+
+    private int maxProjectVersions = DEFAULT_MAX_PROJECT_VERSIONS;
+
+    private int maxListings = DEFAULT_MAX_LISTINGS;
+
+    /**
+     * The project versions by coordinates, in access order.
+     */
+    private final LinkedHashMap<String, ProjectVersionMetadata> projectVersions =
+        new LinkedHashMap<String, ProjectVersionMetadata>( 16, 0.75f, true );
+
+    /**
+     * The listings by repository, type and coordinates, in access order.
+     */
+    private final LinkedHashMap<String, List<String>> listings = new LinkedHashMap<String, List<String>>( 16, 0.75f,
+                                                                                                         true );
+
+    private final Map<String, Long> generations = new HashMap<String, Long>();
+
+    /**
+     * The generation of the last invalidation of each key, in invalidation order, to refuse the resolutions started
+     * before it. Only the most recent ones are kept: the resolutions started before the forgotten ones are refused.
+     */
+    private final LinkedHashMap<String, Long> keyInvalidations = new LinkedHashMap<String, Long>();
+
+    /**
+     * The generation of the last invalidation of the whole repository, or of its last forgotten key invalidation.
+     */
+    private final Map<String, Long> repositoryInvalidations = new HashMap<String, Long>();
+
+    private long projectVersionHits;
+
+    private long repositoryReads;
+
+    private long storageReads;
+
+    private long listingHits;
+
+    private long listingMisses;
+
+    private long evictions;
+
+    private long invalidations;
+
+    /**
+     * @return the current generation of the repository, to give back when putting what is resolved from now on
+     */
+    public synchronized long getGeneration( String repositoryId )
+    {
+        Long generation = generations.get( repositoryId );
+        return generation != null ? generation : 0;
+    }
+
+    /**
+     * @return a copy of the cached project version, <code>null</code> if it must be resolved
+     */
+    public synchronized ProjectVersionMetadata getProjectVersion( String repositoryId, String namespace,
+                                                                  String projectId, String projectVersion )
+    {
+        ProjectVersionMetadata metadata =
+            projectVersions.get( getKey( repositoryId, namespace, projectId, projectVersion ) );
+        if ( metadata == null )
+        {
+            return null;
+        }
+        projectVersionHits++;
+        return copy( metadata );
+    }
+
+    /**
+     * Keeps a copy of a complete resolved project version, unless its coordinates were invalidated since the
+     * resolution started.
+     *
+     * @param generation  the generation of the repository when the resolution started
+     * @param metadata    the resolved metadata, <code>null</code> if none was found
+     * @param fromStorage <code>true</code> if the metadata was read from the storage, <code>false</code> if the
+     *                    metadata repository had it
+     */
+    public synchronized void putProjectVersion( long generation, String repositoryId, String namespace,
+                                                String projectId, String projectVersion,
+                                                ProjectVersionMetadata metadata, boolean fromStorage )
+    {
+        if ( fromStorage )
+        {
+            storageReads++;
+        }
+        else
+        {
+            repositoryReads++;
+        }
+        String key = getKey( repositoryId, namespace, projectId, projectVersion );
+        if ( metadata != null && !metadata.isIncomplete() && !isInvalidatedSince( generation, repositoryId, key ) )
+        {
+            projectVersions.put( key, copy( metadata ) );
+            evict( projectVersions, maxProjectVersions );
+        }
+    }
+
+    /**
+     * @return the listing of the root namespaces
+     */
+    public static String getRootNamespacesListing()
+    {
+        return ROOT_NAMESPACES;
+    }
+
+    /**
+     * @return the listing of the namespaces in a namespace
+     */
+    public static String getNamespacesListing( String namespace )
+    {
+        return getKey( "namespaces", namespace );
+    }
+
+    /**
+     * @return the listing of the projects of a namespace
+     */
+    public static String getProjectsListing( String namespace )
+    {
+        return getKey( "projects", namespace );
+    }
+
+    /**
+     * @return the listing of the versions of a project
+     */
+    public static String getProjectVersionsListing( String namespace, String projectId )
+    {
+        return getKey( "projectVersions", namespace, projectId );
+    }
+
+    /**
+     * @param listing the type and coordinates of the listing
+     * @return a copy of the cached listing, <code>null</code> if it must be resolved
+     */
+    public synchronized List<String> getListing( String repositoryId, String listing )
+    {
+        List<String> values = listings.get( getKey( repositoryId, listing ) );
+        if ( values == null )
+        {
+            listingMisses++;
+            return null;
+        }
+        listingHits++;
+        return new ArrayList<String>( values );
+    }
+
+    /**
+     * Keeps a copy of a resolved listing, unless it was invalidated since the resolution started.
+     *
+     * @param generation the generation of the repository when the resolution started
+     */
+    public synchronized void putListing( long generation, String repositoryId, String listing,
+                                         Collection<String> values )
+    {
+        String key = getKey( repositoryId, listing );
+        if ( !isInvalidatedSince( generation, repositoryId, key ) )
+        {
+            listings.put( key, new ArrayList<String>( values ) );
+            evict( listings, maxListings );
+        }
+    }
+
+    /**
+     * Removes the project version, and the listings which may contain it: the versions of its project, the projects
+     * and namespaces of its namespace and the namespaces of the parent namespaces.
+     */
+    public synchronized void invalidate( String repositoryId, String namespace, String projectId,
+                                         String projectVersion )
+    {
+        log.debug( "Invalidating resolved metadata of {}:{}:{} in {}",
+                   new Object[]{ namespace, projectId, projectVersion, repositoryId } );
+        long generation = getGeneration( repositoryId ) + 1;
+        generations.put( repositoryId, generation );
+
+        invalidate( projectVersions, generation, getKey( repositoryId, namespace, projectId, projectVersion ) );
+        invalidate( listings, generation,
+                    getKey( repositoryId, getProjectVersionsListing( namespace, projectId ) ) );
+        invalidate( listings, generation, getKey( repositoryId, getProjectsListing( namespace ) ) );
+        for ( String parent = namespace; parent != null; )
+        {
+            invalidate( listings, generation, getKey( repositoryId, getNamespacesListing( parent ) ) );
+            int index = parent.lastIndexOf( '.' );
+            parent = index > 0 ? parent.substring( 0, index ) : null;
+        }
+        invalidate( listings, generation, getKey( repositoryId, getRootNamespacesListing() ) );
+        invalidations++;
+    }
+
+    /**
+     * Removes all the entries of the repository.
+     */
+    @ManagedOperation( description = "Removes all the metadata resolved from the repository" )
+    public synchronized void invalidate( String repositoryId )
+    {
+        log.debug( "Invalidating resolved metadata of {}", repositoryId );
+        long generation = getGeneration( repositoryId ) + 1;
+        generations.put( repositoryId, generation );
+        repositoryInvalidations.put( repositoryId, generation );
+        String prefix = repositoryId + SEPARATOR;
+        for ( Iterator<String> it = projectVersions.keySet().iterator(); it.hasNext(); )
+        {
+            if ( it.next().startsWith( prefix ) )
+            {
+                it.remove();
+            }
+        }
+        for ( Iterator<String> it = listings.keySet().iterator(); it.hasNext(); )
+        {
+            if ( it.next().startsWith( prefix ) )
+            {
+                it.remove();
+            }
+        }
+        invalidations++;
+    }
+
+    @ManagedOperation( description = "Removes all the resolved metadata" )
+    public synchronized void clear()
+    {
+        projectVersions.clear();
+        listings.clear();
+    }
+
+    @ManagedAttribute( description = "Maximum number of project versions kept" )
+    public synchronized int getMaxProjectVersions()
+    {
+        return maxProjectVersions;
+    }
+
+    @ManagedAttribute
+    public synchronized void setMaxProjectVersions( int maxProjectVersions )
+    {
+        this.maxProjectVersions = maxProjectVersions;
+        evict( projectVersions, maxProjectVersions );
+    }
+
+    @ManagedAttribute( description = "Maximum number of listings kept" )
+    public synchronized int getMaxListings()
+    {
+        return maxListings;
+    }
+
+    @ManagedAttribute
+    public synchronized void setMaxListings( int maxListings )
+    {
+        this.maxListings = maxListings;
+        evict( listings, maxListings );
+    }
+
+    @ManagedAttribute( description = "Number of project versions kept" )
+    public synchronized int getProjectVersionCount()
+    {
+        return projectVersions.size();
+    }
+
+    @ManagedAttribute( description = "Number of listings kept" )
+    public synchronized int getListingCount()
+    {
+        return listings.size();
+    }
+
+    @ManagedAttribute( description = "Number of project versions found in the cache" )
+    public synchronized long getProjectVersionHits()
+    {
+        return projectVersionHits;
+    }
+
+    @ManagedAttribute( description = "Number of project versions found complete in the metadata repository" )
+    public synchronized long getRepositoryReads()
+    {
+        return repositoryReads;
+    }
+
+    @ManagedAttribute( description = "Number of project versions read from the repository storage" )
+    public synchronized long getStorageReads()
+    {
+        return storageReads;
+    }
+
+    @ManagedAttribute( description = "Ratio of the project versions found in the cache" )
+    public synchronized double getProjectVersionHitRate()
+    {
+        return rate( projectVersionHits, repositoryReads + storageReads );
+    }
+
+    @ManagedAttribute( description = "Ratio of the project versions not cached found in the metadata repository" )
+    public synchronized double getRepositoryHitRate()
+    {
+        return rate( repositoryReads, storageReads );
+    }
+
+    @ManagedAttribute( description = "Number of listings found in the cache" )
+    public synchronized long getListingHits()
+    {
+        return listingHits;
+    }
+
+    @ManagedAttribute( description = "Number of listings not found in the cache" )
+    public synchronized long getListingMisses()
+    {
+        return listingMisses;
+    }
+
+    @ManagedAttribute( description = "Ratio of the listings found in the cache" )
+    public synchronized double getListingHitRate()
+    {
+        return rate( listingHits, listingMisses );
+    }
+
+    @ManagedAttribute( description = "Number of entries evicted to respect the maximum sizes" )
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    @ManagedAttribute( description = "Number of invalidations after a repository change" )
+    public synchronized long getInvalidations()
+    {
+        return invalidations;
+    }
+
+    private void invalidate( Map<String, ?> entries, long generation, String key )
+    {
+        entries.remove( key );
+        // moved last, as the most recent invalidation
+        keyInvalidations.remove( key );
+        keyInvalidations.put( key, generation );
+
+        for ( Iterator<Map.Entry<String, Long>> it = keyInvalidations.entrySet().iterator();
+              keyInvalidations.size() > maxProjectVersions + maxListings && it.hasNext(); )
+        {
+            Map.Entry<String, Long> forgotten = it.next();
+            String repositoryId = forgotten.getKey().substring( 0, forgotten.getKey().indexOf( SEPARATOR ) );
+            if ( forgotten.getValue() > getRepositoryInvalidation( repositoryId ) )
+            {
+                repositoryInvalidations.put( repositoryId, forgotten.getValue() );
+            }
+            it.remove();
+        }
+    }
+
+    private boolean isInvalidatedSince( long generation, String repositoryId, String key )
+    {
+        Long keyInvalidation = keyInvalidations.get( key );
+        return getRepositoryInvalidation( repositoryId ) > generation || ( keyInvalidation != null
+            && keyInvalidation > generation );
+    }
+
+    private long getRepositoryInvalidation( String repositoryId )
+    {
+        Long generation = repositoryInvalidations.get( repositoryId );
+        return generation != null ? generation : 0;
+    }
+
+    private <T> void evict( Map<String, T> entries, int max )
+    {
+        for ( Iterator<String> it = entries.keySet().iterator(); entries.size() > max && it.hasNext(); )
+        {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static double rate( long hits, long misses )
+    {
+        return hits + misses > 0 ? (double) hits / ( hits + misses ) : 0;
+    }
+
+    private static String getKey( String... coordinates )
+    {
+        StringBuilder key = new StringBuilder();
+        for ( String coordinate : coordinates )
+        {
+            if ( key.length() > 0 )
+            {
+                key.append( SEPARATOR );
+            }
+            key.append( coordinate );
+        }
+        return key.toString();
+    }
+
+    /**
+     * Copies the metadata and its lists and facets, which the callers may modify. The other models are shared.
+     */
+    private static ProjectVersionMetadata copy( ProjectVersionMetadata metadata )
+    {
+        ProjectVersionMetadata copy = new ProjectVersionMetadata();
+        copy.setId( metadata.getId() );
+        copy.setUrl( metadata.getUrl() );
+        copy.setName( metadata.getName() );
+        copy.setDescription( metadata.getDescription() );
+        copy.setOrganization( metadata.getOrganization() );
+        copy.setIssueManagement( metadata.getIssueManagement() );
+        copy.setScm( metadata.getScm() );
+        copy.setCiManagement( metadata.getCiManagement() );
+        copy.setLicenses( new ArrayList<License>( metadata.getLicenses() ) );
+        copy.setMailingLists( new ArrayList<MailingList>( metadata.getMailingLists() ) );
+        copy.setDependencies( new ArrayList<Dependency>( metadata.getDependencies() ) );
+        copy.setIncomplete( metadata.isIncomplete() );
+        for ( MetadataFacet facet : metadata.getFacetList() )
+        {
+            copy.addFacet( copy( facet ) );
+        }
+        return copy;
+    }
+
+    private static MetadataFacet copy( MetadataFacet facet )
+    {
+        try
+        {
+            MetadataFacet copy = facet.getClass().newInstance();
+            copy.fromProperties( facet.toProperties() );
+            return copy;
+        }
+        catch ( InstantiationException e )
+        {
+            return facet;
+        }
+        catch ( IllegalAccessException e )
+        {
+            return facet;
+        }
+    }
+}
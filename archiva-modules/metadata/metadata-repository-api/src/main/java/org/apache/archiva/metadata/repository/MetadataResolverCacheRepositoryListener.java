@@ -0,0 +1,60 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.metadata.repository.storage.RepositoryStorageMetadataException;
+import org.apache.archiva.repository.events.RepositoryListener;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+
+/**
+ * Invalidates the resolved metadata of a project version when one of its artifacts is deleted. The additions are
+ * only signalled by the {@link DefaultMetadataResolver} itself, when it reads a project version from the storage the
+ * first time: nothing changed then. The deployed artifacts are invalidated by the consumer writing their metadata.
+ *
+ * @since 1.4-M3
+ */
+@Service( "repositoryListener#metadata-resolver-cache" )
+public class MetadataResolverCacheRepositoryListener
+    implements RepositoryListener
+{
+    @Inject
+    private MetadataResolverCache cache;
+
+    public void deleteArtifact( MetadataRepository metadataRepository, String repositoryId, String namespace,
+                                String project, String version, String id )
+    {
+        cache.invalidate( repositoryId, namespace, project, version );
+    }
+
+    public void addArtifact( RepositorySession session, String repoId, String namespace, String projectId,
+                             ProjectVersionMetadata metadata )
+    {
+        /* do nothing */
+    }
+
+    public void addArtifactProblem( RepositorySession session, String repoId, String namespace, String projectId,
+                                    String projectVersion, RepositoryStorageMetadataException exception )
+    {
+        /* do nothing */
+    }
+}
@@ -0,0 +1,205 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.model.MetadataFacet;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Running totals of the content of a repository: the number and size of its artifacts, the number of artifacts of each
+ * type, and the groups and projects it holds. A group is a namespace directly holding at least one project.
+ * <p/>
+ * The same class is used for the changes made by a session, in which case the counts can be negative, and projects
+ * are only ever added: removing a project or a namespace invalidates the totals instead.
+ *
+ * @since 1.4-M3
+ */
+public class RepositoryTotals
+{
+    /**
+     * The identifier of the facet holding the type of a Maven artifact, which this module can't depend on.
+     */
+    private static final String MAVEN_ARTIFACT_FACET_ID =
+        "org.apache.archiva.metadata.repository.storage.maven2.artifact";
+
+    /**
+     * The type counted for the artifacts which don't have one.
+     */
+    public static final String DEFAULT_TYPE = "Other";
+
+    private final String repositoryId;
+
+    private long totalArtifactCount;
+
+    private long totalArtifactFileSize;
+
+    private final Map<String, Long> totalCountForType = new HashMap<String, Long>();
+
+    private final Set<String> groups = new HashSet<String>();
+
+    private final Set<String> projects = new HashSet<String>();
+
+    private long reconciledTime;
+
+    public RepositoryTotals( String repositoryId )
+    {
+        this.repositoryId = repositoryId;
+    }
+
+    public String getRepositoryId()
+    {
+        return repositoryId;
+    }
+
+    public synchronized long getTotalArtifactCount()
+    {
+        return totalArtifactCount;
+    }
+
+    public synchronized long getTotalArtifactFileSize()
+    {
+        return totalArtifactFileSize;
+    }
+
+    public synchronized Map<String, Long> getTotalCountForType()
+    {
+        return new HashMap<String, Long>( totalCountForType );
+    }
+
+    public synchronized long getTotalGroupCount()
+    {
+        return groups.size();
+    }
+
+    public synchronized long getTotalProjectCount()
+    {
+        return projects.size();
+    }
+
+    /**
+     * @return the time the totals were last computed from the whole content of the repository
+     */
+    public synchronized long getReconciledTime()
+    {
+        return reconciledTime;
+    }
+
+    public synchronized void setReconciledTime( long reconciledTime )
+    {
+        this.reconciledTime = reconciledTime;
+    }
+
+    public synchronized void addArtifact( ArtifactMetadata artifact )
+    {
+        addArtifact( artifact.getSize(), getType( artifact ) );
+    }
+
+    /**
+     * @param size the size of the artifact
+     * @param type the type of the artifact, <code>null</code> to count it as {@link #DEFAULT_TYPE}
+     */
+    public synchronized void addArtifact( long size, String type )
+    {
+        addArtifact( 1, size, type );
+    }
+
+    public synchronized void addProject( String namespace, String projectId )
+    {
+        groups.add( namespace );
+        projects.add( namespace + ":" + projectId );
+    }
+
+    synchronized void removeArtifact( ArtifactMetadata artifact )
+    {
+        addArtifact( -1, -artifact.getSize(), getType( artifact ) );
+    }
+
+    synchronized boolean isEmpty()
+    {
+        return totalArtifactCount == 0 && totalArtifactFileSize == 0 && projects.isEmpty()
+            && totalCountForType.isEmpty();
+    }
+
+    /**
+     * Apply the changes made by a session.
+     */
+    void add( RepositoryTotals changes )
+    {
+        Map<String, Long> countForType;
+        Collection<String> addedGroups;
+        Collection<String> addedProjects;
+        long artifactCount;
+        long artifactFileSize;
+        synchronized ( changes )
+        {
+            artifactCount = changes.totalArtifactCount;
+            artifactFileSize = changes.totalArtifactFileSize;
+            countForType = new HashMap<String, Long>( changes.totalCountForType );
+            addedGroups = new HashSet<String>( changes.groups );
+            addedProjects = new HashSet<String>( changes.projects );
+        }
+
+        synchronized ( this )
+        {
+            totalArtifactCount += artifactCount;
+            totalArtifactFileSize += artifactFileSize;
+            for ( Map.Entry<String, Long> entry : countForType.entrySet() )
+            {
+                addCountForType( entry.getKey(), entry.getValue() );
+            }
+            groups.addAll( addedGroups );
+            projects.addAll( addedProjects );
+        }
+    }
+
+    private void addArtifact( long count, long size, String type )
+    {
+        totalArtifactCount += count;
+        totalArtifactFileSize += size;
+        addCountForType( type != null ? type : DEFAULT_TYPE, count );
+    }
+
+    private void addCountForType( String type, long count )
+    {
+        Long previous = totalCountForType.get( type );
+        long total = previous != null ? previous + count : count;
+        if ( total == 0 )
+        {
+            totalCountForType.remove( type );
+        }
+        else
+        {
+            totalCountForType.put( type, total );
+        }
+    }
+
+    private static String getType( ArtifactMetadata artifact )
+    {
+        MetadataFacet facet = artifact.getFacet( MAVEN_ARTIFACT_FACET_ID );
+        String type = facet != null ? facet.toProperties().get( "type" ) : null;
+        return type != null ? type : DEFAULT_TYPE;
+    }
+}
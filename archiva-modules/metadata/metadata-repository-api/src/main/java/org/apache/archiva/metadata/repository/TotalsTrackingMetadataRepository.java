@@ -0,0 +1,510 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.model.MetadataFacet;
+import org.apache.archiva.metadata.model.ProjectMetadata;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.metadata.model.ProjectVersionReference;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Metadata repository recording the changes made to the artifacts and projects of the repositories whose totals are
+ * known, and applying them to the {@link MetadataRepositoryTotals} once they are stored.
+ * <p/>
+ * The artifacts of a project version are read before updating or removing one of them, to account for the artifact
+ * being replaced and for the differences in what the implementations remove. Before an update, the artifact is looked
+ * up alone with the {@link ArtifactLookup} of the repositories which have one, as reading the whole project version
+ * would store the pending writes of the session first.
+ * <p/>
+ * The repositories written to are reported to the {@link MetadataRepositoryTotals} from the first change until the
+ * session is saved, reverted or closed, so that totals computed meanwhile are not kept.
+ *
+ * @since 1.4-M3
+ */
+class TotalsTrackingMetadataRepository
+    implements MetadataRepository
+{
+    private final MetadataRepository repository;
+
+    private final MetadataRepositoryTotals metadataRepositoryTotals;
+
+    private final boolean transactional;
+
+    /**
+     * The changes not saved yet, by repository.
+     */
+    private final Map<String, RepositoryTotals> changes = new HashMap<String, RepositoryTotals>();
+
+    /**
+     * The repositories written to since the session was last saved.
+     */
+    private final Set<String> writing = new HashSet<String>();
+
+    TotalsTrackingMetadataRepository( MetadataRepository repository, MetadataRepositoryTotals metadataRepositoryTotals,
+                                      boolean transactional )
+    {
+        this.repository = repository;
+        this.metadataRepositoryTotals = metadataRepositoryTotals;
+        this.transactional = transactional;
+    }
+
+    public void updateProject( String repositoryId, ProjectMetadata project )
+        throws MetadataRepositoryException
+    {
+        RepositoryTotals repositoryChanges = getChanges( repositoryId );
+
+        repository.updateProject( repositoryId, project );
+
+        if ( repositoryChanges != null )
+        {
+            repositoryChanges.addProject( project.getNamespace(), project.getId() );
+            changed( repositoryChanges );
+        }
+    }
+
+    public void updateArtifact( String repositoryId, String namespace, String projectId, String projectVersion,
+                                ArtifactMetadata artifactMeta )
+        throws MetadataRepositoryException
+    {
+        RepositoryTotals repositoryChanges = getChanges( repositoryId );
+        if ( repositoryChanges == null )
+        {
+            repository.updateArtifact( repositoryId, namespace, projectId, projectVersion, artifactMeta );
+            return;
+        }
+
+        ArtifactMetadata previous = getArtifactForChanges( repositoryId, namespace, projectId, projectVersion,
+                                                           artifactMeta.getId() );
+
+        repository.updateArtifact( repositoryId, namespace, projectId, projectVersion, artifactMeta );
+
+        if ( previous != null )
+        {
+            repositoryChanges.removeArtifact( previous );
+        }
+        repositoryChanges.addArtifact( artifactMeta );
+        repositoryChanges.addProject( namespace, projectId );
+        changed( repositoryChanges );
+    }
+
+    public void updateProjectVersion( String repositoryId, String namespace, String projectId,
+                                      ProjectVersionMetadata versionMetadata )
+        throws MetadataRepositoryException
+    {
+        RepositoryTotals repositoryChanges = getChanges( repositoryId );
+
+        repository.updateProjectVersion( repositoryId, namespace, projectId, versionMetadata );
+
+        if ( repositoryChanges != null )
+        {
+            repositoryChanges.addProject( namespace, projectId );
+            changed( repositoryChanges );
+        }
+    }
+
+    public void updateNamespace( String repositoryId, String namespace )
+        throws MetadataRepositoryException
+    {
+        repository.updateNamespace( repositoryId, namespace );
+    }
+
+    public List<String> getMetadataFacets( String repositoryId, String facetId )
+        throws MetadataRepositoryException
+    {
+        return repository.getMetadataFacets( repositoryId, facetId );
+    }
+
+    public boolean hasMetadataFacet( String repositoryId, String facetId )
+        throws MetadataRepositoryException
+    {
+        return repository.hasMetadataFacet( repositoryId, facetId );
+    }
+
+    public MetadataFacet getMetadataFacet( String repositoryId, String facetId, String name )
+        throws MetadataRepositoryException
+    {
+        return repository.getMetadataFacet( repositoryId, facetId, name );
+    }
+
+    public void addMetadataFacet( String repositoryId, MetadataFacet metadataFacet )
+        throws MetadataRepositoryException
+    {
+        repository.addMetadataFacet( repositoryId, metadataFacet );
+    }
+
+    public void removeMetadataFacets( String repositoryId, String facetId )
+        throws MetadataRepositoryException
+    {
+        repository.removeMetadataFacets( repositoryId, facetId );
+    }
+
+    public void removeMetadataFacet( String repositoryId, String facetId, String name )
+        throws MetadataRepositoryException
+    {
+        repository.removeMetadataFacet( repositoryId, facetId, name );
+    }
+
+    public List<ArtifactMetadata> getArtifactsByDateRange( String repositoryId, Date startTime, Date endTime )
+        throws MetadataRepositoryException
+    {
+        return repository.getArtifactsByDateRange( repositoryId, startTime, endTime );
+    }
+
+    public Collection<String> getRepositories()
+        throws MetadataRepositoryException
+    {
+        return repository.getRepositories();
+    }
+
+    public List<ArtifactMetadata> getArtifactsByChecksum( String repositoryId, String checksum )
+        throws MetadataRepositoryException
+    {
+        return repository.getArtifactsByChecksum( repositoryId, checksum );
+    }
+
+    public void removeArtifact( String repositoryId, String namespace, String project, String version, String id )
+        throws MetadataRepositoryException
+    {
+        RepositoryTotals repositoryChanges = getChanges( repositoryId );
+        if ( repositoryChanges == null )
+        {
+            repository.removeArtifact( repositoryId, namespace, project, version, id );
+            return;
+        }
+
+        Collection<ArtifactMetadata> before = getArtifactsForChanges( repositoryId, namespace, project, version );
+        repository.removeArtifact( repositoryId, namespace, project, version, id );
+        versionChanged( repositoryChanges, before, namespace, project, version );
+    }
+
+    public void removeArtifact( ArtifactMetadata artifactMetadata, String baseVersion )
+        throws MetadataRepositoryException
+    {
+        String repositoryId = artifactMetadata.getRepositoryId();
+        RepositoryTotals repositoryChanges = getChanges( repositoryId );
+        if ( repositoryChanges == null )
+        {
+            repository.removeArtifact( artifactMetadata, baseVersion );
+            return;
+        }
+
+        Collection<ArtifactMetadata> before =
+            getArtifactsForChanges( repositoryId, artifactMetadata.getNamespace(), artifactMetadata.getProject(),
+                                    baseVersion );
+        repository.removeArtifact( artifactMetadata, baseVersion );
+        versionChanged( repositoryChanges, before, artifactMetadata.getNamespace(), artifactMetadata.getProject(),
+                        baseVersion );
+    }
+
+    public void removeArtifact( String repositoryId, String namespace, String project, String version,
+                                MetadataFacet metadataFacet )
+        throws MetadataRepositoryException
+    {
+        RepositoryTotals repositoryChanges = getChanges( repositoryId );
+        if ( repositoryChanges == null )
+        {
+            repository.removeArtifact( repositoryId, namespace, project, version, metadataFacet );
+            return;
+        }
+
+        Collection<ArtifactMetadata> before = getArtifactsForChanges( repositoryId, namespace, project, version );
+        repository.removeArtifact( repositoryId, namespace, project, version, metadataFacet );
+        versionChanged( repositoryChanges, before, namespace, project, version );
+    }
+
+    public void removeRepository( String repositoryId )
+        throws MetadataRepositoryException
+    {
+        repository.removeRepository( repositoryId );
+        invalidate( repositoryId );
+    }
+
+    public void removeNamespace( String repositoryId, String namespace )
+        throws MetadataRepositoryException
+    {
+        repository.removeNamespace( repositoryId, namespace );
+        invalidate( repositoryId );
+    }
+
+    public List<ArtifactMetadata> getArtifacts( String repositoryId )
+        throws MetadataRepositoryException
+    {
+        return repository.getArtifacts( repositoryId );
+    }
+
+    public ProjectMetadata getProject( String repoId, String namespace, String projectId )
+        throws MetadataResolutionException
+    {
+        return repository.getProject( repoId, namespace, projectId );
+    }
+
+    public ProjectVersionMetadata getProjectVersion( String repoId, String namespace, String projectId,
+                                                     String projectVersion )
+        throws MetadataResolutionException
+    {
+        return repository.getProjectVersion( repoId, namespace, projectId, projectVersion );
+    }
+
+    public Collection<String> getArtifactVersions( String repoId, String namespace, String projectId,
+                                                   String projectVersion )
+        throws MetadataResolutionException
+    {
+        return repository.getArtifactVersions( repoId, namespace, projectId, projectVersion );
+    }
+
+    public Collection<ProjectVersionReference> getProjectReferences( String repoId, String namespace,
+                                                                     String projectId, String projectVersion )
+        throws MetadataResolutionException
+    {
+        return repository.getProjectReferences( repoId, namespace, projectId, projectVersion );
+    }
+
+    public Collection<String> getRootNamespaces( String repoId )
+        throws MetadataResolutionException
+    {
+        return repository.getRootNamespaces( repoId );
+    }
+
+    public Collection<String> getNamespaces( String repoId, String namespace )
+        throws MetadataResolutionException
+    {
+        return repository.getNamespaces( repoId, namespace );
+    }
+
+    public Collection<String> getProjects( String repoId, String namespace )
+        throws MetadataResolutionException
+    {
+        return repository.getProjects( repoId, namespace );
+    }
+
+    public Collection<String> getProjectVersions( String repoId, String namespace, String projectId )
+        throws MetadataResolutionException
+    {
+        return repository.getProjectVersions( repoId, namespace, projectId );
+    }
+
+    public void removeProjectVersion( String repoId, String namespace, String projectId, String projectVersion )
+        throws MetadataRepositoryException
+    {
+        RepositoryTotals repositoryChanges = getChanges( repoId );
+        if ( repositoryChanges == null )
+        {
+            repository.removeProjectVersion( repoId, namespace, projectId, projectVersion );
+            return;
+        }
+
+        Collection<ArtifactMetadata> before = getArtifactsForChanges( repoId, namespace, projectId, projectVersion );
+        repository.removeProjectVersion( repoId, namespace, projectId, projectVersion );
+        for ( ArtifactMetadata artifact : before )
+        {
+            repositoryChanges.removeArtifact( artifact );
+        }
+        changed( repositoryChanges );
+    }
+
+    public Collection<ArtifactMetadata> getArtifacts( String repoId, String namespace, String projectId,
+                                                      String projectVersion )
+        throws MetadataResolutionException
+    {
+        return repository.getArtifacts( repoId, namespace, projectId, projectVersion );
+    }
+
+    public void removeProject( String repositoryId, String namespace, String projectId )
+        throws MetadataRepositoryException
+    {
+        repository.removeProject( repositoryId, namespace, projectId );
+        invalidate( repositoryId );
+    }
+
+    public void save()
+    {
+        repository.save();
+
+        for ( RepositoryTotals repositoryChanges : changes.values() )
+        {
+            metadataRepositoryTotals.apply( repositoryChanges );
+        }
+        changes.clear();
+        endWrites();
+    }
+
+    public void close()
+        throws MetadataRepositoryException
+    {
+        changes.clear();
+
+        try
+        {
+            repository.close();
+        }
+        finally
+        {
+            endWrites();
+        }
+    }
+
+    public void revert()
+    {
+        changes.clear();
+
+        try
+        {
+            repository.revert();
+        }
+        finally
+        {
+            endWrites();
+        }
+    }
+
+    public boolean canObtainAccess( Class<?> aClass )
+    {
+        return repository.canObtainAccess( aClass );
+    }
+
+    public <T> T obtainAccess( Class<T> aClass )
+        throws MetadataRepositoryException
+    {
+        return repository.obtainAccess( aClass );
+    }
+
+    /**
+     * @return the changes made to the repository in this session, or <code>null</code> if its totals are not known
+     */
+    private RepositoryTotals getChanges( String repositoryId )
+    {
+        beginWrites( repositoryId );
+
+        if ( metadataRepositoryTotals.getTotals( repositoryId ) == null )
+        {
+            return null;
+        }
+
+        RepositoryTotals repositoryChanges = changes.get( repositoryId );
+        if ( repositoryChanges == null )
+        {
+            repositoryChanges = new RepositoryTotals( repositoryId );
+            changes.put( repositoryId, repositoryChanges );
+        }
+        return repositoryChanges;
+    }
+
+    private void changed( RepositoryTotals repositoryChanges )
+    {
+        // without transactions, the changes are stored already
+        if ( !transactional )
+        {
+            changes.remove( repositoryChanges.getRepositoryId() );
+            metadataRepositoryTotals.apply( repositoryChanges );
+        }
+    }
+
+    private void versionChanged( RepositoryTotals repositoryChanges, Collection<ArtifactMetadata> before,
+                                 String namespace, String projectId, String projectVersion )
+        throws MetadataRepositoryException
+    {
+        for ( ArtifactMetadata artifact : before )
+        {
+            repositoryChanges.removeArtifact( artifact );
+        }
+        for ( ArtifactMetadata artifact : getArtifactsForChanges( repositoryChanges.getRepositoryId(), namespace,
+                                                                  projectId, projectVersion ) )
+        {
+            repositoryChanges.addArtifact( artifact );
+        }
+        changed( repositoryChanges );
+    }
+
+    private Collection<ArtifactMetadata> getArtifactsForChanges( String repositoryId, String namespace,
+                                                                 String projectId, String projectVersion )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            return repository.getArtifacts( repositoryId, namespace, projectId, projectVersion );
+        }
+        catch ( MetadataResolutionException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    private ArtifactMetadata getArtifactForChanges( String repositoryId, String namespace, String projectId,
+                                                    String projectVersion, String id )
+        throws MetadataRepositoryException
+    {
+        if ( repository.canObtainAccess( ArtifactLookup.class ) )
+        {
+            try
+            {
+                return repository.obtainAccess( ArtifactLookup.class ).getArtifact( repositoryId, namespace,
+                                                                                    projectId, projectVersion, id );
+            }
+            catch ( MetadataResolutionException e )
+            {
+                throw new MetadataRepositoryException( e.getMessage(), e );
+            }
+        }
+
+        ArtifactMetadata previous = null;
+        for ( ArtifactMetadata artifact : getArtifactsForChanges( repositoryId, namespace, projectId, projectVersion ) )
+        {
+            if ( artifact.getId().equals( id ) )
+            {
+                previous = artifact;
+            }
+        }
+        return previous;
+    }
+
+    private void invalidate( String repositoryId )
+    {
+        beginWrites( repositoryId );
+
+        changes.remove( repositoryId );
+        metadataRepositoryTotals.invalidate( repositoryId );
+    }
+
+    private void beginWrites( String repositoryId )
+    {
+        if ( writing.add( repositoryId ) )
+        {
+            metadataRepositoryTotals.beginWrites( repositoryId );
+        }
+    }
+
+    private void endWrites()
+    {
+        for ( String repositoryId : writing )
+        {
+            metadataRepositoryTotals.endWrites( repositoryId );
+        }
+        writing.clear();
+    }
+}
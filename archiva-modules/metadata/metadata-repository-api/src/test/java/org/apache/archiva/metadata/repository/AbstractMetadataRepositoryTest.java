@@ -593,6 +593,34 @@ public abstract class AbstractMetadataRepositoryTest
         assertEquals( Collections.<String>emptyList(), new ArrayList<String>( metadata.getFacetIds() ) );
     }
 
+    @Test
+    public void testUpdateArtifactMetadataFacetsReplacedPerArtifact()
+        throws Exception
+    {
+        ArtifactMetadata jar = createArtifact();
+        jar.addFacet( new TestMetadataFacet( "foo" ) );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, jar );
+
+        ArtifactMetadata pom = createArtifact( "pom" );
+        pom.addFacet( new TestMetadataFacet( "bar" ) );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, pom );
+
+        jar = createArtifact();
+        jar.addFacet( new TestMetadataFacet( "baz" ) );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, jar );
+
+        Map<String, String> values = new HashMap<String, String>();
+        for ( ArtifactMetadata artifact : repository.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                                                   TEST_PROJECT_VERSION ) )
+        {
+            assertEquals( Collections.singleton( TEST_FACET_ID ), artifact.getFacetIds() );
+            values.put( artifact.getId(), ( (TestMetadataFacet) artifact.getFacet( TEST_FACET_ID ) ).getValue() );
+        }
+        assertEquals( 2, values.size() );
+        assertEquals( "baz", values.get( jar.getId() ) );
+        assertEquals( "bar", values.get( pom.getId() ) );
+    }
+
     @Test
     public void testGetMetadataFacet()
         throws Exception
@@ -1070,6 +1098,24 @@ public abstract class AbstractMetadataRepositoryTest
         Assertions.assertThat( projects ).isNotNull().isNotEmpty().hasSize( 1 ).contains( TEST_PROJECT );
     }
 
+    @Test
+    public void testGetProjectsOnlyInExactNamespace()
+        throws Exception
+    {
+        repository.updateProject( TEST_REPO_ID, createProject( "org.apache.maven" ) );
+
+        ProjectMetadata sharedProject = new ProjectMetadata();
+        sharedProject.setId( "shared-" + TEST_PROJECT );
+        sharedProject.setNamespace( "org.apache.maven.shared" );
+        repository.updateProject( TEST_REPO_ID, sharedProject );
+
+        Assertions.assertThat( repository.getProjects( TEST_REPO_ID, "org.apache.maven" ) ).isNotNull().hasSize(
+            1 ).contains( TEST_PROJECT );
+        Assertions.assertThat( repository.getProjects( TEST_REPO_ID, "org.apache.maven.shared" ) ).isNotNull().hasSize(
+            1 ).contains( "shared-" + TEST_PROJECT );
+        Assertions.assertThat( repository.getProjects( TEST_REPO_ID, "org.apache" ) ).isNotNull().isEmpty();
+    }
+
     @Test
     public void testGetProjectVersionsWithOtherNamespacesPresent()
         throws Exception
@@ -1241,6 +1287,27 @@ public abstract class AbstractMetadataRepositoryTest
                                                         TEST_PROJECT_VERSION_2_0 ) ).isNotEmpty().hasSize( 1 );
     }
 
+    @Test
+    public void testDeleteArtifactRemovesFacets()
+        throws Exception
+    {
+        ArtifactMetadata artifact = createArtifact();
+        artifact.addFacet( new TestMetadataFacet( "value" ) );
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+
+        repository.removeArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact.getId() );
+
+        // the facets of the deleted artifact must not be merged into the one stored again
+        repository.updateArtifact( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION,
+                                   createArtifact() );
+
+        Collection<ArtifactMetadata> artifacts =
+            repository.getArtifacts( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION );
+        Assertions.assertThat( artifacts ).isNotNull().hasSize( 1 );
+        assertEquals( Collections.<String>emptyList(),
+                      new ArrayList<String>( artifacts.iterator().next().getFacetIds() ) );
+    }
+
     @Test
     public void deleteArtifact()
         throws Exception
@@ -0,0 +1,253 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.MetadataFacet;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @since 1.4-M3
+ */
+public class MetadataResolverCacheTest
+{
+    private static final String TEST_REPO_ID = "internal";
+
+    private static final String TEST_NAMESPACE = "org.apache.archiva";
+
+    private static final String TEST_PROJECT = "archiva-base";
+
+    @Test
+    public void testProjectVersionsAreCopied()
+    {
+        MetadataResolverCache cache = new MetadataResolverCache();
+        ProjectVersionMetadata metadata = createProjectVersion( "1.0", false );
+        put( cache, metadata, false );
+        metadata.setName( "modified" );
+
+        ProjectVersionMetadata cached = get( cache, "1.0" );
+        assertEquals( "Archiva Base", cached.getName() );
+        assertNotSame( metadata.getFacet( TestFacet.ID ), cached.getFacet( TestFacet.ID ) );
+        assertEquals( "pom", ( (TestFacet) cached.getFacet( TestFacet.ID ) ).value );
+
+        ( (TestFacet) cached.getFacet( TestFacet.ID ) ).value = null;
+        assertEquals( "pom", ( (TestFacet) get( cache, "1.0" ).getFacet( TestFacet.ID ) ).value );
+        assertEquals( 2, cache.getProjectVersionHits() );
+        assertEquals( 1, cache.getRepositoryReads() );
+    }
+
+    @Test
+    public void testInvalidateProjectVersion()
+    {
+        MetadataResolverCache cache = new MetadataResolverCache();
+        put( cache, createProjectVersion( "1.0", false ), false );
+        put( cache, createProjectVersion( "1.1", false ), false );
+        List<String> affected = Arrays.asList( MetadataResolverCache.getRootNamespacesListing(),
+                                               MetadataResolverCache.getNamespacesListing( "org" ),
+                                               MetadataResolverCache.getNamespacesListing( "org.apache" ),
+                                               MetadataResolverCache.getNamespacesListing( TEST_NAMESPACE ),
+                                               MetadataResolverCache.getProjectsListing( TEST_NAMESPACE ),
+                                               MetadataResolverCache.getProjectVersionsListing( TEST_NAMESPACE,
+                                                                                                TEST_PROJECT ) );
+        List<String> unaffected = Arrays.asList( MetadataResolverCache.getProjectsListing( "org.apache" ),
+                                                 MetadataResolverCache.getNamespacesListing( "org.codehaus" ),
+                                                 MetadataResolverCache.getProjectVersionsListing( TEST_NAMESPACE,
+                                                                                                  "archiva-web" ) );
+        for ( String listing : affected )
+        {
+            cache.putListing( cache.getGeneration( TEST_REPO_ID ), TEST_REPO_ID, listing, Arrays.asList( "a" ) );
+        }
+        for ( String listing : unaffected )
+        {
+            cache.putListing( cache.getGeneration( TEST_REPO_ID ), TEST_REPO_ID, listing, Arrays.asList( "a" ) );
+        }
+
+        cache.invalidate( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, "1.1" );
+
+        // only the project version and the listings which may contain it are removed
+        assertNotNull( get( cache, "1.0" ) );
+        assertNull( get( cache, "1.1" ) );
+        for ( String listing : affected )
+        {
+            assertNull( listing, cache.getListing( TEST_REPO_ID, listing ) );
+        }
+        for ( String listing : unaffected )
+        {
+            assertNotNull( listing, cache.getListing( TEST_REPO_ID, listing ) );
+        }
+        assertEquals( 1, cache.getInvalidations() );
+    }
+
+    @Test
+    public void testIncompleteProjectVersionIsNotKept()
+    {
+        MetadataResolverCache cache = new MetadataResolverCache();
+        put( cache, createProjectVersion( "1.0", true ), true );
+
+        assertNull( get( cache, "1.0" ) );
+        assertEquals( 1, cache.getStorageReads() );
+    }
+
+    @Test
+    public void testResolutionStartedBeforeChangeIsNotKept()
+    {
+        MetadataResolverCache cache = new MetadataResolverCache();
+        long generation = cache.getGeneration( TEST_REPO_ID );
+        cache.invalidate( TEST_REPO_ID );
+
+        cache.putProjectVersion( generation, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, "1.0",
+                                 createProjectVersion( "1.0", false ), true );
+        cache.putListing( generation, TEST_REPO_ID, "projects", Arrays.asList( "a" ) );
+
+        assertNull( get( cache, "1.0" ) );
+        assertNull( cache.getListing( TEST_REPO_ID, "projects" ) );
+        assertEquals( 1, cache.getStorageReads() );
+        assertEquals( 1, cache.getListingMisses() );
+    }
+
+    @Test
+    public void testResolutionStartedBeforeInvalidationIsNotKept()
+    {
+        MetadataResolverCache cache = new MetadataResolverCache();
+        long generation = cache.getGeneration( TEST_REPO_ID );
+        cache.invalidate( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, "1.0" );
+
+        cache.putProjectVersion( generation, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, "1.0",
+                                 createProjectVersion( "1.0", false ), true );
+        cache.putProjectVersion( generation, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, "1.1",
+                                 createProjectVersion( "1.1", false ), true );
+
+        assertNull( get( cache, "1.0" ) );
+        assertNotNull( get( cache, "1.1" ) );
+    }
+
+    @Test
+    public void testResolutionStartedBeforeForgottenInvalidationIsNotKept()
+    {
+        MetadataResolverCache cache = new MetadataResolverCache();
+        cache.setMaxProjectVersions( 1 );
+        cache.setMaxListings( 1 );
+        long generation = cache.getGeneration( TEST_REPO_ID );
+
+        // more keys are invalidated than the invalidations kept
+        cache.invalidate( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, "2.0" );
+
+        cache.putProjectVersion( generation, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, "1.0",
+                                 createProjectVersion( "1.0", false ), true );
+        assertNull( get( cache, "1.0" ) );
+
+        put( cache, createProjectVersion( "1.0", false ), true );
+        assertNotNull( get( cache, "1.0" ) );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted()
+    {
+        MetadataResolverCache cache = new MetadataResolverCache();
+        cache.setMaxProjectVersions( 2 );
+        put( cache, createProjectVersion( "1.0", false ), false );
+        put( cache, createProjectVersion( "1.1", false ), false );
+        get( cache, "1.0" );
+
+        put( cache, createProjectVersion( "1.2", false ), false );
+
+        assertNotNull( get( cache, "1.0" ) );
+        assertNull( get( cache, "1.1" ) );
+        assertNotNull( get( cache, "1.2" ) );
+        assertEquals( 1, cache.getEvictions() );
+        assertEquals( 2, cache.getProjectVersionCount() );
+    }
+
+    @Test
+    public void testInvalidateRepository()
+    {
+        MetadataResolverCache cache = new MetadataResolverCache();
+        put( cache, createProjectVersion( "1.0", false ), false );
+        cache.putProjectVersion( cache.getGeneration( "snapshots" ), "snapshots", TEST_NAMESPACE, TEST_PROJECT, "1.0",
+                                 createProjectVersion( "1.0", false ), false );
+
+        cache.invalidate( TEST_REPO_ID );
+
+        assertNull( get( cache, "1.0" ) );
+        assertNotNull( cache.getProjectVersion( "snapshots", TEST_NAMESPACE, TEST_PROJECT, "1.0" ) );
+        assertEquals( 1, cache.getProjectVersionCount() );
+    }
+
+    private static ProjectVersionMetadata get( MetadataResolverCache cache, String projectVersion )
+    {
+        return cache.getProjectVersion( TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, projectVersion );
+    }
+
+    private static void put( MetadataResolverCache cache, ProjectVersionMetadata metadata, boolean fromStorage )
+    {
+        cache.putProjectVersion( cache.getGeneration( TEST_REPO_ID ), TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT,
+                                 metadata.getId(), metadata, fromStorage );
+    }
+
+    private static ProjectVersionMetadata createProjectVersion( String version, boolean incomplete )
+    {
+        ProjectVersionMetadata metadata = new ProjectVersionMetadata();
+        metadata.setId( version );
+        metadata.setName( "Archiva Base" );
+        metadata.setIncomplete( incomplete );
+        TestFacet facet = new TestFacet();
+        facet.value = "pom";
+        metadata.addFacet( facet );
+        return metadata;
+    }
+
+    public static class TestFacet
+        implements MetadataFacet
+    {
+        private static final String ID = "test";
+
+        private String value;
+
+        public String getFacetId()
+        {
+            return ID;
+        }
+
+        public String getName()
+        {
+            return ID;
+        }
+
+        public Map<String, String> toProperties()
+        {
+            return Collections.singletonMap( "value", value );
+        }
+
+        public void fromProperties( Map<String, String> properties )
+        {
+            value = properties.get( "value" );
+        }
+    }
+}
@@ -44,12 +44,20 @@ public class CUDFJob
 
     private boolean debug;
 
+    private int parallelism = 1;
+
     public CUDFJob()
     {
     }
 
     public CUDFJob( String id, String location, String cronExpression, boolean allRepositories, String repositoryGroup,
                     boolean debug, int retentionCount )
+    {
+        this( id, location, cronExpression, allRepositories, repositoryGroup, debug, retentionCount, 1 );
+    }
+
+    public CUDFJob( String id, String location, String cronExpression, boolean allRepositories, String repositoryGroup,
+                    boolean debug, int retentionCount, int parallelism )
     {
         this.id = id;
         this.location = location;
@@ -58,6 +66,7 @@ public class CUDFJob
         this.repositoryGroup = repositoryGroup;
         this.debug = debug;
         this.retentionCount = retentionCount;
+        this.parallelism = parallelism;
     }
 
     public String getId()
@@ -130,6 +139,16 @@ public class CUDFJob
         this.retentionCount = retentionCount;
     }
 
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    public void setParallelism( int parallelism )
+    {
+        this.parallelism = parallelism;
+    }
+
     @Override
     public String toString()
     {
@@ -141,6 +160,7 @@ public class CUDFJob
             ", repositoryGroup='" + repositoryGroup + '\'' +
             ", retentionCount=" + retentionCount +
             ", debug=" + debug +
+            ", parallelism=" + parallelism +
             '}';
     }
 }
@@ -120,7 +120,8 @@ public class DefaultCUDFJobsAdmin
     {
         return new CUDFJob( cudfJobConfiguration.getId(), cudfJobConfiguration.getLocation(),
                             cudfJobConfiguration.getCronExpression(), cudfJobConfiguration.isAllRepositories(),
-                            cudfJobConfiguration.getRepositoryGroup(), cudfJobConfiguration.isDebug(), cudfJobConfiguration.getRetentionCount() );
+                            cudfJobConfiguration.getRepositoryGroup(), cudfJobConfiguration.isDebug(),
+                            cudfJobConfiguration.getRetentionCount(), cudfJobConfiguration.getParallelism() );
     }
 
     private CUDFJobConfiguration createCUDFJobConfiguration( CUDFJob cudfJob )
@@ -133,6 +134,7 @@ public class DefaultCUDFJobsAdmin
         cudfJobConfiguration.setRepositoryGroup( cudfJob.getRepositoryGroup() );
         cudfJobConfiguration.setDebug( cudfJob.isDebug() );
         cudfJobConfiguration.setRetentionCount( cudfJob.getRetentionCount() );
+        cudfJobConfiguration.setParallelism( cudfJob.getParallelism() );
         return cudfJobConfiguration;
     }
 
@@ -148,6 +150,10 @@ public class DefaultCUDFJobsAdmin
         {
             throw new RepositoryAdminException( "The cron expression of " + cudfJob.getId() + " is invalid" );
         }
+        if ( cudfJob.getParallelism() < 1 )
+        {
+            throw new RepositoryAdminException( "The parallelism of " + cudfJob.getId() + " must be at least 1" );
+        }
     }
 
     private void checkIsNotExist( CUDFJob cudfJob, CUDFConfiguration cudfConfiguration )
@@ -20,31 +20,293 @@ package org.apache.archiva.cudf.cache;
  */
 
 import com.zenika.cudf.adapter.cache.Cache;
+import com.zenika.cudf.adapter.cache.CachedBinaries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
-import javax.inject.Inject;
-import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
+ * Bounded in-memory cache of the CUDF binaries.
+ * <p/>
+ * The binaries are kept in one {@link Cache} per set of repositories, as a universe only makes sense for the
+ * repositories it was loaded from. When the number of cached binaries exceeds {@link #getMaxElements()}, the least
+ * recently used sets are evicted as a whole: evicting single binaries would leave partial universes behind. The
+ * sets containing a repository are invalidated when its content changes.
+ *
  * @author Antoine Rouaze <antoine.rouaze@zenika.com>
  */
 @Service
+@ManagedResource( objectName = "org.apache.archiva:type=CUDFCache", description = "Cache of the CUDF binaries" )
 public class CUDFCache
-    implements Cache
 {
+    public static final int DEFAULT_MAX_ELEMENTS = 100000;
+
+    private Logger log = LoggerFactory.getLogger( CUDFCache.class );
+
+    private int maxElements = DEFAULT_MAX_ELEMENTS;
+
+    /**
+     * The caches by repository set, in access order.
+     */
+    private final LinkedHashMap<String, RepositoriesCache> caches =
+        new LinkedHashMap<String, RepositoriesCache>( 16, 0.75f, true );
+
+    private int size;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long invalidations;
+
+    private final long creationTime = System.currentTimeMillis();
+
+    /**
+     * Time of the last invalidation of each repository.
+     */
+    private final Map<String, Long> lastModified = new HashMap<String, Long>();
+
+    /**
+     * @return the cache of the binaries of the given repositories, created if needed
+     */
+    public synchronized Cache getCache( Collection<String> repositoryIds )
+    {
+        String key = getKey( repositoryIds );
+        RepositoriesCache cache = caches.get( key );
+        if ( cache == null )
+        {
+            cache = new RepositoriesCache( key, repositoryIds );
+            caches.put( key, cache );
+        }
+        return cache;
+    }
+
+    /**
+     * @return <code>true</code> if the universe of the given repositories is in the cache
+     */
+    public synchronized boolean isLoaded( Collection<String> repositoryIds )
+    {
+        RepositoriesCache cache = caches.get( getKey( repositoryIds ) );
+        return cache != null && isLoaded( cache );
+    }
+
+    /**
+     * @param cache a cache given by {@link #getCache(java.util.Collection)}, still complete if it has been evicted
+     *              since
+     * @return <code>true</code> if the universe is in the cache
+     */
+    public synchronized boolean isLoaded( Cache cache )
+    {
+        Object keys = ( (RepositoriesCache) cache ).entries.get( CachedBinaries.BINARY_ID_KEY_LIST );
+        return keys != null && !( (Set) keys ).isEmpty();
+    }
+
+    /**
+     * Removes the universes containing the given repository.
+     */
+    @ManagedOperation( description = "Removes the universes containing the repository" )
+    public synchronized void invalidate( String repositoryId )
+    {
+        lastModified.put( repositoryId, System.currentTimeMillis() );
+        for ( Iterator<RepositoriesCache> it = caches.values().iterator(); it.hasNext(); )
+        {
+            RepositoriesCache cache = it.next();
+            if ( cache.repositoryIds.contains( repositoryId ) )
+            {
+                log.debug( "Invalidating CUDF universe of {}", cache.key );
+                it.remove();
+                detach( cache );
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * @return the last time the content of one of the repositories changed, or the time the cache was created if
+     *         none changed since
+     */
+    public synchronized long getLastModified( Collection<String> repositoryIds )
+    {
+        long time = creationTime;
+        for ( String repositoryId : repositoryIds )
+        {
+            Long repositoryTime = lastModified.get( repositoryId );
+            if ( repositoryTime != null && repositoryTime > time )
+            {
+                time = repositoryTime;
+            }
+        }
+        return time;
+    }
+
+    @ManagedOperation( description = "Removes all the universes" )
+    public synchronized void clear()
+    {
+        for ( RepositoriesCache cache : caches.values() )
+        {
+            detach( cache );
+        }
+        caches.clear();
+        size = 0;
+    }
+
+    @ManagedAttribute( description = "Maximum number of binaries kept" )
+    public synchronized int getMaxElements()
+    {
+        return maxElements;
+    }
+
+    @ManagedAttribute
+    public synchronized void setMaxElements( int maxElements )
+    {
+        this.maxElements = maxElements;
+        evict( null );
+    }
 
-    @Inject
-    @Named( "cache#cudf" )
-    private org.apache.archiva.redback.components.cache.Cache cache;
+    @ManagedAttribute( description = "Number of binaries kept" )
+    public synchronized int getSize()
+    {
+        return size;
+    }
 
+    @ManagedAttribute( description = "Number of repository sets kept" )
+    public synchronized int getRepositorySetCount()
+    {
+        return caches.size();
+    }
+
+    @ManagedAttribute( description = "Number of binaries found in the cache" )
+    public synchronized long getHits()
+    {
+        return hits;
+    }
 
-    public void put( Object key, Object value )
+    @ManagedAttribute( description = "Number of binaries not found in the cache" )
+    public synchronized long getMisses()
     {
-        cache.put( key, value );
+        return misses;
     }
 
-    public Object get( Object key )
+    @ManagedAttribute( description = "Number of repository sets evicted to respect the maximum size" )
+    public synchronized long getEvictions()
     {
-        return cache.get( key );
+        return evictions;
+    }
+
+    @ManagedAttribute( description = "Number of repository sets invalidated after a repository change" )
+    public synchronized long getInvalidations()
+    {
+        return invalidations;
+    }
+
+    public synchronized CUDFCacheStatistics getStatistics()
+    {
+        return new CUDFCacheStatistics( size, maxElements, caches.size(), hits, misses, evictions, invalidations );
+    }
+
+    private static String getKey( Collection<String> repositoryIds )
+    {
+        List<String> ids = new ArrayList<String>( repositoryIds );
+        Collections.sort( ids );
+        return ids.toString();
+    }
+
+    /**
+     * Evicts the least recently used repository sets until the size is under the maximum. The set being filled is
+     * never evicted, even if it exceeds the maximum on its own.
+     */
+    private void evict( RepositoriesCache current )
+    {
+        for ( Iterator<RepositoriesCache> it = caches.values().iterator(); size > maxElements && it.hasNext(); )
+        {
+            RepositoriesCache cache = it.next();
+            if ( cache != current )
+            {
+                log.debug( "Evicting CUDF universe of {}", cache.key );
+                it.remove();
+                detach( cache );
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * The cache may still be used by a universe being loaded: it keeps its entries but no longer counts in the size.
+     */
+    private void detach( RepositoriesCache cache )
+    {
+        if ( cache.attached )
+        {
+            cache.attached = false;
+            size -= cache.entries.size();
+        }
+    }
+
+    private class RepositoriesCache
+        implements Cache
+    {
+        private final String key;
+
+        private final Set<String> repositoryIds;
+
+        private final Map<Object, Object> entries = new HashMap<Object, Object>();
+
+        private boolean attached = true;
+
+        private RepositoriesCache( String key, Collection<String> repositoryIds )
+        {
+            this.key = key;
+            this.repositoryIds = new HashSet<String>( repositoryIds );
+        }
+
+        public void put( Object key, Object value )
+        {
+            synchronized ( CUDFCache.this )
+            {
+                if ( entries.put( key, value ) == null && attached )
+                {
+                    size++;
+                    evict( this );
+                }
+            }
+        }
+
+        public Object get( Object key )
+        {
+            synchronized ( CUDFCache.this )
+            {
+                if ( attached )
+                {
+                    // marks the repository set as recently used
+                    caches.get( this.key );
+                }
+                Object value = entries.get( key );
+                if ( value == null )
+                {
+                    misses++;
+                }
+                else
+                {
+                    hits++;
+                }
+                return value;
+            }
+        }
     }
 }
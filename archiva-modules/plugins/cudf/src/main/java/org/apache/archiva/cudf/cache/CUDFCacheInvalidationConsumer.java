@@ -0,0 +1,135 @@
+package org.apache.archiva.cudf.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.admin.model.beans.ManagedRepository;
+import org.apache.archiva.consumers.AbstractMonitoredConsumer;
+import org.apache.archiva.consumers.ConsumerException;
+import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Invalidates the cached CUDF universes of a repository once a scan found POMs modified since the repository was
+ * last invalidated. The universes cached since were loaded with the older POMs already, so a scan of the entire
+ * repository only invalidates them if a POM really changed.
+ *
+ * @author Adrien Lecharpentier <adrien.lecharpentier@zenika.com>
+ * @since 1.4-M3
+ */
+@Service( "knownRepositoryContentConsumer#cudf-cache-invalidation" )
+@Scope( "prototype" )
+public class CUDFCacheInvalidationConsumer
+    extends AbstractMonitoredConsumer
+    implements KnownRepositoryContentConsumer
+{
+    private String id = "cudf-cache-invalidation";
+
+    private String description = "Invalidate the cached CUDF universes of the repository if it changed";
+
+    @Inject
+    private CUDFCache cache;
+
+    private String repoId;
+
+    private File repositoryDirectory;
+
+    /**
+     * The POMs modified since this time may be missing from the cached universes.
+     */
+    private long changesSince;
+
+    private boolean changed;
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public String getDescription()
+    {
+        return description;
+    }
+
+    public boolean isPermanent()
+    {
+        return true;
+    }
+
+    public List<String> getIncludes()
+    {
+        return Collections.singletonList( "**/*.pom" );
+    }
+
+    public List<String> getExcludes()
+    {
+        return Collections.emptyList();
+    }
+
+    public void beginScan( ManagedRepository repository, Date whenGathered )
+        throws ConsumerException
+    {
+        repoId = repository.getId();
+        repositoryDirectory = new File( repository.getLocation() );
+        changesSince = cache.getLastModified( Collections.singleton( repoId ) );
+        changed = false;
+    }
+
+    public void beginScan( ManagedRepository repository, Date whenGathered, boolean executeOnEntireRepo )
+        throws ConsumerException
+    {
+        beginScan( repository, whenGathered );
+    }
+
+    public void processFile( String path )
+        throws ConsumerException
+    {
+        // a full scan processes all the POMs, even those unchanged since the universes were loaded
+        if ( !changed && new File( repositoryDirectory, path ).lastModified() >= changesSince )
+        {
+            changed = true;
+        }
+    }
+
+    public void processFile( String path, boolean executeOnEntireRepo )
+        throws ConsumerException
+    {
+        processFile( path );
+    }
+
+    public void completeScan()
+    {
+        if ( changed )
+        {
+            cache.invalidate( repoId );
+        }
+    }
+
+    public void completeScan( boolean executeOnEntireRepo )
+    {
+        completeScan();
+    }
+}
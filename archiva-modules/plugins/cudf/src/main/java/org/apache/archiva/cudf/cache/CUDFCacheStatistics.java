@@ -0,0 +1,146 @@
+package org.apache.archiva.cudf.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * @author Adrien Lecharpentier <adrien.lecharpentier@zenika.com>
+ * @since 1.4-M3
+ */
+@XmlRootElement( name = "cudfCacheStatistics" )
+public class CUDFCacheStatistics
+    implements Serializable
+{
+    private int size;
+
+    private int maxElements;
+
+    private int repositorySetCount;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long invalidations;
+
+    public CUDFCacheStatistics()
+    {
+    }
+
+    public CUDFCacheStatistics( int size, int maxElements, int repositorySetCount, long hits, long misses,
+                                long evictions, long invalidations )
+    {
+        this.size = size;
+        this.maxElements = maxElements;
+        this.repositorySetCount = repositorySetCount;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public void setSize( int size )
+    {
+        this.size = size;
+    }
+
+    public int getMaxElements()
+    {
+        return maxElements;
+    }
+
+    public void setMaxElements( int maxElements )
+    {
+        this.maxElements = maxElements;
+    }
+
+    public int getRepositorySetCount()
+    {
+        return repositorySetCount;
+    }
+
+    public void setRepositorySetCount( int repositorySetCount )
+    {
+        this.repositorySetCount = repositorySetCount;
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public void setHits( long hits )
+    {
+        this.hits = hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    public void setMisses( long misses )
+    {
+        this.misses = misses;
+    }
+
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    public void setEvictions( long evictions )
+    {
+        this.evictions = evictions;
+    }
+
+    public long getInvalidations()
+    {
+        return invalidations;
+    }
+
+    public void setInvalidations( long invalidations )
+    {
+        this.invalidations = invalidations;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CUDFCacheStatistics{" +
+            "size=" + size +
+            ", maxElements=" + maxElements +
+            ", repositorySetCount=" + repositorySetCount +
+            ", hits=" + hits +
+            ", misses=" + misses +
+            ", evictions=" + evictions +
+            ", invalidations=" + invalidations +
+            '}';
+    }
+}
@@ -22,16 +22,12 @@ package org.apache.archiva.cudf.extractor;
 import com.zenika.cudf.adapter.resolver.CUDFVersionResolver;
 import com.zenika.cudf.model.Binary;
 import com.zenika.cudf.model.BinaryId;
-import org.apache.archiva.common.utils.VersionComparator;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
-import org.apache.archiva.metadata.repository.MetadataResolver;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -45,50 +41,51 @@ public class ArchivaVersionResolver
 
     private final RepositorySessionFactory repositorySessionFactory;
 
-    private final List<String> repositoryIds;
+    private final CUDFVersionTable versionTable;
 
     public ArchivaVersionResolver( RepositorySessionFactory repositorySessionFactory, List<String> repositoryIds )
+    {
+        this( repositorySessionFactory, new CUDFVersionTable( repositoryIds ) );
+    }
+
+    public ArchivaVersionResolver( RepositorySessionFactory repositorySessionFactory, CUDFVersionTable versionTable )
     {
         this.repositorySessionFactory = repositorySessionFactory;
-        this.repositoryIds = repositoryIds;
+        this.versionTable = versionTable;
     }
 
     public Binary resolve( Binary binary )
     {
-        RepositorySession repositorySession = null;
-        try
+        String organisation = binary.getBinaryId().getOrganisation();
+        String name = binary.getBinaryId().getName();
+        if ( !versionTable.isResolved( organisation, name ) )
         {
-            repositorySession = repositorySessionFactory.createSession();
-            MetadataResolver metadataResolver = repositorySession.getResolver();
-            List<String> projectVersions = new ArrayList<String>();
-            for ( String repositoryId : repositoryIds )
+            RepositorySession repositorySession = null;
+            try
             {
-                projectVersions.addAll( metadataResolver.resolveProjectVersions( repositorySession, repositoryId,
-                                                                                 binary.getBinaryId().getOrganisation(),
-                                                                                 binary.getBinaryId().getName() ) );
+                repositorySession = repositorySessionFactory.createSession();
+                versionTable.resolveProject( repositorySession, organisation, name );
             }
-            Collections.sort( projectVersions, VersionComparator.getInstance() );
-            int version = projectVersions.indexOf( binary.getRevision() ) + 1;
-            BinaryId binaryId =
-                new BinaryId( binary.getBinaryId().getName(), binary.getBinaryId().getOrganisation(), version );
-            Binary result = new Binary( binaryId );
-            result.setRevision( binary.getRevision() );
-            result.setType( binary.getType() );
-            result.setInstalled( binary.isInstalled() );
-            result.setDependencies( binary.getDependencies() );
-            return result;
-        }
-        catch ( MetadataResolutionException e )
-        {
-            log.warn( "Unable to resolve version for this binary: " + binary );
-        }
-        finally
-        {
-            if ( repositorySession != null )
+            catch ( MetadataResolutionException e )
+            {
+                log.warn( "Unable to resolve version for this binary: " + binary );
+                return binary;
+            }
+            finally
             {
-                repositorySession.close();
+                if ( repositorySession != null )
+                {
+                    repositorySession.close();
+                }
             }
         }
-        return binary;
+        int version = versionTable.getRank( organisation, name, binary.getRevision() );
+        BinaryId binaryId = new BinaryId( name, organisation, version );
+        Binary result = new Binary( binaryId );
+        result.setRevision( binary.getRevision() );
+        result.setType( binary.getType() );
+        result.setInstalled( binary.isInstalled() );
+        result.setDependencies( binary.getDependencies() );
+        return result;
     }
 }
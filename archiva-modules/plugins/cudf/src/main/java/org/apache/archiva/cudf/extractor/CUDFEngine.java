@@ -21,6 +21,7 @@ package org.apache.archiva.cudf.extractor;
 
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.List;
@@ -42,4 +43,18 @@ public interface CUDFEngine
 
     public void computeCUDFUniverse( List<String> repositoryId, Writer writer, Writer debugWriter )
         throws IOException;
+
+    /**
+     * Writes the universe of the repositories without loading all the project versions metadata in memory: each
+     * package is written as soon as it is resolved.
+     *
+     * @param debugWriter receives the versions conversion table, can be <code>null</code>
+     * @param parallelism number of workers resolving the namespaces, the output does not depend on it
+     * @param storeDirectory directory keeping the packages between two generations, so that only the projects
+     *                       changed since the previous one are resolved again. Each set of repositories has its own
+     *                       sub-directory. Can be <code>null</code>.
+     */
+    public void streamCUDFUniverse( List<String> repositoryIds, Writer writer, Writer debugWriter, int parallelism,
+                                    File storeDirectory )
+        throws IOException;
 }
@@ -20,8 +20,10 @@ package org.apache.archiva.cudf.extractor;
  */
 
 import org.apache.archiva.common.utils.VersionComparator;
+import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.model.Dependency;
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
 import org.apache.archiva.metadata.repository.MetadataResolver;
 import org.apache.archiva.metadata.repository.RepositorySession;
@@ -31,14 +33,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Adrien Lecharpentier <adrien.lecharpentier@zenika.com>
@@ -59,10 +66,31 @@ public class CUDFExtractor
      */
     private Writer optionalWriter;
 
+    private CUDFVersionTable versionTable;
+
+    private int parallelism = 1;
+
+    private CUDFStanzaStore stanzaStore;
+
+    /**
+     * Projects with artifacts gathered since the last generation kept in the stanza store.
+     */
+    private Set<String> changedProjects = new HashSet<String>();
+
     public CUDFExtractor( Writer writer, Writer optionalWriter )
+    {
+        this( writer, optionalWriter, null );
+    }
+
+    /**
+     * @param versionTable table giving the CUDF versions, shared between extractions working on the same
+     *                     repositories. If <code>null</code>, a table is created for each extraction.
+     */
+    public CUDFExtractor( Writer writer, Writer optionalWriter, CUDFVersionTable versionTable )
     {
         this.writer = writer;
         this.optionalWriter = optionalWriter;
+        this.versionTable = versionTable;
         initiateIllegalsCharatersForCUDF();
     }
 
@@ -72,40 +100,71 @@ public class CUDFExtractor
         illegals.put( ":", Integer.toHexString( ':' ) );
     }
 
+    /**
+     * Writes the universe of the repositories package by package: each stanza is written as soon as it is resolved,
+     * only the version table of the repositories is kept in memory. Project versions with invalid metadata are
+     * skipped. When an optional writer is given, it receives the versions conversion table.
+     */
     public void computeCUDFUniverse( List<String> repositoryIds, RepositorySessionFactory repositorySessionFactory )
         throws IOException
     {
-        this.repositories = repositoryIds;
+        setRepositories( repositoryIds );
 
         this.writer.write( getCUDFPreambule() );
-        for ( String repositoryId : repositoryIds )
+        Date generationStart = new Date();
+        RepositorySession repositorySession = null;
+        try
         {
-            RepositorySession repositorySession = null;
-            try
+            repositorySession = repositorySessionFactory.createSession();
+            if ( !versionTable.isLoaded() )
             {
-                repositorySession = repositorySessionFactory.createSession();
-                MetadataResolver metadataResolver = repositorySession.getResolver();
-                Collection<String> rootNamespaces =
-                    metadataResolver.resolveRootNamespaces( repositorySession, repositoryId );
-                for ( String rootNamespace : rootNamespaces )
-                {
-                    resolveNamespaces( repositorySession, metadataResolver, repositoryId, rootNamespace );
-                }
-                repositorySession.close();
+                versionTable.load( repositorySession );
             }
-            catch ( MetadataResolutionException e )
+            if ( stanzaStore != null )
             {
-                throw new RuntimeException( "Unable to extract CUDF Cone", e );
+                loadChangedProjects( repositorySession, repositoryIds );
             }
-            finally
+            MetadataResolver metadataResolver = repositorySession.getResolver();
+            for ( String repositoryId : repositoryIds )
             {
-                if ( repositorySession != null )
+                if ( parallelism > 1 )
                 {
-                    repositorySession.close();
-
+                    resolveNamespacesInParallel( repositorySession, repositoryId, repositorySessionFactory );
+                }
+                else
+                {
+                    Collection<String> rootNamespaces =
+                        metadataResolver.resolveRootNamespaces( repositorySession, repositoryId );
+                    for ( String rootNamespace : rootNamespaces )
+                    {
+                        resolveNamespaces( repositorySession, metadataResolver, repositoryId, rootNamespace );
+                    }
                 }
-                this.writer.flush();
-                this.writer.close();
+            }
+            if ( stanzaStore != null )
+            {
+                stanzaStore.commit( generationStart );
+            }
+        }
+        catch ( MetadataResolutionException e )
+        {
+            throw new RuntimeException( "Unable to extract CUDF universe", e );
+        }
+        catch ( MetadataRepositoryException e )
+        {
+            throw new RuntimeException( "Unable to extract CUDF universe", e );
+        }
+        finally
+        {
+            if ( repositorySession != null )
+            {
+                repositorySession.close();
+            }
+            this.writer.flush();
+            this.writer.close();
+            if ( this.optionalWriter != null )
+            {
+                this.optionalWriter.close();
             }
         }
     }
@@ -114,7 +173,7 @@ public class CUDFExtractor
                                  List<String> repositories, RepositorySessionFactory repositorySessionFactory )
         throws IOException, MetadataResolutionException
     {
-        this.repositories = repositories;
+        setRepositories( repositories );
         this.writer.append( getCUDFPreambule() );
         for ( String repositoryId : repositories )
         {
@@ -127,7 +186,7 @@ public class CUDFExtractor
                                  List<String> repositories, RepositorySessionFactory repositorySessionFactory )
         throws IOException, MetadataResolutionException
     {
-        this.repositories = repositories;
+        setRepositories( repositories );
         this.writer.append( getCUDFPreambule() );
         computeCUDFCone( groupId, artifactId, version, type, repositoryId, repositorySessionFactory );
         this.writer.close();
@@ -142,10 +201,10 @@ public class CUDFExtractor
         {
             repositorySession = repositorySessionFactory.createSession();
             MetadataResolver metadataResolver = repositorySession.getResolver();
-            resolveProjectVersionMetadata( repositorySession, metadataResolver, repositoryId, groupId, artifactId,
-                                           version,
-                                           getCUDFVersion( repositorySession, metadataResolver, groupId, artifactId,
-                                                           version ) );
+            writePackage( repositorySession, metadataResolver,
+                          resolvePackage( repositorySession, metadataResolver, repositoryId, groupId, artifactId,
+                                          version ),
+                          getCUDFVersion( repositorySession, metadataResolver, groupId, artifactId, version ) );
         }
         catch ( MetadataResolutionException e )
         {
@@ -161,6 +220,94 @@ public class CUDFExtractor
         this.writer.flush();
     }
 
+    private void setRepositories( List<String> repositories )
+    {
+        this.repositories = repositories;
+        if ( versionTable == null )
+        {
+            versionTable = new CUDFVersionTable( repositories );
+        }
+    }
+
+    public CUDFVersionTable getVersionTable()
+    {
+        return versionTable;
+    }
+
+    /**
+     * @param parallelism number of workers resolving the namespaces of the universe. The output is the same whatever
+     *                    the parallelism.
+     */
+    public void setParallelism( int parallelism )
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param stanzaStore store of the packages of the previous generation: only the projects with artifacts gathered
+     *                    since then, or whose versions changed, are resolved again
+     */
+    public void setStanzaStore( CUDFStanzaStore stanzaStore )
+    {
+        this.stanzaStore = stanzaStore;
+    }
+
+    private void loadChangedProjects( RepositorySession repositorySession, List<String> repositoryIds )
+        throws IOException, MetadataRepositoryException
+    {
+        Date lastUpdate = stanzaStore.getLastUpdate();
+        if ( lastUpdate == null )
+        {
+            // nothing to reuse, every project will be resolved
+            return;
+        }
+        for ( String repositoryId : repositoryIds )
+        {
+            List<ArtifactMetadata> artifacts =
+                repositorySession.getRepository().getArtifactsByDateRange( repositoryId, lastUpdate, null );
+            for ( ArtifactMetadata artifact : artifacts )
+            {
+                changedProjects.add( repositoryId + ":" + artifact.getNamespace() + ":" + artifact.getProject() );
+            }
+        }
+        log.info( "{} projects changed since the CUDF generation of {}", changedProjects.size(), lastUpdate );
+    }
+
+    private void resolveNamespacesInParallel( RepositorySession repositorySession, String repositoryId,
+                                              RepositorySessionFactory repositorySessionFactory )
+        throws MetadataResolutionException, IOException
+    {
+        CUDFNamespaceFanOut fanOut = new CUDFNamespaceFanOut( repositorySessionFactory, parallelism );
+        fanOut.visit( repositoryId, fanOut.getNamespaces( repositorySession, repositoryId ),
+                      new CUDFNamespaceFanOut.NamespaceVisitor<CUDFExtractor>()
+                      {
+                          public CUDFExtractor visit( RepositorySession session, String repoId, String namespace )
+                              throws MetadataResolutionException, IOException
+                          {
+                              // each namespace is extracted in memory and written in the namespaces order
+                              Writer debugWriter = optionalWriter == null ? null : new StringWriter();
+                              CUDFExtractor extractor =
+                                  new CUDFExtractor( new StringWriter(), debugWriter, versionTable );
+                              extractor.repositories = repositories;
+                              extractor.stanzaStore = stanzaStore;
+                              extractor.changedProjects = changedProjects;
+                              extractor.resolveNamespaces( session, session.getResolver(), repoId, namespace );
+                              return extractor;
+                          }
+                      }, new CUDFNamespaceFanOut.ResultHandler<CUDFExtractor>()
+                      {
+                          public void handle( CUDFExtractor extractor )
+                              throws IOException
+                          {
+                              writer.write( extractor.writer.toString() );
+                              if ( optionalWriter != null )
+                              {
+                                  optionalWriter.write( extractor.optionalWriter.toString() );
+                              }
+                          }
+                      } );
+    }
+
     private void resolveNamespaces( RepositorySession session, MetadataResolver metadataResolver, String repositoryId,
                                     String namespace )
         throws MetadataResolutionException, IOException
@@ -202,45 +349,99 @@ public class CUDFExtractor
         Collections.sort( projectVersions, VersionComparator.getInstance() );
         if ( projectVersions.size() != 0 )
         {
-            for ( int i = 0; i < projectVersions.size(); i++ )
+            Map<String, CUDFPackage> packages = getStoredPackages( repositoryId, namespace, project, projectVersions );
+            if ( packages == null )
+            {
+                packages = new LinkedHashMap<String, CUDFPackage>();
+                for ( String projectVersion : projectVersions )
+                {
+                    try
+                    {
+                        packages.put( projectVersion,
+                                      resolvePackage( session, metadataResolver, repositoryId, namespace, project,
+                                                      projectVersion ) );
+                    }
+                    catch ( MetadataResolutionException e )
+                    {
+                        log.warn( "Skipping " + namespace + ":" + project + ":" + projectVersion
+                                      + " from the CUDF universe: " + e.getMessage() );
+                    }
+                }
+                if ( stanzaStore != null )
+                {
+                    stanzaStore.putPackages( repositoryId, namespace, project, projectVersions, packages );
+                }
+            }
+            for ( Map.Entry<String, CUDFPackage> entry : packages.entrySet() )
             {
-                resolveProjectVersionMetadata( session, metadataResolver, repositoryId, namespace, project,
-                                               projectVersions.get( i ), i + 1 );
+                writePackage( session, metadataResolver, entry.getValue(),
+                              versionTable.getRank( session, namespace, project, entry.getKey() ) );
             }
         }
     }
 
-    private void resolveProjectVersionMetadata( RepositorySession session, MetadataResolver metadataResolver,
-                                                String repositoryId, String namespace, String project,
-                                                String projectVersion, int version )
-        throws MetadataResolutionException, IOException
+    /**
+     * @return the packages of the project kept from the previous generation, or <code>null</code> if the project must
+     *         be resolved again
+     */
+    private Map<String, CUDFPackage> getStoredPackages( String repositoryId, String namespace, String project,
+                                                        List<String> projectVersions )
+        throws IOException
+    {
+        if ( stanzaStore == null || changedProjects.contains( repositoryId + ":" + namespace + ":" + project ) )
+        {
+            return null;
+        }
+        return stanzaStore.getPackages( repositoryId, namespace, project, projectVersions );
+    }
+
+    private CUDFPackage resolvePackage( RepositorySession session, MetadataResolver metadataResolver,
+                                        String repositoryId, String namespace, String project, String projectVersion )
+        throws MetadataResolutionException
     {
         ProjectVersionMetadata projectVersionMetadata =
             metadataResolver.resolveProjectVersion( session, repositoryId, namespace, project, projectVersion );
-        if ( projectVersionMetadata != null )
+        if ( projectVersionMetadata == null )
         {
-            String projectOneLine = outputArtifactInCUDFInline( extractOrganisation( projectVersionMetadata ),
-                                                                extractName( projectVersionMetadata ) );
-            writer.append( "package: " ).append( projectOneLine ).append( '\n' );
-            writer.append( "number: " ).append( projectVersionMetadata.getVersion() ).append( '\n' );
-            writer.append( "version: " ).append( Integer.toString( version ) ).append( '\n' );
-            writer.append( "type: " ).append( extractPackaging( projectVersionMetadata ) ).append( '\n' );
-            if ( hasDependencies( projectVersionMetadata ) )
-            {
-                writer.append( "depends: " ).append(
-                    extractDependencies( session, projectVersionMetadata.getDependencies(), metadataResolver ) ).append(
-                    '\n' );
-            }
-            writer.append( '\n' );
-            writer.flush();
-        } else {
             throw new MetadataResolutionException( "Invalid Metadata, check the artifact metadata" );
         }
+        CUDFPackage cudfPackage = new CUDFPackage();
+        cudfPackage.setOrganisation( extractOrganisation( projectVersionMetadata ) );
+        cudfPackage.setName( extractName( projectVersionMetadata ) );
+        checkArtifact( cudfPackage.getOrganisation(), cudfPackage.getName() );
+        cudfPackage.setNumber( projectVersionMetadata.getVersion() );
+        cudfPackage.setType( extractPackaging( projectVersionMetadata ) );
+        for ( Dependency dependency : projectVersionMetadata.getDependencies() )
+        {
+            checkArtifact( dependency.getGroupId(), dependency.getArtifactId() );
+            cudfPackage.addDependency( dependency );
+        }
+        return cudfPackage;
     }
 
-    private boolean hasDependencies( ProjectVersionMetadata projectVersionMetadata )
+    private void writePackage( RepositorySession session, MetadataResolver metadataResolver, CUDFPackage cudfPackage,
+                               int version )
+        throws MetadataResolutionException, IOException
     {
-        return projectVersionMetadata.getDependencies().size() != 0;
+        String projectOneLine = outputArtifactInCUDFInline( cudfPackage.getOrganisation(), cudfPackage.getName() );
+        // the stanza is completed before being written so that a resolution failure leaves no partial package
+        StringBuilder stanza = new StringBuilder( 200 );
+        stanza.append( "package: " ).append( projectOneLine ).append( '\n' );
+        stanza.append( "number: " ).append( cudfPackage.getNumber() ).append( '\n' );
+        stanza.append( "version: " ).append( Integer.toString( version ) ).append( '\n' );
+        stanza.append( "type: " ).append( cudfPackage.getType() ).append( '\n' );
+        if ( !cudfPackage.getDependencies().isEmpty() )
+        {
+            stanza.append( "depends: " ).append(
+                extractDependencies( session, cudfPackage.getDependencies(), metadataResolver ) ).append( '\n' );
+        }
+        stanza.append( '\n' );
+        writer.append( stanza );
+        if ( optionalWriter != null )
+        {
+            optionalWriter.append( projectOneLine ).append( ' ' ).append( cudfPackage.getNumber() ).append(
+                " => " ).append( Integer.toString( version ) ).append( '\n' );
+        }
     }
 
     private StringBuilder extractDependencies( RepositorySession repositorySession, List<Dependency> dependencies,
@@ -275,27 +476,7 @@ public class CUDFExtractor
                                 String artifactId, String version )
         throws MetadataResolutionException
     {
-        List<String> projectVersions = new LinkedList<String>();
-        for ( String repositoryId : repositories )
-        {
-            projectVersions.addAll(
-                metadataResolver.resolveProjectVersions( repositorySession, repositoryId, groupId, artifactId ) );
-        }
-        Collections.sort( projectVersions, VersionComparator.getInstance() );
-        int cudfVersion = projectVersions.indexOf( version ) + 1;
-        if ( optionalWriter != null )
-        {
-            try
-            {
-                writer.append( outputArtifactInCUDFInline( groupId, artifactId ) ).append( " " ).append(
-                    version ).append( " => " ).append( Integer.toString( cudfVersion ) );
-            }
-            catch ( IOException e )
-            {
-                // nothing
-            }
-        }
-        return cudfVersion;
+        return versionTable.getRank( repositorySession, groupId, artifactId, version );
     }
 
     private String extractPackaging( ProjectVersionMetadata projectVersionMetadata )
@@ -353,13 +534,19 @@ public class CUDFExtractor
      */
     private String outputArtifactInCUDFInline( String organisation, String name )
         throws MetadataResolutionException
+    {
+        checkArtifact( organisation, name );
+        String packageLine = new StringBuilder( 20 ).append( organisation ).append( ':' ).append( name ).toString();
+        return encodingString( packageLine );
+    }
+
+    private void checkArtifact( String organisation, String name )
+        throws MetadataResolutionException
     {
         if ( organisation == null || name == null )
         {
             throw new MetadataResolutionException("Invalid Metadata, check the artifact metadata");
         }
-        String packageLine = new StringBuilder( 20 ).append( organisation ).append( ':' ).append( name ).toString();
-        return encodingString( packageLine );
     }
 
     /**
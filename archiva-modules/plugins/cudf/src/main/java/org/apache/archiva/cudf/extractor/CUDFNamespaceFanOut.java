@@ -0,0 +1,254 @@
+package org.apache.archiva.cudf.extractor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.repository.MetadataResolutionException;
+import org.apache.archiva.metadata.repository.MetadataResolver;
+import org.apache.archiva.metadata.repository.RepositorySession;
+import org.apache.archiva.metadata.repository.RepositorySessionFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Visits the namespaces of a repository on several workers, each one working with its own
+ * {@link RepositorySession}, and gives back the results in the order of the namespaces so that the output stays
+ * deterministic whatever the parallelism.
+ * <p/>
+ * The work units are the root namespaces, split into their sub-namespaces when they have some. The number of units
+ * visited ahead of the one being consumed is bounded, so that the memory used stays proportional to the
+ * parallelism and not to the repository size.
+ *
+ * @author Adrien Lecharpentier <adrien.lecharpentier@zenika.com>
+ * @since 1.4-M3
+ */
+public class CUDFNamespaceFanOut
+{
+    /**
+     * Number of units each worker may visit ahead of the consumer.
+     */
+    private static final int WINDOW_PER_WORKER = 4;
+
+    private final RepositorySessionFactory repositorySessionFactory;
+
+    private final int parallelism;
+
+    public CUDFNamespaceFanOut( RepositorySessionFactory repositorySessionFactory, int parallelism )
+    {
+        this.repositorySessionFactory = repositorySessionFactory;
+        this.parallelism = Math.max( 1, parallelism );
+    }
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Visits a namespace and its sub-namespaces.
+     */
+    public interface NamespaceVisitor<T>
+    {
+        T visit( RepositorySession session, String repositoryId, String namespace )
+            throws MetadataResolutionException, IOException;
+    }
+
+    /**
+     * Consumes the result of the visit of a namespace, always called from the thread running the fan-out.
+     */
+    public interface ResultHandler<T>
+    {
+        void handle( T result )
+            throws IOException;
+    }
+
+    /**
+     * @return the work units of the repository: the root namespaces, split in their sub-namespaces if they have some
+     */
+    public List<String> getNamespaces( RepositorySession session, String repositoryId )
+        throws MetadataResolutionException
+    {
+        MetadataResolver metadataResolver = session.getResolver();
+        List<String> namespaces = new ArrayList<String>();
+        for ( String rootNamespace : metadataResolver.resolveRootNamespaces( session, repositoryId ) )
+        {
+            Collection<String> subNamespaces =
+                metadataResolver.resolveNamespaces( session, repositoryId, rootNamespace );
+            if ( subNamespaces.isEmpty() )
+            {
+                namespaces.add( rootNamespace );
+            }
+            else
+            {
+                for ( String subNamespace : subNamespaces )
+                {
+                    namespaces.add( rootNamespace + "." + subNamespace );
+                }
+            }
+        }
+        return namespaces;
+    }
+
+    public <T> void visit( final String repositoryId, final List<String> namespaces,
+                           final NamespaceVisitor<T> visitor, ResultHandler<T> handler )
+        throws MetadataResolutionException, IOException
+    {
+        // only the results visited ahead of the consumer are kept, they are removed once consumed
+        final ConcurrentMap<Integer, Result<T>> results = new ConcurrentHashMap<Integer, Result<T>>();
+        final AtomicInteger next = new AtomicInteger();
+        final Semaphore window = new Semaphore( parallelism * WINDOW_PER_WORKER );
+
+        ExecutorService executor = Executors.newFixedThreadPool( parallelism );
+        try
+        {
+            for ( int i = 0; i < parallelism; i++ )
+            {
+                executor.execute( new Runnable()
+                {
+                    public void run()
+                    {
+                        RepositorySession session = null;
+                        try
+                        {
+                            while ( true )
+                            {
+                                window.acquire();
+                                int index = next.getAndIncrement();
+                                if ( index >= namespaces.size() )
+                                {
+                                    return;
+                                }
+                                Result<T> result = getResult( results, index );
+                                try
+                                {
+                                    if ( session == null )
+                                    {
+                                        session = repositorySessionFactory.createSession();
+                                    }
+                                    result.set( visitor.visit( session, repositoryId, namespaces.get( index ) ) );
+                                }
+                                catch ( Throwable t )
+                                {
+                                    result.fail( t );
+                                }
+                            }
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        finally
+                        {
+                            if ( session != null )
+                            {
+                                session.close();
+                            }
+                        }
+                    }
+                } );
+            }
+
+            for ( int i = 0; i < namespaces.size(); i++ )
+            {
+                T value = getResult( results, i ).get();
+                results.remove( i );
+                window.release();
+                handler.handle( value );
+            }
+        }
+        finally
+        {
+            // stops the workers waiting for the window if the consumer failed
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> Result<T> getResult( ConcurrentMap<Integer, Result<T>> results, int index )
+    {
+        Result<T> result = results.get( index );
+        if ( result == null )
+        {
+            Result<T> created = new Result<T>();
+            result = results.putIfAbsent( index, created );
+            if ( result == null )
+            {
+                result = created;
+            }
+        }
+        return result;
+    }
+
+    private static class Result<T>
+    {
+        private final CountDownLatch done = new CountDownLatch( 1 );
+
+        private T value;
+
+        private Throwable error;
+
+        private void set( T value )
+        {
+            this.value = value;
+            done.countDown();
+        }
+
+        private void fail( Throwable error )
+        {
+            this.error = error;
+            done.countDown();
+        }
+
+        private T get()
+            throws MetadataResolutionException, IOException
+        {
+            try
+            {
+                done.await();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException( "Interrupted while waiting for the namespace visit" );
+            }
+            if ( error instanceof MetadataResolutionException )
+            {
+                throw (MetadataResolutionException) error;
+            }
+            if ( error instanceof IOException )
+            {
+                throw (IOException) error;
+            }
+            if ( error != null )
+            {
+                throw new RuntimeException( error.getMessage(), error );
+            }
+            return value;
+        }
+    }
+}
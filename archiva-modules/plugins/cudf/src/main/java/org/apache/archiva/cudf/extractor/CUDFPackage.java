@@ -0,0 +1,108 @@
+package org.apache.archiva.cudf.extractor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.Dependency;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The content of a CUDF package stanza as extracted from the project version metadata. Dependencies are kept with
+ * their Maven version: their CUDF version depends on the whole universe and is only computed when the stanza is
+ * written.
+ *
+ * @author Adrien Lecharpentier <adrien.lecharpentier@zenika.com>
+ * @since 1.4-M3
+ */
+public class CUDFPackage
+{
+    private String organisation;
+
+    private String name;
+
+    private String number;
+
+    private String type;
+
+    private List<Dependency> dependencies = new ArrayList<Dependency>();
+
+    public String getOrganisation()
+    {
+        return organisation;
+    }
+
+    public void setOrganisation( String organisation )
+    {
+        this.organisation = organisation;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setName( String name )
+    {
+        this.name = name;
+    }
+
+    public String getNumber()
+    {
+        return number;
+    }
+
+    public void setNumber( String number )
+    {
+        this.number = number;
+    }
+
+    public String getType()
+    {
+        return type;
+    }
+
+    public void setType( String type )
+    {
+        this.type = type;
+    }
+
+    public List<Dependency> getDependencies()
+    {
+        return dependencies;
+    }
+
+    public void addDependency( Dependency dependency )
+    {
+        this.dependencies.add( dependency );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CUDFPackage{" +
+            "organisation='" + organisation + '\'' +
+            ", name='" + name + '\'' +
+            ", number='" + number + '\'' +
+            ", type='" + type + '\'' +
+            ", dependencies=" + dependencies.size() +
+            '}';
+    }
+}
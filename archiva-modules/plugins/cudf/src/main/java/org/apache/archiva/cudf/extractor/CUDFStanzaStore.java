@@ -0,0 +1,287 @@
+package org.apache.archiva.cudf.extractor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.Dependency;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Persistent store of the CUDF packages of every project, used to regenerate a universe by resolving again only the
+ * projects changed since the previous generation. Each project is kept in its own properties file, together with
+ * the list of versions it was extracted from, so that a project whose versions have been added or removed is never
+ * served from the store.
+ *
+ * @author Adrien Lecharpentier <adrien.lecharpentier@zenika.com>
+ * @since 1.4-M3
+ */
+public class CUDFStanzaStore
+{
+    private static final String STORE_PROPERTIES = "cudf-store.properties";
+
+    private static final String LAST_UPDATE = "lastUpdate";
+
+    private final File directory;
+
+    private final Set<File> visited = Collections.synchronizedSet( new HashSet<File>() );
+
+    public CUDFStanzaStore( File directory )
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * As a generation removes the projects it did not visit, the generations of different sets of repositories must
+     * not share a store.
+     *
+     * @param baseDirectory the directory of the stores of all the sets of repositories
+     * @return the store of the set of repositories, in a sub-directory named after the hash of their sorted ids
+     */
+    public static CUDFStanzaStore forRepositories( File baseDirectory, List<String> repositoryIds )
+    {
+        List<String> sortedIds = new ArrayList<String>( repositoryIds );
+        Collections.sort( sortedIds );
+        StringBuilder key = new StringBuilder();
+        for ( String repositoryId : sortedIds )
+        {
+            key.append( repositoryId ).append( '\n' );
+        }
+        try
+        {
+            byte[] digest = MessageDigest.getInstance( "SHA-1" ).digest( key.toString().getBytes( "UTF-8" ) );
+            StringBuilder name = new StringBuilder();
+            for ( byte b : digest )
+            {
+                name.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+            }
+            return new CUDFStanzaStore( new File( baseDirectory, name.toString() ) );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e.getMessage(), e );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * @return the date of the last complete generation, or <code>null</code> if the store is empty
+     */
+    public Date getLastUpdate()
+        throws IOException
+    {
+        Properties properties = readProperties( new File( directory, STORE_PROPERTIES ) );
+        String lastUpdate = properties == null ? null : properties.getProperty( LAST_UPDATE );
+        return lastUpdate == null ? null : new Date( Long.parseLong( lastUpdate ) );
+    }
+
+    /**
+     * @return the packages of the project by project version, or <code>null</code> if the project is not in the
+     *         store or if it was stored for other versions
+     */
+    public Map<String, CUDFPackage> getPackages( String repositoryId, String namespace, String project,
+                                                 List<String> versions )
+        throws IOException
+    {
+        File file = getProjectFile( repositoryId, namespace, project );
+        visited.add( file );
+        Properties properties = readProperties( file );
+        if ( properties == null || !versions.equals( getList( properties, "version" ) ) )
+        {
+            return null;
+        }
+
+        Map<String, CUDFPackage> packages = new LinkedHashMap<String, CUDFPackage>();
+        for ( int i = 0; properties.getProperty( "package." + i + ".version" ) != null; i++ )
+        {
+            String prefix = "package." + i + ".";
+            CUDFPackage cudfPackage = new CUDFPackage();
+            cudfPackage.setOrganisation( properties.getProperty( prefix + "organisation" ) );
+            cudfPackage.setName( properties.getProperty( prefix + "name" ) );
+            cudfPackage.setNumber( properties.getProperty( prefix + "number" ) );
+            cudfPackage.setType( properties.getProperty( prefix + "type", "" ) );
+            for ( int j = 0; properties.getProperty( prefix + "dependency." + j + ".artifactId" ) != null; j++ )
+            {
+                Dependency dependency = new Dependency();
+                dependency.setGroupId( properties.getProperty( prefix + "dependency." + j + ".groupId" ) );
+                dependency.setArtifactId( properties.getProperty( prefix + "dependency." + j + ".artifactId" ) );
+                dependency.setVersion( properties.getProperty( prefix + "dependency." + j + ".version" ) );
+                cudfPackage.addDependency( dependency );
+            }
+            packages.put( properties.getProperty( prefix + "version" ), cudfPackage );
+        }
+        return packages;
+    }
+
+    /**
+     * Stores the packages of a project, replacing the previous ones.
+     *
+     * @param versions the versions of the project the packages were extracted from, including the versions without
+     *                 valid metadata
+     */
+    public void putPackages( String repositoryId, String namespace, String project, List<String> versions,
+                             Map<String, CUDFPackage> packages )
+        throws IOException
+    {
+        File file = getProjectFile( repositoryId, namespace, project );
+        visited.add( file );
+
+        Properties properties = new Properties();
+        for ( int i = 0; i < versions.size(); i++ )
+        {
+            properties.setProperty( "version." + i, versions.get( i ) );
+        }
+        int i = 0;
+        for ( Map.Entry<String, CUDFPackage> entry : packages.entrySet() )
+        {
+            String prefix = "package." + i + ".";
+            CUDFPackage cudfPackage = entry.getValue();
+            setProperty( properties, prefix + "version", entry.getKey() );
+            setProperty( properties, prefix + "organisation", cudfPackage.getOrganisation() );
+            setProperty( properties, prefix + "name", cudfPackage.getName() );
+            setProperty( properties, prefix + "number", cudfPackage.getNumber() );
+            setProperty( properties, prefix + "type", cudfPackage.getType() );
+            int j = 0;
+            for ( Dependency dependency : cudfPackage.getDependencies() )
+            {
+                setProperty( properties, prefix + "dependency." + j + ".groupId", dependency.getGroupId() );
+                setProperty( properties, prefix + "dependency." + j + ".artifactId", dependency.getArtifactId() );
+                setProperty( properties, prefix + "dependency." + j + ".version", dependency.getVersion() );
+                j++;
+            }
+            i++;
+        }
+        writeProperties( properties, file );
+    }
+
+    /**
+     * Records a complete generation: the projects neither read nor written since the store was opened are removed.
+     *
+     * @param updateTime the time the generation started at
+     */
+    public void commit( Date updateTime )
+        throws IOException
+    {
+        if ( directory.isDirectory() )
+        {
+            for ( File file : FileUtils.listFiles( directory, new String[]{ "properties" }, true ) )
+            {
+                if ( !visited.contains( file ) && !file.getName().equals( STORE_PROPERTIES ) )
+                {
+                    FileUtils.deleteQuietly( file );
+                }
+            }
+        }
+        Properties properties = new Properties();
+        properties.setProperty( LAST_UPDATE, Long.toString( updateTime.getTime() ) );
+        writeProperties( properties, new File( directory, STORE_PROPERTIES ) );
+    }
+
+    private File getProjectFile( String repositoryId, String namespace, String project )
+    {
+        return new File( directory, repositoryId + "/" + namespace + "/" + project + ".properties" );
+    }
+
+    private static List<String> getList( Properties properties, String key )
+    {
+        List<String> values = new ArrayList<String>();
+        for ( int i = 0; properties.getProperty( key + "." + i ) != null; i++ )
+        {
+            values.add( properties.getProperty( key + "." + i ) );
+        }
+        return values;
+    }
+
+    private static void setProperty( Properties properties, String key, String value )
+    {
+        if ( value != null )
+        {
+            properties.setProperty( key, value );
+        }
+    }
+
+    private static Properties readProperties( File file )
+        throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            properties.load( in );
+        }
+        catch ( FileNotFoundException e )
+        {
+            return null;
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+        return properties;
+    }
+
+    private static void writeProperties( Properties properties, File file )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+        // written aside then renamed so that an interrupted generation never leaves a truncated project
+        File tmp = new File( file.getParentFile(), file.getName() + ".tmp" );
+        OutputStream os = new FileOutputStream( tmp );
+        try
+        {
+            properties.store( os, null );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( os );
+        }
+        if ( !tmp.renameTo( file ) )
+        {
+            FileUtils.deleteQuietly( file );
+            if ( !tmp.renameTo( file ) )
+            {
+                throw new IOException( "Unable to write " + file );
+            }
+        }
+    }
+}
@@ -21,7 +21,7 @@ package org.apache.archiva.cudf.extractor;
 
 import com.zenika.cudf.adapter.ArchivaBinaryAdapter;
 import com.zenika.cudf.adapter.ArchivaDescriptorAdapter;
-import com.zenika.cudf.adapter.cache.CachedBinaries;
+import com.zenika.cudf.adapter.cache.Cache;
 import com.zenika.cudf.model.CUDFDescriptor;
 import com.zenika.cudf.model.Preamble;
 import org.apache.archiva.common.utils.VersionComparator;
@@ -36,12 +36,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 
 /**
  * @author Antoine Rouaze <antoine.rouaze@zenika.com>
@@ -56,51 +56,80 @@ public class CUDFUniverseLoader
     @Inject
     private CUDFCache cache;
 
-    private List<ProjectVersionMetadata> projectVersionMetadatas = new ArrayList<ProjectVersionMetadata>();
-
-    private CUDFDescriptor descriptor;
-
     private Logger log = LoggerFactory.getLogger( CUDFUniverseLoader.class );
 
-    public void loadUniverse( List<String> repositoryIds )
+    public CUDFDescriptor loadUniverse( List<String> repositoryIds )
+    {
+        return loadUniverse( repositoryIds, 1 );
+    }
+
+    /**
+     * Gives the universe of the repositories, only walked if it is not in the cache yet.
+     *
+     * @param parallelism number of workers resolving the namespaces of the repositories
+     */
+    public CUDFDescriptor loadUniverse( List<String> repositoryIds, int parallelism )
     {
-        if ( !isLoaded() )
+        CUDFVersionTable versionTable = new CUDFVersionTable( repositoryIds );
+        List<ProjectVersionMetadata> projectVersionMetadatas = new ArrayList<ProjectVersionMetadata>();
+        // the universe is read from the cache it was checked in, even if an invalidation occurs meanwhile
+        Cache binaries = cache.getCache( repositoryIds );
+        if ( !cache.isLoaded( binaries ) )
         {
-            log.info( "Load CUDF universe" );
-            loadArchivaUniverse( repositoryIds );
+            log.info( "Load CUDF universe of {}", repositoryIds );
+            loadArchivaUniverse( repositoryIds, versionTable, parallelism, projectVersionMetadatas );
         }
         ArchivaDescriptorAdapter archivaAdapter =
-            new ArchivaDescriptorAdapter( new ArchivaVersionResolver( repositorySessionFactory, repositoryIds ),
+            new ArchivaDescriptorAdapter( new ArchivaVersionResolver( repositorySessionFactory, versionTable ),
                                           new ArchivaBinaryAdapter() );
-        archivaAdapter.setCache( cache );
-        descriptor = archivaAdapter.toCUDF( projectVersionMetadatas );
+        archivaAdapter.setCache( binaries );
+        CUDFDescriptor descriptor = archivaAdapter.toCUDF( projectVersionMetadatas );
         descriptor.setPreamble( Preamble.getDefaultPreamble() );
+        return descriptor;
     }
 
-    private void loadArchivaUniverse( List<String> repositoryIds )
+    private void loadArchivaUniverse( List<String> repositoryIds, final CUDFVersionTable versionTable,
+                                      int parallelism, final List<ProjectVersionMetadata> projectVersionMetadatas )
     {
+        CUDFNamespaceFanOut fanOut = new CUDFNamespaceFanOut( repositorySessionFactory, parallelism );
         for ( String repositoryId : repositoryIds )
         {
             RepositorySession repositorySession = null;
             try
             {
                 repositorySession = repositorySessionFactory.createSession();
-                MetadataResolver metadataResolver = repositorySession.getResolver();
-                Collection<String> rootNamespaces =
-                    metadataResolver.resolveRootNamespaces( repositorySession, repositoryId );
-                for ( String rootNamespace : rootNamespaces )
-                {
-                    resolveNamespaces( repositorySession, metadataResolver, repositoryId, rootNamespace );
-                }
+                fanOut.visit( repositoryId, fanOut.getNamespaces( repositorySession, repositoryId ),
+                              new CUDFNamespaceFanOut.NamespaceVisitor<List<ProjectVersionMetadata>>()
+                              {
+                                  public List<ProjectVersionMetadata> visit( RepositorySession session, String repoId,
+                                                                             String namespace )
+                                      throws MetadataResolutionException
+                                  {
+                                      List<ProjectVersionMetadata> namespaceMetadatas =
+                                          new ArrayList<ProjectVersionMetadata>();
+                                      resolveNamespaces( session, session.getResolver(), repoId, namespace,
+                                                         versionTable, namespaceMetadatas );
+                                      return namespaceMetadatas;
+                                  }
+                              }, new CUDFNamespaceFanOut.ResultHandler<List<ProjectVersionMetadata>>()
+                              {
+                                  public void handle( List<ProjectVersionMetadata> namespaceMetadatas )
+                                  {
+                                      projectVersionMetadatas.addAll( namespaceMetadatas );
+                                  }
+                              } );
             }
             catch ( MetadataResolutionException e )
             {
                 throw new RuntimeException( "Unable to load CUDF universe", e );
             }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Unable to load CUDF universe", e );
+            }
             finally
             {
                 if ( repositorySession != null )
-
                 {
                     repositorySession.close();
                 }
@@ -110,27 +139,30 @@ public class CUDFUniverseLoader
 
 
     private void resolveNamespaces( RepositorySession repositorySession, MetadataResolver metadataResolver,
-                                    String repositoryId, String namespace )
+                                    String repositoryId, String namespace, CUDFVersionTable versionTable,
+                                    List<ProjectVersionMetadata> namespaceMetadatas )
         throws MetadataResolutionException
     {
         Collection<String> namespaces =
             metadataResolver.resolveNamespaces( repositorySession, repositoryId, namespace );
         if ( namespaces.isEmpty() )
         {
-            resolveProjects( repositorySession, metadataResolver, repositoryId, namespace );
+            resolveProjects( repositorySession, metadataResolver, repositoryId, namespace, versionTable,
+                             namespaceMetadatas );
         }
         else
         {
             for ( String currentNamespace : namespaces )
             {
                 resolveNamespaces( repositorySession, metadataResolver, repositoryId,
-                                   namespace + "." + currentNamespace );
+                                   namespace + "." + currentNamespace, versionTable, namespaceMetadatas );
             }
         }
     }
 
     private void resolveProjects( RepositorySession repositorySession, MetadataResolver metadataResolver,
-                                  String repositoryId, String namespace )
+                                  String repositoryId, String namespace, CUDFVersionTable versionTable,
+                                  List<ProjectVersionMetadata> namespaceMetadatas )
         throws MetadataResolutionException
     {
         Collection<String> projects = metadataResolver.resolveProjects( repositorySession, repositoryId, namespace );
@@ -138,31 +170,37 @@ public class CUDFUniverseLoader
         {
             for ( String project : projects )
             {
-                resolveProjectVersion( repositorySession, metadataResolver, repositoryId, namespace, project );
+                resolveProjectVersion( repositorySession, metadataResolver, repositoryId, namespace, project,
+                                       versionTable, namespaceMetadatas );
             }
         }
     }
 
     private void resolveProjectVersion( RepositorySession repositorySession, MetadataResolver metadataResolver,
-                                        String repositoryId, String namespace, String project )
+                                        String repositoryId, String namespace, String project,
+                                        CUDFVersionTable versionTable,
+                                        List<ProjectVersionMetadata> namespaceMetadatas )
         throws MetadataResolutionException
     {
         List<String> projectVersions = new LinkedList<String>(
             metadataResolver.resolveProjectVersions( repositorySession, repositoryId, namespace, project ) );
         Collections.sort( projectVersions, VersionComparator.getInstance() );
+        // the versions are recorded while walking so that the dependencies are resolved without further lookups
+        versionTable.addVersions( namespace, project, projectVersions );
         if ( !projectVersions.isEmpty() )
         {
             for ( String projectVersion : projectVersions )
             {
                 resolveProjectVersionMetadata( repositorySession, metadataResolver, repositoryId, namespace, project,
-                                               projectVersion );
+                                               projectVersion, namespaceMetadatas );
             }
         }
     }
 
     private void resolveProjectVersionMetadata( RepositorySession repositorySession, MetadataResolver metadataResolver,
                                                 String repositoryId, String namespace, String project,
-                                                String projectVersion )
+                                                String projectVersion,
+                                                List<ProjectVersionMetadata> namespaceMetadatas )
         throws MetadataResolutionException
     {
         try
@@ -173,7 +211,7 @@ public class CUDFUniverseLoader
             if ( projectVersionMetadata != null && !projectVersionMetadata.isIncomplete()
                 && !projectVersionMetadata.getFacetIds().isEmpty() )
             {
-                projectVersionMetadatas.add( projectVersionMetadata );
+                namespaceMetadatas.add( projectVersionMetadata );
             }
         }
         catch ( MetadataResolutionException e )
@@ -182,14 +220,8 @@ public class CUDFUniverseLoader
         }
     }
 
-    public CUDFDescriptor getDescriptor()
-    {
-        return descriptor;
-    }
-
-    public boolean isLoaded()
+    public boolean isLoaded( List<String> repositoryIds )
     {
-        return cache.get( CachedBinaries.BINARY_ID_KEY_LIST ) != null && !( (Set) cache.get(
-            CachedBinaries.BINARY_ID_KEY_LIST ) ).isEmpty();
+        return cache.isLoaded( repositoryIds );
     }
 }
@@ -0,0 +1,238 @@
+package org.apache.archiva.cudf.extractor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.utils.VersionComparator;
+import org.apache.archiva.metadata.repository.MetadataResolutionException;
+import org.apache.archiva.metadata.repository.MetadataResolver;
+import org.apache.archiva.metadata.repository.RepositorySession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory table giving the CUDF version number of every project version of a set of repositories. For each
+ * <code>groupId:artifactId</code> the versions found in all the repositories are sorted once with the
+ * {@link VersionComparator}; the CUDF version is the 1-based rank of a version in that list.
+ * <p/>
+ * The table is either filled in a single pass over the metadata ({@link #load(RepositorySession)}), in which case an
+ * unknown project is answered without any lookup, or lazily, one project at a time, memoizing every resolution.
+ *
+ * @author Adrien Lecharpentier <adrien.lecharpentier@zenika.com>
+ * @since 1.4-M3
+ */
+public class CUDFVersionTable
+{
+    private final List<String> repositoryIds;
+
+    private final Map<String, ProjectVersions> projects = new ConcurrentHashMap<String, ProjectVersions>();
+
+    private volatile boolean loaded;
+
+    private long metadataLookups;
+
+    public CUDFVersionTable( List<String> repositoryIds )
+    {
+        this.repositoryIds = repositoryIds;
+    }
+
+    /**
+     * Walks the namespaces of every repository once and records the versions of all the projects found.
+     */
+    public void load( RepositorySession session )
+        throws MetadataResolutionException
+    {
+        MetadataResolver metadataResolver = session.getResolver();
+        for ( String repositoryId : repositoryIds )
+        {
+            for ( String rootNamespace : metadataResolver.resolveRootNamespaces( session, repositoryId ) )
+            {
+                loadNamespace( session, metadataResolver, repositoryId, rootNamespace );
+            }
+        }
+        complete();
+    }
+
+    private void loadNamespace( RepositorySession session, MetadataResolver metadataResolver, String repositoryId,
+                                String namespace )
+        throws MetadataResolutionException
+    {
+        for ( String project : metadataResolver.resolveProjects( session, repositoryId, namespace ) )
+        {
+            addVersions( namespace, project, lookup( session, metadataResolver, repositoryId, namespace, project ) );
+        }
+        for ( String currentNamespace : metadataResolver.resolveNamespaces( session, repositoryId, namespace ) )
+        {
+            loadNamespace( session, metadataResolver, repositoryId, namespace + "." + currentNamespace );
+        }
+    }
+
+    /**
+     * Records versions of a project already resolved by the caller, merging them with the known ones.
+     */
+    public synchronized void addVersions( String groupId, String artifactId, Collection<String> versions )
+    {
+        String key = getKey( groupId, artifactId );
+        ProjectVersions current = projects.get( key );
+        Set<String> merged = new LinkedHashSet<String>();
+        if ( current != null )
+        {
+            merged.addAll( Arrays.asList( current.versions ) );
+        }
+        merged.addAll( versions );
+        projects.put( key, new ProjectVersions( merged ) );
+    }
+
+    /**
+     * Marks the table as holding every project of the repositories: unknown projects are no longer looked up.
+     */
+    public void complete()
+    {
+        this.loaded = true;
+    }
+
+    public boolean isLoaded()
+    {
+        return loaded;
+    }
+
+    public boolean isResolved( String groupId, String artifactId )
+    {
+        return loaded || projects.containsKey( getKey( groupId, artifactId ) );
+    }
+
+    /**
+     * Resolves the versions of the project in all the repositories, unless it has already been done.
+     */
+    public synchronized void resolveProject( RepositorySession session, String groupId, String artifactId )
+        throws MetadataResolutionException
+    {
+        if ( isResolved( groupId, artifactId ) )
+        {
+            return;
+        }
+        MetadataResolver metadataResolver = session.getResolver();
+        List<String> versions = new ArrayList<String>();
+        for ( String repositoryId : repositoryIds )
+        {
+            versions.addAll( lookup( session, metadataResolver, repositoryId, groupId, artifactId ) );
+        }
+        addVersions( groupId, artifactId, versions );
+    }
+
+    /**
+     * @return the CUDF version of the project version, resolving the project first if needed, or 0 if the version
+     *         is not in the repositories
+     */
+    public int getRank( RepositorySession session, String groupId, String artifactId, String version )
+        throws MetadataResolutionException
+    {
+        if ( !isResolved( groupId, artifactId ) )
+        {
+            resolveProject( session, groupId, artifactId );
+        }
+        return getRank( groupId, artifactId, version );
+    }
+
+    /**
+     * @return the CUDF version of the project version, or 0 if the version is unknown from the table
+     */
+    public int getRank( String groupId, String artifactId, String version )
+    {
+        ProjectVersions projectVersions = projects.get( getKey( groupId, artifactId ) );
+        if ( projectVersions == null )
+        {
+            return 0;
+        }
+        Integer rank = projectVersions.ranks.get( version );
+        return rank == null ? 0 : rank;
+    }
+
+    /**
+     * @return the versions of the project sorted in CUDF order
+     */
+    public List<String> getVersions( String groupId, String artifactId )
+    {
+        ProjectVersions projectVersions = projects.get( getKey( groupId, artifactId ) );
+        if ( projectVersions == null )
+        {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList( Arrays.asList( projectVersions.versions ) );
+    }
+
+    /**
+     * @return the number of projects held in the table
+     */
+    public int size()
+    {
+        return projects.size();
+    }
+
+    /**
+     * @return the number of project versions lookups made on the metadata resolver to fill the table
+     */
+    public synchronized long getMetadataLookups()
+    {
+        return metadataLookups;
+    }
+
+    private Collection<String> lookup( RepositorySession session, MetadataResolver metadataResolver,
+                                       String repositoryId, String namespace, String project )
+        throws MetadataResolutionException
+    {
+        synchronized ( this )
+        {
+            metadataLookups++;
+        }
+        return metadataResolver.resolveProjectVersions( session, repositoryId, namespace, project );
+    }
+
+    private static String getKey( String groupId, String artifactId )
+    {
+        return groupId + ":" + artifactId;
+    }
+
+    private static class ProjectVersions
+    {
+        private final String[] versions;
+
+        private final Map<String, Integer> ranks;
+
+        private ProjectVersions( Collection<String> versions )
+        {
+            this.versions = versions.toArray( new String[versions.size()] );
+            Arrays.sort( this.versions, VersionComparator.getInstance() );
+            this.ranks = new HashMap<String, Integer>( this.versions.length * 2 );
+            for ( int i = 0; i < this.versions.length; i++ )
+            {
+                this.ranks.put( this.versions[i], i + 1 );
+            }
+        }
+    }
+}
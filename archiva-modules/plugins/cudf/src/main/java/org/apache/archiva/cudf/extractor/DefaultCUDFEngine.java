@@ -27,6 +27,7 @@ import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
+import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.List;
@@ -65,11 +66,7 @@ public class DefaultCUDFEngine
     public void computeCUDFUniverse( List<String> repositoryIds, Writer writer, Writer debugWriter )
         throws IOException
     {
-        if ( !universeLoader.isLoaded() )
-        {
-            universeLoader.loadUniverse( repositoryIds );
-        }
-        CUDFDescriptor descriptor = universeLoader.getDescriptor();
+        CUDFDescriptor descriptor = universeLoader.loadUniverse( repositoryIds );
         DefaultSerializer serializer = new DefaultSerializer( writer, debugWriter );
         try
         {
@@ -91,4 +88,17 @@ public class DefaultCUDFEngine
             }
         }
     }
+
+    public void streamCUDFUniverse( List<String> repositoryIds, Writer writer, Writer debugWriter, int parallelism,
+                                    File storeDirectory )
+        throws IOException
+    {
+        CUDFExtractor extractor = new CUDFExtractor( writer, debugWriter );
+        extractor.setParallelism( parallelism );
+        if ( storeDirectory != null )
+        {
+            extractor.setStanzaStore( CUDFStanzaStore.forRepositories( storeDirectory, repositoryIds ) );
+        }
+        extractor.computeCUDFUniverse( repositoryIds, repositorySessionFactory );
+    }
 }
@@ -0,0 +1,129 @@
+package org.apache.archiva.cudf.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.zenika.cudf.adapter.cache.Cache;
+import com.zenika.cudf.adapter.cache.CachedBinaries;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Adrien Lecharpentier <adrien.lecharpentier@zenika.com>
+ * @since 1.4-M3
+ */
+public class CUDFCacheTest
+{
+
+    private static final List<String> INTERNAL = Arrays.asList( "internal" );
+
+    private static final List<String> SNAPSHOTS = Arrays.asList( "snapshots" );
+
+    private static final List<String> ALL = Arrays.asList( "snapshots", "internal" );
+
+    @Test
+    public void testRepositorySets()
+    {
+        CUDFCache cudfCache = new CUDFCache();
+        Cache cache = cudfCache.getCache( Arrays.asList( "internal", "snapshots" ) );
+        assertSame( cache, cudfCache.getCache( ALL ) );
+        load( cache, 2 );
+
+        assertTrue( cudfCache.isLoaded( ALL ) );
+        assertFalse( cudfCache.isLoaded( INTERNAL ) );
+        assertEquals( "binary0", cache.get( "key0" ) );
+        assertNull( cudfCache.getCache( INTERNAL ).get( "key0" ) );
+        assertEquals( 1, cudfCache.getHits() );
+        assertEquals( 1, cudfCache.getMisses() );
+        assertEquals( 3, cudfCache.getSize() );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedSetIsEvicted()
+    {
+        CUDFCache cudfCache = new CUDFCache();
+        cudfCache.setMaxElements( 10 );
+        Cache internal = cudfCache.getCache( INTERNAL );
+        load( internal, 4 );
+        load( cudfCache.getCache( SNAPSHOTS ), 4 );
+        internal.get( "key0" );
+
+        load( cudfCache.getCache( ALL ), 4 );
+
+        assertTrue( cudfCache.isLoaded( INTERNAL ) );
+        assertFalse( cudfCache.isLoaded( SNAPSHOTS ) );
+        assertTrue( cudfCache.isLoaded( ALL ) );
+        assertEquals( 1, cudfCache.getEvictions() );
+        assertEquals( 10, cudfCache.getSize() );
+    }
+
+    @Test
+    public void testEvictedCacheStaysComplete()
+    {
+        CUDFCache cudfCache = new CUDFCache();
+        cudfCache.setMaxElements( 5 );
+        Cache internal = cudfCache.getCache( INTERNAL );
+        load( internal, 4 );
+        load( cudfCache.getCache( SNAPSHOTS ), 4 );
+
+        assertFalse( cudfCache.isLoaded( INTERNAL ) );
+        assertTrue( cudfCache.isLoaded( internal ) );
+        assertEquals( "binary3", internal.get( "key3" ) );
+        assertEquals( 5, cudfCache.getSize() );
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        CUDFCache cudfCache = new CUDFCache();
+        load( cudfCache.getCache( INTERNAL ), 2 );
+        load( cudfCache.getCache( SNAPSHOTS ), 2 );
+        load( cudfCache.getCache( ALL ), 2 );
+
+        cudfCache.invalidate( "internal" );
+
+        assertFalse( cudfCache.isLoaded( INTERNAL ) );
+        assertTrue( cudfCache.isLoaded( SNAPSHOTS ) );
+        assertFalse( cudfCache.isLoaded( ALL ) );
+        assertEquals( 2, cudfCache.getInvalidations() );
+        assertEquals( 3, cudfCache.getSize() );
+
+        cudfCache.clear();
+        assertFalse( cudfCache.isLoaded( SNAPSHOTS ) );
+        assertEquals( 0, cudfCache.getStatistics().getSize() );
+    }
+
+    private void load( Cache cache, int binaries )
+    {
+        for ( int i = 0; i < binaries; i++ )
+        {
+            cache.put( "key" + i, "binary" + i );
+        }
+        cache.put( CachedBinaries.BINARY_ID_KEY_LIST, Collections.singleton( "key0" ) );
+    }
+}
@@ -23,6 +23,7 @@ import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -30,11 +31,17 @@ import org.springframework.test.context.ContextConfiguration;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -121,6 +128,75 @@ public class CUDFEngineTest
         assertTrue( result.contains( "package: commons-logging%3acommons-logging" ) );
     }
 
+    @Test
+    public void testUniverseConversionTable()
+        throws IOException
+    {
+        StringWriter writer = new StringWriter();
+        StringWriter debugWriter = new StringWriter();
+        CUDFExtractor extractor = new CUDFExtractor( writer, debugWriter );
+        extractor.computeCUDFUniverse( getRepositoriesList(), factory );
+        String result = writer.toString();
+        assertTrue( result.contains( "package: com.zenika%3acudf-version\nnumber: 1.3-RELEASE\nversion: 6\n" ) );
+        assertTrue( debugWriter.toString().contains( "com.zenika%3acudf-version 1.3-RELEASE => 6\n" ) );
+        assertFalse( result.contains( "=>" ) );
+    }
+
+    @Test
+    public void testUniverseFromStore()
+        throws IOException
+    {
+        File storeDirectory = new File( "target/cudf-store" );
+        FileUtils.deleteDirectory( storeDirectory );
+
+        StringWriter writer = new StringWriter();
+        CUDFExtractor extractor = new CUDFExtractor( writer, null );
+        extractor.setStanzaStore( new CUDFStanzaStore( storeDirectory ) );
+        extractor.computeCUDFUniverse( getRepositoriesList(), factory );
+        assertTrue( new File( storeDirectory, TEST_REPO + "/commons-lang/commons-lang.properties" ).exists() );
+
+        StringWriter storedWriter = new StringWriter();
+        extractor = new CUDFExtractor( storedWriter, null );
+        extractor.setStanzaStore( new CUDFStanzaStore( storeDirectory ) );
+        extractor.computeCUDFUniverse( getRepositoriesList(), factory );
+        assertEquals( writer.toString(), storedWriter.toString() );
+    }
+
+    @Test
+    public void testStorePerRepositorySet()
+        throws IOException
+    {
+        File storeDirectory = new File( "target/cudf-stores" );
+        FileUtils.deleteDirectory( storeDirectory );
+
+        CUDFExtractor extractor = new CUDFExtractor( new StringWriter(), null );
+        extractor.setStanzaStore( CUDFStanzaStore.forRepositories( storeDirectory, getRepositoriesList() ) );
+        extractor.computeCUDFUniverse( getRepositoriesList(), factory );
+
+        // the generation of another set of repositories does not remove the projects of the first one
+        List<String> otherRepositories = Collections.emptyList();
+        extractor = new CUDFExtractor( new StringWriter(), null );
+        extractor.setStanzaStore( CUDFStanzaStore.forRepositories( storeDirectory, otherRepositories ) );
+        extractor.computeCUDFUniverse( otherRepositories, factory );
+
+        assertEquals( 2, storeDirectory.list().length );
+        File projectFile = null;
+        for ( File file : FileUtils.listFiles( storeDirectory, new String[]{ "properties" }, true ) )
+        {
+            if ( file.getPath().endsWith( "commons-lang" + File.separator + "commons-lang.properties" ) )
+            {
+                projectFile = file;
+            }
+        }
+        assertTrue( projectFile != null );
+
+        // the order of the repositories does not matter
+        File otherOrder = new File( storeDirectory, "other-order" );
+        CUDFStanzaStore.forRepositories( otherOrder, Arrays.asList( "b", "a" ) ).commit( new Date() );
+        CUDFStanzaStore.forRepositories( otherOrder, Arrays.asList( "a", "b" ) ).commit( new Date() );
+        assertEquals( 1, otherOrder.list().length );
+    }
+
     @Test
     public void charToHexaConverto()
     {
@@ -0,0 +1,133 @@
+package org.apache.archiva.cudf.extractor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.configuration.ArchivaConfiguration;
+import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
+import org.apache.archiva.metadata.repository.RepositorySession;
+import org.apache.archiva.metadata.repository.RepositorySessionFactory;
+import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.ContextConfiguration;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Adrien Lecharpentier <adrien.lecharpentier@zenika.com>
+ * @since 1.4-M3
+ */
+@RunWith( ArchivaSpringJUnit4ClassRunner.class )
+@ContextConfiguration( locations = { "classpath*:/META-INF/spring-context.xml", "classpath*:/spring-context.xml" } )
+public class CUDFNamespaceFanOutTest
+{
+    private Logger log = LoggerFactory.getLogger( CUDFNamespaceFanOutTest.class );
+
+    private static final String TEST_REPO = "default-repository";
+
+    private static final int[] WORKERS = { 1, 2, 4, 8, 16 };
+
+    @Inject
+    private ArchivaConfiguration archivaConfiguration;
+
+    @Inject
+    @Named( "repositorySessionFactory#file" )
+    private RepositorySessionFactory factory;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        if ( archivaConfiguration.getConfiguration().findManagedRepositoryById( TEST_REPO ) == null )
+        {
+            ManagedRepositoryConfiguration configuration = new ManagedRepositoryConfiguration();
+            configuration.setLocation( "src/test/repositories/default-repository" );
+            configuration.setId( TEST_REPO );
+            configuration.setName( TEST_REPO );
+            archivaConfiguration.getConfiguration().addManagedRepository( configuration );
+        }
+    }
+
+    @Test
+    public void testResultsInNamespacesOrder()
+        throws Exception
+    {
+        List<String> namespaces = new ArrayList<String>();
+        for ( int i = 0; i < 100; i++ )
+        {
+            namespaces.add( "namespace" + i );
+        }
+        final List<String> handled = new ArrayList<String>();
+        CUDFNamespaceFanOut fanOut = new CUDFNamespaceFanOut( factory, 8 );
+        fanOut.visit( TEST_REPO, namespaces, new CUDFNamespaceFanOut.NamespaceVisitor<String>()
+        {
+            public String visit( RepositorySession session, String repositoryId, String namespace )
+            {
+                return namespace;
+            }
+        }, new CUDFNamespaceFanOut.ResultHandler<String>()
+        {
+            public void handle( String result )
+            {
+                handled.add( result );
+            }
+        } );
+        assertEquals( namespaces, handled );
+    }
+
+    @Test
+    public void testUniverseScaling()
+        throws Exception
+    {
+        String reference = null;
+        for ( int workers : WORKERS )
+        {
+            StringWriter writer = new StringWriter();
+            CUDFExtractor extractor = new CUDFExtractor( writer, null );
+            extractor.setParallelism( workers );
+            long start = System.nanoTime();
+            extractor.computeCUDFUniverse( Arrays.asList( TEST_REPO ), factory );
+            long time = System.nanoTime() - start;
+            log.info( "CUDF universe with {} workers: {}ms", workers, time / 1000000 );
+
+            String result = writer.toString();
+            assertTrue( result.contains( "package: commons-lang%3acommons-lang" ) );
+            if ( reference == null )
+            {
+                reference = result;
+            }
+            else
+            {
+                assertEquals( "universe with " + workers + " workers", reference, result );
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.apache.archiva.cudf.extractor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.configuration.ArchivaConfiguration;
+import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
+import org.apache.archiva.metadata.repository.RepositorySession;
+import org.apache.archiva.metadata.repository.RepositorySessionFactory;
+import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.ContextConfiguration;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Adrien Lecharpentier <adrien.lecharpentier@zenika.com>
+ * @since 1.4-M3
+ */
+@RunWith( ArchivaSpringJUnit4ClassRunner.class )
+@ContextConfiguration( locations = { "classpath*:/META-INF/spring-context.xml", "classpath*:/spring-context.xml" } )
+public class CUDFVersionTableTest
+{
+    private Logger log = LoggerFactory.getLogger( CUDFVersionTableTest.class );
+
+    private static final String TEST_REPO = "default-repository";
+
+    private static final int LOOKUPS = 100000;
+
+    @Inject
+    private ArchivaConfiguration archivaConfiguration;
+
+    @Inject
+    @Named( "repositorySessionFactory#file" )
+    private RepositorySessionFactory factory;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        if ( archivaConfiguration.getConfiguration().findManagedRepositoryById( TEST_REPO ) == null )
+        {
+            ManagedRepositoryConfiguration configuration = new ManagedRepositoryConfiguration();
+            configuration.setLocation( "src/test/repositories/default-repository" );
+            configuration.setId( TEST_REPO );
+            configuration.setName( TEST_REPO );
+            archivaConfiguration.getConfiguration().addManagedRepository( configuration );
+        }
+    }
+
+    @Test
+    public void testLoad()
+        throws Exception
+    {
+        CUDFVersionTable table = new CUDFVersionTable( getRepositoriesList() );
+        RepositorySession session = factory.createSession();
+        try
+        {
+            table.load( session );
+        }
+        finally
+        {
+            session.close();
+        }
+
+        assertTrue( table.isLoaded() );
+        assertEquals( 1, table.getRank( "commons-lang", "commons-lang", "2.1" ) );
+        assertEquals( 6, table.getRank( "com.zenika", "cudf-version", "1.3-RELEASE" ) );
+        assertEquals( Arrays.asList( "1.0", "1.1", "1.1-Final", "1.1-RELEASE", "1.2", "1.3-RELEASE" ),
+                      table.getVersions( "com.zenika", "cudf-version" ) );
+        assertEquals( 0, table.getRank( "com.zenika", "cudf-version", "9.9" ) );
+        assertEquals( 0, table.getRank( "org.unknown", "unknown", "1.0" ) );
+
+        // one lookup per project and repository, whatever the number of dependency edges resolved afterwards
+        long lookups = table.getMetadataLookups();
+        assertEquals( table.size(), lookups );
+
+        long start = System.nanoTime();
+        for ( int i = 0; i < LOOKUPS; i++ )
+        {
+            table.getRank( "com.zenika", "cudf-version", "1.1-RELEASE" );
+        }
+        long time = System.nanoTime() - start;
+        assertEquals( lookups, table.getMetadataLookups() );
+        log.info( "{} CUDF versions resolved in {}ms with {} metadata lookups for {} packages",
+                  new Object[]{ LOOKUPS, time / 1000000, lookups, table.size() } );
+    }
+
+    @Test
+    public void testLazyResolutionIsMemoized()
+        throws Exception
+    {
+        CUDFVersionTable table = new CUDFVersionTable( getRepositoriesList() );
+        RepositorySession session = factory.createSession();
+        try
+        {
+            assertEquals( 6, table.getRank( session, "com.zenika", "cudf-version", "1.3-RELEASE" ) );
+            assertEquals( 2, table.getRank( session, "com.zenika", "cudf-version", "1.1" ) );
+            assertEquals( 0, table.getRank( session, "org.unknown", "unknown", "1.0" ) );
+            assertEquals( 0, table.getRank( session, "org.unknown", "unknown", "2.0" ) );
+        }
+        finally
+        {
+            session.close();
+        }
+        assertEquals( 2, table.getMetadataLookups() );
+    }
+
+    @Test
+    public void testConeResolvesEachPackageOnce()
+        throws Exception
+    {
+        CUDFVersionTable table = new CUDFVersionTable( getRepositoriesList() );
+        CUDFExtractor extractor = new CUDFExtractor( new StringWriter(), null, table );
+        extractor.computeCUDFCone( "commons-lang", "commons-lang", "2.1", "jar", TEST_REPO, getRepositoriesList(),
+                                   factory );
+        assertEquals( table.size(), table.getMetadataLookups() );
+    }
+
+    private List<String> getRepositoriesList()
+    {
+        return Arrays.asList( TEST_REPO );
+    }
+}
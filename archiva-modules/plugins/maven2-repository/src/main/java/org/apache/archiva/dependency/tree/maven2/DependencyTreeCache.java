@@ -0,0 +1,510 @@
+package org.apache.archiva.dependency.tree.maven2;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import net.sf.beanlib.provider.replicator.BeanReplicator;
+import org.apache.archiva.maven2.model.Artifact;
+import org.apache.archiva.maven2.model.TreeEntry;
+import org.apache.commons.lang.StringUtils;
+import org.sonatype.aether.AbstractRepositoryListener;
+import org.sonatype.aether.RepositoryCache;
+import org.sonatype.aether.RepositoryEvent;
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.aether.metadata.Metadata;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded in-memory cache of what the {@link Maven3DependencyTreeBuilder} reads from the managed repositories:
+ * <ul>
+ * <li>the dependency trees, keyed by the repositories searched and the coordinates of the project;</li>
+ * <li>the data the repository system caches while collecting the dependencies, such as the raw models of the POMs
+ * and their parents, shared by the collections made from the same repository through a {@link RepositoryCache}.</li>
+ * </ul>
+ * Each entry records the files it was read from, with their modification time: the POMs and metadata the repository
+ * system resolved, including the missing ones, and the files of the cached data it reused. An entry is only valid
+ * while these files are unchanged, so that a deployment only makes stale the trees depending on what it changed.
+ * When a map exceeds its maximum size, the least recently used entries are evicted.
+ * <p/>
+ * The cached trees are copies, and copies of them are returned, as the callers may modify the entries they get.
+ *
+ * @since 1.4-M3
+ */
+@Service( "dependencyTreeCache#maven3" )
+@ManagedResource( objectName = "org.apache.archiva:type=DependencyTreeCache",
+                  description = "Cache of the dependency trees built from the managed repositories" )
+public class DependencyTreeCache
+{
+    public static final int DEFAULT_MAX_TREES = 500;
+
+    public static final int DEFAULT_MAX_DESCRIPTORS = 5000;
+
+    private int maxTrees = DEFAULT_MAX_TREES;
+
+    private int maxDescriptors = DEFAULT_MAX_DESCRIPTORS;
+
+    /**
+     * The trees by repositories and coordinates, in access order.
+     */
+    private final LinkedHashMap<String, Entry<List<TreeEntry>>> trees =
+        new LinkedHashMap<String, Entry<List<TreeEntry>>>( 16, 0.75f, true );
+
+    /**
+     * The data of the repository system by repository and key, in access order.
+     */
+    private final LinkedHashMap<DescriptorKey, Entry<Object>> descriptors =
+        new LinkedHashMap<DescriptorKey, Entry<Object>>( 16, 0.75f, true );
+
+    private long treeHits;
+
+    private long treeMisses;
+
+    private long descriptorHits;
+
+    private long descriptorMisses;
+
+    private long evictions;
+
+    private long staleEntries;
+
+    /**
+     * @return the cache to set on the session of the repository system collecting the dependencies of a tree, which
+     *         records the files the tree depends on
+     */
+    public CollectionCache newCollectionCache()
+    {
+        return new CollectionCache();
+    }
+
+    /**
+     * @param repositoryIds the repositories searched for the project, in order
+     * @return a copy of the cached tree, <code>null</code> if it must be built
+     */
+    public List<TreeEntry> getTree( List<String> repositoryIds, String groupId, String artifactId, String version )
+    {
+        Entry<List<TreeEntry>> entry = get( trees, getKey( repositoryIds, groupId, artifactId, version ) );
+        synchronized ( this )
+        {
+            if ( entry == null )
+            {
+                treeMisses++;
+                return null;
+            }
+            treeHits++;
+        }
+        // the cached entries are never modified, they are copied outside of the lock
+        return copy( entry.value, null );
+    }
+
+    /**
+     * Keeps a copy of a tree.
+     *
+     * @param collectionCache the cache of the collection which built the tree, with the files it was read from
+     */
+    public void putTree( List<String> repositoryIds, String groupId, String artifactId, String version,
+                         List<TreeEntry> treeEntries, CollectionCache collectionCache )
+    {
+        List<TreeEntry> copy = copy( treeEntries, null );
+        synchronized ( this )
+        {
+            trees.put( getKey( repositoryIds, groupId, artifactId, version ),
+                       new Entry<List<TreeEntry>>( copy, collectionCache.getFiles() ) );
+            evict( trees, maxTrees );
+        }
+    }
+
+    @ManagedOperation( description = "Removes all the trees and the data of the repository system" )
+    public synchronized void clear()
+    {
+        trees.clear();
+        descriptors.clear();
+    }
+
+    @ManagedAttribute( description = "Maximum number of trees kept" )
+    public synchronized int getMaxTrees()
+    {
+        return maxTrees;
+    }
+
+    @ManagedAttribute
+    public synchronized void setMaxTrees( int maxTrees )
+    {
+        this.maxTrees = maxTrees;
+        evict( trees, maxTrees );
+    }
+
+    @ManagedAttribute( description = "Maximum number of entries of the repository system kept" )
+    public synchronized int getMaxDescriptors()
+    {
+        return maxDescriptors;
+    }
+
+    @ManagedAttribute
+    public synchronized void setMaxDescriptors( int maxDescriptors )
+    {
+        this.maxDescriptors = maxDescriptors;
+        evict( descriptors, maxDescriptors );
+    }
+
+    @ManagedAttribute( description = "Number of trees kept" )
+    public synchronized int getTreeCount()
+    {
+        return trees.size();
+    }
+
+    @ManagedAttribute( description = "Number of entries of the repository system kept" )
+    public synchronized int getDescriptorCount()
+    {
+        return descriptors.size();
+    }
+
+    @ManagedAttribute( description = "Number of trees found in the cache" )
+    public synchronized long getTreeHits()
+    {
+        return treeHits;
+    }
+
+    @ManagedAttribute( description = "Number of trees not found in the cache" )
+    public synchronized long getTreeMisses()
+    {
+        return treeMisses;
+    }
+
+    @ManagedAttribute( description = "Ratio of the trees found in the cache" )
+    public synchronized double getTreeHitRate()
+    {
+        return rate( treeHits, treeMisses );
+    }
+
+    @ManagedAttribute( description = "Number of lookups of the repository system found in the cache" )
+    public synchronized long getDescriptorHits()
+    {
+        return descriptorHits;
+    }
+
+    @ManagedAttribute( description = "Number of lookups of the repository system not found in the cache" )
+    public synchronized long getDescriptorMisses()
+    {
+        return descriptorMisses;
+    }
+
+    @ManagedAttribute( description = "Ratio of the lookups of the repository system found in the cache" )
+    public synchronized double getDescriptorHitRate()
+    {
+        return rate( descriptorHits, descriptorMisses );
+    }
+
+    @ManagedAttribute( description = "Number of entries evicted to respect the maximum sizes" )
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    @ManagedAttribute( description = "Number of entries dropped as one of the files they were read from changed" )
+    public synchronized long getStaleEntries()
+    {
+        return staleEntries;
+    }
+
+    /**
+     * @return the entry, <code>null</code> if there is none or one of its files changed
+     */
+    private <K, V> Entry<V> get( Map<K, Entry<V>> entries, K key )
+    {
+        Entry<V> entry;
+        synchronized ( this )
+        {
+            entry = entries.get( key );
+        }
+        // the files are checked outside of the lock
+        if ( entry == null || entry.isUnchanged() )
+        {
+            return entry;
+        }
+        synchronized ( this )
+        {
+            if ( entries.get( key ) == entry )
+            {
+                entries.remove( key );
+                staleEntries++;
+            }
+        }
+        return null;
+    }
+
+    private Object getDescriptor( DescriptorKey key, Map<File, Long> files )
+    {
+        Entry<Object> entry = get( descriptors, key );
+        synchronized ( this )
+        {
+            if ( entry == null )
+            {
+                descriptorMisses++;
+                return null;
+            }
+            descriptorHits++;
+        }
+        files.putAll( entry.files );
+        return entry.value;
+    }
+
+    private synchronized void putDescriptor( DescriptorKey key, Object data, Map<File, Long> files )
+    {
+        if ( data == null )
+        {
+            descriptors.remove( key );
+        }
+        else
+        {
+            descriptors.put( key, new Entry<Object>( data, files ) );
+            evict( descriptors, maxDescriptors );
+        }
+    }
+
+    private <K, V> void evict( Map<K, V> entries, int max )
+    {
+        for ( Iterator<K> it = entries.keySet().iterator(); entries.size() > max && it.hasNext(); )
+        {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static double rate( long hits, long misses )
+    {
+        return hits + misses > 0 ? (double) hits / ( hits + misses ) : 0;
+    }
+
+    private static String getKey( List<String> repositoryIds, String groupId, String artifactId, String version )
+    {
+        // the order of the repositories matters, as the project is read from the first one having it
+        return StringUtils.join( repositoryIds, ',' ) + ":" + groupId + ":" + artifactId + ":" + version;
+    }
+
+    /**
+     * Copies the entries and their artifacts, keeping the links to the parents.
+     */
+    private static List<TreeEntry> copy( List<TreeEntry> treeEntries, TreeEntry parent )
+    {
+        List<TreeEntry> copies = new ArrayList<TreeEntry>( treeEntries.size() );
+        for ( TreeEntry treeEntry : treeEntries )
+        {
+            TreeEntry copy = new TreeEntry(
+                new BeanReplicator().replicateBean( treeEntry.getArtifact(), Artifact.class ) );
+            copy.setParent( parent );
+            copy.setChilds( copy( treeEntry.getChilds(), copy ) );
+            copies.add( copy );
+        }
+        return copies;
+    }
+
+    /**
+     * The cache of the repository system for the collection of one tree. It shares the data with the other
+     * collections from the same repository, and, as the listener of the session, records the files the collection
+     * resolves. The data put in the cache depends on the files resolved since it was missed: the POM of a parent
+     * and the parents of that parent, for instance.
+     * <p/>
+     * A collection is made by a single thread.
+     */
+    public class CollectionCache
+        extends AbstractRepositoryListener
+        implements RepositoryCache
+    {
+        /**
+         * The files the tree depends on, with their modification time when they were first resolved.
+         */
+        private final Map<File, Long> files = new HashMap<File, Long>();
+
+        /**
+         * The files resolved since each key was missed, until its data is put.
+         */
+        private final Map<Object, Map<File, Long>> pendingFiles = new HashMap<Object, Map<File, Long>>();
+
+        private CollectionCache()
+        {
+            // created by the cache
+        }
+
+        /**
+         * Records a file the tree depends on, read outside of the repository system.
+         */
+        public void addFile( File file )
+        {
+            addFiles( Collections.singletonMap( file, file.lastModified() ) );
+        }
+
+        public Object get( RepositorySystemSession session, Object key )
+        {
+            Map<File, Long> descriptorFiles = new HashMap<File, Long>();
+            Object data =
+                getDescriptor( new DescriptorKey( session.getLocalRepository().getBasedir(), key ), descriptorFiles );
+            if ( data == null )
+            {
+                if ( !pendingFiles.containsKey( key ) )
+                {
+                    pendingFiles.put( key, new HashMap<File, Long>() );
+                }
+                return null;
+            }
+            addFiles( descriptorFiles );
+            return data;
+        }
+
+        public void put( RepositorySystemSession session, Object key, Object data )
+        {
+            Map<File, Long> descriptorFiles = pendingFiles.remove( key );
+            putDescriptor( new DescriptorKey( session.getLocalRepository().getBasedir(), key ), data,
+                           descriptorFiles != null ? descriptorFiles : Collections.<File, Long>emptyMap() );
+        }
+
+        @Override
+        public void artifactResolved( RepositoryEvent event )
+        {
+            File file = event.getArtifact().getFile();
+            if ( file == null )
+            {
+                // a missing artifact, the tree changes when it is deployed
+                RepositorySystemSession session = event.getSession();
+                file = new File( session.getLocalRepository().getBasedir(),
+                                 session.getLocalRepositoryManager().getPathForLocalArtifact( event.getArtifact() ) );
+            }
+            addFile( file );
+        }
+
+        @Override
+        public void metadataResolved( RepositoryEvent event )
+        {
+            Metadata metadata = event.getMetadata();
+            File file = metadata.getFile();
+            if ( file == null )
+            {
+                RepositorySystemSession session = event.getSession();
+                file = new File( session.getLocalRepository().getBasedir(),
+                                 session.getLocalRepositoryManager().getPathForLocalMetadata( metadata ) );
+            }
+            addFile( file );
+        }
+
+        private Map<File, Long> getFiles()
+        {
+            return new HashMap<File, Long>( files );
+        }
+
+        private void addFiles( Map<File, Long> added )
+        {
+            addFiles( files, added );
+            for ( Map<File, Long> descriptorFiles : pendingFiles.values() )
+            {
+                addFiles( descriptorFiles, added );
+            }
+        }
+
+        private void addFiles( Map<File, Long> target, Map<File, Long> added )
+        {
+            for ( Map.Entry<File, Long> file : added.entrySet() )
+            {
+                // the first modification time is kept, the entry is stale if the file changed while it was read
+                if ( !target.containsKey( file.getKey() ) )
+                {
+                    target.put( file.getKey(), file.getValue() );
+                }
+            }
+        }
+    }
+
+    private static class DescriptorKey
+    {
+        private final File repository;
+
+        private final Object key;
+
+        private final int hashCode;
+
+        private DescriptorKey( File repository, Object key )
+        {
+            this.repository = repository;
+            this.key = key;
+            this.hashCode = 31 * repository.hashCode() + key.hashCode();
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof DescriptorKey ) )
+            {
+                return false;
+            }
+
+            DescriptorKey that = (DescriptorKey) o;
+
+            return repository.equals( that.repository ) && key.equals( that.key );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+
+    private static class Entry<T>
+    {
+        private final T value;
+
+        /**
+         * The files the value was read from, with their modification time then.
+         */
+        private final Map<File, Long> files;
+
+        private Entry( T value, Map<File, Long> files )
+        {
+            this.value = value;
+            this.files = files;
+        }
+
+        private boolean isUnchanged()
+        {
+            for ( Map.Entry<File, Long> file : files.entrySet() )
+            {
+                if ( file.getKey().lastModified() != file.getValue() )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
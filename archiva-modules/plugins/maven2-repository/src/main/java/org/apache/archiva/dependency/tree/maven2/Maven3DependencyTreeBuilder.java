@@ -110,10 +110,18 @@ public class Maven3DependencyTreeBuilder
     @Inject
     private RemoteRepositoryAdmin remoteRepositoryAdmin;
 
+    @Inject
+    private DependencyTreeCache dependencyTreeCache;
+
     private ArtifactFactory factory;
 
     private ModelBuilder builder;
 
+    /**
+     * The repository system is thread safe and shared by all the builds, only the sessions are per build.
+     */
+    private RepositorySystem repositorySystem;
+
     @PostConstruct
     public void initialize()
         throws PlexusSisuBridgeException
@@ -122,17 +130,31 @@ public class Maven3DependencyTreeBuilder
 
         DefaultModelBuilderFactory defaultModelBuilderFactory = new DefaultModelBuilderFactory();
         builder = defaultModelBuilderFactory.newInstance();
+
+        repositorySystem = newRepositorySystem();
     }
 
     public void buildDependencyTree( List<String> repositoryIds, String groupId, String artifactId, String version,
                                      DependencyVisitor dependencyVisitor )
         throws DependencyTreeBuilderException
+    {
+        buildDependencyTree( repositoryIds, groupId, artifactId, version, dependencyVisitor,
+                             dependencyTreeCache.newCollectionCache() );
+    }
+
+    /**
+     * @param collectionCache the cache recording the files the tree depends on
+     */
+    private void buildDependencyTree( List<String> repositoryIds, String groupId, String artifactId, String version,
+                                      DependencyVisitor dependencyVisitor,
+                                      DependencyTreeCache.CollectionCache collectionCache )
+        throws DependencyTreeBuilderException
     {
         Artifact projectArtifact = factory.createProjectArtifact( groupId, artifactId, version );
         ManagedRepository repository = null;
         try
         {
-            repository = findArtifactInRepositories( repositoryIds, projectArtifact );
+            repository = findArtifactInRepositories( repositoryIds, projectArtifact, collectionCache );
         }
         catch ( RepositoryAdminException e )
         {
@@ -179,7 +201,7 @@ public class Maven3DependencyTreeBuilder
         }
 
         // FIXME take care of relative path
-        resolve( repository.getLocation(), groupId, artifactId, version, dependencyVisitor );
+        resolve( repository, groupId, artifactId, version, dependencyVisitor, collectionCache );
     }
 
 
@@ -187,24 +209,38 @@ public class Maven3DependencyTreeBuilder
                                                 String version )
         throws DependencyTreeBuilderException
     {
+        List<TreeEntry> treeEntries = dependencyTreeCache.getTree( repositoryIds, groupId, artifactId, version );
+        if ( treeEntries != null )
+        {
+            log.debug( "cached treeEntries: {}", treeEntries );
+            return treeEntries;
+        }
 
-        List<TreeEntry> treeEntries = new ArrayList<TreeEntry>();
+        treeEntries = new ArrayList<TreeEntry>();
         TreeDependencyNodeVisitor treeDependencyNodeVisitor = new TreeDependencyNodeVisitor( treeEntries );
 
-        buildDependencyTree( repositoryIds, groupId, artifactId, version, treeDependencyNodeVisitor );
+        DependencyTreeCache.CollectionCache collectionCache = dependencyTreeCache.newCollectionCache();
+        buildDependencyTree( repositoryIds, groupId, artifactId, version, treeDependencyNodeVisitor,
+                             collectionCache );
+
+        // an empty tree is not kept, the project may not be deployed yet or its dependencies failed to be collected
+        if ( !treeEntries.isEmpty() )
+        {
+            dependencyTreeCache.putTree( repositoryIds, groupId, artifactId, version, treeEntries,
+                                         collectionCache );
+        }
 
         log.debug( "treeEntrie: {}", treeEntries );
         return treeEntries;
     }
 
 
-    private void resolve( String localRepoDir, String groupId, String artifactId, String version,
-                          DependencyVisitor dependencyVisitor )
+    private void resolve( ManagedRepository repository, String groupId, String artifactId, String version,
+                          DependencyVisitor dependencyVisitor, DependencyTreeCache.CollectionCache collectionCache )
     {
-
-        RepositorySystem system = newRepositorySystem();
-
-        RepositorySystemSession session = newRepositorySystemSession( system, localRepoDir );
+        // the descriptors read by the previous sessions on the repository are reused
+        RepositorySystemSession session =
+            newRepositorySystemSession( repositorySystem, repository.getLocation(), collectionCache );
 
         org.sonatype.aether.artifact.Artifact artifact =
             new DefaultArtifact( groupId + ":" + artifactId + ":" + version );
@@ -221,7 +257,7 @@ public class Maven3DependencyTreeBuilder
 
         try
         {
-            CollectResult collectResult = system.collectDependencies( session, collectRequest );
+            CollectResult collectResult = repositorySystem.collectDependencies( session, collectRequest );
             collectResult.getRoot().accept( dependencyVisitor );
             log.debug( "test" );
         }
@@ -248,9 +284,22 @@ public class Maven3DependencyTreeBuilder
     }
 
     public static RepositorySystemSession newRepositorySystemSession( RepositorySystem system, String localRepoDir )
+    {
+        return newRepositorySystemSession( system, localRepoDir, null );
+    }
+
+    /**
+     * @param cache the cache shared with the other sessions on the same local repository, also listening to the
+     *              files resolved, <code>null</code> if none
+     */
+    public static RepositorySystemSession newRepositorySystemSession( RepositorySystem system, String localRepoDir,
+                                                                      DependencyTreeCache.CollectionCache cache )
     {
         MavenRepositorySystemSession session = new MavenRepositorySystemSession();
 
+        session.setCache( cache );
+        session.setRepositoryListener( cache );
+
         DependencySelector depFilter = new AndDependencySelector( new ExclusionDependencySelector() );
         session.setDependencySelector( depFilter );
 
@@ -265,7 +314,12 @@ public class Maven3DependencyTreeBuilder
     }
 
 
-    private ManagedRepository findArtifactInRepositories( List<String> repositoryIds, Artifact projectArtifact )
+    /**
+     * @param collectionCache records the files looked for, as the tree changes when the project is deployed to an
+     *                        earlier repository
+     */
+    private ManagedRepository findArtifactInRepositories( List<String> repositoryIds, Artifact projectArtifact,
+                                                          DependencyTreeCache.CollectionCache collectionCache )
         throws RepositoryAdminException
     {
         for ( String repoId : repositoryIds )
@@ -278,6 +332,7 @@ public class Maven3DependencyTreeBuilder
                                                projectArtifact.getArtifactId() + "-" + projectArtifact.getVersion()
                                                    + ".pom" );
 
+            collectionCache.addFile( file );
             if ( file.exists() )
             {
                 return managedRepository;
@@ -286,6 +341,7 @@ public class Maven3DependencyTreeBuilder
             if ( StringUtils.endsWith( projectArtifact.getBaseVersion(), VersionUtil.SNAPSHOT ) )
             {
                 File metadataFile = new File( file.getParent(), MetadataTools.MAVEN_METADATA );
+                collectionCache.addFile( metadataFile );
                 if ( metadataFile.exists() )
                 {
                     try
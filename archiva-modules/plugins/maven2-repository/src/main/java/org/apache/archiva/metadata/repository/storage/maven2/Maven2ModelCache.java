@@ -0,0 +1,353 @@
+package org.apache.archiva.metadata.repository.storage.maven2;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.utils.VersionUtil;
+import org.apache.archiva.metadata.repository.storage.RepositoryPathTranslator;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.building.ModelBuildingResult;
+import org.apache.maven.model.building.ModelCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Bounded in-memory cache of the POM models read by the {@link Maven2RepositoryStorage}.
+ * <p/>
+ * It keeps two kinds of models:
+ * <ul>
+ * <li>the parsed parents and imported dependency managements, given to the model builder through the
+ * {@link ModelCache} of a managed repository, so that a parent shared by many projects is read once;</li>
+ * <li>the effective models of the POM files, as the metadata of a project version is read for each of its
+ * artifacts. They are copied in and out of the cache, as the callers may modify them.</li>
+ * </ul>
+ * Each entry remembers the modification time and length of the POM files it was built from, the parents included for
+ * an effective model, and is dropped when one of them changed. The snapshots are not kept, as their POM files are
+ * looked up through the repository metadata. When the number of entries exceeds {@link #getMaxElements()}, the least
+ * recently used ones are evicted.
+ *
+ * @since 1.4-M3
+ */
+@Service( "modelCache#maven2" )
+@ManagedResource( objectName = "org.apache.archiva:type=Maven2ModelCache",
+                  description = "Cache of the POM models read from the Maven 2 repositories" )
+public class Maven2ModelCache
+{
+    public static final int DEFAULT_MAX_ELEMENTS = 2000;
+
+    private Logger log = LoggerFactory.getLogger( Maven2ModelCache.class );
+
+    private int maxElements = DEFAULT_MAX_ELEMENTS;
+
+    /**
+     * The entries by key, in access order.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true );
+
+    private long parentHits;
+
+    private long parentMisses;
+
+    private long effectiveHits;
+
+    private long effectiveMisses;
+
+    private long evictions;
+
+    private long staleEntries;
+
+    /**
+     * @param basedir the directory of the managed repository the parents are resolved from
+     * @return the cache to set on the model building requests of the repository
+     */
+    public ModelCache getModelCache( File basedir, RepositoryPathTranslator pathTranslator )
+    {
+        return new RepositoryModelCache( basedir, pathTranslator );
+    }
+
+    /**
+     * @return a copy of the effective model built from the POM file, which the caller may modify,
+     *         <code>null</code> if it must be built
+     */
+    public Model getEffectiveModel( File pomFile )
+    {
+        Entry entry = get( pomFile.getAbsolutePath() );
+        synchronized ( this )
+        {
+            if ( entry == null )
+            {
+                effectiveMisses++;
+                return null;
+            }
+            effectiveHits++;
+        }
+        // the cached model is shared by all the readers of the POM
+        return ( (Model) entry.data ).clone();
+    }
+
+    /**
+     * Keeps a copy of the effective model built from the POM file, unless one of its parents is a snapshot: the
+     * model of the result remains the caller's.
+     *
+     * @param basedir the directory of the managed repository the parents were resolved from
+     */
+    public void putEffectiveModel( File basedir, RepositoryPathTranslator pathTranslator, File pomFile,
+                                   ModelBuildingResult result )
+    {
+        List<File> files = new ArrayList<File>();
+        files.add( pomFile );
+        // the first model is the POM itself, the last one the super POM
+        List<String> modelIds = result.getModelIds();
+        for ( String modelId : modelIds.subList( 1, modelIds.size() ) )
+        {
+            String[] coordinates = modelId.split( ":" );
+            if ( coordinates.length != 3 )
+            {
+                continue;
+            }
+            if ( VersionUtil.isSnapshot( coordinates[2] ) )
+            {
+                return;
+            }
+            files.add( pathTranslator.toFile( basedir, coordinates[0], coordinates[1], coordinates[2],
+                                              coordinates[1] + "-" + coordinates[2] + ".pom" ) );
+        }
+        put( pomFile.getAbsolutePath(), result.getEffectiveModel().clone(), files );
+    }
+
+    @ManagedOperation( description = "Removes all the models" )
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    @ManagedAttribute( description = "Maximum number of models kept" )
+    public synchronized int getMaxElements()
+    {
+        return maxElements;
+    }
+
+    @ManagedAttribute
+    public synchronized void setMaxElements( int maxElements )
+    {
+        this.maxElements = maxElements;
+        evict();
+    }
+
+    @ManagedAttribute( description = "Number of models kept" )
+    public synchronized int getSize()
+    {
+        return entries.size();
+    }
+
+    @ManagedAttribute( description = "Number of parents and imported dependency managements found in the cache" )
+    public synchronized long getParentHits()
+    {
+        return parentHits;
+    }
+
+    @ManagedAttribute( description = "Number of parents and imported dependency managements not found in the cache" )
+    public synchronized long getParentMisses()
+    {
+        return parentMisses;
+    }
+
+    @ManagedAttribute( description = "Number of effective models found in the cache" )
+    public synchronized long getEffectiveHits()
+    {
+        return effectiveHits;
+    }
+
+    @ManagedAttribute( description = "Number of effective models not found in the cache" )
+    public synchronized long getEffectiveMisses()
+    {
+        return effectiveMisses;
+    }
+
+    @ManagedAttribute( description = "Number of models evicted to respect the maximum size" )
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    @ManagedAttribute( description = "Number of models dropped as one of their POM files changed" )
+    public synchronized long getStaleEntries()
+    {
+        return staleEntries;
+    }
+
+    private Entry get( String key )
+    {
+        Entry entry;
+        synchronized ( this )
+        {
+            entry = entries.get( key );
+        }
+        // the files are checked outside of the lock
+        if ( entry != null && !entry.isUpToDate() )
+        {
+            log.debug( "Dropping the model {} as one of its POM files changed", key );
+            synchronized ( this )
+            {
+                if ( entries.get( key ) == entry )
+                {
+                    entries.remove( key );
+                    staleEntries++;
+                }
+            }
+            entry = null;
+        }
+        return entry;
+    }
+
+    private void put( String key, Object data, List<File> files )
+    {
+        // the files are checked outside of the lock
+        Entry entry = new Entry( data, files );
+        if ( entry.isComplete() )
+        {
+            synchronized ( this )
+            {
+                entries.put( key, entry );
+                evict();
+            }
+        }
+    }
+
+    private void evict()
+    {
+        for ( Iterator<String> it = entries.keySet().iterator(); entries.size() > maxElements && it.hasNext(); )
+        {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * The parents and imported dependency managements of one managed repository, keyed by their coordinates and the
+     * tag given by the model builder. The builder copies the data it puts and gets.
+     */
+    private class RepositoryModelCache
+        implements ModelCache
+    {
+        private final File basedir;
+
+        private final RepositoryPathTranslator pathTranslator;
+
+        private RepositoryModelCache( File basedir, RepositoryPathTranslator pathTranslator )
+        {
+            this.basedir = basedir;
+            this.pathTranslator = pathTranslator;
+        }
+
+        public void put( String groupId, String artifactId, String version, String tag, Object data )
+        {
+            if ( data != null && !VersionUtil.isSnapshot( version ) )
+            {
+                File pomFile = pathTranslator.toFile( basedir, groupId, artifactId, version,
+                                                      artifactId + "-" + version + ".pom" );
+                Maven2ModelCache.this.put( getKey( groupId, artifactId, version, tag ), data,
+                                           Collections.singletonList( pomFile ) );
+            }
+        }
+
+        public Object get( String groupId, String artifactId, String version, String tag )
+        {
+            Entry entry = Maven2ModelCache.this.get( getKey( groupId, artifactId, version, tag ) );
+            synchronized ( Maven2ModelCache.this )
+            {
+                if ( entry == null )
+                {
+                    parentMisses++;
+                    return null;
+                }
+                parentHits++;
+                return entry.data;
+            }
+        }
+
+        private String getKey( String groupId, String artifactId, String version, String tag )
+        {
+            return basedir.getAbsolutePath() + ":" + groupId + ":" + artifactId + ":" + version + ":" + tag;
+        }
+    }
+
+    private static class Entry
+    {
+        private final Object data;
+
+        private final File[] files;
+
+        private final long[] lastModified;
+
+        private final long[] length;
+
+        private Entry( Object data, List<File> files )
+        {
+            this.data = data;
+            this.files = files.toArray( new File[files.size()] );
+            this.lastModified = new long[this.files.length];
+            this.length = new long[this.files.length];
+            for ( int i = 0; i < this.files.length; i++ )
+            {
+                lastModified[i] = this.files[i].lastModified();
+                length[i] = this.files[i].length();
+            }
+        }
+
+        /**
+         * @return <code>false</code> if one of the files did not exist when the entry was created
+         */
+        private boolean isComplete()
+        {
+            for ( long time : lastModified )
+            {
+                if ( time == 0 )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isUpToDate()
+        {
+            for ( int i = 0; i < files.length; i++ )
+            {
+                if ( files[i].lastModified() != lastModified[i] || files[i].length() != length[i] )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
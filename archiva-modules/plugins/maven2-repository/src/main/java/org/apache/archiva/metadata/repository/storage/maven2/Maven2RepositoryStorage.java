@@ -31,6 +31,9 @@ import org.apache.archiva.admin.model.remote.RemoteRepositoryAdmin;
 import org.apache.archiva.checksum.ChecksumAlgorithm;
 import org.apache.archiva.checksum.ChecksummedFile;
 import org.apache.archiva.common.utils.VersionUtil;
+import org.apache.archiva.configuration.ArchivaConfiguration;
+import org.apache.archiva.configuration.ConfigurationEvent;
+import org.apache.archiva.configuration.ConfigurationListener;
 import org.apache.archiva.maven2.metadata.MavenMetadataReader;
 import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.model.ProjectMetadata;
@@ -67,6 +70,7 @@ import org.apache.maven.model.building.DefaultModelBuildingRequest;
 import org.apache.maven.model.building.ModelBuilder;
 import org.apache.maven.model.building.ModelBuildingException;
 import org.apache.maven.model.building.ModelBuildingRequest;
+import org.apache.maven.model.building.ModelBuildingResult;
 import org.apache.maven.model.building.ModelProblem;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
 import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
@@ -91,6 +95,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Maven 2 repository format storage implementation. This class currently takes parameters to indicate the repository to
@@ -103,7 +108,7 @@ import java.util.Map;
  */
 @Service ( "repositoryStorage#maven2" )
 public class Maven2RepositoryStorage
-    implements RepositoryStorage
+    implements RepositoryStorage, ConfigurationListener
 {
     /**
      *
@@ -138,6 +143,19 @@ public class Maven2RepositoryStorage
     @Inject
     private ApplicationContext applicationContext;
 
+    @Inject
+    @Named ( value = "archivaConfiguration#default" )
+    private ArchivaConfiguration archivaConfiguration;
+
+    @Inject
+    private Maven2ModelCache modelCache;
+
+    /**
+     * The remote repositories proxied by each managed repository, replaced when the configuration changes.
+     */
+    private volatile Map<String, ProxiedRepositories> proxiedRepositories =
+        new ConcurrentHashMap<String, ProxiedRepositories>();
+
     private static final Logger log = LoggerFactory.getLogger( Maven2RepositoryStorage.class );
 
     private static final String METADATA_FILENAME_START = "maven-metadata";
@@ -153,6 +171,12 @@ public class Maven2RepositoryStorage
         DefaultModelBuilderFactory defaultModelBuilderFactory = new DefaultModelBuilderFactory();
         builder = defaultModelBuilderFactory.newInstance();
 
+        archivaConfiguration.addListener( this );
+    }
+
+    public void configurationEvent( ConfigurationEvent event )
+    {
+        proxiedRepositories = new ConcurrentHashMap<String, ProxiedRepositories>();
     }
 
     public ProjectMetadata readProjectMetadata( String repoId, String namespace, String projectId )
@@ -228,53 +252,14 @@ public class Maven2RepositoryStorage
                     "The artifact's POM file '" + file.getAbsolutePath() + "' was missing" );
             }
 
-            // TODO: this is a workaround until we can properly resolve using proxies as well - this doesn't cache
-            //       anything locally!
-            List<RemoteRepository> remoteRepositories = new ArrayList<RemoteRepository>();
-            Map<String, NetworkProxy> networkProxies = new HashMap<String, NetworkProxy>();
-
-            Map<String, List<ProxyConnector>> proxyConnectorsMap = proxyConnectorAdmin.getProxyConnectorAsMap();
-            List<ProxyConnector> proxyConnectors = proxyConnectorsMap.get( readMetadataRequest.getRepositoryId() );
-            if ( proxyConnectors != null )
+            Model model = modelCache.getEffectiveModel( file );
+            try
             {
-                for ( ProxyConnector proxyConnector : proxyConnectors )
+                if ( model == null )
                 {
-                    RemoteRepository remoteRepoConfig =
-                        remoteRepositoryAdmin.getRemoteRepository( proxyConnector.getTargetRepoId() );
-
-                    if ( remoteRepoConfig != null )
-                    {
-                        remoteRepositories.add( remoteRepoConfig );
-
-                        NetworkProxy networkProxyConfig =
-                            networkProxyAdmin.getNetworkProxy( proxyConnector.getProxyId() );
-
-                        if ( networkProxyConfig != null )
-                        {
-                            // key/value: remote repo ID/proxy info
-                            networkProxies.put( proxyConnector.getTargetRepoId(), networkProxyConfig );
-                        }
-                    }
+                    model = buildModel( managedRepository, basedir, file );
                 }
             }
-
-            ModelBuildingRequest req =
-                new DefaultModelBuildingRequest().setProcessPlugins( false ).setPomFile( file ).setTwoPhaseBuilding(
-                    false ).setValidationLevel( ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL );
-
-            //MRM-1607. olamy this will resolve jdk profiles on the current running archiva jvm
-            req.setSystemProperties( System.getProperties() );
-
-            // MRM-1411
-            req.setModelResolver(
-                new RepositoryModelResolver( managedRepository, pathTranslator, wagonFactory, remoteRepositories,
-                                             networkProxies, managedRepository ) );
-
-            Model model;
-            try
-            {
-                model = builder.build( req ).getEffectiveModel();
-            }
             catch ( ModelBuildingException e )
             {
                 String msg = "The artifact's POM file '" + file + "' was invalid: " + e.getMessage();
@@ -382,6 +367,76 @@ public class Maven2RepositoryStorage
         }
     }
 
+    private Model buildModel( ManagedRepository managedRepository, File basedir, File file )
+        throws ModelBuildingException, RepositoryAdminException
+    {
+        ProxiedRepositories proxied = getProxiedRepositories( managedRepository.getId() );
+
+        ModelBuildingRequest req =
+            new DefaultModelBuildingRequest().setProcessPlugins( false ).setPomFile( file ).setTwoPhaseBuilding(
+                false ).setValidationLevel( ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL );
+
+        //MRM-1607. olamy this will resolve jdk profiles on the current running archiva jvm
+        req.setSystemProperties( System.getProperties() );
+
+        // MRM-1411
+        req.setModelResolver(
+            new RepositoryModelResolver( managedRepository, pathTranslator, wagonFactory, proxied.remoteRepositories,
+                                         proxied.networkProxies, managedRepository ) );
+
+        // the parents are parsed once for all the projects of the repository
+        req.setModelCache( modelCache.getModelCache( basedir, pathTranslator ) );
+
+        ModelBuildingResult result = builder.build( req );
+        modelCache.putEffectiveModel( basedir, pathTranslator, file, result );
+        return result.getEffectiveModel();
+    }
+
+    private ProxiedRepositories getProxiedRepositories( String repositoryId )
+        throws RepositoryAdminException
+    {
+        // a configuration change during the lookup replaces the map, and the result is dropped with it
+        Map<String, ProxiedRepositories> proxiedRepositories = this.proxiedRepositories;
+        ProxiedRepositories proxied = proxiedRepositories.get( repositoryId );
+        if ( proxied != null )
+        {
+            return proxied;
+        }
+
+        // TODO: this is a workaround until we can properly resolve using proxies as well - this doesn't cache
+        //       anything locally!
+        List<RemoteRepository> remoteRepositories = new ArrayList<RemoteRepository>();
+        Map<String, NetworkProxy> networkProxies = new HashMap<String, NetworkProxy>();
+
+        Map<String, List<ProxyConnector>> proxyConnectorsMap = proxyConnectorAdmin.getProxyConnectorAsMap();
+        List<ProxyConnector> proxyConnectors = proxyConnectorsMap.get( repositoryId );
+        if ( proxyConnectors != null )
+        {
+            for ( ProxyConnector proxyConnector : proxyConnectors )
+            {
+                RemoteRepository remoteRepoConfig =
+                    remoteRepositoryAdmin.getRemoteRepository( proxyConnector.getTargetRepoId() );
+
+                if ( remoteRepoConfig != null )
+                {
+                    remoteRepositories.add( remoteRepoConfig );
+
+                    NetworkProxy networkProxyConfig = networkProxyAdmin.getNetworkProxy( proxyConnector.getProxyId() );
+
+                    if ( networkProxyConfig != null )
+                    {
+                        // key/value: remote repo ID/proxy info
+                        networkProxies.put( proxyConnector.getTargetRepoId(), networkProxyConfig );
+                    }
+                }
+            }
+        }
+
+        proxied = new ProxiedRepositories( remoteRepositories, networkProxies );
+        proxiedRepositories.put( repositoryId, proxied );
+        return proxied;
+    }
+
     public void setWagonFactory( WagonFactory wagonFactory )
     {
         this.wagonFactory = wagonFactory;
@@ -728,19 +783,14 @@ public class Maven2RepositoryStorage
         ChecksummedFile checksummedFile = new ChecksummedFile( file );
         try
         {
-            metadata.setMd5( checksummedFile.calculateChecksum( ChecksumAlgorithm.MD5 ) );
-        }
-        catch ( IOException e )
-        {
-            log.error( "Unable to checksum file {}: {},MD5", file, e.getMessage() );
-        }
-        try
-        {
-            metadata.setSha1( checksummedFile.calculateChecksum( ChecksumAlgorithm.SHA1 ) );
+            Map<ChecksumAlgorithm, String> checksums = checksummedFile.calculateChecksums(
+                new ChecksumAlgorithm[]{ ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1 } );
+            metadata.setMd5( checksums.get( ChecksumAlgorithm.MD5 ) );
+            metadata.setSha1( checksums.get( ChecksumAlgorithm.SHA1 ) );
         }
         catch ( IOException e )
         {
-            log.error( "Unable to checksum file {}: {},SHA1", file, e.getMessage() );
+            log.error( "Unable to checksum file {}: {}", file, e.getMessage() );
         }
         metadata.setSize( file.length() );
     }
@@ -933,4 +983,22 @@ public class Maven2RepositoryStorage
             return pomFile.equals( name );
         }
     }
+
+    /**
+     * The remote repositories proxied by a managed repository, and their network proxies.
+     */
+    private static class ProxiedRepositories
+    {
+        private final List<RemoteRepository> remoteRepositories;
+
+        // key/value: remote repo ID/network proxy
+        private final Map<String, NetworkProxy> networkProxies;
+
+        private ProxiedRepositories( List<RemoteRepository> remoteRepositories,
+                                     Map<String, NetworkProxy> networkProxies )
+        {
+            this.remoteRepositories = Collections.unmodifiableList( remoteRepositories );
+            this.networkProxies = Collections.unmodifiableMap( networkProxies );
+        }
+    }
 }
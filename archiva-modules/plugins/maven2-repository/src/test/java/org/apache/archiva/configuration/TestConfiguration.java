@@ -4,6 +4,9 @@ import org.apache.archiva.redback.components.registry.RegistryException;
 import org.apache.archiva.redback.components.registry.RegistryListener;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /*
  * Licensed to the Apache Software Foundation (ASF) under one
  * or more contributor license agreements.  See the NOTICE file
@@ -29,6 +32,8 @@ public class TestConfiguration
 {
     private Configuration configuration;
 
+    private List<ConfigurationListener> listeners = new CopyOnWriteArrayList<ConfigurationListener>();
+
     public Configuration getConfiguration()
     {
         return configuration;
@@ -38,6 +43,10 @@ public class TestConfiguration
         throws RegistryException, IndeterminateConfigurationException
     {
         this.configuration = configuration;
+        for ( ConfigurationListener listener : listeners )
+        {
+            listener.configurationEvent( new ConfigurationEvent( ConfigurationEvent.SAVED ) );
+        }
     }
 
     public boolean isDefaulted()
@@ -47,12 +56,12 @@ public class TestConfiguration
 
     public void addListener( ConfigurationListener listener )
     {
-        // no op
+        listeners.add( listener );
     }
 
     public void removeListener( ConfigurationListener listener )
     {
-        // no op
+        listeners.remove( listener );
     }
 
     public void addChangeListener( RegistryListener listener )
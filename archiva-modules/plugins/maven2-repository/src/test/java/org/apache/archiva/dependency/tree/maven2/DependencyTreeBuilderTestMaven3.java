@@ -26,7 +26,9 @@ import org.apache.archiva.configuration.Configuration;
 import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
 import org.apache.archiva.maven2.model.Artifact;
 import org.apache.archiva.maven2.model.TreeEntry;
+import org.apache.archiva.metadata.repository.MetadataResolverCache;
 import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
+import org.apache.commons.io.FileUtils;
 import org.fest.assertions.api.Assertions;
 import org.junit.Before;
 import org.junit.Test;
@@ -51,6 +53,12 @@ public class DependencyTreeBuilderTestMaven3
     @Inject
     private PlexusSisuBridge plexusSisuBridge;
 
+    @Inject
+    private DependencyTreeCache dependencyTreeCache;
+
+    @Inject
+    private MetadataResolverCache metadataResolverCache;
+
     private static final String TEST_REPO_ID = "test";
 
     private static final String TEST_VERSION = "1.2.1";
@@ -77,6 +85,8 @@ public class DependencyTreeBuilderTestMaven3
         configuration.addManagedRepository( repoConfig );
         config.save( configuration );
 
+        dependencyTreeCache.clear();
+
         //artifactFactory = ((DefaultDependencyTreeBuilder)this.builder).getFactory();
     }
 
@@ -107,6 +117,62 @@ public class DependencyTreeBuilderTestMaven3
             new TreeEntry( new Artifact( "commons-lang", "commons-lang", "2.2", "compile", "" ) ) );
     }
 
+    @Test
+    public void testBuilderDependenciesCached()
+        throws Exception
+    {
+        List<String> repositoryIds = Collections.singletonList( TEST_REPO_ID );
+
+        List<TreeEntry> treeEntries =
+            builder.buildDependencyTree( repositoryIds, TEST_GROUP_ID, TEST_ARTIFACT_ID, TEST_VERSION );
+        long misses = dependencyTreeCache.getTreeMisses();
+        long hits = dependencyTreeCache.getTreeHits();
+        long staleEntries = dependencyTreeCache.getStaleEntries();
+
+        // the cached tree is returned as a copy
+        treeEntries.get( 0 ).getChilds().clear();
+        List<TreeEntry> cachedTreeEntries =
+            builder.buildDependencyTree( repositoryIds, TEST_GROUP_ID, TEST_ARTIFACT_ID, TEST_VERSION );
+        assertEquals( hits + 1, dependencyTreeCache.getTreeHits() );
+        Assertions.assertThat( cachedTreeEntries.get( 0 ).getChilds() ).isNotEmpty().contains(
+            new TreeEntry( new Artifact( "commons-lang", "commons-lang", "2.2", "compile", "" ) ) );
+        assertSame( cachedTreeEntries.get( 0 ), cachedTreeEntries.get( 0 ).getChilds().get( 0 ).getParent() );
+        assertTrue( dependencyTreeCache.getDescriptorCount() > 0 );
+
+        // changes of other content of the repository keep the tree
+        metadataResolverCache.invalidate( TEST_REPO_ID );
+        builder.buildDependencyTree( repositoryIds, TEST_GROUP_ID, TEST_ARTIFACT_ID, TEST_VERSION );
+        assertEquals( hits + 2, dependencyTreeCache.getTreeHits() );
+        assertEquals( misses, dependencyTreeCache.getTreeMisses() );
+
+        // the deployment of the missing POM of a dependency makes the tree stale
+        File dependencyPom = new File( "target/test-repository/commons-lang/commons-lang/2.2/commons-lang-2.2.pom" );
+        assertFalse( dependencyPom.exists() );
+        try
+        {
+            FileUtils.writeStringToFile( dependencyPom, "<project>\n  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <groupId>commons-lang</groupId>\n  <artifactId>commons-lang</artifactId>\n"
+                + "  <version>2.2</version>\n</project>\n" );
+            builder.buildDependencyTree( repositoryIds, TEST_GROUP_ID, TEST_ARTIFACT_ID, TEST_VERSION );
+            assertEquals( misses + 1, dependencyTreeCache.getTreeMisses() );
+            assertEquals( staleEntries + 1, dependencyTreeCache.getStaleEntries() );
+        }
+        finally
+        {
+            FileUtils.deleteQuietly( dependencyPom );
+        }
+        builder.buildDependencyTree( repositoryIds, TEST_GROUP_ID, TEST_ARTIFACT_ID, TEST_VERSION );
+        assertEquals( misses + 2, dependencyTreeCache.getTreeMisses() );
+
+        // the tree built again reused the cached parent, it still depends on its POM
+        builder.buildDependencyTree( repositoryIds, TEST_GROUP_ID, TEST_ARTIFACT_ID, TEST_VERSION );
+        assertEquals( misses + 2, dependencyTreeCache.getTreeMisses() );
+        File parentPom =
+            new File( "target/test-repository/org/apache/archiva/archiva-base/1.2.1/archiva-base-1.2.1.pom" );
+        assertTrue( parentPom.setLastModified( parentPom.lastModified() + 10000 ) );
+        builder.buildDependencyTree( repositoryIds, TEST_GROUP_ID, TEST_ARTIFACT_ID, TEST_VERSION );
+        assertEquals( misses + 3, dependencyTreeCache.getTreeMisses() );
+    }
 
     public static class TestTreeEntry
         extends TreeEntry
@@ -0,0 +1,232 @@
+package org.apache.archiva.metadata.repository.storage.maven2;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.configuration.ArchivaConfiguration;
+import org.apache.archiva.configuration.Configuration;
+import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
+import org.apache.archiva.metadata.model.Dependency;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.metadata.repository.storage.ReadMetadataRequest;
+import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.ContextConfiguration;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compares the time to read the metadata of the projects of a synthetic repository, with and without the
+ * {@link Maven2ModelCache}. Every project inherits from a deep hierarchy of parents, and its metadata is read twice,
+ * as the scan does for its POM and its JAR. The number of projects and the depth of the hierarchy can be set with the
+ * <code>model.benchmark.projects</code> and <code>model.benchmark.depth</code> system properties. The benchmark only
+ * runs when the <code>archiva.benchmarks</code> system property is <code>true</code>.
+ *
+ * @since 1.4-M3
+ */
+@RunWith ( ArchivaSpringJUnit4ClassRunner.class )
+@ContextConfiguration ( locations = { "classpath*:/META-INF/spring-context.xml", "classpath:/spring-context.xml" } )
+public class Maven2ModelCacheBenchmarkTest
+    extends TestCase
+{
+    private Logger log = LoggerFactory.getLogger( Maven2ModelCacheBenchmarkTest.class );
+
+    private static final int PROJECTS = Integer.getInteger( "model.benchmark.projects", 300 );
+
+    private static final int DEPTH = Integer.getInteger( "model.benchmark.depth", 6 );
+
+    private static final String TEST_REPO_ID = "model-benchmark";
+
+    private static final String GROUP_ID = "org.benchmark";
+
+    @Inject
+    @Named ( value = "repositoryStorage#maven2" )
+    private Maven2RepositoryStorage storage;
+
+    @Inject
+    private Maven2ModelCache modelCache;
+
+    @Inject
+    @Named ( value = "archivaConfiguration#default" )
+    private ArchivaConfiguration configuration;
+
+    private File repoDir = new File( "target/test-repositories/model-benchmark" );
+
+    @BeforeClass
+    public static void checkEnabled()
+    {
+        Assume.assumeTrue( Boolean.getBoolean( "archiva.benchmarks" ) );
+    }
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        FileUtils.deleteDirectory( repoDir );
+        for ( int i = 0; i < DEPTH; i++ )
+        {
+            writeParent( i );
+        }
+        for ( int i = 0; i < PROJECTS; i++ )
+        {
+            writeProject( i );
+        }
+
+        Configuration c = new Configuration();
+        ManagedRepositoryConfiguration testRepo = new ManagedRepositoryConfiguration();
+        testRepo.setId( TEST_REPO_ID );
+        testRepo.setLocation( repoDir.getAbsolutePath() );
+        testRepo.setReleases( true );
+        testRepo.setSnapshots( false );
+        c.addManagedRepository( testRepo );
+        configuration.save( c );
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        modelCache.setMaxElements( Maven2ModelCache.DEFAULT_MAX_ELEMENTS );
+        modelCache.clear();
+        super.tearDown();
+    }
+
+    @Test
+    public void testReadMetadataWithAndWithoutCache()
+        throws Exception
+    {
+        // once to warm up the file system cache and the JIT
+        modelCache.setMaxElements( 0 );
+        readAll();
+
+        long start = System.currentTimeMillis();
+        readAll();
+        long uncached = System.currentTimeMillis() - start;
+
+        modelCache.setMaxElements( Maven2ModelCache.DEFAULT_MAX_ELEMENTS );
+        modelCache.clear();
+        long parentHits = modelCache.getParentHits();
+        long effectiveHits = modelCache.getEffectiveHits();
+        start = System.currentTimeMillis();
+        readAll();
+        long cached = System.currentTimeMillis() - start;
+
+        // the parents are read once, then each project is built once and found in the cache the second time
+        assertTrue( modelCache.getParentHits() > parentHits );
+        assertEquals( PROJECTS, modelCache.getEffectiveHits() - effectiveHits );
+
+        log.info( "Metadata of {} projects with {} parents read twice: {}ms without the model cache, {}ms with it",
+                  new Object[]{ PROJECTS, DEPTH, uncached, cached } );
+    }
+
+    private void readAll()
+        throws Exception
+    {
+        for ( int i = 0; i < PROJECTS; i++ )
+        {
+            for ( int j = 0; j < 2; j++ )
+            {
+                ReadMetadataRequest readMetadataRequest =
+                    new ReadMetadataRequest().repositoryId( TEST_REPO_ID ).namespace( GROUP_ID ).projectId(
+                        "project-" + i ).projectVersion( "1.0" );
+                ProjectVersionMetadata metadata = storage.readProjectVersionMetadata( readMetadataRequest );
+
+                // inherited from the top of the hierarchy, and managed by the bottom
+                assertEquals( getUrl( DEPTH - 1 ) + "/project-" + i, metadata.getUrl() );
+                Dependency dependency = metadata.getDependencies().get( 0 );
+                assertEquals( "dependency-" + ( DEPTH - 1 ), dependency.getArtifactId() );
+                assertEquals( "2." + ( DEPTH - 1 ), dependency.getVersion() );
+            }
+        }
+    }
+
+    private static String getUrl( int level )
+    {
+        return level == 0 ? "http://benchmark.org" : getUrl( level - 1 ) + "/parent-" + level;
+    }
+
+    private void writeParent( int level )
+        throws IOException
+    {
+        StringBuilder pom = new StringBuilder();
+        pom.append( "<project>\n  <modelVersion>4.0.0</modelVersion>\n" );
+        if ( level > 0 )
+        {
+            pom.append( "  <parent>\n    <groupId>" ).append( GROUP_ID ).append( "</groupId>\n" );
+            pom.append( "    <artifactId>parent-" ).append( level - 1 ).append( "</artifactId>\n" );
+            pom.append( "    <version>1.0</version>\n  </parent>\n" );
+        }
+        pom.append( "  <groupId>" ).append( GROUP_ID ).append( "</groupId>\n" );
+        pom.append( "  <artifactId>parent-" ).append( level ).append( "</artifactId>\n" );
+        pom.append( "  <version>1.0</version>\n  <packaging>pom</packaging>\n" );
+        if ( level == 0 )
+        {
+            pom.append( "  <url>http://benchmark.org</url>\n" );
+        }
+        pom.append( "  <properties>\n    <level" ).append( level ).append( ".version>2." ).append( level );
+        pom.append( "</level" ).append( level ).append( ".version>\n  </properties>\n" );
+        pom.append( "  <dependencyManagement>\n    <dependencies>\n      <dependency>\n" );
+        pom.append( "        <groupId>" ).append( GROUP_ID ).append( "</groupId>\n" );
+        pom.append( "        <artifactId>dependency-" ).append( level ).append( "</artifactId>\n" );
+        pom.append( "        <version>${level" ).append( level ).append( ".version}</version>\n" );
+        pom.append( "      </dependency>\n    </dependencies>\n  </dependencyManagement>\n</project>\n" );
+
+        write( "parent-" + level, pom.toString() );
+    }
+
+    private void writeProject( int index )
+        throws IOException
+    {
+        StringBuilder pom = new StringBuilder();
+        pom.append( "<project>\n  <modelVersion>4.0.0</modelVersion>\n" );
+        pom.append( "  <parent>\n    <groupId>" ).append( GROUP_ID ).append( "</groupId>\n" );
+        pom.append( "    <artifactId>parent-" ).append( DEPTH - 1 ).append( "</artifactId>\n" );
+        pom.append( "    <version>1.0</version>\n  </parent>\n" );
+        pom.append( "  <artifactId>project-" ).append( index ).append( "</artifactId>\n" );
+        pom.append( "  <dependencies>\n    <dependency>\n" );
+        pom.append( "      <groupId>" ).append( GROUP_ID ).append( "</groupId>\n" );
+        pom.append( "      <artifactId>dependency-" ).append( DEPTH - 1 ).append( "</artifactId>\n" );
+        pom.append( "    </dependency>\n  </dependencies>\n</project>\n" );
+
+        write( "project-" + index, pom.toString() );
+    }
+
+    private void write( String artifactId, String pom )
+        throws IOException
+    {
+        File file = new File( repoDir, "org/benchmark/" + artifactId + "/1.0/" + artifactId + "-1.0.pom" );
+        FileUtils.writeStringToFile( file, pom );
+    }
+}
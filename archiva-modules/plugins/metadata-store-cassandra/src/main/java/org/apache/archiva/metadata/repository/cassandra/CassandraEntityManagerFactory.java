@@ -28,6 +28,8 @@ import org.apache.archiva.metadata.repository.cassandra.model.Project;
 import org.apache.archiva.metadata.repository.cassandra.model.ProjectVersionMetadataModel;
 import org.apache.archiva.metadata.repository.cassandra.model.Repository;
 
+import java.util.concurrent.ExecutorService;
+
 /**
  * @author Olivier Lamy
  */
@@ -47,5 +49,37 @@ public interface CassandraEntityManagerFactory
 
     EntityManager<ProjectVersionMetadataModel, String> getProjectVersionMetadataModelEntityManager();
 
+    /**
+     * @since 1.4-M3
+     */
+    CassandraIndexes getIndexes();
+
+    /**
+     * @return the number of writes a session collects before flushing them
+     * @since 1.4-M3
+     */
+    int getBatchSize();
+
+    /**
+     * @return the executor flushing the writes of the sessions in the background, <code>null</code> if they are
+     *         flushed by the sessions themselves
+     * @since 1.4-M3
+     */
+    ExecutorService getFlushExecutor();
+
+    /**
+     * List all the stored metadata in the column families of the {@link #getIndexes() indexes} again, for metadata
+     * stored before they existed or while they were not maintained.
+     *
+     * @since 1.4-M3
+     */
+    void rebuildIndexes();
+
+    /**
+     * @return whether the column families of the {@link #getIndexes() indexes} list all the stored metadata
+     * @since 1.4-M3
+     */
+    boolean isIndexesComplete();
+
 
 }
@@ -0,0 +1,179 @@
+package org.apache.archiva.metadata.repository.cassandra;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.query.RowQuery;
+import com.netflix.astyanax.serializers.StringSerializer;
+import com.netflix.astyanax.util.RangeBuilder;
+
+import javax.persistence.PersistenceException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A query-driven column family: each row lists, as the names of its columns, the entries found under a key, such as
+ * the namespaces of a repository or the artifacts with a given checksum. They are read with a slice of a single row
+ * instead of a visit of all the entities, and are maintained as the entities are written and removed.
+ *
+ * @since 1.4-M3
+ */
+public class CassandraIndex
+{
+    private static final int PAGE_SIZE = 1000;
+
+    private final Keyspace keyspace;
+
+    private final ColumnFamily<String, String> columnFamily;
+
+    public CassandraIndex( Keyspace keyspace, String name )
+    {
+        this.keyspace = keyspace;
+        this.columnFamily =
+            new ColumnFamily<String, String>( name, StringSerializer.get(), StringSerializer.get() );
+    }
+
+    public String getName()
+    {
+        return columnFamily.getName();
+    }
+
+    /**
+     * @return the entries listed under the key, empty if there are none
+     */
+    public List<String> get( String key )
+        throws PersistenceException
+    {
+        List<String> entries = new ArrayList<String>();
+        try
+        {
+            RowQuery<String, String> query = keyspace.prepareQuery( columnFamily ).getKey( key ).withColumnRange(
+                new RangeBuilder().setLimit( PAGE_SIZE ).build() ).autoPaginate( true );
+            ColumnList<String> columns = query.execute().getResult();
+            while ( !columns.isEmpty() )
+            {
+                for ( Column<String> column : columns )
+                {
+                    entries.add( column.getName() );
+                }
+                columns = query.execute().getResult();
+            }
+        }
+        catch ( NotFoundException e )
+        {
+            // no entries
+        }
+        catch ( ConnectionException e )
+        {
+            throw new PersistenceException( e.getMessage(), e );
+        }
+        return entries;
+    }
+
+    public void add( String key, String entry )
+        throws PersistenceException
+    {
+        MutationBatch mutationBatch = keyspace.prepareMutationBatch();
+        add( mutationBatch, key, entry );
+        execute( mutationBatch );
+    }
+
+    public void add( MutationBatch mutationBatch, String key, String entry )
+    {
+        mutationBatch.withRow( columnFamily, key ).putEmptyColumn( entry, null );
+    }
+
+    public void remove( String key, String entry )
+        throws PersistenceException
+    {
+        MutationBatch mutationBatch = keyspace.prepareMutationBatch();
+        remove( mutationBatch, key, entry );
+        execute( mutationBatch );
+    }
+
+    public void remove( MutationBatch mutationBatch, String key, String entry )
+    {
+        mutationBatch.withRow( columnFamily, key ).deleteColumn( entry );
+    }
+
+    /**
+     * Remove all the entries listed under the keys.
+     */
+    public void removeAll( Collection<String> keys )
+        throws PersistenceException
+    {
+        if ( keys.isEmpty() )
+        {
+            return;
+        }
+        MutationBatch mutationBatch = keyspace.prepareMutationBatch();
+        for ( String key : keys )
+        {
+            mutationBatch.withRow( columnFamily, key ).delete();
+        }
+        execute( mutationBatch );
+    }
+
+    public boolean exists()
+        throws ConnectionException
+    {
+        try
+        {
+            keyspace.getColumnFamilyProperties( getName() );
+            return true;
+        }
+        catch ( NotFoundException e )
+        {
+            return false;
+        }
+    }
+
+    public void createStorage()
+        throws ConnectionException
+    {
+        keyspace.createColumnFamily( columnFamily, null );
+    }
+
+    public void truncate()
+        throws ConnectionException
+    {
+        keyspace.truncateColumnFamily( columnFamily );
+    }
+
+    private void execute( MutationBatch mutationBatch )
+        throws PersistenceException
+    {
+        try
+        {
+            mutationBatch.execute();
+        }
+        catch ( ConnectionException e )
+        {
+            throw new PersistenceException( e.getMessage(), e );
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.apache.archiva.metadata.repository.cassandra;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.netflix.astyanax.Keyspace;
+
+import javax.persistence.PersistenceException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The query-driven column families of the metadata repository, and how their rows are keyed.
+ *
+ * @since 1.4-M3
+ */
+public class CassandraIndexes
+{
+    /**
+     * repository id -&gt; namespace names
+     */
+    private final CassandraIndex repositoryNamespaces;
+
+    /**
+     * namespace key -&gt; project ids
+     */
+    private final CassandraIndex namespaceProjects;
+
+    /**
+     * project key (project version key without the version) -&gt; project versions
+     */
+    private final CassandraIndex projectVersions;
+
+    /**
+     * project version key -&gt; artifact keys
+     */
+    private final CassandraIndex projectVersionArtifacts;
+
+    /**
+     * repository id and checksum (MD5 or SHA-1) -&gt; artifact keys
+     */
+    private final CassandraIndex checksumArtifacts;
+
+    /**
+     * repository id and day gathered -&gt; artifact keys
+     */
+    private final CassandraIndex gatheredArtifacts;
+
+    /**
+     * repository id -&gt; days gathered
+     */
+    private final CassandraIndex gatheredDays;
+
+    /**
+     * repository id and facet id -&gt; names of the repository facets
+     */
+    private final CassandraIndex repositoryFacets;
+
+    /**
+     * artifact key, or repository id, facet id and name of a repository facet -&gt; facet entry keys
+     */
+    private final CassandraIndex facetEntries;
+
+    /**
+     * state of the column families -&gt; its values
+     */
+    private final CassandraIndex state;
+
+    private static final String REBUILD_STATE = "rebuild";
+
+    private static final String COMPLETE = "complete";
+
+    public CassandraIndexes( Keyspace keyspace )
+    {
+        repositoryNamespaces = new CassandraIndex( keyspace, "repositorynamespaces" );
+        namespaceProjects = new CassandraIndex( keyspace, "namespaceprojects" );
+        projectVersions = new CassandraIndex( keyspace, "projectversions" );
+        projectVersionArtifacts = new CassandraIndex( keyspace, "projectversionartifacts" );
+        checksumArtifacts = new CassandraIndex( keyspace, "checksumartifacts" );
+        gatheredArtifacts = new CassandraIndex( keyspace, "gatheredartifacts" );
+        gatheredDays = new CassandraIndex( keyspace, "gathereddays" );
+        repositoryFacets = new CassandraIndex( keyspace, "repositoryfacets" );
+        facetEntries = new CassandraIndex( keyspace, "facetentries" );
+        state = new CassandraIndex( keyspace, "indexstate" );
+    }
+
+    public List<CassandraIndex> getAll()
+    {
+        return Arrays.asList( repositoryNamespaces, namespaceProjects, projectVersions, projectVersionArtifacts,
+                              checksumArtifacts, gatheredArtifacts, gatheredDays, repositoryFacets, facetEntries,
+                              state );
+    }
+
+    /**
+     * @return whether the column families list all the stored metadata: they were created before any metadata was
+     *         stored, or a rebuild from the stored metadata completed since
+     */
+    public boolean isComplete()
+        throws PersistenceException
+    {
+        return state.get( REBUILD_STATE ).contains( COMPLETE );
+    }
+
+    public void setComplete( boolean complete )
+        throws PersistenceException
+    {
+        if ( complete )
+        {
+            state.add( REBUILD_STATE, COMPLETE );
+        }
+        else
+        {
+            state.remove( REBUILD_STATE, COMPLETE );
+        }
+    }
+
+    public CassandraIndex getRepositoryNamespaces()
+    {
+        return repositoryNamespaces;
+    }
+
+    public CassandraIndex getNamespaceProjects()
+    {
+        return namespaceProjects;
+    }
+
+    public CassandraIndex getProjectVersions()
+    {
+        return projectVersions;
+    }
+
+    public CassandraIndex getProjectVersionArtifacts()
+    {
+        return projectVersionArtifacts;
+    }
+
+    public CassandraIndex getChecksumArtifacts()
+    {
+        return checksumArtifacts;
+    }
+
+    public CassandraIndex getGatheredArtifacts()
+    {
+        return gatheredArtifacts;
+    }
+
+    public CassandraIndex getGatheredDays()
+    {
+        return gatheredDays;
+    }
+
+    public CassandraIndex getRepositoryFacets()
+    {
+        return repositoryFacets;
+    }
+
+    public CassandraIndex getFacetEntries()
+    {
+        return facetEntries;
+    }
+}
@@ -20,12 +20,8 @@ package org.apache.archiva.metadata.repository.cassandra;
  */
 
 import com.google.common.base.Function;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
-import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
-import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
-import com.netflix.astyanax.entitystore.DefaultEntityManager;
 import com.netflix.astyanax.entitystore.EntityManager;
 import net.sf.beanlib.provider.replicator.BeanReplicator;
 import org.apache.archiva.configuration.ArchivaConfiguration;
@@ -36,6 +32,7 @@ import org.apache.archiva.metadata.model.MetadataFacetFactory;
 import org.apache.archiva.metadata.model.ProjectMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionReference;
+import org.apache.archiva.metadata.repository.ArtifactLookup;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
@@ -56,33 +53,81 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
+ * Cassandra implementation of the metadata repository.
+ * <p/>
+ * Besides the column families of the entities, the namespaces, projects, versions and artifacts are listed under
+ * their parent in the query-driven column families of {@link CassandraIndexes}, along with the artifacts by checksum
+ * and by day gathered, and the facets by owner. These are maintained as the entities are written, so that reads are
+ * point lookups and single row slices rather than visits of whole column families.
+ *
  * @author Olivier Lamy
  */
 public class CassandraMetadataRepository
-    implements MetadataRepository
+    implements MetadataRepository, ArtifactLookup
 {
 
     private Logger logger = LoggerFactory.getLogger( getClass() );
 
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
     private ArchivaConfiguration configuration;
 
     private final Map<String, MetadataFacetFactory> metadataFacetFactories;
 
     private CassandraEntityManagerFactory cassandraEntityManagerFactory;
 
+    private final CassandraPendingEntities<Repository> pendingRepositories;
+
+    private final CassandraPendingEntities<Namespace> pendingNamespaces;
+
+    private final CassandraPendingEntities<Project> pendingProjects;
+
+    private final CassandraPendingEntities<ProjectVersionMetadataModel> pendingProjectVersions;
+
+    private final CassandraPendingEntities<ArtifactMetadataModel> pendingArtifacts;
+
+    private final CassandraPendingEntities<MetadataFacetModel> pendingMetadataFacets;
+
+    /**
+     * the entries of the query-driven column families written by the session and not flushed yet
+     */
+    private MutationBatch pendingIndexMutations;
+
+    private int pendingWrites;
+
+    /**
+     * the flushes started in the background and not waited for yet
+     */
+    private final List<Future<?>> flushes = new ArrayList<Future<?>>();
+
     public CassandraMetadataRepository( Map<String, MetadataFacetFactory> metadataFacetFactories,
                                         ArchivaConfiguration configuration, CassandraEntityManagerFactory cassandraEntityManagerFactory )
     {
         this.metadataFacetFactories = metadataFacetFactories;
         this.configuration = configuration;
         this.cassandraEntityManagerFactory = cassandraEntityManagerFactory;
+
+        this.pendingRepositories =
+            new CassandraPendingEntities<Repository>( cassandraEntityManagerFactory.getRepositoryEntityManager() );
+        this.pendingNamespaces =
+            new CassandraPendingEntities<Namespace>( cassandraEntityManagerFactory.getNamespaceEntityManager() );
+        this.pendingProjects =
+            new CassandraPendingEntities<Project>( cassandraEntityManagerFactory.getProjectEntityManager() );
+        this.pendingProjectVersions = new CassandraPendingEntities<ProjectVersionMetadataModel>(
+            cassandraEntityManagerFactory.getProjectVersionMetadataModelEntityManager() );
+        this.pendingArtifacts = new CassandraPendingEntities<ArtifactMetadataModel>(
+            cassandraEntityManagerFactory.getArtifactMetadataModelEntityManager() );
+        this.pendingMetadataFacets = new CassandraPendingEntities<MetadataFacetModel>(
+            cassandraEntityManagerFactory.getMetadataFacetModelEntityManager() );
     }
 
     
@@ -117,6 +162,11 @@ public class CassandraMetadataRepository
         return this.cassandraEntityManagerFactory.getProjectVersionMetadataModelEntityManager();
     }
 
+    public CassandraIndexes getIndexes()
+    {
+        return this.cassandraEntityManagerFactory.getIndexes();
+    }
+
     @Override
     public void updateNamespace( String repositoryId, String namespaceId )
         throws MetadataRepositoryException
@@ -130,24 +180,21 @@ public class CassandraMetadataRepository
     {
         try
         {
-            Repository repository = this.getRepositoryEntityManager().get( repositoryId );
+            Repository repository = pendingRepositories.get( repositoryId );
 
             if ( repository == null )
             {
                 repository = new Repository( repositoryId );
-
-                Namespace namespace = new Namespace( namespaceId, repository );
-                this.getRepositoryEntityManager().put( repository );
-
-                this.getNamespaceEntityManager().put( namespace );
+                put( pendingRepositories, repositoryId, repository );
             }
             // FIXME add a Namespace id builder
-            Namespace namespace = getNamespaceEntityManager().get(
+            Namespace namespace = pendingNamespaces.get(
                 new Namespace.KeyBuilder().withNamespace( namespaceId ).withRepositoryId( repositoryId ).build() );
             if ( namespace == null )
             {
                 namespace = new Namespace( namespaceId, repository );
-                getNamespaceEntityManager().put( namespace );
+                put( pendingNamespaces, namespace.getId(), namespace );
+                index( getIndexes().getRepositoryNamespaces(), repositoryId, namespaceId );
             }
             return namespace;
         }
@@ -165,12 +212,14 @@ public class CassandraMetadataRepository
     {
         try
         {
+            flushForRemoval();
             Namespace namespace = getNamespaceEntityManager().get(
                 new Namespace.KeyBuilder().withNamespace( namespaceId ).withRepositoryId( repositoryId ).build() );
             if ( namespace != null )
             {
                 getNamespaceEntityManager().remove( namespace );
             }
+            getIndexes().getRepositoryNamespaces().remove( repositoryId, namespaceId );
         }
         catch ( PersistenceException e )
         {
@@ -185,91 +234,43 @@ public class CassandraMetadataRepository
     {
         try
         {
-            final List<ArtifactMetadataModel> artifactMetadataModels = new ArrayList<ArtifactMetadataModel>();
-
+            flushForRemoval();
             // remove data related to the repository
-            this.getArtifactMetadataModelEntityManager().visitAll( new Function<ArtifactMetadataModel, Boolean>()
+            List<String> namespaceIds = getIndexes().getRepositoryNamespaces().get( repositoryId );
+            List<Namespace> namespaces = new ArrayList<Namespace>( namespaceIds.size() );
+            List<String> namespaceKeys = new ArrayList<String>( namespaceIds.size() );
+            for ( String namespaceId : namespaceIds )
             {
-                @Override
-                public Boolean apply( ArtifactMetadataModel artifactMetadataModel )
+                for ( String projectId : getIndexes().getNamespaceProjects().get(
+                    getNamespaceKey( repositoryId, namespaceId ) ) )
                 {
-                    if ( artifactMetadataModel != null )
-                    {
-                        if ( StringUtils.equals( artifactMetadataModel.getRepositoryId(), repositoryId ) )
-                        {
-                            artifactMetadataModels.add( artifactMetadataModel );
-                        }
-                    }
-                    return Boolean.TRUE;
+                    removeProject( repositoryId, namespaceId, projectId );
                 }
-            } );
-
-            getArtifactMetadataModelEntityManager().remove( artifactMetadataModels );
-
-            final List<Namespace> namespaces = new ArrayList<Namespace>();
 
-            getNamespaceEntityManager().visitAll( new Function<Namespace, Boolean>()
-            {
-                @Override
-                public Boolean apply( Namespace namespace )
-                {
-                    if ( namespace != null )
-                    {
-                        if ( StringUtils.equals( namespace.getRepository().getId(), repositoryId ) )
-                        {
-                            namespaces.add( namespace );
-                        }
-                    }
-                    return Boolean.TRUE;
-                }
-            } );
+                Namespace namespace = new Namespace( namespaceId, new Repository( repositoryId ) );
+                namespaces.add( namespace );
+                namespaceKeys.add( namespace.getId() );
+            }
 
             getNamespaceEntityManager().remove( namespaces );
+            getIndexes().getNamespaceProjects().removeAll( namespaceKeys );
 
-            final List<Project> projects = new ArrayList<Project>();
-            getProjectEntityManager().visitAll( new Function<Project, Boolean>()
+            if ( metadataFacetFactories != null )
             {
-                @Override
-                public Boolean apply( Project project )
+                for ( String facetId : metadataFacetFactories.keySet() )
                 {
-                    if ( project != null )
-                    {
-                        if ( StringUtils.equals( project.getNamespace().getRepository().getId(), repositoryId ) )
-                        {
-                            projects.add( project );
-                        }
-                    }
-                    return Boolean.TRUE;
+                    removeMetadataFacets( repositoryId, facetId );
                 }
-            } );
-
-            getProjectEntityManager().remove( projects );
-
-            // TODO  cleanup or not
-            //final List<MetadataFacetModel> metadataFacetModels = new ArrayList<MetadataFacetModel>(  );
-            //getMetadataFacetModelEntityManager().visitAll( new Function<MetadataFacetModel, Boolean>()
-
-            final List<ProjectVersionMetadataModel> projectVersionMetadataModels =
-                new ArrayList<ProjectVersionMetadataModel>();
+            }
 
-            getProjectVersionMetadataModelEntityManager().visitAll( new Function<ProjectVersionMetadataModel, Boolean>()
+            List<String> gatheredKeys = new ArrayList<String>();
+            for ( String day : getIndexes().getGatheredDays().get( repositoryId ) )
             {
-                @Override
-                public Boolean apply( ProjectVersionMetadataModel projectVersionMetadataModel )
-                {
-                    if ( projectVersionMetadataModel != null )
-                    {
-                        if ( StringUtils.equals( projectVersionMetadataModel.getNamespace().getRepository().getId(),
-                                                 repositoryId ) )
-                        {
-                            projectVersionMetadataModels.add( projectVersionMetadataModel );
-                        }
-                    }
-                    return Boolean.TRUE;
-                }
-            } );
-
-            getProjectVersionMetadataModelEntityManager().remove( projectVersionMetadataModels );
+                gatheredKeys.add( getGatheredKey( repositoryId, Long.parseLong( day ) ) );
+            }
+            getIndexes().getGatheredArtifacts().removeAll( gatheredKeys );
+            getIndexes().getGatheredDays().removeAll( Collections.singletonList( repositoryId ) );
+            getIndexes().getRepositoryNamespaces().removeAll( Collections.singletonList( repositoryId ) );
 
             Repository repository = getRepositoryEntityManager().get( repositoryId );
             if ( repository != null )
@@ -290,6 +291,7 @@ public class CassandraMetadataRepository
     {
         try
         {
+            flush();
             logger.debug( "getRepositories" );
 
             List<Repository> repositories = getRepositoryEntityManager().getAll();
@@ -319,26 +321,16 @@ public class CassandraMetadataRepository
     {
         try
         {
+            flush();
             final Set<String> namespaces = new HashSet<String>();
 
-            getNamespaceEntityManager().visitAll( new Function<Namespace, Boolean>()
+            for ( String name : getIndexes().getRepositoryNamespaces().get( repoId ) )
             {
-                // @Nullable add dependency ?
-                @Override
-                public Boolean apply( Namespace namespace )
+                if ( StringUtils.isNotEmpty( name ) )
                 {
-                    if ( namespace != null && namespace.getRepository() != null && StringUtils.equalsIgnoreCase( repoId,
-                                                                                                                 namespace.getRepository().getId() ) )
-                    {
-                        String name = namespace.getName();
-                        if ( StringUtils.isNotEmpty( name ) )
-                        {
-                            namespaces.add( StringUtils.substringBefore( name, "." ) );
-                        }
-                    }
-                    return Boolean.TRUE;
+                    namespaces.add( StringUtils.substringBefore( name, "." ) );
                 }
-            } );
+            }
 
             return namespaces;
         }
@@ -354,37 +346,26 @@ public class CassandraMetadataRepository
     {
         try
         {
+            flush();
             final Set<String> namespaces = new HashSet<String>();
 
-            getNamespaceEntityManager().visitAll( new Function<Namespace, Boolean>()
+            for ( String currentNamespace : getIndexes().getRepositoryNamespaces().get( repoId ) )
             {
-                // @Nullable add dependency ?
-                @Override
-                public Boolean apply( Namespace namespace )
+                // we only return childs
+                if ( StringUtils.startsWith( currentNamespace, namespaceId ) && (
+                    StringUtils.length( currentNamespace ) > StringUtils.length( namespaceId ) ) )
                 {
-                    if ( namespace != null && namespace.getRepository() != null && StringUtils.equalsIgnoreCase( repoId,
-                                                                                                                 namespace.getRepository().getId() ) )
-                    {
-                        String currentNamespace = namespace.getName();
-                        // we only return childs
-                        if ( StringUtils.startsWith( currentNamespace, namespaceId ) && (
-                            StringUtils.length( currentNamespace ) > StringUtils.length( namespaceId ) ) )
-                        {
-                            // store after namespaceId '.' but before next '.'
-                            // call org namespace org.apache.maven.shared -> stored apache
-
-                            String calledNamespace =
-                                StringUtils.endsWith( namespaceId, "." ) ? namespaceId : namespaceId + ".";
-                            String storedNamespace = StringUtils.substringAfter( currentNamespace, calledNamespace );
-
-                            storedNamespace = StringUtils.substringBefore( storedNamespace, "." );
-
-                            namespaces.add( storedNamespace );
-                        }
-                    }
-                    return Boolean.TRUE;
+                    // store after namespaceId '.' but before next '.'
+                    // call org namespace org.apache.maven.shared -> stored apache
+
+                    String calledNamespace = StringUtils.endsWith( namespaceId, "." ) ? namespaceId : namespaceId + ".";
+                    String storedNamespace = StringUtils.substringAfter( currentNamespace, calledNamespace );
+
+                    storedNamespace = StringUtils.substringBefore( storedNamespace, "." );
+
+                    namespaces.add( storedNamespace );
                 }
-            } );
+            }
 
             return namespaces;
         }
@@ -400,53 +381,10 @@ public class CassandraMetadataRepository
     {
         try
         {
+            flush();
             logger.debug( "getNamespaces for repository '{}'", repoId );
-            //TypedQuery<Repository> typedQuery =
-            //    entityManager.createQuery( "select n from Namespace n where n.repository_id=:id", Namespace.class );
-
-            //List<Repository> namespaces = typedQuery.setParameter( "id", repoId ).getResultList();
-
-            Repository repository = getRepositoryEntityManager().get( repoId );
-
-            if ( repository == null )
-            {
-                return Collections.emptyList();
-            }
-
-            // FIXME find correct cql query
-            //String query = "select * from namespace where repository.id = '" + repoId + "';";
-
-            //List<Namespace> namespaces = getNamespaceEntityManager().find( query );
 
-            final Set<Namespace> namespaces = new HashSet<Namespace>();
-
-            getNamespaceEntityManager().visitAll( new Function<Namespace, Boolean>()
-            {
-                // @Nullable add dependency ?
-                @Override
-                public Boolean apply( Namespace namespace )
-                {
-                    if ( namespace != null && namespace.getRepository() != null && StringUtils.equalsIgnoreCase( repoId,
-                                                                                                                 namespace.getRepository().getId() ) )
-                    {
-                        namespaces.add( namespace );
-                    }
-                    return Boolean.TRUE;
-                }
-            } );
-
-            repository.setNamespaces( new ArrayList<Namespace>( namespaces ) );
-
-            if ( repository == null || repository.getNamespaces().isEmpty() )
-            {
-                return Collections.emptyList();
-            }
-            List<String> namespaceIds = new ArrayList<String>( repository.getNamespaces().size() );
-
-            for ( Namespace n : repository.getNamespaces() )
-            {
-                namespaceIds.add( n.getName() );
-            }
+            List<String> namespaceIds = getIndexes().getRepositoryNamespaces().get( repoId );
 
             logger.debug( "getNamespaces for repository '{}' found {}", repoId, namespaceIds.size() );
             return namespaceIds;
@@ -467,25 +405,26 @@ public class CassandraMetadataRepository
         String projectKey = new Project.KeyBuilder().withProjectId( projectMetadata.getId() ).withNamespace(
             new Namespace( projectMetadata.getNamespace(), new Repository( repositoryId ) ) ).build();
 
-        Project project = getProjectEntityManager().get( projectKey );
-        if ( project != null )
+        try
         {
-            return;
-        }
+            Project project = pendingProjects.get( projectKey );
+            if ( project != null )
+            {
+                return;
+            }
 
-        String namespaceKey = new Namespace.KeyBuilder().withRepositoryId( repositoryId ).withNamespace(
-            projectMetadata.getNamespace() ).build();
-        Namespace namespace = getNamespaceEntityManager().get( namespaceKey );
-        if ( namespace == null )
-        {
-            namespace = updateOrAddNamespace( repositoryId, projectMetadata.getNamespace() );
-        }
+            String namespaceKey = new Namespace.KeyBuilder().withRepositoryId( repositoryId ).withNamespace(
+                projectMetadata.getNamespace() ).build();
+            Namespace namespace = pendingNamespaces.get( namespaceKey );
+            if ( namespace == null )
+            {
+                namespace = updateOrAddNamespace( repositoryId, projectMetadata.getNamespace() );
+            }
 
-        project = new Project( projectKey, projectMetadata.getId(), namespace );
+            project = new Project( projectKey, projectMetadata.getId(), namespace );
 
-        try
-        {
-            getProjectEntityManager().put( project );
+            put( pendingProjects, projectKey, project );
+            index( getIndexes().getNamespaceProjects(), namespaceKey, projectMetadata.getId() );
         }
         catch ( PersistenceException e )
         {
@@ -498,115 +437,52 @@ public class CassandraMetadataRepository
     public void removeProject( final String repositoryId, final String namespaceId, final String projectId )
         throws MetadataRepositoryException
     {
-
-        // cleanup ArtifactMetadataModel
-        final List<ArtifactMetadataModel> artifactMetadataModels = new ArrayList<ArtifactMetadataModel>();
-
-        getArtifactMetadataModelEntityManager().visitAll( new Function<ArtifactMetadataModel, Boolean>()
+        try
         {
-            @Override
-            public Boolean apply( ArtifactMetadataModel artifactMetadataModel )
+            flushForRemoval();
+            String projectKey = getProjectKey( repositoryId, namespaceId, projectId );
+
+            for ( String projectVersion : getIndexes().getProjectVersions().get( projectKey ) )
             {
-                if ( artifactMetadataModel != null )
-                {
-                    if ( StringUtils.equals( artifactMetadataModel.getRepositoryId(), repositoryId )
-                        && StringUtils.equals( artifactMetadataModel.getNamespace(), namespaceId )
-                        && StringUtils.equals( artifactMetadataModel.getProject(), projectId ) )
-                    {
-                        artifactMetadataModels.add( artifactMetadataModel );
-                    }
-                }
-                return Boolean.TRUE;
+                removeProjectVersionContent( repositoryId, namespaceId, projectId, projectVersion );
             }
-        } );
-
-        getArtifactMetadataModelEntityManager().remove( artifactMetadataModels );
+            getIndexes().getProjectVersions().removeAll( Collections.singletonList( projectKey ) );
+            getIndexes().getNamespaceProjects().remove( getNamespaceKey( repositoryId, namespaceId ), projectId );
 
-        Namespace namespace = new Namespace( namespaceId, new Repository( repositoryId ) );
+            Namespace namespace = new Namespace( namespaceId, new Repository( repositoryId ) );
 
-        final List<ProjectVersionMetadataModel> projectVersionMetadataModels =
-            new ArrayList<ProjectVersionMetadataModel>();
+            String key = new Project.KeyBuilder().withNamespace( namespace ).withProjectId( projectId ).build();
 
-        getProjectVersionMetadataModelEntityManager().visitAll( new Function<ProjectVersionMetadataModel, Boolean>()
-        {
-            @Override
-            public Boolean apply( ProjectVersionMetadataModel projectVersionMetadataModel )
+            Project project = getProjectEntityManager().get( key );
+            if ( project == null )
             {
-                if ( projectVersionMetadataModel != null )
-                {
-                    if ( StringUtils.equals( repositoryId,
-                                             projectVersionMetadataModel.getNamespace().getRepository().getName() )
-                        && StringUtils.equals( namespaceId, projectVersionMetadataModel.getNamespace().getName() )
-                        && StringUtils.equals( projectId, projectVersionMetadataModel.getProjectId() ) )
-                    {
-                        projectVersionMetadataModels.add( projectVersionMetadataModel );
-                    }
-                }
-                return Boolean.TRUE;
+                logger.debug( "removeProject notfound" );
+                return;
             }
-        } );
+            logger.debug( "removeProject {}", project );
 
-        if ( !projectVersionMetadataModels.isEmpty() )
-        {
-            getProjectVersionMetadataModelEntityManager().remove( projectVersionMetadataModels );
+            getProjectEntityManager().remove( project );
         }
-
-        String key = new Project.KeyBuilder().withNamespace( namespace ).withProjectId( projectId ).build();
-
-        Project project = getProjectEntityManager().get( key );
-        if ( project == null )
+        catch ( PersistenceException e )
         {
-            logger.debug( "removeProject notfound" );
-            return;
+            throw new MetadataRepositoryException( e.getMessage(), e );
         }
-        logger.debug( "removeProject {}", project );
-
-        getProjectEntityManager().remove( project );
     }
 
     @Override
     public Collection<String> getProjectVersions( final String repoId, final String namespace, final String projectId )
         throws MetadataResolutionException
     {
-        final Set<String> versions = new HashSet<String>();
-        getProjectVersionMetadataModelEntityManager().visitAll( new Function<ProjectVersionMetadataModel, Boolean>()
+        try
         {
-            @Override
-            public Boolean apply( ProjectVersionMetadataModel projectVersionMetadataModel )
-            {
-                if ( projectVersionMetadataModel != null )
-                {
-                    if ( StringUtils.equals( repoId,
-                                             projectVersionMetadataModel.getNamespace().getRepository().getName() )
-                        && StringUtils.startsWith( projectVersionMetadataModel.getNamespace().getName(), namespace )
-                        && StringUtils.equals( projectId, projectVersionMetadataModel.getProjectId() ) )
-                    {
-                        versions.add( projectVersionMetadataModel.getId() );
-                    }
-                }
-                return Boolean.TRUE;
-            }
-        } );
-        // FIXME use cql query
-        getArtifactMetadataModelEntityManager().visitAll( new Function<ArtifactMetadataModel, Boolean>()
+            flush();
+            return new HashSet<String>(
+                getIndexes().getProjectVersions().get( getProjectKey( repoId, namespace, projectId ) ) );
+        }
+        catch ( PersistenceException e )
         {
-            @Override
-            public Boolean apply( ArtifactMetadataModel artifactMetadataModel )
-            {
-                if ( artifactMetadataModel != null )
-                {
-                    if ( StringUtils.equals( repoId, artifactMetadataModel.getRepositoryId() ) && StringUtils.equals(
-                        namespace, artifactMetadataModel.getNamespace() ) && StringUtils.equals( projectId,
-                                                                                                 artifactMetadataModel.getProject() ) )
-                    {
-                        versions.add( artifactMetadataModel.getProjectVersion() );
-                    }
-                }
-                return Boolean.TRUE;
-            }
-        } );
-
-        return versions;
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
     }
 
     @Override
@@ -616,82 +492,75 @@ public class CassandraMetadataRepository
     {
         String namespaceKey =
             new Namespace.KeyBuilder().withRepositoryId( repositoryId ).withNamespace( namespaceId ).build();
-        // create the namespace if not exists
-        Namespace namespace = getNamespaceEntityManager().get( namespaceKey );
-        if ( namespace == null )
+        ArtifactMetadataModel artifactMetadataModel;
+        boolean existing;
+        try
         {
-            namespace = updateOrAddNamespace( repositoryId, namespaceId );
-        }
+            // create the namespace if not exists
+            Namespace namespace = pendingNamespaces.get( namespaceKey );
+            if ( namespace == null )
+            {
+                namespace = updateOrAddNamespace( repositoryId, namespaceId );
+            }
 
-        // create the project if not exist
-        String projectKey = new Project.KeyBuilder().withNamespace( namespace ).withProjectId( projectId ).build();
+            // create the project if not exist
+            String projectKey = new Project.KeyBuilder().withNamespace( namespace ).withProjectId( projectId ).build();
 
-        Project project = getProjectEntityManager().get( projectKey );
-        if ( project == null )
-        {
-            project = new Project( projectKey, projectId, namespace );
-            try
+            Project project = pendingProjects.get( projectKey );
+            if ( project == null )
             {
-                getProjectEntityManager().put( project );
+                project = new Project( projectKey, projectId, namespace );
+                put( pendingProjects, projectKey, project );
+                index( getIndexes().getNamespaceProjects(), namespaceKey, projectId );
             }
-            catch ( PersistenceException e )
+
+            String key =
+                new ArtifactMetadataModel.KeyBuilder().withNamespace( namespace ).withProject( projectId ).withId(
+                    artifactMeta.getId() ).withProjectVersion( projectVersion ).build();
+
+            ArtifactMetadataModel previous = pendingArtifacts.get( key );
+            existing = previous != null;
+            if ( existing )
             {
-                throw new MetadataRepositoryException( e.getMessage(), e );
+                // the checksums and the day gathered may change
+                unindexArtifact( getIndexMutations(), previous, artifactMeta );
             }
-        }
-
-        String key = new ArtifactMetadataModel.KeyBuilder().withNamespace( namespace ).withProject( projectId ).withId(
-            artifactMeta.getId() ).withProjectVersion( projectVersion ).build();
 
-        ArtifactMetadataModel artifactMetadataModel = getArtifactMetadataModelEntityManager().get( key );
-        if ( artifactMetadataModel == null )
-        {
+            // a new model rather than the previous one, which may be being written
             artifactMetadataModel = new ArtifactMetadataModel( key, artifactMeta.getId(), repositoryId, namespaceId,
-                                                               artifactMeta.getProject(), projectVersion,
+                                                               previous != null
+                                                                   ? previous.getProject()
+                                                                   : artifactMeta.getProject(), projectVersion,
                                                                artifactMeta.getVersion(),
                                                                artifactMeta.getFileLastModified(),
                                                                artifactMeta.getSize(), artifactMeta.getMd5(),
                                                                artifactMeta.getSha1(), artifactMeta.getWhenGathered() );
 
-        }
-        else
-        {
-            artifactMetadataModel.setFileLastModified( artifactMeta.getFileLastModified().getTime() );
-            artifactMetadataModel.setWhenGathered( artifactMeta.getWhenGathered().getTime() );
-            artifactMetadataModel.setSize( artifactMeta.getSize() );
-            artifactMetadataModel.setMd5( artifactMeta.getMd5() );
-            artifactMetadataModel.setSha1( artifactMeta.getSha1() );
-            artifactMetadataModel.setVersion( artifactMeta.getVersion() );
-        }
+            put( pendingArtifacts, key, artifactMetadataModel );
+            indexArtifact( getIndexMutations(), artifactMetadataModel );
+            written();
 
-        try
-        {
-            getArtifactMetadataModelEntityManager().put( artifactMetadataModel );
+            key = new ProjectVersionMetadataModel.KeyBuilder().withRepository( repositoryId ).withNamespace(
+                namespace ).withProjectId( projectId ).withId( projectVersion ).build();
+
+            if ( pendingProjectVersions.get( key ) == null )
+            {
+                ProjectVersionMetadataModel projectVersionMetadataModel = new ProjectVersionMetadataModel();
+                projectVersionMetadataModel.setRowId( key );
+                projectVersionMetadataModel.setProjectId( projectId );
+                projectVersionMetadataModel.setId( projectVersion );
+                projectVersionMetadataModel.setNamespace( namespace );
+
+                put( pendingProjectVersions, key, projectVersionMetadataModel );
+            }
         }
         catch ( PersistenceException e )
         {
             throw new MetadataRepositoryException( e.getMessage(), e );
         }
 
-        key = new ProjectVersionMetadataModel.KeyBuilder().withRepository( repositoryId ).withNamespace(
-            namespace ).withProjectId( projectId ).withId( projectVersion ).build();
-
-        ProjectVersionMetadataModel projectVersionMetadataModel = getProjectVersionMetadataModelEntityManager().get( key );
-
-        if ( projectVersionMetadataModel == null )
-        {
-            projectVersionMetadataModel = new ProjectVersionMetadataModel();
-            projectVersionMetadataModel.setRowId( key );
-            projectVersionMetadataModel.setProjectId( projectId );
-            projectVersionMetadataModel.setId( projectVersion );
-            projectVersionMetadataModel.setNamespace( namespace );
-
-            getProjectVersionMetadataModelEntityManager().put( projectVersionMetadataModel );
-
-        }
-
         // now facets
-        updateFacets( artifactMeta, artifactMetadataModel );
+        updateFacets( artifactMeta, artifactMetadataModel, existing );
 
     }
 
@@ -700,28 +569,23 @@ public class CassandraMetadataRepository
                                                    final String projectVersion )
         throws MetadataResolutionException
     {
-        final Set<String> versions = new HashSet<String>();
-        // FIXME use cql query
-        getArtifactMetadataModelEntityManager().visitAll( new Function<ArtifactMetadataModel, Boolean>()
+        try
         {
-            @Override
-            public Boolean apply( ArtifactMetadataModel artifactMetadataModel )
+            flush();
+            final Set<String> versions = new HashSet<String>();
+            for ( ArtifactMetadataModel artifactMetadataModel : getArtifactMetadataModels( repoId, namespace,
+                                                                                           projectId,
+                                                                                           projectVersion ) )
             {
-                if ( artifactMetadataModel != null )
-                {
-                    if ( StringUtils.equals( repoId, artifactMetadataModel.getRepositoryId() ) && StringUtils.equals(
-                        namespace, artifactMetadataModel.getNamespace() ) && StringUtils.equals( projectId,
-                                                                                                 artifactMetadataModel.getProject() )
-                        && StringUtils.equals( projectVersion, artifactMetadataModel.getProjectVersion() ) )
-                    {
-                        versions.add( artifactMetadataModel.getVersion() );
-                    }
-                }
-                return Boolean.TRUE;
+                versions.add( artifactMetadataModel.getVersion() );
             }
-        } );
 
-        return versions;
+            return versions;
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
     }
 
     /**
@@ -729,10 +593,15 @@ public class CassandraMetadataRepository
      *
      * @param facetedMetadata
      * @param artifactMetadataModel only use for the key
+     * @param existing              whether facets may have been stored before, which are looked up to remove the
+     *                              properties that are gone
      */
     private void updateFacets( final FacetedMetadata facetedMetadata,
-                               final ArtifactMetadataModel artifactMetadataModel )
+                               final ArtifactMetadataModel artifactMetadataModel, boolean existing )
     {
+        String owner = getFacetOwnerKey( artifactMetadataModel );
+
+        List<MetadataFacetModel> previousMetadataFacetModels = null;
 
         for ( final String facetId : metadataFacetFactories.keySet() )
         {
@@ -741,34 +610,10 @@ public class CassandraMetadataRepository
             {
                 continue;
             }
-            // clean first
-
-            final List<MetadataFacetModel> metadataFacetModels = new ArrayList<MetadataFacetModel>();
-
-            getMetadataFacetModelEntityManager().visitAll( new Function<MetadataFacetModel, Boolean>()
-            {
-                @Override
-                public Boolean apply( MetadataFacetModel metadataFacetModel )
-                {
-                    ArtifactMetadataModel tmp = metadataFacetModel.getArtifactMetadataModel();
-                    if ( StringUtils.equals( metadataFacetModel.getFacetId(), facetId ) && StringUtils.equals(
-                        tmp.getRepositoryId(), artifactMetadataModel.getRepositoryId() ) && StringUtils.equals(
-                        tmp.getNamespace(), artifactMetadataModel.getNamespace() ) && StringUtils.equals(
-                        tmp.getProject(), artifactMetadataModel.getProject() ) )
-                    {
-                        metadataFacetModels.add( metadataFacetModel );
-                    }
-                    return Boolean.TRUE;
-                }
-            } );
-
-            getMetadataFacetModelEntityManager().remove( metadataFacetModels );
 
             Map<String, String> properties = metadataFacet.toProperties();
 
-            final List<MetadataFacetModel> metadataFacetModelsToAdd =
-                new ArrayList<MetadataFacetModel>( properties.size() );
-
+            Set<String> keys = new HashSet<String>( properties.size() );
             for ( Map.Entry<String, String> entry : properties.entrySet() )
             {
                 String key = new MetadataFacetModel.KeyBuilder().withKey( entry.getKey() ).withArtifactMetadataModel(
@@ -776,11 +621,31 @@ public class CassandraMetadataRepository
                 MetadataFacetModel metadataFacetModel =
                     new MetadataFacetModel( key, artifactMetadataModel, facetId, entry.getKey(), entry.getValue(),
                                             metadataFacet.getName() );
-                metadataFacetModelsToAdd.add( metadataFacetModel );
+                keys.add( key );
+                put( pendingMetadataFacets, key, metadataFacetModel );
+                index( getIndexes().getFacetEntries(), owner, key );
             }
 
-            getMetadataFacetModelEntityManager().put( metadataFacetModelsToAdd );
+            if ( existing )
+            {
+                // the properties that are overwritten are kept, clean the others
+                if ( previousMetadataFacetModels == null )
+                {
+                    previousMetadataFacetModels = getMetadataFacetModels( owner );
+                }
+
+                final List<MetadataFacetModel> metadataFacetModels = new ArrayList<MetadataFacetModel>();
+                for ( MetadataFacetModel metadataFacetModel : previousMetadataFacetModels )
+                {
+                    if ( StringUtils.equals( metadataFacetModel.getFacetId(), facetId ) && !keys.contains(
+                        metadataFacetModel.getId() ) )
+                    {
+                        metadataFacetModels.add( metadataFacetModel );
+                    }
+                }
 
+                removeMetadataFacetModels( owner, metadataFacetModels );
+            }
         }
     }
 
@@ -791,48 +656,49 @@ public class CassandraMetadataRepository
     {
         String namespaceKey =
             new Namespace.KeyBuilder().withRepositoryId( repositoryId ).withNamespace( namespaceId ).build();
-        Namespace namespace = getNamespaceEntityManager().get( namespaceKey );
-        if ( namespace == null )
+        try
         {
-            namespace = updateOrAddNamespace( repositoryId, namespaceId );
-        }
+            Namespace namespace = pendingNamespaces.get( namespaceKey );
+            if ( namespace == null )
+            {
+                namespace = updateOrAddNamespace( repositoryId, namespaceId );
+            }
 
-        String key = new Project.KeyBuilder().withNamespace( namespace ).withProjectId( projectId ).build();
+            String key = new Project.KeyBuilder().withNamespace( namespace ).withProjectId( projectId ).build();
 
-        Project project = getProjectEntityManager().get( key );
-        if ( project == null )
-        {
-            project = new Project( key, projectId, namespace );
-            getProjectEntityManager().put( project );
-        }
+            Project project = pendingProjects.get( key );
+            if ( project == null )
+            {
+                project = new Project( key, projectId, namespace );
+                put( pendingProjects, key, project );
+                index( getIndexes().getNamespaceProjects(), namespaceKey, projectId );
+            }
 
-        // we don't test of repository and namespace really exist !
-        key = new ProjectVersionMetadataModel.KeyBuilder().withRepository( repositoryId ).withNamespace(
-            namespaceId ).withProjectId( projectId ).withId( versionMetadata.getId() ).build();
+            // we don't test of repository and namespace really exist !
+            key = new ProjectVersionMetadataModel.KeyBuilder().withRepository( repositoryId ).withNamespace(
+                namespaceId ).withProjectId( projectId ).withId( versionMetadata.getId() ).build();
 
-        ProjectVersionMetadataModel projectVersionMetadataModel = getProjectVersionMetadataModelEntityManager().get( key );
+            ProjectVersionMetadataModel projectVersionMetadataModel = pendingProjectVersions.get( key );
+            boolean existing = projectVersionMetadataModel != null;
 
-        if ( projectVersionMetadataModel == null )
-        {
-            projectVersionMetadataModel =
-                new BeanReplicator().replicateBean( versionMetadata, ProjectVersionMetadataModel.class );
+            // a copy rather than the previous model, which may be being written
+            projectVersionMetadataModel = new BeanReplicator().replicateBean(
+                existing ? projectVersionMetadataModel : versionMetadata, ProjectVersionMetadataModel.class );
             projectVersionMetadataModel.setRowId( key );
-        }
-        projectVersionMetadataModel.setProjectId( projectId );
-        projectVersionMetadataModel.setNamespace( new Namespace( namespaceId, new Repository( repositoryId ) ) );
-        projectVersionMetadataModel.setCiManagement( versionMetadata.getCiManagement() );
-        projectVersionMetadataModel.setIssueManagement( versionMetadata.getIssueManagement() );
-        projectVersionMetadataModel.setOrganization( versionMetadata.getOrganization() );
-        projectVersionMetadataModel.setScm( versionMetadata.getScm() );
-
-        projectVersionMetadataModel.setMailingLists( versionMetadata.getMailingLists() );
-        projectVersionMetadataModel.setDependencies( versionMetadata.getDependencies() );
-        projectVersionMetadataModel.setLicenses( versionMetadata.getLicenses() );
+            projectVersionMetadataModel.setProjectId( projectId );
+            projectVersionMetadataModel.setNamespace( new Namespace( namespaceId, new Repository( repositoryId ) ) );
+            projectVersionMetadataModel.setCiManagement( versionMetadata.getCiManagement() );
+            projectVersionMetadataModel.setIssueManagement( versionMetadata.getIssueManagement() );
+            projectVersionMetadataModel.setOrganization( versionMetadata.getOrganization() );
+            projectVersionMetadataModel.setScm( versionMetadata.getScm() );
 
+            projectVersionMetadataModel.setMailingLists( versionMetadata.getMailingLists() );
+            projectVersionMetadataModel.setDependencies( versionMetadata.getDependencies() );
+            projectVersionMetadataModel.setLicenses( versionMetadata.getLicenses() );
 
-        try
-        {
-            getProjectVersionMetadataModelEntityManager().put( projectVersionMetadataModel );
+            put( pendingProjectVersions, key, projectVersionMetadataModel );
+            index( getIndexes().getProjectVersions(), getProjectKey( repositoryId, namespaceId, projectId ),
+                   versionMetadata.getId() );
 
             ArtifactMetadataModel artifactMetadataModel = new ArtifactMetadataModel();
             artifactMetadataModel.setArtifactMetadataModelId(
@@ -844,8 +710,9 @@ public class CassandraMetadataRepository
             artifactMetadataModel.setProject( projectId );
             artifactMetadataModel.setProjectVersion( versionMetadata.getVersion() );
             artifactMetadataModel.setVersion( versionMetadata.getVersion() );
+            artifactMetadataModel.setId( versionMetadata.getId() );
             // facets etc...
-            updateFacets( versionMetadata, artifactMetadataModel );
+            updateFacets( versionMetadata, artifactMetadataModel, existing );
         }
         catch ( PersistenceException e )
         {
@@ -853,71 +720,42 @@ public class CassandraMetadataRepository
         }
     }
 
+    @Override
+    public List<String> getMetadataFacets( final String repositoryId, final String facetId )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            flush();
+            return getIndexes().getRepositoryFacets().get( getRepositoryFacetKey( repositoryId, facetId ) );
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
 
-    private static class BooleanHolder
+    @Override
+    public boolean hasMetadataFacet( String repositoryId, String facetId )
+        throws MetadataRepositoryException
     {
-        private boolean value = false;
+        return !getMetadataFacets( repositoryId, facetId ).isEmpty();
     }
 
     @Override
-    public List<String> getMetadataFacets( final String repositoryId, final String facetId )
+    public MetadataFacet getMetadataFacet( final String repositoryId, final String facetId, final String name )
         throws MetadataRepositoryException
     {
-        // FIXME use cql query !!
-        final List<String> facets = new ArrayList<String>();
-        this.getMetadataFacetModelEntityManager().visitAll( new Function<MetadataFacetModel, Boolean>()
+        List<MetadataFacetModel> facets;
+        try
         {
-            @Override
-            public Boolean apply( MetadataFacetModel metadataFacetModel )
-            {
-                if ( metadataFacetModel != null )
-                {
-                    if ( StringUtils.equals( metadataFacetModel.getArtifactMetadataModel().getRepositoryId(),
-                                             repositoryId ) && StringUtils.equals( metadataFacetModel.getFacetId(),
-                                                                                   facetId ) )
-                    {
-                        facets.add( metadataFacetModel.getName() );
-                    }
-                }
-                return Boolean.TRUE;
-            }
-        } );
-
-        return facets;
-
-    }
-
-    @Override
-    public boolean hasMetadataFacet( String repositoryId, String facetId )
-        throws MetadataRepositoryException
-    {
-        return !getMetadataFacets( repositoryId, facetId ).isEmpty();
-    }
-
-    @Override
-    public MetadataFacet getMetadataFacet( final String repositoryId, final String facetId, final String name )
-        throws MetadataRepositoryException
-    {
-        // FIXME use cql query !!
-        final List<MetadataFacetModel> facets = new ArrayList<MetadataFacetModel>();
-        this.getMetadataFacetModelEntityManager().visitAll( new Function<MetadataFacetModel, Boolean>()
+            flush();
+            facets = getMetadataFacetModels( getRepositoryFacetOwnerKey( repositoryId, facetId, name ) );
+        }
+        catch ( PersistenceException e )
         {
-            @Override
-            public Boolean apply( MetadataFacetModel metadataFacetModel )
-            {
-                if ( metadataFacetModel != null )
-                {
-                    if ( StringUtils.equals( metadataFacetModel.getArtifactMetadataModel().getRepositoryId(),
-                                             repositoryId ) && StringUtils.equals( metadataFacetModel.getFacetId(),
-                                                                                   facetId ) && StringUtils.equals(
-                        metadataFacetModel.getName(), name ) )
-                    {
-                        facets.add( metadataFacetModel );
-                    }
-                }
-                return Boolean.TRUE;
-            }
-        } );
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
 
         if ( facets.isEmpty() )
         {
@@ -933,7 +771,11 @@ public class CassandraMetadataRepository
         Map<String, String> map = new HashMap<String, String>( facets.size() );
         for ( MetadataFacetModel metadataFacetModel : facets )
         {
-            map.put( metadataFacetModel.getKey(), metadataFacetModel.getValue() );
+            // the entry holding the name of a facet without properties has no key
+            if ( metadataFacetModel.getKey() != null )
+            {
+                map.put( metadataFacetModel.getKey(), metadataFacetModel.getValue() );
+            }
         }
         metadataFacet.fromProperties( map );
         return metadataFacet;
@@ -949,31 +791,26 @@ public class CassandraMetadataRepository
             return;
         }
 
+        String owner = getRepositoryFacetOwnerKey( repositoryId, metadataFacet.getFacetId(), metadataFacet.getName() );
+        index( getIndexes().getRepositoryFacets(), getRepositoryFacetKey( repositoryId, metadataFacet.getFacetId() ),
+               metadataFacet.getName() );
+
+        // we need to store the repositoryId
+        ArtifactMetadataModel artifactMetadataModel = new ArtifactMetadataModel();
+        artifactMetadataModel.setRepositoryId( repositoryId );
+
         if ( metadataFacet.toProperties().isEmpty() )
         {
             String key = new MetadataFacetModel.KeyBuilder().withRepositoryId( repositoryId ).withFacetId(
                 metadataFacet.getFacetId() ).withName( metadataFacet.getName() ).build();
-            MetadataFacetModel metadataFacetModel = getMetadataFacetModelEntityManager().get( key );
-            if ( metadataFacetModel == null )
-            {
-                metadataFacetModel = new MetadataFacetModel();
-            }
-            // we need to store the repositoryId
-            ArtifactMetadataModel artifactMetadataModel = new ArtifactMetadataModel();
-            artifactMetadataModel.setRepositoryId( repositoryId );
+            MetadataFacetModel metadataFacetModel = new MetadataFacetModel();
             metadataFacetModel.setArtifactMetadataModel( artifactMetadataModel );
             metadataFacetModel.setId( key );
             metadataFacetModel.setFacetId( metadataFacet.getFacetId() );
             metadataFacetModel.setName( metadataFacet.getName() );
 
-            try
-            {
-                getMetadataFacetModelEntityManager().put( metadataFacetModel );
-            }
-            catch ( PersistenceException e )
-            {
-                throw new MetadataRepositoryException( e.getMessage(), e );
-            }
+            put( pendingMetadataFacets, key, metadataFacetModel );
+            index( getIndexes().getFacetEntries(), owner, key );
         }
         else
         {
@@ -983,29 +820,12 @@ public class CassandraMetadataRepository
                 String key = new MetadataFacetModel.KeyBuilder().withRepositoryId( repositoryId ).withFacetId(
                     metadataFacet.getFacetId() ).withName( metadataFacet.getName() ).withKey( entry.getKey() ).build();
 
-                MetadataFacetModel metadataFacetModel = getMetadataFacetModelEntityManager().get( key );
-                if ( metadataFacetModel == null )
-                {
-                    metadataFacetModel = new MetadataFacetModel();
-                    // we need to store the repositoryId
-                    ArtifactMetadataModel artifactMetadataModel = new ArtifactMetadataModel();
-                    artifactMetadataModel.setRepositoryId( repositoryId );
-                    metadataFacetModel.setArtifactMetadataModel( artifactMetadataModel );
-                    metadataFacetModel.setId( key );
-                    metadataFacetModel.setKey( entry.getKey() );
-                    metadataFacetModel.setFacetId( metadataFacet.getFacetId() );
-                    metadataFacetModel.setName( metadataFacet.getName() );
-                }
-                metadataFacetModel.setValue( entry.getValue() );
-                try
-                {
-                    getMetadataFacetModelEntityManager().put( metadataFacetModel );
-                }
-                catch ( PersistenceException e )
-                {
-                    throw new MetadataRepositoryException( e.getMessage(), e );
-                }
+                MetadataFacetModel metadataFacetModel =
+                    new MetadataFacetModel( key, artifactMetadataModel, metadataFacet.getFacetId(), entry.getKey(),
+                                            entry.getValue(), metadataFacet.getName() );
 
+                put( pendingMetadataFacets, key, metadataFacetModel );
+                index( getIndexes().getFacetEntries(), owner, key );
             }
         }
     }
@@ -1015,29 +835,20 @@ public class CassandraMetadataRepository
         throws MetadataRepositoryException
     {
         logger.debug( "removeMetadataFacets repositoryId: '{}', facetId: '{}'", repositoryId, facetId );
-        final List<MetadataFacetModel> toRemove = new ArrayList<MetadataFacetModel>();
-
-        // FIXME cql query
-        getMetadataFacetModelEntityManager().visitAll( new Function<MetadataFacetModel, Boolean>()
+        try
         {
-            @Override
-            public Boolean apply( MetadataFacetModel metadataFacetModel )
+            flushForRemoval();
+            String facetKey = getRepositoryFacetKey( repositoryId, facetId );
+            for ( String name : getIndexes().getRepositoryFacets().get( facetKey ) )
             {
-                if ( metadataFacetModel != null )
-                {
-                    if ( StringUtils.equals( metadataFacetModel.getArtifactMetadataModel().getRepositoryId(),
-                                             repositoryId ) && StringUtils.equals( metadataFacetModel.getFacetId(),
-                                                                                   facetId ) )
-                    {
-                        toRemove.add( metadataFacetModel );
-                    }
-                }
-                return Boolean.TRUE;
+                removeMetadataFacet( repositoryId, facetId, name );
             }
-        } );
-        logger.debug( "removeMetadataFacets repositoryId: '{}', facetId: '{}', toRemove: {}", repositoryId, facetId,
-                      toRemove );
-        getMetadataFacetModelEntityManager().remove( toRemove );
+            getIndexes().getRepositoryFacets().removeAll( Collections.singletonList( facetKey ) );
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
     }
 
     @Override
@@ -1045,30 +856,21 @@ public class CassandraMetadataRepository
         throws MetadataRepositoryException
     {
         logger.debug( "removeMetadataFacets repositoryId: '{}', facetId: '{}'", repositoryId, facetId );
-        final List<MetadataFacetModel> toRemove = new ArrayList<MetadataFacetModel>();
-
-        // FIXME cql query
-        getMetadataFacetModelEntityManager().visitAll( new Function<MetadataFacetModel, Boolean>()
+        try
         {
-            @Override
-            public Boolean apply( MetadataFacetModel metadataFacetModel )
-            {
-                if ( metadataFacetModel != null )
-                {
-                    if ( StringUtils.equals( metadataFacetModel.getArtifactMetadataModel().getRepositoryId(),
-                                             repositoryId ) && StringUtils.equals( metadataFacetModel.getFacetId(),
-                                                                                   facetId ) && StringUtils.equals(
-                        metadataFacetModel.getName(), name ) )
-                    {
-                        toRemove.add( metadataFacetModel );
-                    }
-                }
-                return Boolean.TRUE;
-            }
-        } );
-        logger.debug( "removeMetadataFacets repositoryId: '{}', facetId: '{}', toRemove: {}", repositoryId, facetId,
-                      toRemove );
-        getMetadataFacetModelEntityManager().remove( toRemove );
+            flushForRemoval();
+            String owner = getRepositoryFacetOwnerKey( repositoryId, facetId, name );
+            List<String> toRemove = getIndexes().getFacetEntries().get( owner );
+            logger.debug( "removeMetadataFacets repositoryId: '{}', facetId: '{}', toRemove: {}", repositoryId,
+                          facetId, toRemove );
+            getMetadataFacetModelEntityManager().delete( toRemove );
+            getIndexes().getFacetEntries().removeAll( Collections.singletonList( owner ) );
+            getIndexes().getRepositoryFacets().remove( getRepositoryFacetKey( repositoryId, facetId ), name );
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
     }
 
     @Override
@@ -1076,103 +878,87 @@ public class CassandraMetadataRepository
                                                            final Date endTime )
         throws MetadataRepositoryException
     {
-
-        final List<ArtifactMetadataModel> artifactMetadataModels = new ArrayList<ArtifactMetadataModel>();
-
-        // FIXME cql query
-        getArtifactMetadataModelEntityManager().visitAll( new Function<ArtifactMetadataModel, Boolean>()
+        try
         {
-            @Override
-            public Boolean apply( ArtifactMetadataModel artifactMetadataModel )
+            flush();
+            // the artifacts are listed by the day they were gathered, select the days first
+            long startDay = startTime != null ? getGatheredDay( startTime.getTime() ) : Long.MIN_VALUE;
+            long endDay = endTime != null ? getGatheredDay( endTime.getTime() ) : Long.MAX_VALUE;
+            Set<String> keys = new HashSet<String>();
+            for ( String gatheredDay : getIndexes().getGatheredDays().get( repositoryId ) )
             {
-                if ( artifactMetadataModel != null )
+                long day = Long.parseLong( gatheredDay );
+                if ( day >= startDay && day <= endDay )
                 {
-                    if ( StringUtils.equals( artifactMetadataModel.getRepositoryId(), repositoryId )
-                        && artifactMetadataModel.getNamespace() != null &&
-                        artifactMetadataModel.getProject() != null && artifactMetadataModel.getId() != null )
-                    {
-
-                        Date when = artifactMetadataModel.getWhenGathered();
-                        if ( ( startTime != null ? when.getTime() >= startTime.getTime() : true ) && ( endTime != null ?
-                            when.getTime() <= endTime.getTime() : true ) )
-                        {
-                            logger.debug( "getArtifactsByDateRange visitAll found: {}", artifactMetadataModel );
-                            artifactMetadataModels.add( artifactMetadataModel );
-                        }
-                    }
+                    keys.addAll( getIndexes().getGatheredArtifacts().get( getGatheredKey( repositoryId, day ) ) );
                 }
-                return Boolean.TRUE;
             }
-        } );
-        List<ArtifactMetadata> artifactMetadatas = new ArrayList<ArtifactMetadata>( artifactMetadataModels.size() );
 
-        for ( ArtifactMetadataModel model : artifactMetadataModels )
-        {
-            ArtifactMetadata artifactMetadata = new BeanReplicator().replicateBean( model, ArtifactMetadata.class );
-            populateFacets( artifactMetadata );
-            artifactMetadatas.add( artifactMetadata );
-        }
+            final List<ArtifactMetadataModel> artifactMetadataModels = new ArrayList<ArtifactMetadataModel>();
+            for ( ArtifactMetadataModel artifactMetadataModel : getArtifactMetadataModels( keys ) )
+            {
+                Date when = artifactMetadataModel.getWhenGathered();
+                if ( ( startTime != null ? when.getTime() >= startTime.getTime() : true ) && ( endTime != null ?
+                    when.getTime() <= endTime.getTime() : true ) )
+                {
+                    logger.debug( "getArtifactsByDateRange found: {}", artifactMetadataModel );
+                    artifactMetadataModels.add( artifactMetadataModel );
+                }
+            }
 
-        // FIXME facets ?
+            List<ArtifactMetadata> artifactMetadatas = toArtifactMetadatas( artifactMetadataModels );
 
-        logger.debug( "getArtifactsByDateRange repositoryId: {}, startTime: {}, endTime: {}, artifactMetadatas: {}",
-                      repositoryId, startTime, endTime, artifactMetadatas );
+            logger.debug( "getArtifactsByDateRange repositoryId: {}, startTime: {}, endTime: {}, artifactMetadatas: {}",
+                          repositoryId, startTime, endTime, artifactMetadatas );
 
-        return artifactMetadatas;
+            return artifactMetadatas;
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
     }
 
-    protected void populateFacets( final ArtifactMetadata artifactMetadata )
+    /**
+     * Look the artifact up among the pending writes of the session before the stored ones, so that the totals do not
+     * flush the session before each update. The artifact is remembered, and found again without a read by the update.
+     */
+    public ArtifactMetadata getArtifact( String repositoryId, String namespace, String projectId,
+                                         String projectVersion, String id )
+        throws MetadataResolutionException
     {
-        final List<MetadataFacetModel> metadataFacetModels = new ArrayList<MetadataFacetModel>();
-
-        getMetadataFacetModelEntityManager().visitAll( new Function<MetadataFacetModel, Boolean>()
+        String key = new ArtifactMetadataModel.KeyBuilder().withRepositoryId( repositoryId ).withNamespace(
+            namespace ).withProject( projectId ).withProjectVersion( projectVersion ).withId( id ).build();
+        try
         {
-            @Override
-            public Boolean apply( MetadataFacetModel metadataFacetModel )
+            ArtifactMetadataModel artifactMetadataModel = pendingArtifacts.get( key );
+            if ( artifactMetadataModel == null )
             {
-                if ( metadataFacetModel != null )
-                {
-                    ArtifactMetadataModel artifactMetadataModel = metadataFacetModel.getArtifactMetadataModel();
-                    if ( artifactMetadataModel != null )
-                    {
-                        if ( StringUtils.equals( artifactMetadata.getRepositoryId(),
-                                                 artifactMetadataModel.getRepositoryId() ) && StringUtils.equals(
-                            artifactMetadata.getNamespace(), artifactMetadataModel.getNamespace() )
-                            && StringUtils.equals( artifactMetadata.getRepositoryId(),
-                                                   artifactMetadataModel.getRepositoryId() ) && StringUtils.equals(
-                            artifactMetadata.getProject(), artifactMetadataModel.getProject() ) && StringUtils.equals(
-                            artifactMetadata.getId(), artifactMetadataModel.getId() ) )
-                        {
-                            metadataFacetModels.add( metadataFacetModel );
-                        }
-                    }
-                }
-                return Boolean.TRUE;
+                return null;
             }
-        } );
-        Map<String, Map<String, String>> facetValuesPerFacet = new HashMap<String, Map<String, String>>();
-
-        for ( MetadataFacetModel model : metadataFacetModels )
-        {
-            Map<String, String> values = facetValuesPerFacet.get( model.getName() );
-            if ( values == null )
+            if ( pendingArtifacts.isPending( key ) )
             {
-                values = new HashMap<String, String>();
+                // its facets are read from the stored ones
+                flush();
             }
-            values.put( model.getKey(), model.getValue() );
-            facetValuesPerFacet.put( model.getName(), values );
+            return toArtifactMetadatas( Collections.singletonList( artifactMetadataModel ) ).get( 0 );
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
         }
+    }
+
+    protected void populateFacets( final ArtifactMetadata artifactMetadata )
+    {
+        String owner = new ArtifactMetadataModel.KeyBuilder().withRepositoryId(
+            artifactMetadata.getRepositoryId() ).withNamespace( artifactMetadata.getNamespace() ).withProject(
+            artifactMetadata.getProject() ).withProjectVersion( artifactMetadata.getProjectVersion() ).withId(
+            artifactMetadata.getId() ).build();
 
-        for ( Map.Entry<String, Map<String, String>> entry : facetValuesPerFacet.entrySet() )
+        for ( MetadataFacet metadataFacet : toMetadataFacets( artifactMetadata.getRepositoryId(),
+                                                              getMetadataFacetModels( owner ) ) )
         {
-            MetadataFacetFactory factory = metadataFacetFactories.get( entry.getKey() );
-            if ( factory == null )
-            {
-                continue;
-            }
-            MetadataFacet metadataFacet =
-                factory.createMetadataFacet( artifactMetadata.getRepositoryId(), entry.getKey() );
-            metadataFacet.fromProperties( entry.getValue() );
             artifactMetadata.addFacet( metadataFacet );
         }
     }
@@ -1181,49 +967,23 @@ public class CassandraMetadataRepository
     public List<ArtifactMetadata> getArtifactsByChecksum( final String repositoryId, final String checksum )
         throws MetadataRepositoryException
     {
-        final List<ArtifactMetadataModel> artifactMetadataModels = new ArrayList<ArtifactMetadataModel>();
-
-        if ( logger.isDebugEnabled() )
+        try
         {
-            logger.debug( "all ArtifactMetadataModel: {}", getArtifactMetadataModelEntityManager().getAll() );
-        }
+            flush();
+            List<ArtifactMetadataModel> artifactMetadataModels = getArtifactMetadataModels(
+                getIndexes().getChecksumArtifacts().get( getChecksumKey( repositoryId, checksum ) ) );
 
-        // FIXME cql query
-        getArtifactMetadataModelEntityManager().visitAll( new Function<ArtifactMetadataModel, Boolean>()
-        {
-            @Override
-            public Boolean apply( ArtifactMetadataModel artifactMetadataModel )
-            {
-                if ( artifactMetadataModel != null )
-                {
-                    if ( StringUtils.equals( artifactMetadataModel.getRepositoryId(), repositoryId )
-                        && artifactMetadataModel.getNamespace() != null &&
-                        artifactMetadataModel.getProject() != null && artifactMetadataModel.getId() != null )
-                    {
+            List<ArtifactMetadata> artifactMetadatas = toArtifactMetadatas( artifactMetadataModels );
 
-                        if ( StringUtils.equals( checksum, artifactMetadataModel.getMd5() ) || StringUtils.equals(
-                            checksum, artifactMetadataModel.getSha1() ) )
-                        {
-                            artifactMetadataModels.add( artifactMetadataModel );
-                        }
-                    }
-                }
-                return Boolean.TRUE;
-            }
-        } );
-        List<ArtifactMetadata> artifactMetadatas = new ArrayList<ArtifactMetadata>( artifactMetadataModels.size() );
+            logger.debug( "getArtifactsByChecksum repositoryId: {}, checksum: {}, artifactMetadatas: {}",
+                          repositoryId, checksum, artifactMetadatas );
 
-        for ( ArtifactMetadataModel model : artifactMetadataModels )
+            return artifactMetadatas;
+        }
+        catch ( PersistenceException e )
         {
-            ArtifactMetadata artifactMetadata = new BeanReplicator().replicateBean( model, ArtifactMetadata.class );
-            populateFacets( artifactMetadata );
-            artifactMetadatas.add( artifactMetadata );
+            throw new MetadataRepositoryException( e.getMessage(), e );
         }
-
-        logger.debug( "getArtifactsByChecksum repositoryId: {}, checksum: {}, artifactMetadatas: {}", repositoryId,
-                      checksum, artifactMetadatas );
-
-        return artifactMetadatas;
     }
 
     @Override
@@ -1237,19 +997,33 @@ public class CassandraMetadataRepository
             new ArtifactMetadataModel.KeyBuilder().withRepositoryId( repositoryId ).withNamespace( namespace ).withId(
                 id ).withProjectVersion( version ).withProject( project ).build();
 
-        ArtifactMetadataModel artifactMetadataModel = new ArtifactMetadataModel();
-        artifactMetadataModel.setArtifactMetadataModelId( key );
+        try
+        {
+            flushForRemoval();
+            ArtifactMetadataModel artifactMetadataModel = getArtifactMetadataModelEntityManager().get( key );
+            if ( artifactMetadataModel != null )
+            {
+                removeArtifactMetadataModels( Collections.singletonList( artifactMetadataModel ) );
+            }
 
-        getArtifactMetadataModelEntityManager().remove( artifactMetadataModel );
+            key = new ProjectVersionMetadataModel.KeyBuilder().withId( version ).withRepository(
+                repositoryId ).withNamespace( namespace ).withProjectId( project ).build();
 
-        key =
-            new ProjectVersionMetadataModel.KeyBuilder().withId( version ).withRepository( repositoryId ).withNamespace(
-                namespace ).withProjectId( project ).build();
+            ProjectVersionMetadataModel projectVersionMetadataModel = new ProjectVersionMetadataModel();
+            projectVersionMetadataModel.setRowId( key );
 
-        ProjectVersionMetadataModel projectVersionMetadataModel = new ProjectVersionMetadataModel();
-        projectVersionMetadataModel.setRowId( key );
+            getProjectVersionMetadataModelEntityManager().remove( projectVersionMetadataModel );
 
-        getProjectVersionMetadataModelEntityManager().remove( projectVersionMetadataModel );
+            // the version is still listed while it has artifacts
+            if ( getIndexes().getProjectVersionArtifacts().get( key ).isEmpty() )
+            {
+                getIndexes().getProjectVersions().remove( getProjectKey( repositoryId, namespace, project ), version );
+            }
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
     }
 
     @Override
@@ -1264,10 +1038,19 @@ public class CassandraMetadataRepository
                 artifactMetadata.getNamespace() ).withId( artifactMetadata.getId() ).withProjectVersion(
                 baseVersion ).withProject( artifactMetadata.getProject() ).build();
 
-        ArtifactMetadataModel artifactMetadataModel = new ArtifactMetadataModel();
-        artifactMetadataModel.setArtifactMetadataModelId( key );
-
-        getArtifactMetadataModelEntityManager().remove( artifactMetadataModel );
+        try
+        {
+            flushForRemoval();
+            ArtifactMetadataModel artifactMetadataModel = getArtifactMetadataModelEntityManager().get( key );
+            if ( artifactMetadataModel != null )
+            {
+                removeArtifactMetadataModels( Collections.singletonList( artifactMetadataModel ) );
+            }
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
     }
 
     @Override
@@ -1275,55 +1058,24 @@ public class CassandraMetadataRepository
                                 final String version, final MetadataFacet metadataFacet )
         throws MetadataRepositoryException
     {
-        final List<ArtifactMetadataModel> artifactMetadataModels = new ArrayList<ArtifactMetadataModel>();
-        getArtifactMetadataModelEntityManager().visitAll( new Function<ArtifactMetadataModel, Boolean>()
+        try
         {
-            @Override
-            public Boolean apply( ArtifactMetadataModel artifactMetadataModel )
+            flushForRemoval();
+            final List<ArtifactMetadataModel> artifactMetadataModels = new ArrayList<ArtifactMetadataModel>();
+            for ( ArtifactMetadataModel artifactMetadataModel : getArtifactMetadataModels( repositoryId, namespace,
+                                                                                           project, version ) )
             {
-                if ( artifactMetadataModel != null )
+                if ( StringUtils.equals( project, artifactMetadataModel.getVersion() ) )
                 {
-                    if ( StringUtils.equals( repositoryId, artifactMetadataModel.getRepositoryId() )
-                        && StringUtils.equals( namespace, artifactMetadataModel.getNamespace() ) && StringUtils.equals(
-                        project, artifactMetadataModel.getProject() ) && StringUtils.equals( project,
-                                                                                             artifactMetadataModel.getVersion() ) )
-                    {
-                        artifactMetadataModels.add( artifactMetadataModel );
-                    }
+                    artifactMetadataModels.add( artifactMetadataModel );
                 }
-                return Boolean.TRUE;
             }
-        } );
-        getArtifactMetadataModelEntityManager().remove( artifactMetadataModels );
-        /*
-        getMetadataFacetModelEntityManager().visitAll( new Function<MetadataFacetModel, Boolean>()
+            removeArtifactMetadataModels( artifactMetadataModels );
+        }
+        catch ( PersistenceException e )
         {
-            @Override
-            public Boolean apply( MetadataFacetModel metadataFacetModel )
-            {
-                if ( metadataFacetModel != null )
-                {
-                    ArtifactMetadataModel artifactMetadataModel = metadataFacetModel.getArtifactMetadataModel();
-                    if ( artifactMetadataModel != null )
-                    {
-                        if ( StringUtils.equals( repositoryId, artifactMetadataModel.getRepositoryId() )
-                            && StringUtils.equals( namespace, artifactMetadataModel.getNamespace() )
-                            && StringUtils.equals( project, artifactMetadataModel.getProject() ) && StringUtils.equals(
-                            version, artifactMetadataModel.getVersion() ) )
-                        {
-                            if ( StringUtils.equals( metadataFacetModel.getFacetId(), metadataFacet.getFacetId() )
-                                && StringUtils.equals( metadataFacetModel.getName(), metadataFacet.getName() ) )
-                            {
-                                metadataFacetModels.add( metadataFacetModel );
-                            }
-                        }
-                    }
-                }
-                return Boolean.TRUE;
-            }
-        } );
-        getMetadataFacetModelEntityManager().remove( metadataFacetModels );
-        */
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
     }
 
 
@@ -1331,35 +1083,30 @@ public class CassandraMetadataRepository
     public List<ArtifactMetadata> getArtifacts( final String repositoryId )
         throws MetadataRepositoryException
     {
-        final List<ArtifactMetadataModel> artifactMetadataModels = new ArrayList<ArtifactMetadataModel>();
-        // FIXME use cql query !
-        getArtifactMetadataModelEntityManager().visitAll( new Function<ArtifactMetadataModel, Boolean>()
+        try
         {
-            @Override
-            public Boolean apply( ArtifactMetadataModel artifactMetadataModel )
+            flush();
+            final List<ArtifactMetadataModel> artifactMetadataModels = new ArrayList<ArtifactMetadataModel>();
+            for ( String namespace : getIndexes().getRepositoryNamespaces().get( repositoryId ) )
             {
-                if ( artifactMetadataModel != null )
+                for ( String project : getIndexes().getNamespaceProjects().get(
+                    getNamespaceKey( repositoryId, namespace ) ) )
                 {
-                    if ( StringUtils.equals( repositoryId, artifactMetadataModel.getRepositoryId() ) )
+                    for ( String projectVersion : getIndexes().getProjectVersions().get(
+                        getProjectKey( repositoryId, namespace, project ) ) )
                     {
-                        artifactMetadataModels.add( artifactMetadataModel );
+                        artifactMetadataModels.addAll(
+                            getArtifactMetadataModels( repositoryId, namespace, project, projectVersion ) );
                     }
                 }
-
-                return Boolean.TRUE;
             }
-        } );
 
-        List<ArtifactMetadata> artifactMetadatas = new ArrayList<ArtifactMetadata>( artifactMetadataModels.size() );
-
-        for ( ArtifactMetadataModel model : artifactMetadataModels )
+            return toArtifactMetadatas( artifactMetadataModels );
+        }
+        catch ( PersistenceException e )
         {
-            ArtifactMetadata artifactMetadata = new BeanReplicator().replicateBean( model, ArtifactMetadata.class );
-            populateFacets( artifactMetadata );
-            artifactMetadatas.add( artifactMetadata );
+            throw new MetadataRepositoryException( e.getMessage(), e );
         }
-
-        return artifactMetadatas;
     }
 
     @Override
@@ -1367,29 +1114,18 @@ public class CassandraMetadataRepository
         throws MetadataResolutionException
     {
         //basically just checking it exists
-        // FIXME use cql query
-
-        final BooleanHolder booleanHolder = new BooleanHolder();
-
-        getProjectEntityManager().visitAll( new Function<Project, Boolean>()
+        Project project;
+        try
         {
-            @Override
-            public Boolean apply( Project project )
-            {
-                if ( project != null )
-                {
-                    if ( StringUtils.equals( repoId, project.getNamespace().getRepository().getName() )
-                        && StringUtils.equals( namespace, project.getNamespace().getName() ) && StringUtils.equals( id,
-                                                                                                                    project.getProjectId() ) )
-                    {
-                        booleanHolder.value = true;
-                    }
-                }
-                return Boolean.TRUE;
-            }
-        } );
+            flush();
+            project = getProjectEntityManager().get( getProjectKey( repoId, namespace, id ) );
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
 
-        if ( !booleanHolder.value )
+        if ( project == null )
         {
             return null;
         }
@@ -1412,7 +1148,16 @@ public class CassandraMetadataRepository
         String key = new ProjectVersionMetadataModel.KeyBuilder().withRepository( repoId ).withNamespace(
             namespace ).withProjectId( projectId ).withId( projectVersion ).build();
 
-        ProjectVersionMetadataModel projectVersionMetadataModel = getProjectVersionMetadataModelEntityManager().get( key );
+        ProjectVersionMetadataModel projectVersionMetadataModel;
+        try
+        {
+            flush();
+            projectVersionMetadataModel = getProjectVersionMetadataModelEntityManager().get( key );
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
 
         if ( projectVersionMetadataModel == null )
         {
@@ -1436,53 +1181,19 @@ public class CassandraMetadataRepository
         // FIXME complete collections !!
 
         // facets
-        final List<MetadataFacetModel> metadataFacetModels = new ArrayList<MetadataFacetModel>();
-        // FIXME use cql query
-        getMetadataFacetModelEntityManager().visitAll( new Function<MetadataFacetModel, Boolean>()
-        {
-            @Override
-            public Boolean apply( MetadataFacetModel metadataFacetModel )
-            {
-                if ( metadataFacetModel != null )
-                {
-                    if ( StringUtils.equals( repoId, metadataFacetModel.getArtifactMetadataModel().getRepositoryId() )
-                        && StringUtils.equals( namespace, metadataFacetModel.getArtifactMetadataModel().getNamespace() )
-                        && StringUtils.equals( projectId, metadataFacetModel.getArtifactMetadataModel().getProject() )
-                        && StringUtils.equals( projectVersion,
-                                               metadataFacetModel.getArtifactMetadataModel().getProjectVersion() ) )
-                    {
-                        metadataFacetModels.add( metadataFacetModel );
-                    }
-                }
-                return Boolean.TRUE;
-            }
-        } );
-        Map<String, Map<String, String>> metadataFacetsPerFacetIds = new HashMap<String, Map<String, String>>();
-        for ( MetadataFacetModel metadataFacetModel : metadataFacetModels )
+        try
         {
-
-            Map<String, String> metaValues = metadataFacetsPerFacetIds.get( metadataFacetModel.getFacetId() );
-            if ( metaValues == null )
+            String owner = new ArtifactMetadataModel.KeyBuilder().withRepositoryId( repoId ).withNamespace(
+                namespace ).withProject( projectId ).withProjectVersion( projectVersion ).withId(
+                projectVersion ).build();
+            for ( MetadataFacet metadataFacet : toMetadataFacets( repoId, getMetadataFacetModels( owner ) ) )
             {
-                metaValues = new HashMap<String, String>();
-                metadataFacetsPerFacetIds.put( metadataFacetModel.getFacetId(), metaValues );
+                projectVersionMetadata.addFacet( metadataFacet );
             }
-            metaValues.put( metadataFacetModel.getKey(), metadataFacetModel.getValue() );
-
         }
-
-        if ( !metadataFacetsPerFacetIds.isEmpty() )
+        catch ( PersistenceException e )
         {
-            for ( Map.Entry<String, Map<String, String>> entry : metadataFacetsPerFacetIds.entrySet() )
-            {
-                MetadataFacetFactory metadataFacetFactory = metadataFacetFactories.get( entry.getKey() );
-                if ( metadataFacetFactory != null )
-                {
-                    MetadataFacet metadataFacet = metadataFacetFactory.createMetadataFacet( repoId, entry.getKey() );
-                    metadataFacet.fromProperties( entry.getValue() );
-                    projectVersionMetadata.addFacet( metadataFacet );
-                }
-            }
+            throw new MetadataResolutionException( e.getMessage(), e );
         }
 
         return projectVersionMetadata;
@@ -1502,84 +1213,220 @@ public class CassandraMetadataRepository
     public Collection<String> getProjects( final String repoId, final String namespace )
         throws MetadataResolutionException
     {
-        final Set<String> projects = new HashSet<String>();
+        try
+        {
+            flush();
+            return new HashSet<String>(
+                getIndexes().getNamespaceProjects().get( getNamespaceKey( repoId, namespace ) ) );
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
+    }
+
+
+    @Override
+    public void removeProjectVersion( final String repoId, final String namespace, final String projectId,
+                                      final String projectVersion )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            flushForRemoval();
+            if ( removeProjectVersionContent( repoId, namespace, projectId, projectVersion ) )
+            {
+                getIndexes().getProjectVersions().remove( getProjectKey( repoId, namespace, projectId ),
+                                                          projectVersion );
+            }
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    public Collection<ArtifactMetadata> getArtifacts( final String repoId, final String namespace,
+                                                      final String projectId, final String projectVersion )
+        throws MetadataResolutionException
+    {
+        try
+        {
+            flush();
+            return toArtifactMetadatas( getArtifactMetadataModels( repoId, namespace, projectId, projectVersion ) );
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Visit all the entities once to list them in the query-driven column families, such as after upgrading from a
+     * version without them. Entries already listed are written again, which is harmless.
+     */
+    public void rebuildIndexes()
+    {
+        final CassandraIndexes indexes = getIndexes();
+
+        getNamespaceEntityManager().visitAll( new Function<Namespace, Boolean>()
+        {
+            @Override
+            public Boolean apply( Namespace namespace )
+            {
+                if ( namespace != null && namespace.getRepository() != null )
+                {
+                    indexes.getRepositoryNamespaces().add( namespace.getRepository().getId(), namespace.getName() );
+                }
+                return Boolean.TRUE;
+            }
+        } );
 
-        // FIXME use cql query
         getProjectEntityManager().visitAll( new Function<Project, Boolean>()
         {
             @Override
             public Boolean apply( Project project )
             {
-                if ( project != null )
+                if ( project != null && project.getNamespace() != null )
                 {
-                    if ( StringUtils.equals( repoId, project.getNamespace().getRepository().getName() )
-                        && StringUtils.startsWith( project.getNamespace().getName(), namespace ) )
-                    {
-                        projects.add( project.getProjectId() );
-                    }
+                    indexes.getNamespaceProjects().add(
+                        new Namespace.KeyBuilder().withNamespace( project.getNamespace() ).build(),
+                        project.getProjectId() );
+                }
+                return Boolean.TRUE;
+            }
+        } );
+
+        getProjectVersionMetadataModelEntityManager().visitAll( new Function<ProjectVersionMetadataModel, Boolean>()
+        {
+            @Override
+            public Boolean apply( ProjectVersionMetadataModel projectVersionMetadataModel )
+            {
+                if ( projectVersionMetadataModel != null && projectVersionMetadataModel.getNamespace() != null )
+                {
+                    Namespace namespace = projectVersionMetadataModel.getNamespace();
+                    indexes.getProjectVersions().add(
+                        getProjectKey( namespace.getRepository().getId(), namespace.getName(),
+                                       projectVersionMetadataModel.getProjectId() ),
+                        projectVersionMetadataModel.getId() );
                 }
                 return Boolean.TRUE;
             }
         } );
-        /*
 
         getArtifactMetadataModelEntityManager().visitAll( new Function<ArtifactMetadataModel, Boolean>()
         {
             @Override
             public Boolean apply( ArtifactMetadataModel artifactMetadataModel )
             {
-                if ( artifactMetadataModel != null )
+                if ( artifactMetadataModel != null && artifactMetadataModel.getNamespace() != null
+                    && artifactMetadataModel.getProject() != null && artifactMetadataModel.getId() != null )
                 {
-                    if ( StringUtils.equals( repoId, artifactMetadataModel.getRepositoryId() ) && StringUtils.equals(
-                        namespace, artifactMetadataModel.getNamespace() ) )
+                    MutationBatch mutationBatch = prepareMutationBatch();
+                    indexArtifact( mutationBatch, artifactMetadataModel );
+                    execute( mutationBatch );
+                }
+                return Boolean.TRUE;
+            }
+        } );
+
+        getMetadataFacetModelEntityManager().visitAll( new Function<MetadataFacetModel, Boolean>()
+        {
+            @Override
+            public Boolean apply( MetadataFacetModel metadataFacetModel )
+            {
+                if ( metadataFacetModel != null && metadataFacetModel.getArtifactMetadataModel() != null )
+                {
+                    ArtifactMetadataModel artifactMetadataModel = metadataFacetModel.getArtifactMetadataModel();
+                    if ( artifactMetadataModel.getNamespace() == null )
+                    {
+                        // a facet of the repository
+                        String repositoryId = artifactMetadataModel.getRepositoryId();
+                        indexes.getRepositoryFacets().add(
+                            getRepositoryFacetKey( repositoryId, metadataFacetModel.getFacetId() ),
+                            metadataFacetModel.getName() );
+                        indexes.getFacetEntries().add(
+                            getRepositoryFacetOwnerKey( repositoryId, metadataFacetModel.getFacetId(),
+                                                        metadataFacetModel.getName() ), metadataFacetModel.getId() );
+                    }
+                    else
                     {
-                        projects.add( artifactMetadataModel.getProject() );
+                        indexes.getFacetEntries().add( getFacetOwnerKey( artifactMetadataModel ),
+                                                       metadataFacetModel.getId() );
                     }
                 }
                 return Boolean.TRUE;
             }
         } );
-        */
-        return projects;
     }
 
+    @Override
+    public void save()
+    {
+        logger.trace( "save" );
+        flush();
+    }
 
     @Override
-    public void removeProjectVersion( final String repoId, final String namespace, final String projectId,
-                                      final String projectVersion )
+    public void close()
         throws MetadataRepositoryException
     {
+        logger.trace( "close" );
+        // the writes were made as they came before being batched, so they are not dropped without a save
+        try
+        {
+            flush();
+        }
+        catch ( PersistenceException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
 
-        final List<ArtifactMetadataModel> artifactMetadataModels = new ArrayList<ArtifactMetadataModel>();
+    @Override
+    public void revert()
+    {
+        logger.warn( "CassandraMetadataRepository cannot revert" );
+        flush();
+    }
 
-        // FIXME use cql query
+    @Override
+    public boolean canObtainAccess( Class<?> aClass )
+    {
+        return aClass == ArtifactLookup.class;
+    }
 
-        getArtifactMetadataModelEntityManager().visitAll( new Function<ArtifactMetadataModel, Boolean>()
+    @Override
+    public <T> T obtainAccess( Class<T> aClass )
+        throws MetadataRepositoryException
+    {
+        if ( aClass == ArtifactLookup.class )
         {
-            @Override
-            public Boolean apply( ArtifactMetadataModel artifactMetadataModel )
-            {
-                if ( artifactMetadataModel != null )
-                {
-                    if ( StringUtils.equals( repoId, artifactMetadataModel.getRepositoryId() ) && StringUtils.equals(
-                        namespace, artifactMetadataModel.getNamespace() ) && StringUtils.equals( projectId,
-                                                                                                 artifactMetadataModel.getProject() )
-                        && StringUtils.equals( projectVersion, artifactMetadataModel.getProjectVersion() ) )
-                    {
-                        artifactMetadataModels.add( artifactMetadataModel );
-                    }
-                }
-                return Boolean.TRUE;
-            }
-        } );
+            return aClass.cast( this );
+        }
+        throw new IllegalArgumentException(
+            "Access using " + aClass + " is not supported on the cassandra metadata storage" );
+    }
+
+    /**
+     * Remove the artifacts of a project version, and the project version itself.
+     *
+     * @return <code>false</code> if there was nothing to remove
+     */
+    private boolean removeProjectVersionContent( String repoId, String namespace, String projectId,
+                                                 String projectVersion )
+    {
+        List<ArtifactMetadataModel> artifactMetadataModels =
+            getArtifactMetadataModels( repoId, namespace, projectId, projectVersion );
 
         logger.debug( "removeProjectVersions:{}", artifactMetadataModels );
         if ( artifactMetadataModels.isEmpty() )
         {
-            return;
+            return false;
         }
 
-        getArtifactMetadataModelEntityManager().remove( artifactMetadataModels );
+        removeArtifactMetadataModels( artifactMetadataModels );
 
         String key = new ProjectVersionMetadataModel.KeyBuilder().withProjectId( projectId ).withId(
             projectVersion ).withRepository( repoId ).withNamespace( namespace ).build();
@@ -1588,35 +1435,41 @@ public class CassandraMetadataRepository
         projectVersionMetadataModel.setRowId( key );
 
         getProjectVersionMetadataModelEntityManager().remove( projectVersionMetadataModel );
+
+        // the facets of the project version
+        String owner = new ArtifactMetadataModel.KeyBuilder().withRepositoryId( repoId ).withNamespace(
+            namespace ).withProject( projectId ).withProjectVersion( projectVersion ).withId( projectVersion ).build();
+        removeMetadataFacetModels( owner, getMetadataFacetModels( owner ) );
+
+        return true;
     }
 
-    @Override
-    public Collection<ArtifactMetadata> getArtifacts( final String repoId, final String namespace,
-                                                      final String projectId, final String projectVersion )
-        throws MetadataResolutionException
+    private List<ArtifactMetadataModel> getArtifactMetadataModels( String repoId, String namespace, String projectId,
+                                                                   String projectVersion )
     {
-        final List<ArtifactMetadataModel> artifactMetadataModels = new ArrayList<ArtifactMetadataModel>();
-        // FIXME use cql query !
-        getArtifactMetadataModelEntityManager().visitAll( new Function<ArtifactMetadataModel, Boolean>()
+        return getArtifactMetadataModels( getIndexes().getProjectVersionArtifacts().get(
+            getProjectVersionKey( repoId, namespace, projectId, projectVersion ) ) );
+    }
+
+    private List<ArtifactMetadataModel> getArtifactMetadataModels( Collection<String> keys )
+    {
+        List<ArtifactMetadataModel> artifactMetadataModels = new ArrayList<ArtifactMetadataModel>( keys.size() );
+        if ( !keys.isEmpty() )
         {
-            @Override
-            public Boolean apply( ArtifactMetadataModel artifactMetadataModel )
+            for ( ArtifactMetadataModel artifactMetadataModel : getArtifactMetadataModelEntityManager().get( keys ) )
             {
-                if ( artifactMetadataModel != null )
+                // skip the entries of artifacts removed meanwhile
+                if ( artifactMetadataModel != null && artifactMetadataModel.getId() != null )
                 {
-                    if ( StringUtils.equals( repoId, artifactMetadataModel.getRepositoryId() ) && StringUtils.equals(
-                        namespace, artifactMetadataModel.getNamespace() ) && StringUtils.equals( projectId,
-                                                                                                 artifactMetadataModel.getProject() )
-                        && StringUtils.equals( projectVersion, artifactMetadataModel.getProjectVersion() ) )
-                    {
-                        artifactMetadataModels.add( artifactMetadataModel );
-                    }
+                    artifactMetadataModels.add( artifactMetadataModel );
                 }
-
-                return Boolean.TRUE;
             }
-        } );
+        }
+        return artifactMetadataModels;
+    }
 
+    private List<ArtifactMetadata> toArtifactMetadatas( List<ArtifactMetadataModel> artifactMetadataModels )
+    {
         List<ArtifactMetadata> artifactMetadatas = new ArrayList<ArtifactMetadata>( artifactMetadataModels.size() );
 
         for ( ArtifactMetadataModel model : artifactMetadataModels )
@@ -1625,121 +1478,390 @@ public class CassandraMetadataRepository
             populateFacets( artifactMetadata );
             artifactMetadatas.add( artifactMetadata );
         }
+        return artifactMetadatas;
+    }
+
+    private void removeArtifactMetadataModels( List<ArtifactMetadataModel> artifactMetadataModels )
+    {
+        if ( artifactMetadataModels.isEmpty() )
+        {
+            return;
+        }
 
-        // retrieve facets
-        final List<MetadataFacetModel> metadataFacetModels = new ArrayList<MetadataFacetModel>();
-        getMetadataFacetModelEntityManager().visitAll( new Function<MetadataFacetModel, Boolean>()
+        MutationBatch mutationBatch = prepareMutationBatch();
+        List<String> owners = new ArrayList<String>( artifactMetadataModels.size() );
+        for ( ArtifactMetadataModel artifactMetadataModel : artifactMetadataModels )
         {
-            @Override
-            public Boolean apply( MetadataFacetModel metadataFacetModel )
+            unindexArtifact( mutationBatch, artifactMetadataModel, null );
+            getIndexes().getProjectVersionArtifacts().remove( mutationBatch, getProjectVersionKey(
+                artifactMetadataModel.getRepositoryId(), artifactMetadataModel.getNamespace(),
+                artifactMetadataModel.getProject(), artifactMetadataModel.getProjectVersion() ),
+                                                              artifactMetadataModel.getArtifactMetadataModelId() );
+
+            String owner = getFacetOwnerKey( artifactMetadataModel );
+            getMetadataFacetModelEntityManager().delete( getIndexes().getFacetEntries().get( owner ) );
+            owners.add( owner );
+        }
+        execute( mutationBatch );
+
+        getIndexes().getFacetEntries().removeAll( owners );
+        getArtifactMetadataModelEntityManager().remove( artifactMetadataModels );
+    }
+
+    /**
+     * List an artifact under its project version, its checksums and the day it was gathered.
+     */
+    private void indexArtifact( MutationBatch mutationBatch, ArtifactMetadataModel artifactMetadataModel )
+    {
+        String repositoryId = artifactMetadataModel.getRepositoryId();
+        String key = getArtifactKey( artifactMetadataModel );
+        CassandraIndexes indexes = getIndexes();
+
+        indexes.getProjectVersions().add( mutationBatch, getProjectKey( repositoryId,
+                                                                        artifactMetadataModel.getNamespace(),
+                                                                        artifactMetadataModel.getProject() ),
+                                          artifactMetadataModel.getProjectVersion() );
+        indexes.getProjectVersionArtifacts().add( mutationBatch, getProjectVersionKey(
+            repositoryId, artifactMetadataModel.getNamespace(), artifactMetadataModel.getProject(),
+            artifactMetadataModel.getProjectVersion() ), key );
+        if ( artifactMetadataModel.getMd5() != null )
+        {
+            indexes.getChecksumArtifacts().add( mutationBatch,
+                                                getChecksumKey( repositoryId, artifactMetadataModel.getMd5() ), key );
+        }
+        if ( artifactMetadataModel.getSha1() != null )
+        {
+            indexes.getChecksumArtifacts().add( mutationBatch,
+                                                getChecksumKey( repositoryId, artifactMetadataModel.getSha1() ), key );
+        }
+        long day = getGatheredDay( artifactMetadataModel.getWhenGathered().getTime() );
+        indexes.getGatheredDays().add( mutationBatch, repositoryId, String.valueOf( day ) );
+        indexes.getGatheredArtifacts().add( mutationBatch, getGatheredKey( repositoryId, day ), key );
+    }
+
+    /**
+     * Remove an artifact from the lists of its checksums and of the day it was gathered. The day itself is kept, as
+     * other artifacts may have been gathered then. The entries the replacement of the artifact lists again are kept,
+     * as a removal and an addition of the same entry in one batch share a timestamp, and the removal would win.
+     *
+     * @param replacement the new content of the artifact, <code>null</code> if it is removed
+     */
+    private void unindexArtifact( MutationBatch mutationBatch, ArtifactMetadataModel artifactMetadataModel,
+                                  ArtifactMetadata replacement )
+    {
+        String repositoryId = artifactMetadataModel.getRepositoryId();
+        String key = getArtifactKey( artifactMetadataModel );
+        CassandraIndexes indexes = getIndexes();
+
+        Set<String> checksums = new HashSet<String>();
+        if ( artifactMetadataModel.getMd5() != null )
+        {
+            checksums.add( artifactMetadataModel.getMd5() );
+        }
+        if ( artifactMetadataModel.getSha1() != null )
+        {
+            checksums.add( artifactMetadataModel.getSha1() );
+        }
+        if ( replacement != null )
+        {
+            checksums.remove( replacement.getMd5() );
+            checksums.remove( replacement.getSha1() );
+        }
+        for ( String checksum : checksums )
+        {
+            indexes.getChecksumArtifacts().remove( mutationBatch, getChecksumKey( repositoryId, checksum ), key );
+        }
+
+        long day = getGatheredDay( artifactMetadataModel.getWhenGathered().getTime() );
+        if ( replacement == null || day != getGatheredDay( replacement.getWhenGathered().getTime() ) )
+        {
+            indexes.getGatheredArtifacts().remove( mutationBatch, getGatheredKey( repositoryId, day ), key );
+        }
+    }
+
+    private List<MetadataFacetModel> getMetadataFacetModels( String owner )
+    {
+        List<String> keys = getIndexes().getFacetEntries().get( owner );
+        List<MetadataFacetModel> metadataFacetModels = new ArrayList<MetadataFacetModel>( keys.size() );
+        if ( !keys.isEmpty() )
+        {
+            for ( MetadataFacetModel metadataFacetModel : getMetadataFacetModelEntityManager().get( keys ) )
             {
-                if ( metadataFacetModel != null )
+                if ( metadataFacetModel != null && metadataFacetModel.getFacetId() != null )
                 {
-                    if ( StringUtils.equals( repoId, metadataFacetModel.getArtifactMetadataModel().getRepositoryId() )
-                        && StringUtils.equals( namespace, metadataFacetModel.getArtifactMetadataModel().getNamespace() )
-                        && StringUtils.equals( projectId, metadataFacetModel.getArtifactMetadataModel().getProject() )
-                        && StringUtils.equals( projectVersion,
-                                               metadataFacetModel.getArtifactMetadataModel().getProjectVersion() ) )
-                    {
-                        metadataFacetModels.add( metadataFacetModel );
-                    }
-
+                    metadataFacetModels.add( metadataFacetModel );
                 }
-                return Boolean.TRUE;
             }
-        } );
+        }
+        return metadataFacetModels;
+    }
 
-        // rebuild MetadataFacet for artifacts
+    private void removeMetadataFacetModels( String owner, List<MetadataFacetModel> metadataFacetModels )
+    {
+        if ( metadataFacetModels.isEmpty() )
+        {
+            return;
+        }
+        // the removals are immediate, they must not be overtaken by earlier writes still in the background
+        waitForFlushes();
+        MutationBatch mutationBatch = prepareMutationBatch();
+        for ( MetadataFacetModel metadataFacetModel : metadataFacetModels )
+        {
+            pendingMetadataFacets.remove( metadataFacetModel.getId() );
+            getIndexes().getFacetEntries().remove( mutationBatch, owner, metadataFacetModel.getId() );
+        }
+        getMetadataFacetModelEntityManager().remove( metadataFacetModels );
+        execute( mutationBatch );
+    }
 
-        for ( final ArtifactMetadata artifactMetadata : artifactMetadatas )
+    /**
+     * Rebuild the facets from their entries, one entry per property.
+     */
+    private List<MetadataFacet> toMetadataFacets( String repositoryId, List<MetadataFacetModel> metadataFacetModels )
+    {
+        Map<String, List<MetadataFacetModel>> metadataFacetModelsPerFacetId =
+            new LinkedHashMap<String, List<MetadataFacetModel>>();
+        for ( MetadataFacetModel metadataFacetModel : metadataFacetModels )
         {
-            Iterable<MetadataFacetModel> metadataFacetModelIterable =
-                Iterables.filter( metadataFacetModels, new Predicate<MetadataFacetModel>()
-                {
-                    @Override
-                    public boolean apply( MetadataFacetModel metadataFacetModel )
-                    {
-                        if ( metadataFacetModel != null )
-                        {
-                            return StringUtils.equals( artifactMetadata.getVersion(),
-                                                       metadataFacetModel.getArtifactMetadataModel().getVersion() );
-                        }
-                        return false;
-                    }
-                } );
-            Iterator<MetadataFacetModel> iterator = metadataFacetModelIterable.iterator();
-            Map<String, List<MetadataFacetModel>> metadataFacetValuesPerFacetId =
-                new HashMap<String, List<MetadataFacetModel>>();
-            while ( iterator.hasNext() )
+            List<MetadataFacetModel> values = metadataFacetModelsPerFacetId.get( metadataFacetModel.getFacetId() );
+            if ( values == null )
             {
-                MetadataFacetModel metadataFacetModel = iterator.next();
-                List<MetadataFacetModel> values = metadataFacetValuesPerFacetId.get( metadataFacetModel.getName() );
-                if ( values == null )
+                values = new ArrayList<MetadataFacetModel>();
+                metadataFacetModelsPerFacetId.put( metadataFacetModel.getFacetId(), values );
+            }
+            values.add( metadataFacetModel );
+        }
+
+        List<MetadataFacet> metadataFacets = new ArrayList<MetadataFacet>( metadataFacetModelsPerFacetId.size() );
+        for ( Map.Entry<String, List<MetadataFacetModel>> entry : metadataFacetModelsPerFacetId.entrySet() )
+        {
+            MetadataFacetFactory metadataFacetFactory = metadataFacetFactories.get( entry.getKey() );
+            if ( metadataFacetFactory != null )
+            {
+                List<MetadataFacetModel> facetModels = entry.getValue();
+                MetadataFacet metadataFacet =
+                    metadataFacetFactory.createMetadataFacet( repositoryId, facetModels.get( 0 ).getName() );
+                Map<String, String> props = new HashMap<String, String>( facetModels.size() );
+                for ( MetadataFacetModel metadataFacetModel : facetModels )
                 {
-                    values = new ArrayList<MetadataFacetModel>();
-                    metadataFacetValuesPerFacetId.put( metadataFacetModel.getFacetId(), values );
+                    props.put( metadataFacetModel.getKey(), metadataFacetModel.getValue() );
                 }
-                values.add( metadataFacetModel );
-
+                metadataFacet.fromProperties( props );
+                metadataFacets.add( metadataFacet );
             }
+        }
+        return metadataFacets;
+    }
+
+    private <T> void put( CassandraPendingEntities<T> entities, String key, T entity )
+    {
+        entities.put( key, entity );
+        written();
+    }
+
+    private void index( CassandraIndex index, String key, String entry )
+    {
+        index.add( getIndexMutations(), key, entry );
+        written();
+    }
 
-            for ( Map.Entry<String, List<MetadataFacetModel>> entry : metadataFacetValuesPerFacetId.entrySet() )
+    private MutationBatch getIndexMutations()
+    {
+        if ( pendingIndexMutations == null )
+        {
+            pendingIndexMutations = prepareMutationBatch();
+        }
+        return pendingIndexMutations;
+    }
+
+    /**
+     * Count a write of the session, and start flushing the writes once there are enough for a batch.
+     */
+    private void written()
+    {
+        if ( ++pendingWrites >= cassandraEntityManagerFactory.getBatchSize() )
+        {
+            startFlush();
+        }
+    }
+
+    /**
+     * Write the pending writes of the session, in the background if the factory has a flush executor. Each type of
+     * entity is written with a single put, and the entries of the query-driven column families with a single mutation
+     * batch.
+     */
+    private void startFlush()
+    {
+        final Map<String, Repository> repositories = pendingRepositories.drain();
+        final Map<String, Namespace> namespaces = pendingNamespaces.drain();
+        final Map<String, Project> projects = pendingProjects.drain();
+        final Map<String, ProjectVersionMetadataModel> projectVersions = pendingProjectVersions.drain();
+        final Map<String, ArtifactMetadataModel> artifacts = pendingArtifacts.drain();
+        final Map<String, MetadataFacetModel> metadataFacets = pendingMetadataFacets.drain();
+        final MutationBatch indexMutations = pendingIndexMutations;
+        pendingIndexMutations = null;
+        pendingWrites = 0;
+
+        Runnable write = new Runnable()
+        {
+            @Override
+            public void run()
             {
-                MetadataFacetFactory metadataFacetFactory = metadataFacetFactories.get( entry.getKey() );
-                if ( metadataFacetFactory != null )
+                pendingRepositories.write( repositories );
+                pendingNamespaces.write( namespaces );
+                pendingProjects.write( projects );
+                pendingProjectVersions.write( projectVersions );
+                pendingArtifacts.write( artifacts );
+                pendingMetadataFacets.write( metadataFacets );
+                if ( indexMutations != null )
                 {
-                    List<MetadataFacetModel> facetModels = entry.getValue();
-                    if ( !facetModels.isEmpty() )
-                    {
-                        MetadataFacet metadataFacet =
-                            metadataFacetFactory.createMetadataFacet( repoId, facetModels.get( 0 ).getName() );
-                        Map<String, String> props = new HashMap<String, String>( facetModels.size() );
-                        for ( MetadataFacetModel metadataFacetModel : facetModels )
-                        {
-                            props.put( metadataFacetModel.getKey(), metadataFacetModel.getValue() );
-                        }
-                        metadataFacet.fromProperties( props );
-                        artifactMetadata.addFacet( metadataFacet );
-                    }
+                    execute( indexMutations );
                 }
             }
+        };
 
+        ExecutorService flushExecutor = cassandraEntityManagerFactory.getFlushExecutor();
+        if ( flushExecutor == null )
+        {
+            write.run();
+        }
+        else
+        {
+            flushes.add( flushExecutor.submit( write ) );
+        }
+    }
 
+    /**
+     * Write all the pending writes of the session, and wait for them to be stored.
+     */
+    private void flush()
+        throws PersistenceException
+    {
+        if ( pendingWrites > 0 )
+        {
+            startFlush();
         }
+        waitForFlushes();
+    }
 
-        return artifactMetadatas;
+    /**
+     * Write all the pending writes of the session before removing entities, and forget the entities known to be
+     * stored, which may be among those removed.
+     */
+    private void flushForRemoval()
+        throws PersistenceException
+    {
+        flush();
+        pendingRepositories.forget();
+        pendingNamespaces.forget();
+        pendingProjects.forget();
+        pendingProjectVersions.forget();
+        pendingArtifacts.forget();
+        pendingMetadataFacets.forget();
     }
 
-    @Override
-    public void save()
+    private void waitForFlushes()
+        throws PersistenceException
     {
-        logger.trace( "save" );
+        try
+        {
+            for ( Future<?> flush : flushes )
+            {
+                flush.get();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new PersistenceException( e.getMessage(), e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new PersistenceException( e.getCause().getMessage(), e.getCause() );
+        }
+        finally
+        {
+            flushes.clear();
+        }
     }
 
-    @Override
-    public void close()
-        throws MetadataRepositoryException
+    private MutationBatch prepareMutationBatch()
     {
-        logger.trace( "close" );
+        return cassandraEntityManagerFactory.getKeyspace().prepareMutationBatch();
     }
 
-    @Override
-    public void revert()
+    private void execute( MutationBatch mutationBatch )
+        throws PersistenceException
     {
-        logger.warn( "CassandraMetadataRepository cannot revert" );
+        try
+        {
+            mutationBatch.execute();
+        }
+        catch ( ConnectionException e )
+        {
+            throw new PersistenceException( e.getMessage(), e );
+        }
     }
 
-    @Override
-    public boolean canObtainAccess( Class<?> aClass )
+    private static String getNamespaceKey( String repositoryId, String namespaceId )
     {
-        return false;
+        return new Namespace.KeyBuilder().withRepositoryId( repositoryId ).withNamespace( namespaceId ).build();
     }
 
-    @Override
-    public <T> T obtainAccess( Class<T> aClass )
-        throws MetadataRepositoryException
+    private static String getProjectKey( String repositoryId, String namespaceId, String projectId )
     {
-        throw new IllegalArgumentException(
-            "Access using " + aClass + " is not supported on the cassandra metadata storage" );
+        return new ProjectVersionMetadataModel.KeyBuilder().withRepository( repositoryId ).withNamespace(
+            namespaceId ).withProjectId( projectId ).build();
+    }
+
+    private static String getProjectVersionKey( String repositoryId, String namespaceId, String projectId,
+                                                String projectVersion )
+    {
+        return new ProjectVersionMetadataModel.KeyBuilder().withRepository( repositoryId ).withNamespace(
+            namespaceId ).withProjectId( projectId ).withId( projectVersion ).build();
+    }
+
+    private static String getArtifactKey( ArtifactMetadataModel artifactMetadataModel )
+    {
+        return artifactMetadataModel.getArtifactMetadataModelId() != null
+            ? artifactMetadataModel.getArtifactMetadataModelId()
+            : getFacetOwnerKey( artifactMetadataModel );
+    }
+
+    /**
+     * The key the facets of an artifact, or of a project version, are listed under. It is built from the fields of
+     * the artifact, as the key of the artifact is not stored with the facets.
+     */
+    private static String getFacetOwnerKey( ArtifactMetadataModel artifactMetadataModel )
+    {
+        return new ArtifactMetadataModel.KeyBuilder().withRepositoryId(
+            artifactMetadataModel.getRepositoryId() ).withNamespace( artifactMetadataModel.getNamespace() ).withProject(
+            artifactMetadataModel.getProject() ).withProjectVersion(
+            artifactMetadataModel.getProjectVersion() ).withId( artifactMetadataModel.getId() ).build();
+    }
+
+    private static String getRepositoryFacetKey( String repositoryId, String facetId )
+    {
+        return repositoryId + "-" + facetId;
+    }
+
+    private static String getRepositoryFacetOwnerKey( String repositoryId, String facetId, String name )
+    {
+        return repositoryId + "-" + facetId + "-" + name;
+    }
+
+    private static String getChecksumKey( String repositoryId, String checksum )
+    {
+        return repositoryId + "-" + checksum;
+    }
+
+    private static long getGatheredDay( long time )
+    {
+        return time / DAY;
+    }
+
+    private static String getGatheredKey( String repositoryId, long day )
+    {
+        return repositoryId + "-" + day;
     }
 }
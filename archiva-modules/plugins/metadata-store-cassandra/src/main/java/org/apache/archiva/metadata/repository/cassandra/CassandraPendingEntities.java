@@ -0,0 +1,186 @@
+package org.apache.archiva.metadata.repository.cassandra;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.netflix.astyanax.entitystore.EntityManager;
+
+import javax.persistence.PersistenceException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The entities of one type put by a session and not written yet. They are drained into a snapshot when the writes of
+ * the session are flushed, and the snapshot is written with a single put of the entity manager, possibly from another
+ * thread. Until then, the entities are still found by {@link #get(String)}.
+ * <p/>
+ * The entities the session has written or read, and the keys it found nothing for, are remembered afterwards, so that
+ * a long session such as a scan does not read the same namespaces and projects again after each flush. They must be
+ * forgotten with {@link #forget()} before the session removes entities.
+ *
+ * @since 1.4-M3
+ */
+class CassandraPendingEntities<T>
+{
+    private static final int STORED_CACHE_SIZE = 10000;
+
+    private final EntityManager<T, String> entityManager;
+
+    private Map<String, T> pending = new LinkedHashMap<String, T>();
+
+    private final List<Map<String, T>> flushing = new ArrayList<Map<String, T>>();
+
+    /**
+     * The entities known to be stored, by key, with <code>null</code> for the keys known to have none.
+     */
+    private final Map<String, T> stored = new LinkedHashMap<String, T>( 16, 0.75f, true )
+    {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, T> eldest )
+        {
+            return size() > STORED_CACHE_SIZE;
+        }
+    };
+
+    CassandraPendingEntities( EntityManager<T, String> entityManager )
+    {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * @return the entity with the key, pending or stored, <code>null</code> if there is none
+     */
+    T get( String key )
+        throws PersistenceException
+    {
+        synchronized ( this )
+        {
+            T entity = pending.get( key );
+            for ( int i = flushing.size() - 1; entity == null && i >= 0; i-- )
+            {
+                entity = flushing.get( i ).get( key );
+            }
+            if ( entity != null || stored.containsKey( key ) )
+            {
+                return entity;
+            }
+        }
+        T entity = entityManager.get( key );
+        synchronized ( this )
+        {
+            if ( !stored.containsKey( key ) )
+            {
+                stored.put( key, entity );
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * @return <code>true</code> if the entity with the key is put and not stored yet
+     */
+    synchronized boolean isPending( String key )
+    {
+        if ( pending.containsKey( key ) )
+        {
+            return true;
+        }
+        for ( Map<String, T> snapshot : flushing )
+        {
+            if ( snapshot.containsKey( key ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized void put( String key, T entity )
+    {
+        pending.put( key, entity );
+    }
+
+    /**
+     * Forget the pending entity with the key, so that it is not written.
+     */
+    synchronized void remove( String key )
+    {
+        pending.remove( key );
+        stored.remove( key );
+    }
+
+    /**
+     * Forget the entities known to be stored, before they may be removed.
+     */
+    synchronized void forget()
+    {
+        stored.clear();
+    }
+
+    /**
+     * @return the pending entities, to be written with {@link #write(Map)}
+     */
+    synchronized Map<String, T> drain()
+    {
+        Map<String, T> snapshot = pending;
+        pending = new LinkedHashMap<String, T>();
+        flushing.add( snapshot );
+        return snapshot;
+    }
+
+    /**
+     * Discard the pending entities.
+     */
+    synchronized void clear()
+    {
+        pending.clear();
+    }
+
+    void write( Map<String, T> snapshot )
+        throws PersistenceException
+    {
+        try
+        {
+            if ( !snapshot.isEmpty() )
+            {
+                entityManager.put( new ArrayList<T>( snapshot.values() ) );
+                synchronized ( this )
+                {
+                    stored.putAll( snapshot );
+                }
+            }
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                for ( Iterator<Map<String, T>> i = flushing.iterator(); i.hasNext(); )
+                {
+                    if ( i.next() == snapshot )
+                    {
+                        i.remove();
+                    }
+                }
+            }
+        }
+    }
+}
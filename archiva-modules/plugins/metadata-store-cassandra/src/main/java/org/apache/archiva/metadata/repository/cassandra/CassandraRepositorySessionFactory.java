@@ -21,6 +21,7 @@ package org.apache.archiva.metadata.repository.cassandra;
 
 import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.metadata.model.MetadataFacetFactory;
+import org.apache.archiva.metadata.repository.MetadataRepositoryTotals;
 import org.apache.archiva.metadata.repository.MetadataResolver;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
@@ -57,6 +58,9 @@ public class CassandraRepositorySessionFactory
     @Inject
     private CassandraEntityManagerFactory cassandraEntityManagerFactory;
 
+    @Inject
+    private MetadataRepositoryTotals metadataRepositoryTotals;
+
     @PostConstruct
     public void initialize()
     {
@@ -80,7 +84,7 @@ public class CassandraRepositorySessionFactory
     {
         CassandraMetadataRepository metadataRepository =
             new CassandraMetadataRepository( metadataFacetFactories, configuration, cassandraEntityManagerFactory );
-        return new RepositorySession( metadataRepository, metadataResolver );
+        return new RepositorySession( metadataRepositoryTotals.track( metadataRepository, false ), metadataResolver );
     }
 
 }
@@ -34,6 +34,8 @@ import com.netflix.astyanax.entitystore.DefaultEntityManager;
 import com.netflix.astyanax.entitystore.EntityManager;
 import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
 import com.netflix.astyanax.thrift.ThriftFamilyFactory;
+import org.apache.archiva.configuration.ArchivaConfiguration;
+import org.apache.archiva.configuration.CassandraConfiguration;
 import org.apache.archiva.metadata.repository.cassandra.model.ArtifactMetadataModel;
 import org.apache.archiva.metadata.repository.cassandra.model.MetadataFacetModel;
 import org.apache.archiva.metadata.repository.cassandra.model.Namespace;
@@ -43,12 +45,19 @@ import org.apache.archiva.metadata.repository.cassandra.model.Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.persistence.PersistenceException;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * FIXME make all configuration not hardcoded :-)
@@ -56,6 +65,8 @@ import java.util.Properties;
  * @author Olivier Lamy
  */
 @Service( "archivaEntityManagerFactory#cassandra" )
+@ManagedResource( objectName = "org.apache.archiva:type=CassandraEntityManagerFactory",
+                  description = "Cassandra metadata storage" )
 public class DefaultCassandraEntityManagerFactory
     implements CassandraEntityManagerFactory
 {
@@ -65,10 +76,16 @@ public class DefaultCassandraEntityManagerFactory
     @Inject
     private ApplicationContext applicationContext;
 
+    @Inject
+    @Named( value = "archivaConfiguration#default" )
+    private ArchivaConfiguration archivaConfiguration;
+
     private static final String CLUSTER_NAME = "archiva";
 
     private static final String KEYSPACE_NAME = "ArchivaKeySpace";
 
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
     private AstyanaxContext<Keyspace> keyspaceContext;
 
     private Keyspace keyspace;
@@ -85,6 +102,12 @@ public class DefaultCassandraEntityManagerFactory
 
     private EntityManager<ProjectVersionMetadataModel, String> projectVersionMetadataModelEntityManager;
 
+    private CassandraIndexes indexes;
+
+    private int batchSize;
+
+    private ExecutorService flushExecutor;
+
 
     @PostConstruct
     public void initialize()
@@ -92,6 +115,14 @@ public class DefaultCassandraEntityManagerFactory
     {
         String cassandraHost = System.getProperty( "cassandraHost", "localhost" );
         String cassandraPort = System.getProperty( "cassandraPort" );
+        CassandraConfiguration cassandraConfiguration =
+            archivaConfiguration.getConfiguration().getCassandraConfiguration();
+        batchSize = cassandraConfiguration == null ? DEFAULT_BATCH_SIZE : cassandraConfiguration.getBatchSize();
+        // a single thread, so that the flushes of a session are written in order
+        if ( cassandraConfiguration != null && cassandraConfiguration.isAsyncFlush() )
+        {
+            flushExecutor = Executors.newSingleThreadExecutor();
+        }
         keyspaceContext = new AstyanaxContext.Builder().forCluster( CLUSTER_NAME ).forKeyspace(
             KEYSPACE_NAME ).withAstyanaxConfiguration(
             new AstyanaxConfigurationImpl().setDiscoveryType( NodeDiscoveryType.RING_DESCRIBE ).setConnectionPoolType(
@@ -178,8 +209,8 @@ public class DefaultCassandraEntityManagerFactory
                 new DefaultEntityManager.Builder<ArtifactMetadataModel, String>().withEntityType(
                     ArtifactMetadataModel.class ).withKeyspace( keyspace ).build();
 
-            exists = columnFamilyExists( "artifactmetadatamodel" );
-            if ( !exists )
+            boolean artifactsExist = columnFamilyExists( "artifactmetadatamodel" );
+            if ( !artifactsExist )
             {
                 artifactMetadataModelEntityManager.createStorage( null );
             }
@@ -204,6 +235,28 @@ public class DefaultCassandraEntityManagerFactory
                 projectVersionMetadataModelEntityManager.createStorage( null );
             }
 
+            indexes = new CassandraIndexes( keyspace );
+            for ( CassandraIndex index : indexes.getAll() )
+            {
+                if ( !index.exists() )
+                {
+                    index.createStorage();
+                }
+            }
+
+            // content stored before the query-driven column families existed must be listed in them: the rebuild is
+            // started again on each startup until it completes
+            if ( !indexes.isComplete() )
+            {
+                if ( artifactsExist )
+                {
+                    rebuildIndexes();
+                }
+                else
+                {
+                    indexes.setComplete( true );
+                }
+            }
         }
         catch ( PersistenceException e )
         {
@@ -217,6 +270,36 @@ public class DefaultCassandraEntityManagerFactory
         }
     }
 
+    @PreDestroy
+    public void shutdown()
+    {
+        if ( flushExecutor != null )
+        {
+            flushExecutor.shutdown();
+        }
+    }
+
+    @ManagedOperation( description = "Lists all the stored metadata in the query-driven column families again" )
+    public void rebuildIndexes()
+        throws PersistenceException
+    {
+        indexes.setComplete( false );
+
+        logger.info( "rebuilding the query-driven column families from the existing metadata" );
+        long start = System.currentTimeMillis();
+        new CassandraMetadataRepository( null, null, this ).rebuildIndexes();
+        logger.info( "query-driven column families rebuilt in {} ms", System.currentTimeMillis() - start );
+
+        indexes.setComplete( true );
+    }
+
+    @ManagedAttribute( description = "Whether the query-driven column families list all the stored metadata" )
+    public boolean isIndexesComplete()
+        throws PersistenceException
+    {
+        return indexes.isComplete();
+    }
+
     private boolean columnFamilyExists( String columnFamilyName )
         throws ConnectionException
     {
@@ -301,4 +384,24 @@ public class DefaultCassandraEntityManagerFactory
     {
         this.projectVersionMetadataModelEntityManager = projectVersionMetadataModelEntityManager;
     }
+
+    public CassandraIndexes getIndexes()
+    {
+        return indexes;
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public void setBatchSize( int batchSize )
+    {
+        this.batchSize = batchSize;
+    }
+
+    public ExecutorService getFlushExecutor()
+    {
+        return flushExecutor;
+    }
 }
@@ -0,0 +1,245 @@
+package org.apache.archiva.metadata.repository.cassandra;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.repository.cassandra.model.ArtifactMetadataModel;
+import org.apache.archiva.metadata.repository.cassandra.model.MetadataFacetModel;
+import org.apache.archiva.metadata.repository.cassandra.model.Namespace;
+import org.apache.archiva.metadata.repository.cassandra.model.Project;
+import org.apache.archiva.metadata.repository.cassandra.model.ProjectVersionMetadataModel;
+import org.apache.archiva.metadata.repository.cassandra.model.Repository;
+import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.ContextConfiguration;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Measures the time of the reads served by the query-driven column families of the embedded Cassandra, against a
+ * scan of all the stored artifacts as they were served before these column families existed. The repository holds
+ * a namespace per project, with its versions and two artifacts per version. The number of projects and versions can
+ * be set with the <code>cassandra.benchmark.projects</code> and <code>cassandra.benchmark.versions</code> system
+ * properties. The benchmark only runs when the <code>archiva.benchmarks</code> system property is <code>true</code>.
+ *
+ * @since 1.4-M3
+ */
+@RunWith( ArchivaSpringJUnit4ClassRunner.class )
+@ContextConfiguration( locations = { "classpath*:/META-INF/spring-context.xml", "classpath*:/spring-context.xml" } )
+public class CassandraMetadataRepositoryBenchmarkTest
+    extends TestCase
+{
+    private Logger log = LoggerFactory.getLogger( CassandraMetadataRepositoryBenchmarkTest.class );
+
+    private static final int PROJECTS = Integer.getInteger( "cassandra.benchmark.projects", 100 );
+
+    private static final int VERSIONS = Integer.getInteger( "cassandra.benchmark.versions", 5 );
+
+    private static final String TEST_REPO_ID = "cassandra-benchmark";
+
+    private static final String NAMESPACE = "org.benchmark";
+
+    @Inject
+    @Named( value = "archivaEntityManagerFactory#cassandra" )
+    CassandraEntityManagerFactory cassandraEntityManagerFactory;
+
+    CassandraMetadataRepository cmr;
+
+    @BeforeClass
+    public static void checkEnabled()
+    {
+        Assume.assumeTrue( Boolean.getBoolean( "archiva.benchmarks" ) );
+    }
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        cmr = new CassandraMetadataRepository( null, null, cassandraEntityManagerFactory );
+        clearReposAndNamespace();
+
+        for ( int i = 0; i < PROJECTS; i++ )
+        {
+            for ( int j = 0; j < VERSIONS; j++ )
+            {
+                cmr.updateArtifact( TEST_REPO_ID, getNamespace( i ), getProject( i ), getVersion( j ),
+                                    createArtifact( i, j, "jar" ) );
+                cmr.updateArtifact( TEST_REPO_ID, getNamespace( i ), getProject( i ), getVersion( j ),
+                                    createArtifact( i, j, "pom" ) );
+            }
+        }
+        cmr.save();
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        clearReposAndNamespace();
+        super.tearDown();
+    }
+
+    @Test
+    public void testReadMetadata()
+        throws Exception
+    {
+        // once to warm up the Cassandra caches and the JIT
+        readAll();
+        scanAll();
+
+        long start = System.currentTimeMillis();
+        readAll();
+        long indexed = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        scanAll();
+        long scanned = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        assertEquals( PROJECTS * VERSIONS * 2, cmr.getArtifactsByDateRange( TEST_REPO_ID, null, null ).size() );
+        long dateRange = System.currentTimeMillis() - start;
+
+        log.info( "Metadata of {} projects with {} versions read: {}ms through the query-driven column families, "
+                      + "{}ms scanning all the artifacts, {}ms for all the artifacts by date range",
+                  new Object[]{ PROJECTS, VERSIONS, indexed, scanned, dateRange } );
+    }
+
+    private void readAll()
+        throws Exception
+    {
+        for ( int i = 0; i < PROJECTS; i++ )
+        {
+            assertEquals( 1, cmr.getProjects( TEST_REPO_ID, getNamespace( i ) ).size() );
+            assertEquals( VERSIONS, cmr.getProjectVersions( TEST_REPO_ID, getNamespace( i ), getProject( i ) ).size() );
+            for ( int j = 0; j < VERSIONS; j++ )
+            {
+                assertEquals( 2, cmr.getArtifacts( TEST_REPO_ID, getNamespace( i ), getProject( i ),
+                                                   getVersion( j ) ).size() );
+                assertEquals( 1, cmr.getArtifactsByChecksum( TEST_REPO_ID, getChecksum( i, j, "jar" ) ).size() );
+            }
+        }
+    }
+
+    /**
+     * The artifacts of each version as found without the query-driven column families: filtering all the stored
+     * artifacts.
+     */
+    private void scanAll()
+        throws Exception
+    {
+        List<ArtifactMetadataModel> artifactMetadataModels = cmr.getArtifactMetadataModelEntityManager().getAll();
+        for ( int i = 0; i < PROJECTS; i++ )
+        {
+            for ( int j = 0; j < VERSIONS; j++ )
+            {
+                int found = 0;
+                for ( ArtifactMetadataModel artifactMetadataModel : artifactMetadataModels )
+                {
+                    if ( getProject( i ).equals( artifactMetadataModel.getProject() ) && getVersion( j ).equals(
+                        artifactMetadataModel.getProjectVersion() ) )
+                    {
+                        found++;
+                    }
+                }
+                assertEquals( 2, found );
+            }
+        }
+    }
+
+    private static String getNamespace( int project )
+    {
+        return NAMESPACE + ".project" + project;
+    }
+
+    private static String getProject( int project )
+    {
+        return "project-" + project;
+    }
+
+    private static String getVersion( int version )
+    {
+        return "1." + version;
+    }
+
+    private static String getChecksum( int project, int version, String type )
+    {
+        return "sha1-" + project + "-" + version + "-" + type;
+    }
+
+    private static ArtifactMetadata createArtifact( int project, int version, String type )
+    {
+        ArtifactMetadata artifact = new ArtifactMetadata();
+        artifact.setId( getProject( project ) + "-" + getVersion( version ) + "." + type );
+        artifact.setNamespace( getNamespace( project ) );
+        artifact.setProject( getProject( project ) );
+        artifact.setProjectVersion( getVersion( version ) );
+        artifact.setVersion( getVersion( version ) );
+        artifact.setRepositoryId( TEST_REPO_ID );
+        artifact.setWhenGathered( new Date() );
+        artifact.setFileLastModified( System.currentTimeMillis() );
+        artifact.setMd5( "md5-" + project + "-" + version + "-" + type );
+        artifact.setSha1( getChecksum( project, version, type ) );
+        return artifact;
+    }
+
+    protected void clearReposAndNamespace()
+        throws Exception
+    {
+        List<Project> projects = cmr.getProjectEntityManager().getAll();
+        cmr.getProjectEntityManager().remove( projects );
+
+        List<Namespace> namespaces = cmr.getNamespaceEntityManager().getAll();
+        cmr.getNamespaceEntityManager().remove( namespaces );
+
+        List<Repository> repositories = cmr.getRepositoryEntityManager().getAll();
+        cmr.getRepositoryEntityManager().remove( repositories );
+
+        List<ArtifactMetadataModel> artifactMetadataModels = cmr.getArtifactMetadataModelEntityManager().getAll();
+        cmr.getArtifactMetadataModelEntityManager().remove( artifactMetadataModels );
+
+        List<MetadataFacetModel> metadataFacetModels = cmr.getMetadataFacetModelEntityManager().getAll();
+        cmr.getMetadataFacetModelEntityManager().remove( metadataFacetModels );
+
+        List<ProjectVersionMetadataModel> projectVersionMetadataModels =
+            cmr.getProjectVersionMetadataModelEntityManager().getAll();
+        cmr.getProjectVersionMetadataModelEntityManager().remove( projectVersionMetadataModels );
+
+        for ( CassandraIndex index : cmr.getIndexes().getAll() )
+        {
+            index.truncate();
+        }
+        cmr.getIndexes().setComplete( true );
+    }
+}
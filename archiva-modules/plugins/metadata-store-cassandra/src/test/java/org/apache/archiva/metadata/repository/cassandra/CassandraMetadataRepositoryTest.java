@@ -19,8 +19,11 @@ package org.apache.archiva.metadata.repository.cassandra;
  * under the License.
  */
 
+import com.netflix.astyanax.entitystore.EntityManager;
+import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.model.MetadataFacetFactory;
 import org.apache.archiva.metadata.repository.AbstractMetadataRepositoryTest;
+import org.apache.archiva.metadata.repository.ArtifactLookup;
 import org.apache.archiva.metadata.repository.cassandra.model.ArtifactMetadataModel;
 import org.apache.archiva.metadata.repository.cassandra.model.MetadataFacetModel;
 import org.apache.archiva.metadata.repository.cassandra.model.Namespace;
@@ -30,12 +33,21 @@ import org.apache.archiva.metadata.repository.cassandra.model.Repository;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -74,6 +86,144 @@ public class CassandraMetadataRepositoryTest
     }
 
 
+    @Test
+    public void testSessionBatchesWrites()
+        throws Exception
+    {
+        final Map<String, Integer> calls = new HashMap<String, Integer>();
+        CassandraEntityManagerFactory countingFactory = (CassandraEntityManagerFactory) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[]{ CassandraEntityManagerFactory.class }, new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method method, Object[] args )
+                throws Throwable
+            {
+                if ( method.getName().equals( "getBatchSize" ) )
+                {
+                    return 20;
+                }
+                if ( method.getName().equals( "getFlushExecutor" ) )
+                {
+                    return null;
+                }
+                Object result = CassandraMetadataRepositoryTest.invoke( cassandraEntityManagerFactory, method, args );
+                return result instanceof EntityManager ? countCalls( method.getName(), result, calls ) : result;
+            }
+        } );
+
+        CassandraMetadataRepository session =
+            new CassandraMetadataRepository( createTestMetadataFacetFactories(), null, countingFactory );
+        int count = 100;
+        for ( int i = 0; i < count; i++ )
+        {
+            ArtifactMetadata artifact = new ArtifactMetadata();
+            artifact.setId( "batched-1.0-" + i + ".jar" );
+            artifact.setNamespace( "org.apache.batched" );
+            artifact.setProject( "batched" );
+            artifact.setProjectVersion( "1.0" );
+            artifact.setVersion( "1.0" );
+            artifact.setRepositoryId( TEST_REPO_ID );
+            artifact.setWhenGathered( new Date() );
+            artifact.setMd5( "md5-" + i );
+            artifact.setSha1( "sha1-" + i );
+
+            // as the totals tracking does before each update
+            ArtifactMetadata previous = session.obtainAccess( ArtifactLookup.class ).getArtifact(
+                TEST_REPO_ID, "org.apache.batched", "batched", "1.0", artifact.getId() );
+            assertNull( previous );
+            session.updateArtifact( TEST_REPO_ID, "org.apache.batched", "batched", "1.0", artifact );
+        }
+        session.save();
+
+        logger.info( "entity manager calls for {} artifacts: {}", count, calls );
+        // one read per artifact, shared by the lookup and the update
+        assertEquals( count, getCalls( calls, "getArtifactMetadataModelEntityManager", "get" ) );
+        // the namespace, project and version are not read again after each flush
+        assertTrue( getCalls( calls, "getNamespaceEntityManager", "get" ) <= 1 );
+        assertTrue( getCalls( calls, "getProjectEntityManager", "get" ) <= 1 );
+        assertTrue( getCalls( calls, "getProjectVersionMetadataModelEntityManager", "get" ) <= 1 );
+        // a put per flush rather than per artifact
+        int puts = getCalls( calls, "getArtifactMetadataModelEntityManager", "put" );
+        assertTrue( "puts: " + puts, puts > 0 && puts <= count / 10 );
+
+        assertEquals( count, repository.getArtifacts( TEST_REPO_ID, "org.apache.batched", "batched", "1.0" ).size() );
+    }
+
+    @Test
+    public void testRebuildIndexes()
+        throws Exception
+    {
+        ArtifactMetadata artifact = new ArtifactMetadata();
+        artifact.setId( "rebuilt-1.0.jar" );
+        artifact.setNamespace( "org.apache.rebuilt" );
+        artifact.setProject( "rebuilt" );
+        artifact.setProjectVersion( "1.0" );
+        artifact.setVersion( "1.0" );
+        artifact.setRepositoryId( TEST_REPO_ID );
+        artifact.setWhenGathered( new Date() );
+        artifact.setMd5( "md5-rebuilt" );
+        artifact.setSha1( "sha1-rebuilt" );
+        cmr.updateArtifact( TEST_REPO_ID, "org.apache.rebuilt", "rebuilt", "1.0", artifact );
+        cmr.save();
+
+        // as metadata stored before the column families existed
+        for ( CassandraIndex index : cmr.getIndexes().getAll() )
+        {
+            index.truncate();
+        }
+        assertFalse( cassandraEntityManagerFactory.isIndexesComplete() );
+        assertTrue( repository.getArtifacts( TEST_REPO_ID, "org.apache.rebuilt", "rebuilt", "1.0" ).isEmpty() );
+
+        cassandraEntityManagerFactory.rebuildIndexes();
+
+        assertTrue( cassandraEntityManagerFactory.isIndexesComplete() );
+        assertEquals( 1, repository.getArtifacts( TEST_REPO_ID, "org.apache.rebuilt", "rebuilt", "1.0" ).size() );
+        assertEquals( 1, repository.getArtifactsByChecksum( TEST_REPO_ID, "sha1-rebuilt" ).size() );
+        assertEquals( 1, repository.getArtifactsByDateRange( TEST_REPO_ID, null, null ).size() );
+        assertEquals( Collections.singletonList( "rebuilt" ),
+                      new ArrayList<String>( repository.getProjects( TEST_REPO_ID, "org.apache.rebuilt" ) ) );
+    }
+
+    private static Object countCalls( final String entityManagerName, final Object entityManager,
+                                      final Map<String, Integer> calls )
+    {
+        return Proxy.newProxyInstance( CassandraMetadataRepositoryTest.class.getClassLoader(),
+                                       new Class<?>[]{ EntityManager.class }, new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method method, Object[] args )
+                throws Throwable
+            {
+                String call = entityManagerName + "." + method.getName();
+                synchronized ( calls )
+                {
+                    calls.put( call, getCalls( calls, entityManagerName, method.getName() ) + 1 );
+                }
+                return CassandraMetadataRepositoryTest.invoke( entityManager, method, args );
+            }
+        } );
+    }
+
+    private static int getCalls( Map<String, Integer> calls, String entityManagerName, String methodName )
+    {
+        synchronized ( calls )
+        {
+            Integer count = calls.get( entityManagerName + "." + methodName );
+            return count == null ? 0 : count;
+        }
+    }
+
+    private static Object invoke( Object target, Method method, Object[] args )
+        throws Throwable
+    {
+        try
+        {
+            return method.invoke( target, args );
+        }
+        catch ( InvocationTargetException e )
+        {
+            throw e.getCause();
+        }
+    }
+
     @After
     public void shutdown()
         throws Exception
@@ -108,6 +258,12 @@ public class CassandraMetadataRepositoryTest
         cmr.getProjectVersionMetadataModelEntityManager().remove( projectVersionMetadataModels );
 
 
+        for ( CassandraIndex index : cmr.getIndexes().getAll() )
+        {
+            index.truncate();
+        }
+        // nothing is stored anymore, so the emptied column families list all of it
+        cmr.getIndexes().setComplete( true );
     }
 
 }
@@ -83,6 +83,7 @@ public class RepositoriesNamespaceTest
         {
 
             cmr.updateNamespace( "release", "org" );
+            cmr.save();
 
             r = cmr.getRepositoryEntityManager().get( "release" );
 
@@ -97,6 +98,7 @@ public class RepositoriesNamespaceTest
             Assertions.assertThat( n.getRepository() ).isNotNull();
 
             cmr.updateNamespace( "release", "org.apache" );
+            cmr.save();
 
             r = cmr.getRepositoryEntityManager().get( "release" );
 
@@ -129,5 +131,10 @@ public class RepositoriesNamespaceTest
 
         cmr.getRepositoryEntityManager().remove( repositories );
 
+        for ( CassandraIndex index : cmr.getIndexes().getAll() )
+        {
+            index.truncate();
+        }
+        cmr.getIndexes().setComplete( true );
     }
 }
@@ -0,0 +1,542 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Secondary indexes of the artifacts of a repository in the file metadata storage, by checksum and by gathering date.
+ * <p/>
+ * An artifact is referenced by the key <code>namespace/project/projectVersion/id</code>. The checksum index keeps
+ * one file per checksum, in a directory named after its first characters
+ * (<code>checksums/ab/abcdef1234567.properties</code>). The date index keeps one log per day
+ * (<code>dates/2012/09/21.log</code>, in UTC), so that a date range only reads the days it covers. As a scan gathers
+ * most artifacts on the same day, the entries are appended to the log rather than rewriting it: a line
+ * <code>+time key</code> adds an entry and a line <code>-time key</code> removes it. A log is compacted when it is
+ * read and most of its lines are outdated.
+ * <p/>
+ * The entries follow the updates and removals of artifacts, but those removed with their project, version or
+ * namespace are left behind: the entries must be checked against the content when read.
+ *
+ * @since 1.4-M3
+ */
+class FileMetadataIndexes
+{
+    private static final String INDEXES_KEY = "indexes";
+
+    /**
+     * The version of the layout of the indexes, the indexes of another version are rebuilt.
+     */
+    private static final String VERSION = "2";
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Minimum number of lines of a log before it is compacted.
+     */
+    private static final int COMPACTION_THRESHOLD = 64;
+
+    /**
+     * The locks of the indexes by directory, as every session has its own repository instance.
+     */
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<String, Object>();
+
+    private static final TimeZone UTC = TimeZone.getTimeZone( "UTC" );
+
+    /**
+     * Suffix of a log kept aside while it is replaced on the file systems which cannot rename over a file.
+     */
+    private static final String PREVIOUS_SUFFIX = ".previous";
+
+    private final File directory;
+
+    private final Object lock;
+
+    FileMetadataIndexes( File directory )
+    {
+        this.directory = directory;
+        this.lock = getLock( directory );
+    }
+
+    private static Object getLock( File directory )
+    {
+        String path = directory.getAbsolutePath();
+        Object lock = LOCKS.get( path );
+        if ( lock == null )
+        {
+            Object created = new Object();
+            lock = LOCKS.putIfAbsent( path, created );
+            if ( lock == null )
+            {
+                lock = created;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * @return <code>true</code> if the indexes have been built for the current content of the repository
+     */
+    boolean isBuilt()
+    {
+        Properties properties = readProperties( new File( directory, INDEXES_KEY + ".properties" ) );
+        return VERSION.equals( properties.getProperty( "version" ) );
+    }
+
+    void clear()
+    {
+        synchronized ( lock )
+        {
+            FileUtils.deleteQuietly( directory );
+        }
+    }
+
+    /**
+     * Marks the indexes as built, once every artifact of the content has been added.
+     */
+    void markBuilt()
+        throws IOException
+    {
+        Properties properties = new Properties();
+        properties.setProperty( "version", VERSION );
+        synchronized ( lock )
+        {
+            writeProperties( properties, new File( directory, INDEXES_KEY + ".properties" ) );
+        }
+    }
+
+    static String getKey( String namespace, String project, String projectVersion, String id )
+    {
+        return namespace + "/" + project + "/" + projectVersion + "/" + id;
+    }
+
+    /**
+     * @return the namespace, project, project version and id of the artifact key
+     */
+    static String[] splitKey( String key )
+    {
+        return key.split( "/", 4 );
+    }
+
+    /**
+     * @param md5          the MD5 checksum to index the artifact with, <code>null</code> if unchanged
+     * @param sha1         the SHA-1 checksum to index the artifact with, <code>null</code> if unchanged
+     * @param whenGathered the gathering date to index the artifact with, <code>null</code> if unchanged
+     */
+    void addArtifact( String key, String md5, String sha1, Date whenGathered )
+        throws IOException
+    {
+        synchronized ( lock )
+        {
+            for ( String checksum : Arrays.asList( md5, sha1 ) )
+            {
+                if ( checksum != null )
+                {
+                    updateEntry( getChecksumFile( checksum ), key, "" );
+                }
+            }
+            if ( whenGathered != null )
+            {
+                appendLine( getDateFile( whenGathered.getTime() ), "+" + whenGathered.getTime() + " " + key );
+            }
+        }
+    }
+
+    void removeArtifact( String key, String md5, String sha1, Date whenGathered )
+        throws IOException
+    {
+        synchronized ( lock )
+        {
+            for ( String checksum : Arrays.asList( md5, sha1 ) )
+            {
+                if ( checksum != null )
+                {
+                    updateEntry( getChecksumFile( checksum ), key, null );
+                }
+            }
+            if ( whenGathered != null )
+            {
+                File file = getDateFile( whenGathered.getTime() );
+                if ( file.exists() )
+                {
+                    appendLine( file, "-" + whenGathered.getTime() + " " + key );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the keys of the artifacts with the checksum
+     */
+    List<String> getArtifactsByChecksum( String checksum )
+    {
+        if ( checksum.contains( "/" ) || checksum.contains( "\\" ) || checksum.contains( ".." ) )
+        {
+            // not a checksum, and not to be read as a path
+            return new ArrayList<String>();
+        }
+        synchronized ( lock )
+        {
+            return new ArrayList<String>( readProperties( getChecksumFile( checksum ) ).stringPropertyNames() );
+        }
+    }
+
+    /**
+     * @param startTime the excluded start of the range, <code>null</code> for no lower bound
+     * @param endTime   the excluded end of the range, <code>null</code> for no upper bound
+     * @return the keys of the artifacts gathered in the range, with their gathering time. A key removed from the
+     *         content and added again at another date can appear twice.
+     */
+    List<Map.Entry<String, Long>> getArtifactsByDateRange( Date startTime, Date endTime )
+        throws IOException
+    {
+        long start = startTime == null ? Long.MIN_VALUE : startTime.getTime();
+        long end = endTime == null ? Long.MAX_VALUE : endTime.getTime();
+        // the names of the day files from and to which the range goes
+        String first = startTime == null ? null : getDatePath( start );
+        String last = endTime == null ? null : getDatePath( end );
+
+        List<Map.Entry<String, Long>> artifacts = new ArrayList<Map.Entry<String, Long>>();
+        synchronized ( lock )
+        {
+            for ( String year : list( new File( directory, "dates" ) ) )
+            {
+                for ( String month : list( new File( directory, "dates/" + year ) ) )
+                {
+                    for ( String day : list( new File( directory, "dates/" + year + "/" + month ) ) )
+                    {
+                        if ( day.endsWith( ".log" + PREVIOUS_SUFFIX ) )
+                        {
+                            // a replacement which did not complete, the log is restored when read
+                            day = day.substring( 0, day.length() - PREVIOUS_SUFFIX.length() );
+                            if ( new File( directory, "dates/" + year + "/" + month + "/" + day ).exists() )
+                            {
+                                continue;
+                            }
+                        }
+                        String path = year + "/" + month + "/" + day;
+                        if ( !day.endsWith( ".log" ) )
+                        {
+                            // a compaction which did not complete
+                            continue;
+                        }
+                        if ( ( first != null && path.compareTo( first ) < 0 ) || ( last != null
+                            && path.compareTo( last ) > 0 ) )
+                        {
+                            continue;
+                        }
+                        for ( Map.Entry<String, Long> entry : readLog( new File( directory, "dates/" + path ) ) )
+                        {
+                            long time = entry.getValue();
+                            if ( time > start && time < end )
+                            {
+                                artifacts.add( entry );
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return artifacts;
+    }
+
+    private File getChecksumFile( String checksum )
+    {
+        String prefix = checksum.length() > 2 ? checksum.substring( 0, 2 ) : checksum;
+        return new File( directory, "checksums/" + prefix + "/" + checksum + ".properties" );
+    }
+
+    private File getDateFile( long time )
+    {
+        return new File( directory, "dates/" + getDatePath( time ) );
+    }
+
+    private static String getDatePath( long time )
+    {
+        Calendar calendar = Calendar.getInstance( UTC );
+        calendar.setTimeInMillis( time );
+        return String.format( "%04d/%02d/%02d.log", calendar.get( Calendar.YEAR ), calendar.get( Calendar.MONTH ) + 1,
+                              calendar.get( Calendar.DAY_OF_MONTH ) );
+    }
+
+    /**
+     * @return the names of the files of the directory, sorted
+     */
+    private static List<String> list( File directory )
+    {
+        String[] names = directory.list();
+        if ( names == null )
+        {
+            return new ArrayList<String>();
+        }
+        Arrays.sort( names );
+        return Arrays.asList( names );
+    }
+
+    /**
+     * Replays the lines of a log of the date index, and compacts it if most of them are outdated.
+     *
+     * @return the entries of the log, in the order they were added
+     */
+    private static List<Map.Entry<String, Long>> readLog( File file )
+        throws IOException
+    {
+        restoreLog( file );
+
+        Map<String, Long> entries = new LinkedHashMap<String, Long>();
+        int lines = 0;
+        BufferedReader reader = null;
+        try
+        {
+            reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), ENCODING ) );
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                int separator = line.indexOf( ' ' );
+                if ( separator < 1 )
+                {
+                    // a line partially written
+                    continue;
+                }
+                Long time;
+                try
+                {
+                    time = Long.valueOf( line.substring( 1, separator ) );
+                }
+                catch ( NumberFormatException e )
+                {
+                    // a line partially written
+                    continue;
+                }
+                lines++;
+                String key = line.substring( separator + 1 );
+                if ( line.charAt( 0 ) == '-' )
+                {
+                    // only the entry of the removed date, the artifact may have been gathered again since
+                    if ( time.equals( entries.get( key ) ) )
+                    {
+                        entries.remove( key );
+                    }
+                }
+                else
+                {
+                    // a key added again is moved at the end
+                    entries.remove( key );
+                    entries.put( key, time );
+                }
+            }
+        }
+        catch ( FileNotFoundException e )
+        {
+            // no entry yet
+        }
+        finally
+        {
+            IOUtils.closeQuietly( reader );
+        }
+
+        if ( lines > COMPACTION_THRESHOLD && lines > 2 * entries.size() )
+        {
+            writeLog( file, entries );
+        }
+
+        List<Map.Entry<String, Long>> result = new ArrayList<Map.Entry<String, Long>>( entries.size() );
+        for ( Map.Entry<String, Long> entry : entries.entrySet() )
+        {
+            result.add( new AbstractMap.SimpleImmutableEntry<String, Long>( entry.getKey(), entry.getValue() ) );
+        }
+        return result;
+    }
+
+    private static void appendLine( File file, String line )
+        throws IOException
+    {
+        restoreLog( file );
+
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter( new FileOutputStream( file, true ), ENCODING );
+        try
+        {
+            writer.write( line );
+            writer.write( '\n' );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( writer );
+        }
+    }
+
+    /**
+     * Rewrites a log with only its current entries.
+     */
+    private static void writeLog( File file, Map<String, Long> entries )
+        throws IOException
+    {
+        if ( entries.isEmpty() )
+        {
+            FileUtils.deleteQuietly( file );
+            return;
+        }
+        File temp = new File( file.getParentFile(), file.getName() + ".tmp" );
+        Writer writer = new OutputStreamWriter( new FileOutputStream( temp ), ENCODING );
+        try
+        {
+            for ( Map.Entry<String, Long> entry : entries.entrySet() )
+            {
+                writer.write( "+" + entry.getValue() + " " + entry.getKey() + "\n" );
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly( writer );
+        }
+        // renaming over the log replaces it atomically where the file system allows it, otherwise the log is kept
+        // aside until the new one is in place
+        if ( !temp.renameTo( file ) )
+        {
+            File previous = new File( file.getParentFile(), file.getName() + PREVIOUS_SUFFIX );
+            FileUtils.deleteQuietly( previous );
+            if ( !file.renameTo( previous ) )
+            {
+                FileUtils.deleteQuietly( temp );
+                throw new IOException( "Cannot replace the index log " + file );
+            }
+            if ( !temp.renameTo( file ) )
+            {
+                previous.renameTo( file );
+                FileUtils.deleteQuietly( temp );
+                throw new IOException( "Cannot replace the index log " + file );
+            }
+            FileUtils.deleteQuietly( previous );
+        }
+    }
+
+    /**
+     * Puts back a log kept aside by a replacement which did not complete.
+     */
+    private static void restoreLog( File file )
+        throws IOException
+    {
+        File previous = new File( file.getParentFile(), file.getName() + PREVIOUS_SUFFIX );
+        if ( previous.exists() )
+        {
+            if ( file.exists() )
+            {
+                // the new log was in place
+                FileUtils.deleteQuietly( previous );
+            }
+            else if ( !previous.renameTo( file ) )
+            {
+                throw new IOException( "Cannot restore the index log " + file );
+            }
+        }
+    }
+
+    /**
+     * @param value the value of the entry, <code>null</code> to remove it
+     */
+    private static void updateEntry( File file, String key, String value )
+        throws IOException
+    {
+        Properties properties = readProperties( file );
+        if ( value == null )
+        {
+            if ( properties.remove( key ) == null )
+            {
+                return;
+            }
+        }
+        else if ( value.equals( properties.setProperty( key, value ) ) )
+        {
+            return;
+        }
+
+        if ( properties.isEmpty() )
+        {
+            FileUtils.deleteQuietly( file );
+        }
+        else
+        {
+            writeProperties( properties, file );
+        }
+    }
+
+    private static Properties readProperties( File file )
+    {
+        Properties properties = new Properties();
+        FileInputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            properties.load( in );
+        }
+        catch ( FileNotFoundException e )
+        {
+            // no entry yet
+        }
+        catch ( IOException e )
+        {
+            // a corrupted file only loses its entries: the indexes are checked against the content when read
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+        return properties;
+    }
+
+    private static void writeProperties( Properties properties, File file )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+        FileOutputStream os = new FileOutputStream( file );
+        try
+        {
+            properties.store( os, null );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( os );
+        }
+    }
+}
@@ -406,42 +406,37 @@ public class FileMetadataRepository
 
     public List<ArtifactMetadata> getArtifactsByDateRange( String repoId, Date startTime, Date endTime )
     {
-        // TODO: this is quite slow - if we are to persist with this repository implementation we should build an index
-        //  of this information (eg. in Lucene, as before)
+        FileMetadataIndexes indexes = getBuiltIndexes( repoId );
 
-        List<ArtifactMetadata> artifacts = new ArrayList<ArtifactMetadata>();
-        for ( String ns : getRootNamespaces( repoId ) )
+        List<Map.Entry<String, Long>> entries;
+        try
         {
-            getArtifactsByDateRange( artifacts, repoId, ns, startTime, endTime );
+            entries = indexes.getArtifactsByDateRange( startTime, endTime );
         }
-        Collections.sort( artifacts, new ArtifactComparator() );
-        return artifacts;
-    }
-
-    private void getArtifactsByDateRange( List<ArtifactMetadata> artifacts, String repoId, String ns, Date startTime,
-                                          Date endTime )
-    {
-        for ( String namespace : getNamespaces( repoId, ns ) )
+        catch ( IOException e )
         {
-            getArtifactsByDateRange( artifacts, repoId, ns + "." + namespace, startTime, endTime );
+            // TODO
+            log.error( e.getMessage(), e );
+            return new ArrayList<ArtifactMetadata>();
         }
 
-        for ( String project : getProjects( repoId, ns ) )
+        List<ArtifactMetadata> artifacts = new ArrayList<ArtifactMetadata>();
+        for ( Map.Entry<String, Long> entry : entries )
         {
-            for ( String version : getProjectVersions( repoId, ns, project ) )
+            Date whenGathered = new Date( entry.getValue() );
+            ArtifactMetadata artifact = getIndexedArtifact( repoId, entry.getKey() );
+            if ( artifact != null && whenGathered.equals( artifact.getWhenGathered() ) )
             {
-                for ( ArtifactMetadata artifact : getArtifacts( repoId, ns, project, version ) )
-                {
-                    if ( startTime == null || startTime.before( artifact.getWhenGathered() ) )
-                    {
-                        if ( endTime == null || endTime.after( artifact.getWhenGathered() ) )
-                        {
-                            artifacts.add( artifact );
-                        }
-                    }
-                }
+                artifacts.add( artifact );
+            }
+            else
+            {
+                // removed with its project, version or namespace
+                removeIndexEntry( indexes, entry.getKey(), null, null, whenGathered );
             }
         }
+        Collections.sort( artifacts, new ArtifactComparator() );
+        return artifacts;
     }
 
     public Collection<ArtifactMetadata> getArtifacts( String repoId, String namespace, String projectId,
@@ -590,15 +585,22 @@ public class FileMetadataRepository
 
     public List<ArtifactMetadata> getArtifactsByChecksum( String repositoryId, String checksum )
     {
-        // TODO: this is quite slow - if we are to persist with this repository implementation we should build an index
-        //  of this information (eg. in Lucene, as before)
-        // alternatively, we could build a referential tree in the content repository, however it would need some levels
-        // of depth to avoid being too broad to be useful (eg. /repository/checksums/a/ab/abcdef1234567)
+        FileMetadataIndexes indexes = getBuiltIndexes( repositoryId );
 
         List<ArtifactMetadata> artifacts = new ArrayList<ArtifactMetadata>();
-        for ( String ns : getRootNamespaces( repositoryId ) )
+        for ( String key : indexes.getArtifactsByChecksum( checksum ) )
         {
-            getArtifactsByChecksum( artifacts, repositoryId, ns, checksum );
+            ArtifactMetadata artifact = getIndexedArtifact( repositoryId, key );
+            if ( artifact != null && ( checksum.equals( artifact.getMd5() ) || checksum.equals(
+                artifact.getSha1() ) ) )
+            {
+                artifacts.add( artifact );
+            }
+            else
+            {
+                // removed with its project, version or namespace
+                removeIndexEntry( indexes, key, checksum, null, null );
+            }
         }
         return artifacts;
     }
@@ -633,6 +635,9 @@ public class FileMetadataRepository
 
         String id = artifactMetadata.getId();
 
+        removeIndexEntries( artifactMetadata.getRepositoryId(), artifactMetadata.getNamespace(),
+                            artifactMetadata.getProject(), baseVersion, properties, id );
+
         properties.remove( "artifact:updated:" + id );
         properties.remove( "artifact:whenGathered:" + id );
         properties.remove( "artifact:size:" + id );
@@ -670,6 +675,17 @@ public class FileMetadataRepository
 
         Properties properties = readOrCreateProperties( directory, PROJECT_VERSION_METADATA_KEY );
 
+        // the directory of the version is deleted below, with the other artifacts it holds
+        for ( Object key : properties.keySet() )
+        {
+            String property = (String) key;
+            if ( property.startsWith( "artifact:updated:" ) )
+            {
+                removeIndexEntries( repoId, namespace, project, version, properties,
+                                    property.substring( "artifact:updated:".length() ) );
+            }
+        }
+
         properties.remove( "artifact:updated:" + id );
         properties.remove( "artifact:whenGathered:" + id );
         properties.remove( "artifact:size:" + id );
@@ -726,29 +742,93 @@ public class FileMetadataRepository
         {
             log.error( "Cannot delete repository {}", dir );
         }
+        getIndexes( repoId ).clear();
+    }
+
+    /**
+     * Rebuilds the checksum and date indexes of the repository from its content. The indexes are otherwise kept up to
+     * date as artifacts are updated and removed, and built on the first query of a repository that has none, such as
+     * one written by a previous version.
+     *
+     * @param repoId the repository
+     */
+    public void rebuildIndexes( String repoId )
+    {
+        FileMetadataIndexes indexes = getIndexes( repoId );
+        indexes.clear();
+        try
+        {
+            for ( ArtifactMetadata artifact : getArtifacts( repoId ) )
+            {
+                String key = FileMetadataIndexes.getKey( artifact.getNamespace(), artifact.getProject(),
+                                                         artifact.getProjectVersion(), artifact.getId() );
+                indexes.addArtifact( key, artifact.getMd5(), artifact.getSha1(), artifact.getWhenGathered() );
+            }
+            indexes.markBuilt();
+        }
+        catch ( IOException e )
+        {
+            // the next query tries again
+            log.error( "Cannot build the indexes of repository " + repoId + ": " + e.getMessage(), e );
+        }
     }
 
-    private void getArtifactsByChecksum( List<ArtifactMetadata> artifacts, String repositoryId, String ns,
-                                         String checksum )
+    private FileMetadataIndexes getIndexes( String repoId )
     {
-        for ( String namespace : getNamespaces( repositoryId, ns ) )
+        return new FileMetadataIndexes( new File( getBaseDirectory( repoId ), "indexes" ) );
+    }
+
+    private FileMetadataIndexes getBuiltIndexes( String repoId )
+    {
+        FileMetadataIndexes indexes = getIndexes( repoId );
+        if ( !indexes.isBuilt() )
         {
-            getArtifactsByChecksum( artifacts, repositoryId, ns + "." + namespace, checksum );
+            log.info( "Building the checksum and date indexes of repository {}", repoId );
+            rebuildIndexes( repoId );
         }
+        return indexes;
+    }
 
-        for ( String project : getProjects( repositoryId, ns ) )
+    private ArtifactMetadata getIndexedArtifact( String repoId, String key )
+    {
+        String[] coordinates = FileMetadataIndexes.splitKey( key );
+        if ( coordinates.length == 4 )
         {
-            for ( String version : getProjectVersions( repositoryId, ns, project ) )
+            for ( ArtifactMetadata artifact : getArtifacts( repoId, coordinates[0], coordinates[1], coordinates[2] ) )
             {
-                for ( ArtifactMetadata artifact : getArtifacts( repositoryId, ns, project, version ) )
+                if ( coordinates[3].equals( artifact.getId() ) )
                 {
-                    if ( checksum.equals( artifact.getMd5() ) || checksum.equals( artifact.getSha1() ) )
-                    {
-                        artifacts.add( artifact );
-                    }
+                    return artifact;
                 }
             }
         }
+        return null;
+    }
+
+    private void removeIndexEntry( FileMetadataIndexes indexes, String key, String md5, String sha1,
+                                   Date whenGathered )
+    {
+        try
+        {
+            indexes.removeArtifact( key, md5, sha1, whenGathered );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Cannot remove the index entry of {}: {}", key, e.getMessage() );
+        }
+    }
+
+    /**
+     * Removes the index entries of the artifacts of the properties of a project version, before they are removed.
+     */
+    private void removeIndexEntries( String repoId, String namespace, String projectId, String projectVersion,
+                                     Properties properties, String id )
+    {
+        String key = FileMetadataIndexes.getKey( namespace, projectId, projectVersion, id );
+        String whenGathered = properties.getProperty( "artifact:whenGathered:" + id );
+        removeIndexEntry( getIndexes( repoId ), key, properties.getProperty( "artifact:md5:" + id ),
+                          properties.getProperty( "artifact:sha1:" + id ),
+                          whenGathered != null ? new Date( Long.parseLong( whenGathered ) ) : null );
     }
 
     private File getMetadataDirectory( String repoId, String facetId )
@@ -792,6 +872,8 @@ public class FileMetadataRepository
 
         clearMetadataFacetProperties( artifact.getFacetList(), properties, "artifact:facet:" + artifact.getId() + ":" );
 
+        Properties previous = (Properties) properties.clone();
+
         String id = artifact.getId();
         properties.setProperty( "artifact:updated:" + id, Long.toString( artifact.getFileLastModified().getTime() ) );
         properties.setProperty( "artifact:whenGathered:" + id, Long.toString( artifact.getWhenGathered().getTime() ) );
@@ -816,6 +898,9 @@ public class FileMetadataRepository
         try
         {
             writeProperties( properties, directory, PROJECT_VERSION_METADATA_KEY );
+
+            updateIndexEntries( repoId, FileMetadataIndexes.getKey( namespace, projectId, projectVersion, id ), id,
+                                previous, properties );
         }
         catch ( IOException e )
         {
@@ -824,6 +909,34 @@ public class FileMetadataRepository
         }
     }
 
+    /**
+     * Replaces the index entries of an artifact for the values of its previous properties by the current ones. The
+     * unchanged values are left as they are, so that scanning an artifact again does not grow the date index.
+     */
+    private void updateIndexEntries( String repoId, String key, String id, Properties previous,
+                                     Properties properties )
+        throws IOException
+    {
+        String md5 = properties.getProperty( "artifact:md5:" + id );
+        String sha1 = properties.getProperty( "artifact:sha1:" + id );
+        String whenGathered = properties.getProperty( "artifact:whenGathered:" + id );
+        String previousMd5 = previous.getProperty( "artifact:md5:" + id );
+        String previousSha1 = previous.getProperty( "artifact:sha1:" + id );
+        String previousWhenGathered = previous.getProperty( "artifact:whenGathered:" + id );
+
+        FileMetadataIndexes indexes = getIndexes( repoId );
+        indexes.removeArtifact( key, previousMd5 != null && !previousMd5.equals( md5 ) ? previousMd5 : null,
+                                previousSha1 != null && !previousSha1.equals( sha1 ) ? previousSha1 : null,
+                                previousWhenGathered != null && !previousWhenGathered.equals( whenGathered )
+                                    ? new Date( Long.parseLong( previousWhenGathered ) )
+                                    : null );
+        indexes.addArtifact( key, md5 != null && !md5.equals( previousMd5 ) ? md5 : null,
+                             sha1 != null && !sha1.equals( previousSha1 ) ? sha1 : null,
+                             whenGathered != null && !whenGathered.equals( previousWhenGathered )
+                                 ? new Date( Long.parseLong( whenGathered ) )
+                                 : null );
+    }
+
     private Properties readOrCreateProperties( File directory, String propertiesKey )
     {
         try
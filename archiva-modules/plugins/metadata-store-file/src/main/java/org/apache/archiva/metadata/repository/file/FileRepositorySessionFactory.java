@@ -21,12 +21,17 @@ package org.apache.archiva.metadata.repository.file;
 
 import org.apache.archiva.metadata.model.MetadataFacetFactory;
 import org.apache.archiva.metadata.repository.MetadataRepository;
+import org.apache.archiva.metadata.repository.MetadataRepositoryTotals;
 import org.apache.archiva.metadata.repository.MetadataResolver;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.apache.commons.lang.StringUtils;
 import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.springframework.context.ApplicationContext;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
@@ -39,6 +44,8 @@ import java.util.Map;
  *
  */
 @Service( "repositorySessionFactory#file" )
+@ManagedResource( objectName = "org.apache.archiva:type=FileRepositorySessionFactory",
+                  description = "Sessions on the file metadata storage" )
 public class FileRepositorySessionFactory
     implements RepositorySessionFactory
 {
@@ -63,6 +70,9 @@ public class FileRepositorySessionFactory
     @Inject
     private ApplicationContext applicationContext;
 
+    @Inject
+    private MetadataRepositoryTotals metadataRepositoryTotals;
+
     @PostConstruct
     public void initialize()
     {
@@ -84,6 +94,14 @@ public class FileRepositorySessionFactory
     {
         MetadataRepository metadataRepository = new FileMetadataRepository( metadataFacetFactories, configuration );
 
-        return new RepositorySession( metadataRepository, metadataResolver );
+        return new RepositorySession( metadataRepositoryTotals.track( metadataRepository, false ), metadataResolver );
+    }
+
+    @ManagedOperation( description = "Rebuilds the checksum and date indexes of a repository from its content" )
+    @ManagedOperationParameters(
+        { @ManagedOperationParameter( name = "repositoryId", description = "The repository" ) } )
+    public void rebuildIndexes( String repositoryId )
+    {
+        new FileMetadataRepository( metadataFacetFactories, configuration ).rebuildIndexes( repositoryId );
     }
 }
@@ -19,6 +19,7 @@ package org.apache.archiva.metadata.repository.file;
  * under the License.
  */
 
+import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.model.MetadataFacetFactory;
 import org.apache.archiva.metadata.repository.AbstractMetadataRepositoryTest;
 import org.apache.commons.io.FileUtils;
@@ -26,8 +27,12 @@ import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.Configuration;
 import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
 import org.junit.Before;
+import org.junit.Test;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import static org.mockito.Mockito.mock;
@@ -36,6 +41,22 @@ import static org.mockito.Mockito.when;
 public class FileMetadataRepositoryTest
     extends AbstractMetadataRepositoryTest
 {
+    private static final String INDEXED_NAMESPACE = "org.apache.indexed";
+
+    private static final String INDEXED_PROJECT = "indexed";
+
+    private static final String INDEXED_VERSION = "1.0";
+
+    /**
+     * 2012-09-21 13:00 UTC, in the day log <code>dates/2012/09/21.log</code>.
+     */
+    private static final long GATHERED = 1348232400000L;
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private File directory;
+
+    private FileMetadataRepository fileRepository;
 
     @Before
     public void setUp()
@@ -43,7 +64,7 @@ public class FileMetadataRepositoryTest
     {
         super.setUp();
 
-        File directory = new File( "target/test-repositories" );
+        directory = new File( "target/test-repositories" );
         if (directory.exists())
         {
             FileUtils.deleteDirectory( directory );
@@ -51,7 +72,158 @@ public class FileMetadataRepositoryTest
         ArchivaConfiguration config = createTestConfiguration( directory );
         Map<String, MetadataFacetFactory> factories = createTestMetadataFacetFactories();
 
-        this.repository = new FileMetadataRepository( factories, config );
+        fileRepository = new FileMetadataRepository( factories, config );
+        this.repository = fileRepository;
+    }
+
+    @Test
+    public void testChecksumIndexFollowsUpdate()
+        throws Exception
+    {
+        ArtifactMetadata artifact = createIndexedArtifact( "indexed-1.0.jar", "md5-first", GATHERED );
+        repository.updateArtifact( TEST_REPO_ID, INDEXED_NAMESPACE, INDEXED_PROJECT, INDEXED_VERSION, artifact );
+
+        artifact = createIndexedArtifact( "indexed-1.0.jar", "md5-second", GATHERED );
+        repository.updateArtifact( TEST_REPO_ID, INDEXED_NAMESPACE, INDEXED_PROJECT, INDEXED_VERSION, artifact );
+
+        assertEquals( Collections.<ArtifactMetadata>emptyList(),
+                      repository.getArtifactsByChecksum( TEST_REPO_ID, "md5-first" ) );
+        assertFalse( new File( getIndexesDirectory(), "checksums/md/md5-first.properties" ).exists() );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByChecksum( TEST_REPO_ID, "md5-second" ) );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByChecksum( TEST_REPO_ID, "sha1-indexed-1.0.jar" ) );
+    }
+
+    @Test
+    public void testDateIndexFollowsUpdate()
+        throws Exception
+    {
+        ArtifactMetadata artifact = createIndexedArtifact( "indexed-1.0.jar", "md5", GATHERED );
+        repository.updateArtifact( TEST_REPO_ID, INDEXED_NAMESPACE, INDEXED_PROJECT, INDEXED_VERSION, artifact );
+
+        artifact = createIndexedArtifact( "indexed-1.0.jar", "md5", GATHERED + 2 * DAY );
+        repository.updateArtifact( TEST_REPO_ID, INDEXED_NAMESPACE, INDEXED_PROJECT, INDEXED_VERSION, artifact );
+
+        assertEquals( Collections.<ArtifactMetadata>emptyList(),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, new Date( GATHERED - DAY ),
+                                                          new Date( GATHERED + DAY ) ) );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, new Date( GATHERED + DAY ), null ) );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, null, null ) );
+    }
+
+    @Test
+    public void testDateIndexAppendsOnlyChanges()
+        throws Exception
+    {
+        for ( int i = 0; i < 10; i++ )
+        {
+            ArtifactMetadata artifact = createIndexedArtifact( "indexed-1.0-" + i + ".jar", "md5-" + i, GATHERED + i );
+            repository.updateArtifact( TEST_REPO_ID, INDEXED_NAMESPACE, INDEXED_PROJECT, INDEXED_VERSION, artifact );
+        }
+        // scanned again, unchanged
+        for ( int i = 0; i < 10; i++ )
+        {
+            ArtifactMetadata artifact = createIndexedArtifact( "indexed-1.0-" + i + ".jar", "md5-" + i, GATHERED + i );
+            repository.updateArtifact( TEST_REPO_ID, INDEXED_NAMESPACE, INDEXED_PROJECT, INDEXED_VERSION, artifact );
+        }
+
+        File log = new File( getIndexesDirectory(), "dates/2012/09/21.log" );
+        assertEquals( 10, FileUtils.readLines( log ).size() );
+
+        List<ArtifactMetadata> artifacts =
+            repository.getArtifactsByDateRange( TEST_REPO_ID, new Date( GATHERED - 1 ), new Date( GATHERED + 5 ) );
+        assertEquals( 5, artifacts.size() );
+    }
+
+    @Test
+    public void testStaleIndexEntriesPruned()
+        throws Exception
+    {
+        ArtifactMetadata artifact = createIndexedArtifact( "indexed-1.0.jar", "md5", GATHERED );
+        repository.updateArtifact( TEST_REPO_ID, INDEXED_NAMESPACE, INDEXED_PROJECT, INDEXED_VERSION, artifact );
+        ArtifactMetadata other = createIndexedArtifact( "indexed-1.0.jar", "md5", GATHERED );
+        other.setNamespace( INDEXED_NAMESPACE + ".other" );
+        repository.updateArtifact( TEST_REPO_ID, INDEXED_NAMESPACE + ".other", INDEXED_PROJECT, INDEXED_VERSION,
+                                   other );
+
+        // the entries are left behind by the removal of the whole version and namespace
+        repository.removeProjectVersion( TEST_REPO_ID, INDEXED_NAMESPACE, INDEXED_PROJECT, INDEXED_VERSION );
+        repository.removeNamespace( TEST_REPO_ID, INDEXED_NAMESPACE + ".other" );
+
+        assertEquals( Collections.<ArtifactMetadata>emptyList(),
+                      repository.getArtifactsByChecksum( TEST_REPO_ID, "md5" ) );
+        assertFalse( new File( getIndexesDirectory(), "checksums/md/md5.properties" ).exists() );
+        assertEquals( Collections.<ArtifactMetadata>emptyList(),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, null, null ) );
+
+        // gathered again at the same date, the pruned entries must not hide it
+        repository.updateArtifact( TEST_REPO_ID, INDEXED_NAMESPACE, INDEXED_PROJECT, INDEXED_VERSION, artifact );
+
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByChecksum( TEST_REPO_ID, "md5" ) );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, null, null ) );
+    }
+
+    @Test
+    public void testRebuildIndexes()
+        throws Exception
+    {
+        ArtifactMetadata artifact = createIndexedArtifact( "indexed-1.0.jar", "md5", GATHERED );
+        repository.updateArtifact( TEST_REPO_ID, INDEXED_NAMESPACE, INDEXED_PROJECT, INDEXED_VERSION, artifact );
+        FileUtils.deleteDirectory( getIndexesDirectory() );
+
+        fileRepository.rebuildIndexes( TEST_REPO_ID );
+
+        assertTrue( new File( getIndexesDirectory(), "checksums/md/md5.properties" ).exists() );
+        assertTrue( new File( getIndexesDirectory(), "dates/2012/09/21.log" ).exists() );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByChecksum( TEST_REPO_ID, "md5" ) );
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, null, null ) );
+    }
+
+    @Test
+    public void testIndexesOfPreviousVersionRebuilt()
+        throws Exception
+    {
+        ArtifactMetadata artifact = createIndexedArtifact( "indexed-1.0.jar", "md5", GATHERED );
+        repository.updateArtifact( TEST_REPO_ID, INDEXED_NAMESPACE, INDEXED_PROJECT, INDEXED_VERSION, artifact );
+        // the layout of the first version, with a properties file per day
+        FileUtils.deleteDirectory( getIndexesDirectory() );
+        FileUtils.writeStringToFile( new File( getIndexesDirectory(), "indexes.properties" ), "version=1\n" );
+        FileUtils.writeStringToFile( new File( getIndexesDirectory(), "dates/2012/09/21.properties" ),
+                                     INDEXED_NAMESPACE + "/" + INDEXED_PROJECT + "/" + INDEXED_VERSION
+                                         + "/indexed-1.0.jar=" + GATHERED + "\n" );
+
+        assertEquals( Collections.singletonList( artifact ),
+                      repository.getArtifactsByDateRange( TEST_REPO_ID, null, null ) );
+        assertFalse( new File( getIndexesDirectory(), "dates/2012/09/21.properties" ).exists() );
+        assertTrue( new File( getIndexesDirectory(), "dates/2012/09/21.log" ).exists() );
+    }
+
+    private File getIndexesDirectory()
+    {
+        return new File( directory, TEST_REPO_ID + "/.archiva/indexes" );
+    }
+
+    private static ArtifactMetadata createIndexedArtifact( String id, String md5, long whenGathered )
+    {
+        ArtifactMetadata artifact = new ArtifactMetadata();
+        artifact.setId( id );
+        artifact.setWhenGathered( new Date( whenGathered ) );
+        artifact.setNamespace( INDEXED_NAMESPACE );
+        artifact.setProject( INDEXED_PROJECT );
+        artifact.setRepositoryId( TEST_REPO_ID );
+        artifact.setFileLastModified( whenGathered );
+        artifact.setVersion( INDEXED_VERSION );
+        artifact.setProjectVersion( INDEXED_VERSION );
+        artifact.setMd5( md5 );
+        artifact.setSha1( "sha1-" + id );
+        return artifact;
     }
 
     protected static ArchivaConfiguration createTestConfiguration( File directory )
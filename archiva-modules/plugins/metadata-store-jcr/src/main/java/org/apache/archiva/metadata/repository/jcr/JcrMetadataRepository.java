@@ -32,6 +32,7 @@ import org.apache.archiva.metadata.model.ProjectMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionReference;
 import org.apache.archiva.metadata.model.Scm;
+import org.apache.archiva.metadata.repository.ArtifactLookup;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
@@ -73,7 +74,7 @@ import java.util.Set;
  * @todo revise reference storage
  */
 public class JcrMetadataRepository
-    implements MetadataRepository
+    implements MetadataRepository, ArtifactLookup
 {
 
     private static final String JCR_LAST_MODIFIED = "jcr:lastModified";
@@ -1227,6 +1228,31 @@ public class JcrMetadataRepository
         return artifacts;
     }
 
+    public ArtifactMetadata getArtifact( String repositoryId, String namespace, String projectId,
+                                         String projectVersion, String id )
+        throws MetadataResolutionException
+    {
+        try
+        {
+            Node root = getJcrSession().getRootNode();
+            String path = getArtifactPath( repositoryId, namespace, projectId, projectVersion, id );
+
+            if ( root.hasNode( path ) )
+            {
+                Node node = root.getNode( path );
+                if ( node.isNodeType( ARTIFACT_NODE_TYPE ) )
+                {
+                    return getArtifactFromNode( repositoryId, node );
+                }
+            }
+            return null;
+        }
+        catch ( RepositoryException e )
+        {
+            throw new MetadataResolutionException( e.getMessage(), e );
+        }
+    }
+
     public void save()
     {
         try
@@ -1253,7 +1279,7 @@ public class JcrMetadataRepository
 
     public boolean canObtainAccess( Class<?> aClass )
     {
-        return aClass == Session.class;
+        return aClass == Session.class || aClass == ArtifactLookup.class;
     }
 
     public <T>T obtainAccess( Class<T> aClass )
@@ -1271,6 +1297,10 @@ public class JcrMetadataRepository
                 throw new MetadataRepositoryException( e.getMessage(), e );
             }
         }
+        if ( aClass == ArtifactLookup.class )
+        {
+            return aClass.cast( this );
+        }
         throw new IllegalArgumentException(
             "Access using " + aClass + " is not supported on the JCR metadata storage" );
     }
@@ -21,6 +21,7 @@ package org.apache.archiva.metadata.repository.jcr;
 
 import org.apache.archiva.metadata.model.MetadataFacetFactory;
 import org.apache.archiva.metadata.repository.MetadataRepository;
+import org.apache.archiva.metadata.repository.MetadataRepositoryTotals;
 import org.apache.archiva.metadata.repository.MetadataResolver;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
@@ -68,6 +69,9 @@ public class JcrRepositorySessionFactory
     @Inject
     private MetadataResolver metadataResolver;
 
+    @Inject
+    private MetadataRepositoryTotals metadataRepositoryTotals;
+
     public RepositorySession createSession()
     {
         try
@@ -79,7 +83,8 @@ public class JcrRepositorySessionFactory
             //  API.
             MetadataRepository metadataRepository = new JcrMetadataRepository( metadataFacetFactories, repository );
 
-            return new RepositorySession( metadataRepository, metadataResolver );
+            return new RepositorySession( metadataRepositoryTotals.track( metadataRepository, true ),
+                                          metadataResolver );
         }
         catch ( RepositoryException e )
         {
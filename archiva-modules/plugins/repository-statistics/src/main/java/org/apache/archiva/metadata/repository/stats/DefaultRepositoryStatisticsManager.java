@@ -23,7 +23,9 @@ import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.model.maven2.MavenArtifactFacet;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
+import org.apache.archiva.metadata.repository.MetadataRepositoryTotals;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
+import org.apache.archiva.metadata.repository.RepositoryTotals;
 import org.apache.commons.lang.time.StopWatch;
 import org.apache.jackrabbit.commons.JcrUtils;
 import org.slf4j.Logger;
@@ -36,10 +38,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import javax.inject.Inject;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
@@ -59,6 +61,16 @@ public class DefaultRepositoryStatisticsManager
 
     private static final TimeZone UTC_TIME_ZONE = TimeZone.getTimeZone( "UTC" );
 
+    /**
+     * The running totals of the repositories, maintained as artifacts are updated and removed. The totals of a
+     * repository are computed from its whole content when they are not known yet, or are older than the
+     * reconciliation interval.
+     */
+    @Inject
+    private MetadataRepositoryTotals metadataRepositoryTotals;
+
+    private long reconciliationInterval = 24 * 60 * 60 * 1000L;
+
     public boolean hasStatistics( MetadataRepository metadataRepository, String repositoryId )
         throws MetadataRepositoryException
     {
@@ -93,38 +105,28 @@ public class DefaultRepositoryStatisticsManager
         }
     }
 
-    private void walkRepository( MetadataRepository metadataRepository, RepositoryStatistics stats, String repositoryId,
-                                 String ns )
+    private void walkRepository( MetadataRepository metadataRepository, RepositoryTotals totals, String repositoryId,
+                                 String ns, boolean artifacts )
         throws MetadataResolutionException
     {
         for ( String namespace : metadataRepository.getNamespaces( repositoryId, ns ) )
         {
-            walkRepository( metadataRepository, stats, repositoryId, ns + "." + namespace );
+            walkRepository( metadataRepository, totals, repositoryId, ns + "." + namespace, artifacts );
         }
 
         Collection<String> projects = metadataRepository.getProjects( repositoryId, ns );
-        if ( !projects.isEmpty() )
+        for ( String project : projects )
         {
-            stats.setTotalGroupCount( stats.getTotalGroupCount() + 1 );
-            stats.setTotalProjectCount( stats.getTotalProjectCount() + projects.size() );
+            totals.addProject( ns, project );
 
-            for ( String project : projects )
+            if ( artifacts )
             {
                 for ( String version : metadataRepository.getProjectVersions( repositoryId, ns, project ) )
                 {
                     for ( ArtifactMetadata artifact : metadataRepository.getArtifacts( repositoryId, ns, project,
                                                                                        version ) )
                     {
-                        stats.setTotalArtifactCount( stats.getTotalArtifactCount() + 1 );
-                        stats.setTotalArtifactFileSize( stats.getTotalArtifactFileSize() + artifact.getSize() );
-
-                        MavenArtifactFacet facet =
-                            (MavenArtifactFacet) artifact.getFacet( MavenArtifactFacet.FACET_ID );
-                        if ( facet != null )
-                        {
-                            String type = facet.getType();
-                            stats.setTotalCountForType( type, stats.getTotalCountForType( type ) + 1 );
-                        }
+                        totals.addArtifact( artifact );
                     }
                 }
             }
@@ -142,45 +144,84 @@ public class DefaultRepositoryStatisticsManager
         repositoryStatistics.setTotalFileCount( totalFiles );
         repositoryStatistics.setNewFileCount( newFiles );
 
-        // TODO
-        // In the future, instead of being tied to a scan we might want to record information in the fly based on
-        // events that are occurring. Even without these totals we could query much of the information on demand based
-        // on information from the metadata content repository. In the mean time, we lock information in at scan time.
+        // The totals are maintained on the fly as artifacts are updated and removed, and only gathered from the whole
+        // content of the repository when they are not known or not reconciled within the interval. They are still
+        // locked in at scan time, as they are recorded with the scan.
         // Note that if new types are later discoverable due to a code change or new plugin, historical stats will not
         // be updated and the repository will need to be rescanned.
 
         long startGather = System.currentTimeMillis();
 
-        // FIXME what about other implementations ?
-
-        if ( metadataRepository.canObtainAccess( Session.class ) )
+        RepositoryTotals totals =
+            metadataRepositoryTotals != null ? metadataRepositoryTotals.getTotals( repositoryId ) : null;
+        if ( totals != null && startGather - totals.getReconciledTime() < reconciliationInterval )
         {
-            // TODO: this is currently very raw and susceptible to changes in content structure. Should we instead
-            //   depend directly on the plugin and interrogate the JCR repository's knowledge of the structure?
-            populateStatisticsFromJcr( (Session) metadataRepository.obtainAccess( Session.class ), repositoryId,
-                                       repositoryStatistics );
+            populateStatisticsFromTotals( totals, repositoryStatistics );
+
+            log.info( "Gathering statistics from the running totals executed in {} ms",
+                      ( System.currentTimeMillis() - startGather ) );
         }
         else
         {
-            // TODO:
-            //   if the file repository is used more permanently, we may seek a more efficient mechanism - e.g. we could
-            //   build an index, or store the aggregate information and update it on the fly. We can perhaps even walk
-            //   but retrieve less information to speed it up. In the mean time, we walk the repository using the
-            //   standard APIs
-            populateStatisticsFromRepositoryWalk( metadataRepository, repositoryId, repositoryStatistics );
-        }
+            totals = new RepositoryTotals( repositoryId );
+            long reconciliation =
+                metadataRepositoryTotals != null ? metadataRepositoryTotals.beginReconciliation( repositoryId ) : -1;
+
+            // FIXME what about other implementations ?
+
+            if ( metadataRepository.canObtainAccess( Session.class ) )
+            {
+                // TODO: this is currently very raw and susceptible to changes in content structure. Should we instead
+                //   depend directly on the plugin and interrogate the JCR repository's knowledge of the structure?
+                Session session = (Session) metadataRepository.obtainAccess( Session.class );
+                populateTotalsFromJcr( session, repositoryId, totals );
+                if ( metadataRepositoryTotals != null )
+                {
+                    // the running totals need the groups and projects themselves, not only their number
+                    populateTotalsFromRepositoryWalk( metadataRepository, repositoryId, totals, false );
+                    populateStatisticsFromTotals( totals, repositoryStatistics );
+                }
+                else
+                {
+                    populateStatisticsFromTotals( totals, repositoryStatistics );
+                    populateGroupsAndProjectsFromJcr( session, repositoryId, repositoryStatistics );
+                }
+            }
+            else
+            {
+                populateTotalsFromRepositoryWalk( metadataRepository, repositoryId, totals, true );
+                populateStatisticsFromTotals( totals, repositoryStatistics );
+            }
 
-        log.info( "Gathering statistics executed in {} ms",  ( System.currentTimeMillis() - startGather ) );
+            // the statistics of this scan are kept either way, but the running totals are only started from totals
+            // which no session changed while they were gathered
+            if ( metadataRepositoryTotals != null && !metadataRepositoryTotals.reconcile( totals, reconciliation ) )
+            {
+                log.info( "Repository {} was changed while gathering statistics, its running totals will be "
+                              + "gathered again on the next scan", repositoryId );
+            }
+
+            log.info( "Gathering statistics executed in {} ms", ( System.currentTimeMillis() - startGather ) );
+        }
 
         metadataRepository.addMetadataFacet( repositoryId, repositoryStatistics );
     }
 
-    private void populateStatisticsFromJcr( Session session, String repositoryId,
-                                            RepositoryStatistics repositoryStatistics )
-        throws MetadataRepositoryException
+    private void populateStatisticsFromTotals( RepositoryTotals totals, RepositoryStatistics repositoryStatistics )
     {
-        // TODO: these may be best as running totals, maintained by observations on the properties in JCR
+        repositoryStatistics.setTotalArtifactCount( totals.getTotalArtifactCount() );
+        repositoryStatistics.setTotalArtifactFileSize( totals.getTotalArtifactFileSize() );
+        repositoryStatistics.setTotalGroupCount( totals.getTotalGroupCount() );
+        repositoryStatistics.setTotalProjectCount( totals.getTotalProjectCount() );
+        for ( Map.Entry<String, Long> entry : totals.getTotalCountForType().entrySet() )
+        {
+            repositoryStatistics.setTotalCountForType( entry.getKey(), entry.getValue() );
+        }
+    }
 
+    private void populateTotalsFromJcr( Session session, String repositoryId, RepositoryTotals totals )
+        throws MetadataRepositoryException
+    {
         try
         {
             QueryManager queryManager = session.getWorkspace().getQueryManager();
@@ -191,45 +232,48 @@ public class DefaultRepositoryStatisticsManager
 //            String whereClause = "WHERE ISDESCENDANTNODE([/repositories/" + repositoryId + "/content])";
 //            Query query = queryManager.createQuery( "SELECT size FROM [archiva:artifact] " + whereClause,
 //                                                    Query.JCR_SQL2 );
-            String whereClause = "WHERE jcr:path LIKE '/repositories/" + repositoryId + "/content/%'";
+            String whereClause = getWhereClause( repositoryId );
             Query query = queryManager.createQuery( "SELECT size FROM archiva:artifact " + whereClause, Query.SQL );
 
             QueryResult queryResult = query.execute();
 
-            Map<String, Integer> totalByType = new HashMap<String, Integer>();
-            long totalSize = 0, totalArtifacts = 0;
             for ( Row row : JcrUtils.getRows( queryResult ) )
             {
                 Node n = row.getNode();
-                totalSize += row.getValue( "size" ).getLong();
 
-                String type;
+                String type = RepositoryTotals.DEFAULT_TYPE;
                 if ( n.hasNode( MavenArtifactFacet.FACET_ID ) )
                 {
                     Node facetNode = n.getNode( MavenArtifactFacet.FACET_ID );
-                    type = facetNode.getProperty( "type" ).getString();
-                }
-                else
-                {
-                    type = "Other";
+                    if ( facetNode.hasProperty( "type" ) )
+                    {
+                        type = facetNode.getProperty( "type" ).getString();
+                    }
                 }
-                Integer prev = totalByType.get( type );
-                totalByType.put( type, prev != null ? prev + 1 : 1 );
-
-                totalArtifacts++;
+                totals.addArtifact( row.getValue( "size" ).getLong(), type );
             }
+        }
+        catch ( RepositoryException e )
+        {
+            throw new MetadataRepositoryException( e.getMessage(), e );
+        }
+    }
 
-            repositoryStatistics.setTotalArtifactCount( totalArtifacts );
-            repositoryStatistics.setTotalArtifactFileSize( totalSize );
-            for ( Map.Entry<String, Integer> entry : totalByType.entrySet() )
-            {
-                repositoryStatistics.setTotalCountForType( entry.getKey(), entry.getValue() );
-            }
+    private void populateGroupsAndProjectsFromJcr( Session session, String repositoryId,
+                                                   RepositoryStatistics repositoryStatistics )
+        throws MetadataRepositoryException
+    {
+        try
+        {
+            QueryManager queryManager = session.getWorkspace().getQueryManager();
+
+            String whereClause = getWhereClause( repositoryId );
 
             // The query ordering is a trick to ensure that the size is correct, otherwise due to lazy init it will be -1
 //            query = queryManager.createQuery( "SELECT * FROM [archiva:project] " + whereClause, Query.JCR_SQL2 );
-            query = queryManager.createQuery( "SELECT * FROM archiva:project " + whereClause + " ORDER BY jcr:score",
-                                              Query.SQL );
+            Query query =
+                queryManager.createQuery( "SELECT * FROM archiva:project " + whereClause + " ORDER BY jcr:score",
+                                          Query.SQL );
             repositoryStatistics.setTotalProjectCount( query.execute().getRows().getSize() );
 
 //            query = queryManager.createQuery(
@@ -245,15 +289,20 @@ public class DefaultRepositoryStatisticsManager
         }
     }
 
-    private void populateStatisticsFromRepositoryWalk( MetadataRepository metadataRepository, String repositoryId,
-                                                       RepositoryStatistics repositoryStatistics )
+    private static String getWhereClause( String repositoryId )
+    {
+        return "WHERE jcr:path LIKE '/repositories/" + repositoryId + "/content/%'";
+    }
+
+    private void populateTotalsFromRepositoryWalk( MetadataRepository metadataRepository, String repositoryId,
+                                                   RepositoryTotals totals, boolean artifacts )
         throws MetadataRepositoryException
     {
         try
         {
             for ( String ns : metadataRepository.getRootNamespaces( repositoryId ) )
             {
-                walkRepository( metadataRepository, repositoryStatistics, repositoryId, ns );
+                walkRepository( metadataRepository, totals, repositoryId, ns, artifacts );
             }
         }
         catch ( MetadataResolutionException e )
@@ -266,6 +315,11 @@ public class DefaultRepositoryStatisticsManager
         throws MetadataRepositoryException
     {
         metadataRepository.removeMetadataFacets( repositoryId, RepositoryStatistics.FACET_ID );
+
+        if ( metadataRepositoryTotals != null )
+        {
+            metadataRepositoryTotals.invalidate( repositoryId );
+        }
     }
 
     public List<RepositoryStatistics> getStatisticsInRange( MetadataRepository metadataRepository, String repositoryId,
@@ -299,6 +353,26 @@ public class DefaultRepositoryStatisticsManager
         return results;
     }
 
+    public MetadataRepositoryTotals getMetadataRepositoryTotals()
+    {
+        return metadataRepositoryTotals;
+    }
+
+    public void setMetadataRepositoryTotals( MetadataRepositoryTotals metadataRepositoryTotals )
+    {
+        this.metadataRepositoryTotals = metadataRepositoryTotals;
+    }
+
+    public long getReconciliationInterval()
+    {
+        return reconciliationInterval;
+    }
+
+    public void setReconciliationInterval( long reconciliationInterval )
+    {
+        this.reconciliationInterval = reconciliationInterval;
+    }
+
     private static SimpleDateFormat createNameFormat()
     {
         SimpleDateFormat fmt = new SimpleDateFormat( RepositoryStatistics.SCAN_TIMESTAMP_FORMAT );
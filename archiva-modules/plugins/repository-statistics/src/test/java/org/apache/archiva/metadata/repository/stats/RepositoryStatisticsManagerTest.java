@@ -22,7 +22,10 @@ package org.apache.archiva.metadata.repository.stats;
 import junit.framework.TestCase;
 import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.model.maven2.MavenArtifactFacet;
+import org.apache.archiva.metadata.repository.ArtifactLookup;
 import org.apache.archiva.metadata.repository.MetadataRepository;
+import org.apache.archiva.metadata.repository.MetadataRepositoryTotals;
+import org.apache.archiva.metadata.repository.RepositoryTotals;
 import org.easymock.MockControl;
 
 import java.text.SimpleDateFormat;
@@ -174,6 +177,138 @@ public class RepositoryStatisticsManagerTest
         metadataRepositoryControl.verify();
     }
 
+    @Test
+    public void testAddNewStatsFromRunningTotals()
+        throws Exception
+    {
+        MetadataRepositoryTotals metadataRepositoryTotals = new MetadataRepositoryTotals();
+        repositoryStatisticsManager.setMetadataRepositoryTotals( metadataRepositoryTotals );
+
+        Date current = new Date();
+        Date startTime = new Date( current.getTime() - 12345 );
+
+        RepositoryStatistics stats = createTestStats( startTime, current );
+
+        // the first scan walks the repository to reconcile the totals
+        walkRepository( 1 );
+        metadataRepositoryControl.expectAndReturn( metadataRepository.canObtainAccess( Session.class ), false );
+        metadataRepository.addMetadataFacet( TEST_REPO_ID, stats );
+
+        // a session then adds an artifact to a new project
+        ArtifactMetadata artifact = createArtifact( "com.example", "other-project", "1.0", "jar" );
+        metadataRepositoryControl.expectAndReturn( metadataRepository.canObtainAccess( ArtifactLookup.class ), false );
+        metadataRepositoryControl.expectAndReturn( metadataRepository.getArtifacts( TEST_REPO_ID, "com.example",
+                                                                                    "other-project", "1.0" ),
+                                                   Collections.emptyList() );
+        metadataRepository.updateArtifact( TEST_REPO_ID, "com.example", "other-project", "1.0", artifact );
+
+        // the next scan uses the totals without walking the repository
+        RepositoryStatistics nextStats = createTestStats( startTime, current );
+        nextStats.setTotalArtifactFileSize( 21 * 12345L );
+        nextStats.setTotalArtifactCount( 21 );
+        nextStats.setTotalProjectCount( 6 );
+        nextStats.setTotalCountForType( "jar", 11 );
+        metadataRepository.addMetadataFacet( TEST_REPO_ID, nextStats );
+
+        metadataRepositoryControl.replay();
+
+        repositoryStatisticsManager.addStatisticsAfterScan( metadataRepository, TEST_REPO_ID, startTime, current, 56345,
+                                                            45 );
+
+        MetadataRepository trackingRepository = metadataRepositoryTotals.track( metadataRepository, false );
+        trackingRepository.updateArtifact( TEST_REPO_ID, "com.example", "other-project", "1.0", artifact );
+
+        repositoryStatisticsManager.addStatisticsAfterScan( metadataRepository, TEST_REPO_ID, startTime, current, 56345,
+                                                            45 );
+
+        metadataRepositoryControl.verify();
+    }
+
+    @Test
+    public void testRunningTotalsCountArtifactsWithoutType()
+        throws Exception
+    {
+        MetadataRepositoryTotals metadataRepositoryTotals = new MetadataRepositoryTotals();
+        repositoryStatisticsManager.setMetadataRepositoryTotals( metadataRepositoryTotals );
+
+        Date current = new Date();
+        Date startTime = new Date( current.getTime() - 12345 );
+
+        walkRepository( 1 );
+        metadataRepositoryControl.expectAndReturn( metadataRepository.canObtainAccess( Session.class ), false );
+        metadataRepository.addMetadataFacet( TEST_REPO_ID, createTestStats( startTime, current ) );
+
+        // the artifact has no Maven facet, and is counted as the JCR statistics count it
+        ArtifactMetadata artifact = createArtifact( "com.example", "example-project", "1.0", "jar" );
+        artifact.setId( "example-project-1.0.txt" );
+        artifact.removeFacet( MavenArtifactFacet.FACET_ID );
+        metadataRepositoryControl.expectAndReturn( metadataRepository.canObtainAccess( ArtifactLookup.class ), false );
+        metadataRepositoryControl.expectAndReturn( metadataRepository.getArtifacts( TEST_REPO_ID, "com.example",
+                                                                                    "example-project", "1.0" ),
+                                                   Collections.emptyList() );
+        metadataRepository.updateArtifact( TEST_REPO_ID, "com.example", "example-project", "1.0", artifact );
+
+        RepositoryStatistics nextStats = createTestStats( startTime, current );
+        nextStats.setTotalArtifactFileSize( 21 * 12345L );
+        nextStats.setTotalArtifactCount( 21 );
+        nextStats.setTotalCountForType( RepositoryTotals.DEFAULT_TYPE, 1 );
+        metadataRepository.addMetadataFacet( TEST_REPO_ID, nextStats );
+
+        metadataRepositoryControl.replay();
+
+        repositoryStatisticsManager.addStatisticsAfterScan( metadataRepository, TEST_REPO_ID, startTime, current, 56345,
+                                                            45 );
+
+        MetadataRepository trackingRepository = metadataRepositoryTotals.track( metadataRepository, false );
+        trackingRepository.updateArtifact( TEST_REPO_ID, "com.example", "example-project", "1.0", artifact );
+
+        repositoryStatisticsManager.addStatisticsAfterScan( metadataRepository, TEST_REPO_ID, startTime, current, 56345,
+                                                            45 );
+
+        metadataRepositoryControl.verify();
+    }
+
+    @Test
+    public void testRunningTotalsNotKeptWhenWrittenDuringGathering()
+        throws Exception
+    {
+        MetadataRepositoryTotals metadataRepositoryTotals = new MetadataRepositoryTotals();
+        repositoryStatisticsManager.setMetadataRepositoryTotals( metadataRepositoryTotals );
+
+        Date current = new Date();
+        Date startTime = new Date( current.getTime() - 12345 );
+
+        RepositoryStatistics stats = createTestStats( startTime, current );
+
+        // a session writing to the repository while it is walked may or may not have its changes seen by the walk,
+        // so the repository is walked again on the next scan once the session is saved
+        walkRepository( 2 );
+        metadataRepositoryControl.expectAndReturn( metadataRepository.canObtainAccess( Session.class ), false, 2 );
+        metadataRepository.addMetadataFacet( TEST_REPO_ID, stats );
+        metadataRepositoryControl.setVoidCallable( 2 );
+
+        ArtifactMetadata artifact = createArtifact( "com.example", "example-project", "1.0", "jar" );
+        metadataRepository.updateArtifact( TEST_REPO_ID, "com.example", "example-project", "1.0", artifact );
+        metadataRepository.save();
+
+        metadataRepositoryControl.replay();
+
+        MetadataRepository trackingRepository = metadataRepositoryTotals.track( metadataRepository, false );
+        trackingRepository.updateArtifact( TEST_REPO_ID, "com.example", "example-project", "1.0", artifact );
+
+        repositoryStatisticsManager.addStatisticsAfterScan( metadataRepository, TEST_REPO_ID, startTime, current, 56345,
+                                                            45 );
+        assertNull( metadataRepositoryTotals.getTotals( TEST_REPO_ID ) );
+
+        trackingRepository.save();
+
+        repositoryStatisticsManager.addStatisticsAfterScan( metadataRepository, TEST_REPO_ID, startTime, current, 56345,
+                                                            45 );
+        assertNotNull( metadataRepositoryTotals.getTotals( TEST_REPO_ID ) );
+
+        metadataRepositoryControl.verify();
+    }
+
     @Test
     public void testDeleteStats()
         throws Exception